@@ -24,9 +24,6 @@
 
 -- This script is invoked when application starts with hbm2ddlAuto = create.
 
--- Qcadoo-model & Hibernate will automatically generate regular db table due to existence of warehouseStock.xml model,
--- we need to first drop this table, before create table view.
-
 CREATE OR REPLACE FUNCTION drop_all_sequence() RETURNS VOID AS $$ DECLARE ROW record; BEGIN FOR ROW IN SELECT tablename, SUBSTRING(quote_ident(tablename) || '_id_seq' FROM 1 FOR 63) AS seq_name FROM pg_tables p INNER JOIN information_schema.columns c ON p.tablename = c.table_name WHERE c.table_schema = 'public' AND p.schemaname = 'public' AND c.column_name = 'id' AND data_type = 'bigint' LOOP EXECUTE 'ALTER TABLE ' || quote_ident(ROW.tablename) || ' ALTER COLUMN id DROP DEFAULT;';  END LOOP; FOR ROW IN (SELECT c.relname FROM pg_class c WHERE c.relkind = 'S') LOOP EXECUTE 'DROP SEQUENCE ' || row.relname || ';'; END LOOP; END; $$ LANGUAGE 'plpgsql'; 
 
 SELECT * FROM drop_all_sequence();
@@ -41,13 +38,34 @@ SELECT * FROM update_sequence();
 DROP FUNCTION update_sequence();
 
 
-DROP TABLE IF EXISTS materialflowresources_warehousestock;
+-- warehouse stock is kept in table generated from warehouseStock.xml model and refreshed by triggers for every changed (location, product)
+-- refreshes of the same (location, product) are serialized with transaction advisory lock, so that sum is read after concurrent change commits
+
+CREATE UNIQUE INDEX materialflowresources_warehousestock_location_product_idx ON materialflowresources_warehousestock (location_id, product_id);
+
+CREATE INDEX materialflowresources_resource_location_product_idx ON materialflowresources_resource (location_id, product_id);
+
+CREATE INDEX deliveries_orderedproduct_product_idx ON deliveries_orderedproduct (product_id);
+
+CREATE OR REPLACE FUNCTION create_refresh_warehouse_stock() RETURNS VOID AS $$ BEGIN IF EXISTS (SELECT * FROM information_schema.columns WHERE table_name = 'materialflowresources_warehousestock' AND column_name = 'tenantid') THEN CREATE OR REPLACE FUNCTION refresh_warehouse_stock(_location_id bigint, _product_id bigint) RETURNS VOID AS $f$ BEGIN IF _location_id IS NULL OR _product_id IS NULL THEN RETURN; END IF; PERFORM pg_advisory_xact_lock(hashtext('materialflowresources_warehousestock'), hashtext(_location_id || '.' || _product_id)); IF EXISTS (SELECT * FROM materialflowresources_resource WHERE location_id = _location_id AND product_id = _product_id) THEN INSERT INTO materialflowresources_warehousestock (location_id, product_id, minimumstate, orderedquantity, quantity, tenantid) SELECT _location_id, _product_id, (SELECT SUM(minimumstate) FROM warehouseminimalstate_warehouseminimumstate WHERE location_id = _location_id AND product_id = _product_id), (SELECT COALESCE(SUM(orderedproduct.orderedquantity), 0::numeric) FROM deliveries_orderedproduct orderedproduct JOIN deliveries_delivery delivery ON (delivery.id = orderedproduct.delivery_id) WHERE delivery.location_id = _location_id AND delivery.active = true AND orderedproduct.product_id = _product_id AND delivery.state IN ('01draft', '02prepared', '03duringCorrection', '05approved')), SUM(quantity), MIN(tenantid) FROM materialflowresources_resource WHERE location_id = _location_id AND product_id = _product_id ON CONFLICT (location_id, product_id) DO UPDATE SET minimumstate = EXCLUDED.minimumstate, orderedquantity = EXCLUDED.orderedquantity, quantity = EXCLUDED.quantity; ELSE DELETE FROM materialflowresources_warehousestock WHERE location_id = _location_id AND product_id = _product_id; END IF; END; $f$ LANGUAGE 'plpgsql'; ELSE CREATE OR REPLACE FUNCTION refresh_warehouse_stock(_location_id bigint, _product_id bigint) RETURNS VOID AS $f$ BEGIN IF _location_id IS NULL OR _product_id IS NULL THEN RETURN; END IF; PERFORM pg_advisory_xact_lock(hashtext('materialflowresources_warehousestock'), hashtext(_location_id || '.' || _product_id)); IF EXISTS (SELECT * FROM materialflowresources_resource WHERE location_id = _location_id AND product_id = _product_id) THEN INSERT INTO materialflowresources_warehousestock (location_id, product_id, minimumstate, orderedquantity, quantity) SELECT _location_id, _product_id, (SELECT SUM(minimumstate) FROM warehouseminimalstate_warehouseminimumstate WHERE location_id = _location_id AND product_id = _product_id), (SELECT COALESCE(SUM(orderedproduct.orderedquantity), 0::numeric) FROM deliveries_orderedproduct orderedproduct JOIN deliveries_delivery delivery ON (delivery.id = orderedproduct.delivery_id) WHERE delivery.location_id = _location_id AND delivery.active = true AND orderedproduct.product_id = _product_id AND delivery.state IN ('01draft', '02prepared', '03duringCorrection', '05approved')), SUM(quantity) FROM materialflowresources_resource WHERE location_id = _location_id AND product_id = _product_id ON CONFLICT (location_id, product_id) DO UPDATE SET minimumstate = EXCLUDED.minimumstate, orderedquantity = EXCLUDED.orderedquantity, quantity = EXCLUDED.quantity; ELSE DELETE FROM materialflowresources_warehousestock WHERE location_id = _location_id AND product_id = _product_id; END IF; END; $f$ LANGUAGE 'plpgsql'; END IF; END; $$ LANGUAGE 'plpgsql';
+
+SELECT create_refresh_warehouse_stock();
+
+DROP FUNCTION create_refresh_warehouse_stock();
 
-CREATE OR REPLACE FUNCTION create_warehouse_stock_view() RETURNS VOID AS $$ BEGIN IF EXISTS (SELECT * FROM information_schema.columns WHERE table_name = 'basic_parameter' AND column_name = 'tenantid') THEN CREATE OR REPLACE VIEW materialflowresources_warehousestock AS SELECT row_number() OVER () AS id, location_id, product_id, (SELECT SUM(warehouseminimalstate_warehouseminimumstate.minimumstate) FROM warehouseminimalstate_warehouseminimumstate WHERE warehouseminimalstate_warehouseminimumstate.product_id = materialflowresources_resource.product_id AND warehouseminimalstate_warehouseminimumstate.location_id = materialflowresources_resource.location_id) AS minimumstate, (SELECT COALESCE(SUM(deliveries_orderedproduct.orderedquantity), 0::numeric) AS sum FROM deliveries_orderedproduct, deliveries_delivery WHERE deliveries_orderedproduct.delivery_id = deliveries_delivery.id AND deliveries_delivery.location_id = materialflowresources_resource.location_id AND deliveries_delivery.active = true AND deliveries_orderedproduct.product_id = materialflowresources_resource.product_id AND deliveries_delivery.state IN ('01draft', '02prepared', '03duringCorrection', '05approved')) AS orderedquantity, SUM(quantity) AS quantity, tenantid FROM materialflowresources_resource GROUP BY tenantid, location_id, product_id; ELSE CREATE OR REPLACE VIEW materialflowresources_warehousestock AS SELECT row_number() OVER () AS id, location_id, product_id, (SELECT SUM(warehouseminimalstate_warehouseminimumstate.minimumstate) FROM warehouseminimalstate_warehouseminimumstate WHERE warehouseminimalstate_warehouseminimumstate.product_id = materialflowresources_resource.product_id AND warehouseminimalstate_warehouseminimumstate.location_id = materialflowresources_resource.location_id) AS minimumstate, (SELECT COALESCE(SUM(deliveries_orderedproduct.orderedquantity),0) AS sum FROM deliveries_orderedproduct, deliveries_delivery WHERE deliveries_orderedproduct.delivery_id = deliveries_delivery.id AND deliveries_delivery.active = true AND deliveries_delivery.location_id = materialflowresources_resource.location_id AND deliveries_orderedproduct.product_id = materialflowresources_resource.product_id AND deliveries_delivery.state IN ('01draft', '02prepared', '03duringCorrection', '05approved')) AS orderedquantity, SUM(quantity) AS quantity FROM materialflowresources_resource GROUP BY location_id, product_id; END IF; END; $$ LANGUAGE 'plpgsql';
+CREATE OR REPLACE FUNCTION refresh_warehouse_stock_trigger() RETURNS trigger AS $$ BEGIN IF TG_OP = 'INSERT' THEN PERFORM refresh_warehouse_stock(NEW.location_id, NEW.product_id); ELSIF TG_OP = 'DELETE' THEN PERFORM refresh_warehouse_stock(OLD.location_id, OLD.product_id); ELSE PERFORM refresh_warehouse_stock(OLD.location_id, OLD.product_id); IF OLD.location_id IS DISTINCT FROM NEW.location_id OR OLD.product_id IS DISTINCT FROM NEW.product_id THEN PERFORM refresh_warehouse_stock(NEW.location_id, NEW.product_id); END IF; END IF; RETURN NULL; END; $$ LANGUAGE 'plpgsql';
 
-SELECT create_warehouse_stock_view();
+CREATE TRIGGER materialflowresources_resource_trigger_warehousestock AFTER INSERT OR DELETE OR UPDATE OF location_id, product_id, quantity ON materialflowresources_resource FOR EACH ROW EXECUTE PROCEDURE refresh_warehouse_stock_trigger();
 
-DROP FUNCTION create_warehouse_stock_view();
+CREATE TRIGGER warehouseminimalstate_warehouseminimumstate_trigger_warehousestock AFTER INSERT OR DELETE OR UPDATE OF location_id, product_id, minimumstate ON warehouseminimalstate_warehouseminimumstate FOR EACH ROW EXECUTE PROCEDURE refresh_warehouse_stock_trigger();
+
+CREATE OR REPLACE FUNCTION refresh_warehouse_stock_for_ordered_product_trigger() RETURNS trigger AS $$ BEGIN IF TG_OP IN ('UPDATE', 'DELETE') THEN PERFORM refresh_warehouse_stock((SELECT location_id FROM deliveries_delivery WHERE id = OLD.delivery_id), OLD.product_id); END IF; IF TG_OP IN ('INSERT', 'UPDATE') THEN PERFORM refresh_warehouse_stock((SELECT location_id FROM deliveries_delivery WHERE id = NEW.delivery_id), NEW.product_id); END IF; RETURN NULL; END; $$ LANGUAGE 'plpgsql';
+
+CREATE TRIGGER deliveries_orderedproduct_trigger_warehousestock AFTER INSERT OR DELETE OR UPDATE OF delivery_id, product_id, orderedquantity ON deliveries_orderedproduct FOR EACH ROW EXECUTE PROCEDURE refresh_warehouse_stock_for_ordered_product_trigger();
+
+CREATE OR REPLACE FUNCTION refresh_warehouse_stock_for_delivery_trigger() RETURNS trigger AS $$ DECLARE _product_id bigint; BEGIN FOR _product_id IN SELECT DISTINCT product_id FROM deliveries_orderedproduct WHERE delivery_id = NEW.id LOOP PERFORM refresh_warehouse_stock(OLD.location_id, _product_id); IF OLD.location_id IS DISTINCT FROM NEW.location_id THEN PERFORM refresh_warehouse_stock(NEW.location_id, _product_id); END IF; END LOOP; RETURN NULL; END; $$ LANGUAGE 'plpgsql';
+
+CREATE TRIGGER deliveries_delivery_trigger_warehousestock AFTER UPDATE OF location_id, state, active ON deliveries_delivery FOR EACH ROW EXECUTE PROCEDURE refresh_warehouse_stock_for_delivery_trigger();
 
 
 -- optymalizacja QCADOOCLS-4315
@@ -230,6 +248,8 @@ CREATE OR REPLACE VIEW materialflowresources_documentdto AS SELECT document.inBu
 
 DROP TABLE IF EXISTS materialflowresources_resourcestockdto;
 
+CREATE UNIQUE INDEX materialflowresources_resourcestock_location_product_idx ON materialflowresources_resourcestock (location_id, product_id);
+
 CREATE OR REPLACE VIEW materialflowresources_orderedquantitystock AS SELECT COALESCE(SUM(orderedproduct.orderedquantity), 0::numeric) AS orderedquantity, resource.id AS resource_id FROM materialflowresources_resourcestock resource JOIN deliveries_orderedproduct orderedproduct ON (orderedproduct.product_id = resource.product_id) JOIN deliveries_delivery delivery ON (orderedproduct.delivery_id = delivery.id AND delivery.active = true AND delivery.location_id = resource.location_id AND (delivery.state::text = ANY (ARRAY['01draft'::character varying::text, '02prepared'::character varying::text, '03duringCorrection'::character varying::text, '05approved'::character varying::text]))) GROUP BY resource.id;
 
 CREATE OR REPLACE VIEW materialflowresources_resourcestockdto_internal AS SELECT row_number() OVER () AS id, resource.location_id, resource.product_id::integer, resource.quantity AS quantity, COALESCE(orderedquantity.orderedquantity, 0::numeric) AS orderedquantity, (SELECT SUM(warehouseminimalstate_warehouseminimumstate.minimumstate) AS sum FROM warehouseminimalstate_warehouseminimumstate WHERE warehouseminimalstate_warehouseminimumstate.product_id = resource.product_id AND warehouseminimalstate_warehouseminimumstate.location_id = resource.location_id) AS minimumstate, reservedQuantity, availableQuantity FROM materialflowresources_resourcestock resource LEFT JOIN materialflowresources_orderedquantitystock orderedquantity ON (orderedquantity.resource_id = resource.id) GROUP BY resource.location_id, resource.product_id, orderedquantity.orderedquantity, reservedQuantity, availableQuantity, quantity;
@@ -490,3 +510,29 @@ CREATE OR REPLACE VIEW materialflowresources_palletstoragestatedto AS SELECT ROW
 -- end
 
 CREATE SEQUENCE technologies_barcodeoperationcomponent_number_seq;
+
+-- async job queue
+
+CREATE INDEX basic_asyncjob_status_entitykey_idx ON basic_asyncjob (status, entitykey);
+
+-- end
+
+-- stock balances in locations
+
+CREATE INDEX materialflow_transfer_locationto_product_time_idx ON materialflow_transfer (locationto_id, product_id, time);
+
+CREATE INDEX materialflow_transfer_locationfrom_product_time_idx ON materialflow_transfer (locationfrom_id, product_id, time);
+
+CREATE INDEX materialflow_stockcorrection_location_product_date_idx ON materialflow_stockcorrection (location_id, product_id, stockcorrectiondate);
+
+CREATE INDEX materialflow_stockbalancesnapshot_location_product_idx ON materialflow_stockbalancesnapshot (location_id, product_id);
+
+CREATE INDEX materialflow_stockbalancesnapshot_product_date_idx ON materialflow_stockbalancesnapshot (product_id, snapshotdate);
+
+-- end
+
+-- document positions numbering
+
+CREATE INDEX materialflowresources_position_document_number_idx ON materialflowresources_position (document_id, number);
+
+-- end
@@ -0,0 +1,128 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.benchmarks;
+
+import static com.qcadoo.mes.benchmarks.fixtures.Entities.inject;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.basic.GridResponse;
+import com.qcadoo.mes.basic.LookupQueryCache;
+import com.qcadoo.mes.basic.LookupUtils;
+import com.qcadoo.mes.basic.controllers.dataProvider.dto.ProductDTO;
+
+/**
+ * Query building of lookup grids - {@link LookupUtils#getGridResponse(String, String, String, Integer, int, Object, java.util.Map, String)}
+ * for product lookup filtered by name. Database returns constant page, so only query building, record metadata and cache
+ * handling are measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class LookupGridResponseBenchmark {
+
+    private static final String L_QUERY = "SELECT %s FROM (SELECT product.id, product.number as code, product.number, "
+            + "product.name, product.ean, product.globaltypeofmaterial, product.category "
+            + "FROM basic_product product WHERE product.active = true %s) q ";
+
+    private static final int L_PER_PAGE = 50;
+
+    @Param({ "", "products" })
+    private String cacheRegion;
+
+    @Param({ "1", "20" })
+    private int page;
+
+    private LookupUtils lookupUtils;
+
+    private ProductDTO record;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        List<ProductDTO> products = Lists.newArrayList();
+
+        for (int i = 0; i < L_PER_PAGE; i++) {
+            ProductDTO product = new ProductDTO();
+            product.setId((long) i + 1);
+            product.setNumber("P" + i);
+            product.setName("Product " + i);
+            products.add(product);
+        }
+
+        NamedParameterJdbcTemplate jdbcTemplate = mock(NamedParameterJdbcTemplate.class);
+
+        when(jdbcTemplate.queryForObject(anyString(), anyMapOf(String.class, Object.class), eq(Long.class))).thenReturn(10_000L);
+        when(jdbcTemplate.query(anyString(), anyMapOf(String.class, Object.class), any(RowMapper.class))).thenReturn(products);
+
+        lookupUtils = new LookupUtils();
+        inject(lookupUtils, "jdbcTemplate", jdbcTemplate);
+        inject(lookupUtils, "lookupQueryCache", new LookupQueryCache());
+
+        record = new ProductDTO();
+        record.setName("Product");
+
+        // serve previous pages, so that keyset bookmarks are in cache
+        for (int i = 1; i < page; i++) {
+            gridResponse(i);
+        }
+    }
+
+    @Benchmark
+    public GridResponse<ProductDTO> gridResponse() {
+        return gridResponse(page);
+    }
+
+    private GridResponse<ProductDTO> gridResponse(final int pageNumber) {
+        return lookupUtils.getGridResponse(L_QUERY, "number", "asc", pageNumber, L_PER_PAGE, record, Maps.newHashMap(),
+                cacheRegion.isEmpty() ? null : cacheRegion);
+    }
+
+}
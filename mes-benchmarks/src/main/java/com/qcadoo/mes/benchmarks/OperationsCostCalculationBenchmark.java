@@ -0,0 +1,148 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.benchmarks;
+
+import static com.qcadoo.mes.benchmarks.fixtures.Entities.dataDefinition;
+import static com.qcadoo.mes.benchmarks.fixtures.Entities.entity;
+import static com.qcadoo.mes.benchmarks.fixtures.Entities.inject;
+import static com.qcadoo.mes.benchmarks.fixtures.Entities.numberService;
+import static com.qcadoo.mes.benchmarks.fixtures.Entities.treeNode;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.benchmarks.fixtures.Entities;
+import com.qcadoo.mes.costNormsForOperation.constants.CalculationOperationComponentFields;
+import com.qcadoo.mes.costNormsForOperation.constants.TechnologyOperationComponentFieldsCNFO;
+import com.qcadoo.mes.operationCostCalculations.OperationsCostCalculationServiceImpl;
+import com.qcadoo.mes.operationTimeCalculations.OperationWorkTime;
+import com.qcadoo.mes.operationTimeCalculations.dto.OperationTimesContainer;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.EntityTreeNode;
+
+/**
+ * Cost of operations of calculation tree - {@link OperationsCostCalculationServiceImpl} piecework and hourly estimation, for
+ * full binary tree of calculation operation components. Saving of calculated values is in-memory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class OperationsCostCalculationBenchmark {
+
+    private static final BigDecimal L_MARGIN = BigDecimal.valueOf(15);
+
+    private static final BigDecimal L_QUANTITY = BigDecimal.valueOf(100);
+
+    @Param({ "3", "8" })
+    private int treeDepth;
+
+    private OperationsCostCalculationServiceImpl operationsCostCalculationService;
+
+    private EntityTreeNode root;
+
+    private Map<Long, BigDecimal> operationRuns;
+
+    private OperationTimesContainer operationTimes;
+
+    private DataDefinition calculationOperationComponentDD;
+
+    private DataDefinition technologyOperationComponentDD;
+
+    private long nextId;
+
+    @Setup
+    public void setUp() {
+        operationsCostCalculationService = new OperationsCostCalculationServiceImpl();
+        inject(operationsCostCalculationService, "numberService", numberService());
+
+        calculationOperationComponentDD = dataDefinition("costNormsForOperation", "calculationOperationComponent");
+        technologyOperationComponentDD = dataDefinition("technologies", "technologyOperationComponent");
+        operationRuns = Maps.newHashMap();
+        operationTimes = new OperationTimesContainer();
+
+        root = createCalculationOperationComponent(treeDepth);
+    }
+
+    @Benchmark
+    public BigDecimal pieceworkCost() {
+        return operationsCostCalculationService.estimateCostCalculationForPieceWork(root, L_MARGIN, L_QUANTITY, operationRuns);
+    }
+
+    @Benchmark
+    public Map<String, BigDecimal> hourlyCost() {
+        return operationsCostCalculationService.estimateCostCalculationForHourly(root, L_MARGIN, L_QUANTITY, operationTimes,
+                true);
+    }
+
+    private EntityTreeNode createCalculationOperationComponent(final int depth) {
+        long id = ++nextId;
+
+        Entity technologyOperationComponent = entity(technologyOperationComponentDD, id,
+                TechnologyOperationComponentFieldsCNFO.MACHINE_HOURLY_COST, BigDecimal.valueOf(40 + (id % 7)),
+                TechnologyOperationComponentFieldsCNFO.LABOR_HOURLY_COST, BigDecimal.valueOf(25 + (id % 5)));
+
+        List<EntityTreeNode> children = Lists.newArrayList();
+
+        if (depth > 1) {
+            children.add(createCalculationOperationComponent(depth - 1));
+            children.add(createCalculationOperationComponent(depth - 1));
+        }
+
+        EntityTreeNode calculationOperationComponent = treeNode(calculationOperationComponentDD, id,
+                CalculationOperationComponentFields.TECHNOLOGY_OPERATION_COMPONENT, technologyOperationComponent,
+                CalculationOperationComponentFields.PIECEWORK_COST, BigDecimal.valueOf(2 + (id % 3)),
+                CalculationOperationComponentFields.NUMBER_OF_OPERATIONS, BigDecimal.ONE, Entities.CHILDREN, children);
+
+        OperationWorkTime workTime = new OperationWorkTime();
+        workTime.setLaborWorkTime(3600 + (int) (id % 11) * 60);
+        workTime.setMachineWorkTime(1800 + (int) (id % 13) * 60);
+        workTime.setDuration(3600 + (int) (id % 11) * 60);
+
+        operationTimes.add(calculationOperationComponent, workTime);
+        operationRuns.put(id, BigDecimal.valueOf(10 + (id % 4)));
+
+        return calculationOperationComponent;
+    }
+
+}
@@ -0,0 +1,193 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.benchmarks;
+
+import static com.qcadoo.mes.benchmarks.fixtures.Entities.dataDefinition;
+import static com.qcadoo.mes.benchmarks.fixtures.Entities.entity;
+import static com.qcadoo.mes.benchmarks.fixtures.Entities.inject;
+import static com.qcadoo.mes.benchmarks.fixtures.Entities.numberService;
+import static com.qcadoo.mes.benchmarks.fixtures.Entities.stubGet;
+import static com.qcadoo.mes.benchmarks.fixtures.Entities.tree;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.technologies.ProductQuantitiesServiceImpl;
+import com.qcadoo.mes.technologies.constants.MrpAlgorithm;
+import com.qcadoo.mes.technologies.constants.TechnologiesConstants;
+import com.qcadoo.mes.technologies.constants.TechnologyFields;
+import com.qcadoo.mes.technologies.constants.TechnologyOperationComponentEntityType;
+import com.qcadoo.mes.technologies.constants.TechnologyOperationComponentFields;
+import com.qcadoo.mes.technologies.graph.TechnologyGraphCache;
+import com.qcadoo.mes.technologies.graph.TechnologyGraphService;
+import com.qcadoo.mes.technologies.states.constants.TechnologyStateStringValues;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * MRP explosion of orders - {@link ProductQuantitiesServiceImpl#getNeededProductQuantities(List, MrpAlgorithm)}.
+ *
+ * All orders share one technology with full binary tree of operations, each operation has one raw material besides
+ * intermediates of its children. Accepted technology graph is cached after first explosion, draft one is read from entities
+ * in every call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ProductQuantitiesBenchmark {
+
+    @Param({ "1", "50", "500" })
+    private int numberOfOrders;
+
+    @Param({ "3", "6" })
+    private int treeDepth;
+
+    @Param({ TechnologyStateStringValues.ACCEPTED, TechnologyStateStringValues.DRAFT })
+    private String technologyState;
+
+    private ProductQuantitiesServiceImpl productQuantitiesService;
+
+    private List<Entity> orders;
+
+    private long nextId;
+
+    private DataDefinition productDD;
+
+    private DataDefinition operationDD;
+
+    private DataDefinition operationComponentDD;
+
+    private DataDefinition productInDD;
+
+    private DataDefinition productOutDD;
+
+    private List<Entity> products;
+
+    @Setup
+    public void setUp() {
+        TechnologyGraphService technologyGraphService = new TechnologyGraphService();
+        inject(technologyGraphService, "technologyGraphCache", new TechnologyGraphCache());
+
+        productQuantitiesService = new ProductQuantitiesServiceImpl();
+        inject(productQuantitiesService, "numberService", numberService());
+        inject(productQuantitiesService, "technologyGraphService", technologyGraphService);
+
+        productDD = dataDefinition("basic", "product");
+        operationDD = dataDefinition(TechnologiesConstants.PLUGIN_IDENTIFIER, TechnologiesConstants.MODEL_OPERATION);
+        operationComponentDD = dataDefinition(TechnologiesConstants.PLUGIN_IDENTIFIER,
+                TechnologiesConstants.MODEL_TECHNOLOGY_OPERATION_COMPONENT);
+        productInDD = dataDefinition(TechnologiesConstants.PLUGIN_IDENTIFIER,
+                TechnologiesConstants.MODEL_OPERATION_PRODUCT_IN_COMPONENT);
+        productOutDD = dataDefinition(TechnologiesConstants.PLUGIN_IDENTIFIER,
+                TechnologiesConstants.MODEL_OPERATION_PRODUCT_OUT_COMPONENT);
+        products = Lists.newArrayList();
+
+        List<Entity> operationComponents = Lists.newArrayList();
+        Entity finalProduct = createProduct();
+
+        createOperationComponent(finalProduct, treeDepth, operationComponents);
+
+        stubGet(productDD, products);
+
+        Entity technology = entity(dataDefinition(TechnologiesConstants.PLUGIN_IDENTIFIER, TechnologiesConstants.MODEL_TECHNOLOGY),
+                ++nextId, TechnologyFields.PRODUCT, finalProduct, TechnologyFields.STATE, technologyState,
+                TechnologyFields.OPERATION_COMPONENTS, tree(operationComponents));
+
+        DataDefinition orderDD = dataDefinition("orders", "order");
+
+        orders = Lists.newArrayList();
+
+        for (int i = 0; i < numberOfOrders; i++) {
+            orders.add(entity(orderDD, ++nextId, "technology", technology, "plannedQuantity", BigDecimal.valueOf(10 + i)));
+        }
+    }
+
+    @Benchmark
+    public Map<Long, BigDecimal> neededProductQuantities() {
+        return productQuantitiesService.getNeededProductQuantities(orders, MrpAlgorithm.ALL_PRODUCTS_IN);
+    }
+
+    private Entity createOperationComponent(final Entity outputProduct, final int depth, final List<Entity> operationComponents) {
+        Entity operationComponent = entity(operationComponentDD, ++nextId, TechnologyOperationComponentFields.ENTITY_TYPE,
+                TechnologyOperationComponentEntityType.OPERATION.getStringValue(), "operation", entity(operationDD, ++nextId),
+                TechnologyOperationComponentFields.ARE_PRODUCT_QUANTITIES_DIVISIBLE, false,
+                TechnologyOperationComponentFields.IS_TJ_DIVISIBLE, false);
+
+        operationComponents.add(operationComponent);
+
+        List<Entity> children = Lists.newArrayList();
+        List<Entity> productInComponents = Lists.newArrayList();
+
+        productInComponents.add(createProductComponent(productInDD, operationComponent, createProduct(), BigDecimal.valueOf(3)));
+
+        if (depth > 1) {
+            for (int i = 0; i < 2; i++) {
+                Entity intermediate = createProduct();
+
+                productInComponents.add(createProductComponent(productInDD, operationComponent, intermediate, BigDecimal.valueOf(2)));
+                children.add(createOperationComponent(intermediate, depth - 1, operationComponents));
+            }
+        }
+
+        operationComponent.setField(TechnologyOperationComponentFields.OPERATION_PRODUCT_IN_COMPONENTS, productInComponents);
+        operationComponent.setField(TechnologyOperationComponentFields.OPERATION_PRODUCT_OUT_COMPONENTS,
+                Lists.newArrayList(createProductComponent(productOutDD, operationComponent, outputProduct, BigDecimal.ONE)));
+        operationComponent.setField(TechnologyOperationComponentFields.CHILDREN, children);
+
+        return operationComponent;
+    }
+
+    private Entity createProductComponent(final DataDefinition productComponentDD, final Entity operationComponent,
+            final Entity product, final BigDecimal quantity) {
+        return entity(productComponentDD, ++nextId, "product", product, "operationComponent", operationComponent, "quantity",
+                quantity);
+    }
+
+    private Entity createProduct() {
+        Entity product = entity(productDD, ++nextId);
+
+        products.add(product);
+
+        return product;
+    }
+
+}
@@ -0,0 +1,142 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.benchmarks;
+
+import static com.qcadoo.mes.benchmarks.fixtures.Entities.dataDefinition;
+import static com.qcadoo.mes.benchmarks.fixtures.Entities.entity;
+import static com.qcadoo.mes.benchmarks.fixtures.Entities.inject;
+import static com.qcadoo.mes.benchmarks.fixtures.Entities.numberService;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.qcadoo.mes.basicProductionCounting.BasicProductionCountingService;
+import com.qcadoo.mes.benchmarks.fixtures.Shifts;
+import com.qcadoo.mes.orders.constants.OrderFields;
+import com.qcadoo.mes.productionLines.constants.ProductionLineFields;
+import com.qcadoo.mes.productionPerShift.PpsTimeHelper;
+import com.qcadoo.mes.productionPerShift.constants.ProductionPerShiftConstants;
+import com.qcadoo.mes.productionPerShift.constants.ProductionPerShiftFields;
+import com.qcadoo.mes.productionPerShift.domain.ProgressForDaysContainer;
+import com.qcadoo.mes.productionPerShift.services.DailyProgressService;
+import com.qcadoo.mes.productionPerShift.services.PpsBaseAlgorithmService;
+import com.qcadoo.mes.productionPerShift.services.PpsTechNormAlgorithmService;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.NumberService;
+
+/**
+ * Automatic production per shift plan - {@link PpsBaseAlgorithmService#generateProgressForDays(ProgressForDaysContainer, Entity)}
+ * with technology norm algorithm, for order planned on three-shift production line, or on production line with one shift
+ * working once a week, where 104 production days take about two years.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ProgressForDaysBenchmark {
+
+    private static final BigDecimal L_STANDARD_PERFORMANCE = BigDecimal.valueOf(2);
+
+    @Param({ "1", "30", "104", "180" })
+    private int productionDays;
+
+    @Param({ "threeShifts", "weeklyShift" })
+    private String calendar;
+
+    private PpsTechNormAlgorithmService ppsAlgorithmService;
+
+    private Entity productionPerShift;
+
+    @Setup
+    public void setUp() {
+        NumberService numberService = numberService();
+        DataDefinitionService dataDefinitionService = mock(DataDefinitionService.class);
+
+        when(dataDefinitionService.get(ProductionPerShiftConstants.PLUGIN_IDENTIFIER,
+                ProductionPerShiftConstants.MODEL_DAILY_PROGRESS)).thenReturn(
+                dataDefinition(ProductionPerShiftConstants.PLUGIN_IDENTIFIER, ProductionPerShiftConstants.MODEL_DAILY_PROGRESS));
+        when(dataDefinitionService.get(ProductionPerShiftConstants.PLUGIN_IDENTIFIER,
+                ProductionPerShiftConstants.MODEL_PROGRESS_FOR_DAY)).thenReturn(
+                dataDefinition(ProductionPerShiftConstants.PLUGIN_IDENTIFIER, ProductionPerShiftConstants.MODEL_PROGRESS_FOR_DAY));
+
+        ppsAlgorithmService = new PpsTechNormAlgorithmService();
+        inject(ppsAlgorithmService, "numberService", numberService);
+        inject(ppsAlgorithmService, PpsBaseAlgorithmService.class, "numberService", numberService);
+        inject(ppsAlgorithmService, PpsBaseAlgorithmService.class, "dataDefinitionService", dataDefinitionService);
+        inject(ppsAlgorithmService, PpsBaseAlgorithmService.class, "basicProductionCountingService",
+                mock(BasicProductionCountingService.class));
+        inject(ppsAlgorithmService, PpsBaseAlgorithmService.class, "dailyProgressService", mock(DailyProgressService.class));
+        inject(ppsAlgorithmService, PpsBaseAlgorithmService.class, "ppsTimeHelper", new PpsTimeHelper());
+
+        DateTime startDate = new DateTime(2017, 1, 2, 6, 0);
+        boolean weeklyShift = "weeklyShift".equals(calendar);
+        List<Entity> shifts = weeklyShift ? Shifts.createWeeklyShift() : Shifts.createShifts(3, startDate, productionDays * 2);
+
+        Entity productionLine = entity(dataDefinition("productionLines", "productionLine"), 1L, ProductionLineFields.NUMBER,
+                "PL-1", ProductionLineFields.SHIFTS, shifts);
+        Entity technology = entity(dataDefinition("technologies", "technology"), 1L, "standardPerformanceTechnology",
+                L_STANDARD_PERFORMANCE);
+
+        // three shifts work for about 24 hours a day, weekly shift works for 8 hours a week
+        BigDecimal plannedQuantity = L_STANDARD_PERFORMANCE.multiply(BigDecimal.valueOf((weeklyShift ? 8 : 24) * 60L
+                * productionDays));
+
+        Entity order = entity(dataDefinition("orders", "order"), 1L, OrderFields.START_DATE, startDate.toDate(),
+                OrderFields.PRODUCTION_LINE, productionLine, OrderFields.PLANNED_QUANTITY, plannedQuantity,
+                OrderFields.FINAL_PRODUCTION_TRACKING, false, OrderFields.TECHNOLOGY, technology);
+
+        productionPerShift = entity(
+                dataDefinition(ProductionPerShiftConstants.PLUGIN_IDENTIFIER, ProductionPerShiftConstants.MODEL_PRODUCTION_PER_SHIFT),
+                1L, ProductionPerShiftFields.ORDER, order);
+    }
+
+    @Benchmark
+    public ProgressForDaysContainer generateProgressForDays() {
+        ProgressForDaysContainer progressForDaysContainer = new ProgressForDaysContainer();
+
+        ppsAlgorithmService.generateProgressForDays(progressForDaysContainer, productionPerShift);
+
+        return progressForDaysContainer;
+    }
+
+}
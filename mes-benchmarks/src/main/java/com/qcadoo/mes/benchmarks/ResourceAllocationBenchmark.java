@@ -0,0 +1,193 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.benchmarks;
+
+import static com.qcadoo.mes.benchmarks.fixtures.Entities.dataDefinition;
+import static com.qcadoo.mes.benchmarks.fixtures.Entities.entity;
+import static com.qcadoo.mes.benchmarks.fixtures.Entities.inject;
+import static com.qcadoo.mes.benchmarks.fixtures.Entities.numberService;
+import static com.qcadoo.mes.benchmarks.fixtures.Entities.stubFind;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.basic.constants.ProductFields;
+import com.qcadoo.mes.materialFlowResources.constants.DocumentFields;
+import com.qcadoo.mes.materialFlowResources.constants.LocationFieldsMFR;
+import com.qcadoo.mes.materialFlowResources.constants.MaterialFlowResourcesConstants;
+import com.qcadoo.mes.materialFlowResources.constants.PositionFields;
+import com.qcadoo.mes.materialFlowResources.constants.ResourceFields;
+import com.qcadoo.mes.materialFlowResources.service.ReservationsService;
+import com.qcadoo.mes.materialFlowResources.service.ResourceAllocationService;
+import com.qcadoo.mes.materialFlowResources.service.ResourceManagementServiceImpl;
+import com.qcadoo.mes.materialFlowResources.service.ResourceStockService;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.NumberService;
+import com.qcadoo.model.api.units.UnitConversionService;
+
+/**
+ * Allocation of resources for release document - {@link ResourceManagementServiceImpl#updateResourcesForReleaseDocuments(Entity)}.
+ *
+ * Every position takes a bit more than half of resources of its product, so most positions consume several resources and
+ * leave one of them partially used. Resources are recreated before every invocation, because allocation changes them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ResourceAllocationBenchmark {
+
+    private static final BigDecimal L_RESOURCE_QUANTITY = BigDecimal.TEN;
+
+    @Param({ "10", "200" })
+    private int numberOfPositions;
+
+    @Param({ "5", "50" })
+    private int resourcesPerProduct;
+
+    @Param({ "01fifo", "03fefo" })
+    private String warehouseAlgorithm;
+
+    private ResourceManagementServiceImpl resourceManagementService;
+
+    private DataDefinition documentDD;
+
+    private DataDefinition positionDD;
+
+    private DataDefinition resourceDD;
+
+    private Entity warehouse;
+
+    private List<Entity> products;
+
+    private List<Entity> resources;
+
+    private Entity document;
+
+    private long nextId;
+
+    @Setup
+    public void setUp() {
+        DataDefinitionService dataDefinitionService = mock(DataDefinitionService.class);
+        NumberService numberService = numberService();
+        ReservationsService reservationsService = mock(ReservationsService.class);
+        ResourceStockService resourceStockService = mock(ResourceStockService.class);
+        UnitConversionService unitConversionService = mock(UnitConversionService.class);
+
+        documentDD = dataDefinition(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER, MaterialFlowResourcesConstants.MODEL_DOCUMENT);
+        positionDD = dataDefinition(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER, MaterialFlowResourcesConstants.MODEL_POSITION);
+        resourceDD = dataDefinition(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER, MaterialFlowResourcesConstants.MODEL_RESOURCE);
+
+        when(dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
+                MaterialFlowResourcesConstants.MODEL_POSITION)).thenReturn(positionDD);
+        when(dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
+                MaterialFlowResourcesConstants.MODEL_RESOURCE)).thenReturn(resourceDD);
+
+        stubFind(resourceDD, () -> resources);
+
+        ResourceAllocationService resourceAllocationService = new ResourceAllocationService();
+        inject(resourceAllocationService, "dataDefinitionService", dataDefinitionService);
+        inject(resourceAllocationService, "numberService", numberService);
+        inject(resourceAllocationService, "unitConversionService", unitConversionService);
+        inject(resourceAllocationService, "resourceStockService", resourceStockService);
+        inject(resourceAllocationService, "reservationsService", reservationsService);
+        inject(resourceAllocationService, "jdbcTemplate", mock(NamedParameterJdbcTemplate.class));
+
+        resourceManagementService = new ResourceManagementServiceImpl(dataDefinitionService, numberService, unitConversionService);
+        inject(resourceManagementService, "resourceStockService", resourceStockService);
+        inject(resourceManagementService, "reservationsService", reservationsService);
+        inject(resourceManagementService, "resourceAllocationService", resourceAllocationService);
+
+        warehouse = entity(dataDefinition("materialFlow", "location"), ++nextId, LocationFieldsMFR.ALGORITHM, warehouseAlgorithm);
+
+        DataDefinition productDD = dataDefinition("basic", "product");
+
+        products = Lists.newArrayList();
+
+        for (int i = 0; i < numberOfPositions; i++) {
+            products.add(entity(productDD, ++nextId, ProductFields.UNIT, "szt"));
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void createDocument() {
+        long now = System.currentTimeMillis();
+
+        resources = Lists.newArrayList();
+
+        for (Entity product : products) {
+            for (int i = 0; i < resourcesPerProduct; i++) {
+                resources.add(entity(resourceDD, ++nextId, ResourceFields.PRODUCT, product, ResourceFields.LOCATION, warehouse,
+                        ResourceFields.QUANTITY, L_RESOURCE_QUANTITY, ResourceFields.AVAILABLE_QUANTITY, L_RESOURCE_QUANTITY,
+                        ResourceFields.RESERVED_QUANTITY, BigDecimal.ZERO, ResourceFields.CONVERSION, BigDecimal.ONE,
+                        ResourceFields.TIME, new Date(now - i * 60_000L), ResourceFields.EXPIRATION_DATE, new Date(now + i
+                                * 3_600_000L), ResourceFields.ATRRIBUTE_VALUES, Lists.newArrayList()));
+            }
+        }
+
+        BigDecimal positionQuantity = L_RESOURCE_QUANTITY.multiply(BigDecimal.valueOf(resourcesPerProduct / 2)).add(
+                BigDecimal.valueOf(5));
+
+        List<Entity> positions = Lists.newArrayList();
+
+        for (Entity product : products) {
+            positions.add(entity(positionDD, ++nextId, PositionFields.PRODUCT, product, PositionFields.QUANTITY, positionQuantity,
+                    PositionFields.GIVEN_QUANTITY, positionQuantity, PositionFields.GIVEN_UNIT, "szt",
+                    PositionFields.CONVERSION, BigDecimal.ONE));
+        }
+
+        document = entity(documentDD, ++nextId, DocumentFields.LOCATION_FROM, warehouse, DocumentFields.POSITIONS, positions);
+    }
+
+    @Benchmark
+    public Entity updateResourcesForReleaseDocument() {
+        resourceManagementService.updateResourcesForReleaseDocuments(document);
+
+        return document;
+    }
+
+}
@@ -0,0 +1,264 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.benchmarks;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.materialFlowResources.service.ResourceAllocationService;
+
+/**
+ * Database side of resource allocation for release document - {@link ResourceAllocationService}, run against database
+ * filled by LargePlantDatasetGenerator (mes-plugins-samples). Every invocation does in one transaction what allocation does
+ * with database:
+ * <ul>
+ * <li>reads available resources of all products of document in the busiest warehouse,</li>
+ * <li>consumes half of available quantity of every product in FIFO order,</li>
+ * <li>writes changed resources and resource stocks with JDBC batches (firing warehouse stock triggers),</li>
+ * </ul>
+ * and then rolls the transaction back, so data stays the same for every invocation.
+ *
+ * Entity binding, hooks and Hibernate session handling of the application aren't included - these are measured with
+ * in-memory fixtures by {@link ResourceAllocationBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ResourceAllocationDatabaseBenchmark {
+
+    private static final String L_URL = "benchmarks.url";
+
+    private static final String L_USER = "benchmarks.user";
+
+    private static final String L_PASSWORD = "benchmarks.password";
+
+    private static final String L_BUSIEST_WAREHOUSE_QUERY = "SELECT location_id FROM materialflowresources_resource "
+            + "WHERE availablequantity > 0 GROUP BY location_id ORDER BY COUNT(*) DESC, location_id LIMIT 1";
+
+    private static final String L_PRODUCTS_QUERY = "SELECT product_id FROM materialflowresources_resource "
+            + "WHERE location_id = ? AND availablequantity > 0 GROUP BY product_id ORDER BY COUNT(*) DESC, product_id LIMIT ?";
+
+    private static final String L_CANDIDATES_QUERY = "SELECT * FROM materialflowresources_resource "
+            + "WHERE location_id = ? AND product_id = ANY (?) AND availablequantity > 0";
+
+    private static final String L_UPDATE_RESOURCE_QUERY = "UPDATE materialflowresources_resource SET quantity = ?, "
+            + "availablequantity = ?, reservedquantity = ?, quantityinadditionalunit = ? WHERE id = ?";
+
+    private static final String L_REMOVE_RESOURCE_STOCK_QUERY = "UPDATE materialflowresources_resourcestock SET "
+            + "availablequantity = CASE WHEN quantity - ? <= 0 THEN 0 ELSE availablequantity - ? END, "
+            + "quantity = GREATEST(quantity - ?, 0) WHERE product_id = ? AND location_id = ?";
+
+    @Param({ "10", "200" })
+    private int numberOfPositions;
+
+    private Connection connection;
+
+    private long warehouseId;
+
+    private Long[] productIds;
+
+    @Setup(Level.Trial)
+    public void connect() throws SQLException {
+        connection = DriverManager.getConnection(System.getProperty(L_URL, "jdbc:postgresql://localhost:5432/mes"),
+                System.getProperty(L_USER, "postgres"), System.getProperty(L_PASSWORD, "postgres"));
+        connection.setAutoCommit(false);
+
+        try (PreparedStatement statement = connection.prepareStatement(L_BUSIEST_WAREHOUSE_QUERY);
+                ResultSet resultSet = statement.executeQuery()) {
+            if (!resultSet.next()) {
+                throw new IllegalStateException("There are no resources, generate large plant dataset first");
+            }
+
+            warehouseId = resultSet.getLong(1);
+        }
+
+        List<Long> products = Lists.newArrayList();
+
+        try (PreparedStatement statement = connection.prepareStatement(L_PRODUCTS_QUERY)) {
+            statement.setLong(1, warehouseId);
+            statement.setInt(2, numberOfPositions);
+
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    products.add(resultSet.getLong(1));
+                }
+            }
+        }
+
+        productIds = products.toArray(new Long[products.size()]);
+
+        connection.rollback();
+    }
+
+    @TearDown(Level.Trial)
+    public void disconnect() throws SQLException {
+        connection.close();
+    }
+
+    @Benchmark
+    public int allocateResourcesForReleaseDocument() throws SQLException {
+        try {
+            Map<Long, List<Resource>> candidatesByProduct = getCandidates().stream()
+                    .sorted(Comparator.comparing((Resource resource) -> resource.time, Comparator.nullsLast(Comparator.<Timestamp> naturalOrder()))
+                            .thenComparing(resource -> resource.id))
+                    .collect(Collectors.groupingBy(resource -> resource.productId));
+
+            List<Resource> changedResources = Lists.newArrayList();
+
+            try (PreparedStatement statement = connection.prepareStatement(L_REMOVE_RESOURCE_STOCK_QUERY)) {
+                for (Map.Entry<Long, List<Resource>> candidates : candidatesByProduct.entrySet()) {
+                    BigDecimal quantity = candidates.getValue().stream().map(resource -> resource.availableQuantity)
+                            .reduce(BigDecimal.ZERO, BigDecimal::add).divide(BigDecimal.valueOf(2));
+
+                    changedResources.addAll(consume(candidates.getValue(), quantity));
+
+                    statement.setBigDecimal(1, quantity);
+                    statement.setBigDecimal(2, quantity);
+                    statement.setBigDecimal(3, quantity);
+                    statement.setLong(4, candidates.getKey());
+                    statement.setLong(5, warehouseId);
+                    statement.addBatch();
+                }
+
+                statement.executeBatch();
+            }
+
+            try (PreparedStatement statement = connection.prepareStatement(L_UPDATE_RESOURCE_QUERY)) {
+                for (Resource resource : changedResources) {
+                    statement.setBigDecimal(1, resource.quantity);
+                    statement.setBigDecimal(2, resource.availableQuantity);
+                    statement.setBigDecimal(3, resource.reservedQuantity);
+                    statement.setBigDecimal(4, resource.quantityInAdditionalUnit);
+                    statement.setLong(5, resource.id);
+                    statement.addBatch();
+                }
+
+                statement.executeBatch();
+            }
+
+            return changedResources.size();
+        } finally {
+            connection.rollback();
+        }
+    }
+
+    private List<Resource> getCandidates() throws SQLException {
+        List<Resource> candidates = Lists.newArrayList();
+
+        try (PreparedStatement statement = connection.prepareStatement(L_CANDIDATES_QUERY)) {
+            statement.setLong(1, warehouseId);
+            statement.setArray(2, connection.createArrayOf("bigint", productIds));
+
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    candidates.add(new Resource(resultSet));
+                }
+            }
+        }
+
+        return candidates;
+    }
+
+    private List<Resource> consume(final List<Resource> resources, final BigDecimal quantity) {
+        List<Resource> consumed = Lists.newArrayList();
+        BigDecimal remaining = quantity;
+
+        for (Resource resource : resources) {
+            if (remaining.signum() <= 0) {
+                break;
+            }
+
+            BigDecimal taken = remaining.min(resource.availableQuantity);
+
+            resource.quantity = resource.quantity.subtract(taken);
+            resource.availableQuantity = resource.availableQuantity.subtract(taken);
+            resource.quantityInAdditionalUnit = (resource.conversion == null) ? resource.quantity : resource.quantity
+                    .multiply(resource.conversion);
+            remaining = remaining.subtract(taken);
+
+            consumed.add(resource);
+        }
+
+        return consumed;
+    }
+
+    private static class Resource {
+
+        private final long id;
+
+        private final long productId;
+
+        private final Timestamp time;
+
+        private final BigDecimal conversion;
+
+        private final BigDecimal reservedQuantity;
+
+        private BigDecimal quantity;
+
+        private BigDecimal availableQuantity;
+
+        private BigDecimal quantityInAdditionalUnit;
+
+        Resource(final ResultSet resultSet) throws SQLException {
+            id = resultSet.getLong("id");
+            productId = resultSet.getLong("product_id");
+            time = resultSet.getTimestamp("time");
+            conversion = resultSet.getBigDecimal("conversion");
+            reservedQuantity = resultSet.getBigDecimal("reservedquantity");
+            quantity = resultSet.getBigDecimal("quantity");
+            availableQuantity = resultSet.getBigDecimal("availablequantity");
+            quantityInAdditionalUnit = resultSet.getBigDecimal("quantityinadditionalunit");
+        }
+    }
+
+}
@@ -0,0 +1,116 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.benchmarks;
+
+import static com.qcadoo.mes.benchmarks.fixtures.Entities.dataDefinition;
+import static com.qcadoo.mes.benchmarks.fixtures.Entities.inject;
+import static com.qcadoo.mes.benchmarks.fixtures.Entities.stubFind;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeConstants;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.qcadoo.mes.basic.ShiftsServiceImpl;
+import com.qcadoo.mes.basic.ShiftsServiceImpl.ShiftHour;
+import com.qcadoo.mes.basic.constants.BasicConstants;
+import com.qcadoo.mes.basic.shift.WorkingCalendarCache;
+import com.qcadoo.mes.benchmarks.fixtures.Shifts;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Working hours of all shifts in date range - {@link ShiftsServiceImpl#getHoursForAllShifts(Date, Date)}, and date after working
+ * time of whole range - {@link ShiftsServiceImpl#findDateToForOrder(Date, long)}, answered by compiled working calendar.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ShiftHoursBenchmark {
+
+    @Param({ "3", "12" })
+    private int numberOfShifts;
+
+    @Param({ "7", "90", "365" })
+    private int days;
+
+    private ShiftsServiceImpl shiftsService;
+
+    private Date dateFrom;
+
+    private Date dateTo;
+
+    private long workingSeconds;
+
+    @Setup
+    public void setUp() {
+        DateTime from = new DateTime(2017, 1, 2, 0, 0);
+
+        dateFrom = from.toDate();
+        dateTo = from.plusDays(days).toDate();
+        workingSeconds = days * 8L * DateTimeConstants.SECONDS_PER_HOUR;
+
+        List<Entity> shifts = Shifts.createShifts(numberOfShifts, from, days);
+
+        DataDefinition shiftDD = dataDefinition(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_SHIFT);
+        stubFind(shiftDD, () -> shifts);
+
+        DataDefinitionService dataDefinitionService = mock(DataDefinitionService.class);
+        when(dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_SHIFT)).thenReturn(shiftDD);
+
+        shiftsService = new ShiftsServiceImpl();
+        inject(shiftsService, "dataDefinitionService", dataDefinitionService);
+        inject(shiftsService, "workingCalendarCache", new WorkingCalendarCache());
+    }
+
+    @Benchmark
+    public List<ShiftHour> hoursForAllShifts() {
+        return shiftsService.getHoursForAllShifts(dateFrom, dateTo);
+    }
+
+    @Benchmark
+    public Date dateToForOrder() {
+        return shiftsService.findDateToForOrder(dateFrom, workingSeconds);
+    }
+
+}
@@ -0,0 +1,170 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.benchmarks.fixtures;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.util.ReflectionUtils;
+
+import com.google.common.collect.Maps;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.EntityTree;
+import com.qcadoo.model.api.EntityTreeNode;
+import com.qcadoo.model.api.NumberService;
+import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.model.api.search.SearchResult;
+
+/**
+ * In-memory fixtures for benchmarks - detached entities backed by maps, data definitions and services which don't touch
+ * database.
+ */
+public final class Entities {
+
+    public static final String CHILDREN = "children";
+
+    private Entities() {
+    }
+
+    public static DataDefinition dataDefinition(final String pluginIdentifier, final String name) {
+        DataDefinition dataDefinition = mock(DataDefinition.class);
+
+        when(dataDefinition.getPluginIdentifier()).thenReturn(pluginIdentifier);
+        when(dataDefinition.getName()).thenReturn(name);
+        when(dataDefinition.create()).thenAnswer(invocation -> entity(dataDefinition, null));
+        when(dataDefinition.save(any(Entity.class))).thenAnswer(invocation -> invocation.getArguments()[0]);
+
+        return dataDefinition;
+    }
+
+    public static Entity entity(final DataDefinition dataDefinition, final Long id, final Object... fieldsAndValues) {
+        return entity(dataDefinition, id, toMap(fieldsAndValues));
+    }
+
+    public static Entity entity(final DataDefinition dataDefinition, final Long id, final Map<String, Object> fields) {
+        return mock(Entity.class, new EntityAnswer(dataDefinition, id, fields));
+    }
+
+    public static EntityTreeNode treeNode(final DataDefinition dataDefinition, final Long id, final Object... fieldsAndValues) {
+        return mock(EntityTreeNode.class, new EntityAnswer(dataDefinition, id, toMap(fieldsAndValues)));
+    }
+
+    public static EntityTree tree(final List<Entity> nodes) {
+        return mock(EntityTree.class, new ListAnswer(nodes, nodes.isEmpty() ? null : nodes.get(0)));
+    }
+
+    /**
+     * Makes {@link DataDefinition#get(Long)} return given entities by their ids.
+     */
+    public static void stubGet(final DataDefinition dataDefinition, final Collection<Entity> entities) {
+        Map<Long, Entity> entitiesById = Maps.newHashMap();
+
+        for (Entity entity : entities) {
+            entitiesById.put(entity.getId(), entity);
+        }
+
+        when(dataDefinition.get(anyLong())).thenAnswer(invocation -> entitiesById.get(invocation.getArguments()[0]));
+    }
+
+    /**
+     * Makes every search on given data definition return entities from supplier, regardless of restrictions.
+     */
+    public static void stubFind(final DataDefinition dataDefinition, final Supplier<List<Entity>> entities) {
+        SearchResult searchResult = mock(SearchResult.class);
+        when(searchResult.getEntities()).thenAnswer(invocation -> entities.get());
+        when(searchResult.getTotalNumberOfEntities()).thenAnswer(invocation -> entities.get().size());
+
+        SearchCriteriaBuilder searchCriteriaBuilder = mock(SearchCriteriaBuilder.class, new Answer<Object>() {
+
+            @Override
+            public Object answer(final InvocationOnMock invocation) {
+                Class<?> returnType = invocation.getMethod().getReturnType();
+
+                if (SearchResult.class.equals(returnType)) {
+                    return searchResult;
+                } else if (SearchCriteriaBuilder.class.equals(returnType)) {
+                    return invocation.getMock();
+                } else if (Entity.class.equals(returnType)) {
+                    List<Entity> found = entities.get();
+
+                    return found.isEmpty() ? null : found.get(0);
+                }
+
+                return null;
+            }
+
+        });
+
+        when(dataDefinition.find()).thenReturn(searchCriteriaBuilder);
+    }
+
+    public static NumberService numberService() {
+        NumberService numberService = mock(NumberService.class);
+
+        when(numberService.getMathContext()).thenReturn(MathContext.DECIMAL64);
+        when(numberService.setScale(any(BigDecimal.class))).thenAnswer(
+                invocation -> ((BigDecimal) invocation.getArguments()[0]).setScale(5, RoundingMode.HALF_EVEN));
+
+        return numberService;
+    }
+
+    /**
+     * Sets autowired field declared in given class, also when subclass declares field with the same name.
+     */
+    public static void inject(final Object target, final Class<?> declaringClass, final String fieldName, final Object value) {
+        Field field = ReflectionUtils.findField(declaringClass, fieldName);
+
+        ReflectionUtils.makeAccessible(field);
+        ReflectionUtils.setField(field, target, value);
+    }
+
+    public static void inject(final Object target, final String fieldName, final Object value) {
+        inject(target, target.getClass(), fieldName, value);
+    }
+
+    private static Map<String, Object> toMap(final Object... fieldsAndValues) {
+        Map<String, Object> fields = Maps.newHashMap();
+
+        for (int i = 0; i < fieldsAndValues.length; i += 2) {
+            fields.put((String) fieldsAndValues[i], fieldsAndValues[i + 1]);
+        }
+
+        return fields;
+    }
+
+}
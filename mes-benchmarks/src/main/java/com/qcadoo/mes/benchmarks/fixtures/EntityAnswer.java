@@ -0,0 +1,133 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.benchmarks.fixtures;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.EntityList;
+
+/**
+ * In-memory state of fixture entity. Field values are kept in map, so services can read and modify them like detached
+ * entities, without database.
+ */
+final class EntityAnswer implements Answer<Object> {
+
+    private final DataDefinition dataDefinition;
+
+    private Long id;
+
+    private final Map<String, Object> fields;
+
+    private final List<String> errors = Lists.newArrayList();
+
+    private final Map<List<Entity>, EntityList> entityLists = new IdentityHashMap<>();
+
+    EntityAnswer(final DataDefinition dataDefinition, final Long id, final Map<String, Object> fields) {
+        this.dataDefinition = dataDefinition;
+        this.id = id;
+        this.fields = Maps.newHashMap(fields);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Object answer(final InvocationOnMock invocation) throws Throwable {
+        Object[] arguments = invocation.getArguments();
+        String name = invocation.getMethod().getName();
+
+        switch (name) {
+            case "getId":
+                return id;
+            case "setId":
+                id = (Long) arguments[0];
+                return null;
+            case "getDataDefinition":
+                return dataDefinition;
+            case "getFields":
+                return fields;
+            case "setField":
+                fields.put((String) arguments[0], arguments[1]);
+                return null;
+            case "getField":
+            case "getBelongsToField":
+            case "getTreeField":
+            case "getStringField":
+            case "getDateField":
+            case "getIntegerField":
+                return fields.get(arguments[0]);
+            case "getDecimalField":
+                return toDecimal(fields.get(arguments[0]));
+            case "getBooleanField":
+                return Boolean.TRUE.equals(fields.get(arguments[0]));
+            case "getHasManyField":
+                return getEntityList((List<Entity>) fields.get(arguments[0]));
+            case "getManyToManyField":
+                return Lists.newArrayList((Collection<Entity>) fields.get(arguments[0]));
+            case "getChildren":
+                return fields.get(Entities.CHILDREN);
+            case "isValid":
+                return errors.isEmpty();
+            case "addError":
+                errors.add((String) arguments[1]);
+                return null;
+            case "addGlobalError":
+                errors.add((String) arguments[0]);
+                return null;
+            case "copy":
+                return Entities.entity(dataDefinition, id, fields);
+            case "toString":
+                return dataDefinition.getName() + "#" + id + fields.keySet();
+            default:
+                return Mockito.RETURNS_DEFAULTS.answer(invocation);
+        }
+    }
+
+    private EntityList getEntityList(final List<Entity> entities) {
+        if (entities == null) {
+            return getEntityList(Lists.newArrayList());
+        }
+
+        return entityLists.computeIfAbsent(entities, list -> Mockito.mock(EntityList.class, new ListAnswer(list, null)));
+    }
+
+    private BigDecimal toDecimal(final Object value) {
+        if ((value == null) || (value instanceof BigDecimal)) {
+            return (BigDecimal) value;
+        }
+
+        return new BigDecimal(value.toString());
+    }
+
+}
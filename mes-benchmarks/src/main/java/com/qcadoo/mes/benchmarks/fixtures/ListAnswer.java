@@ -0,0 +1,69 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.benchmarks.fixtures;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.List;
+
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Backs entity list or tree fixture with plain list. Collection methods are delegated to list, tree root is the first node.
+ */
+final class ListAnswer implements Answer<Object> {
+
+    private final List<Entity> entities;
+
+    private final Entity root;
+
+    ListAnswer(final List<Entity> entities, final Entity root) {
+        this.entities = entities;
+        this.root = root;
+    }
+
+    @Override
+    public Object answer(final InvocationOnMock invocation) throws Throwable {
+        Method method = invocation.getMethod();
+
+        if ("getRoot".equals(method.getName())) {
+            return root;
+        }
+
+        if (method.getDeclaringClass().isAssignableFrom(List.class)) {
+            try {
+                return method.invoke(entities, invocation.getArguments());
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        return Mockito.RETURNS_DEFAULTS.answer(invocation);
+    }
+
+}
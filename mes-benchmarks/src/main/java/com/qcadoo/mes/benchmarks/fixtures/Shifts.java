@@ -0,0 +1,132 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.benchmarks.fixtures;
+
+import static com.qcadoo.mes.benchmarks.fixtures.Entities.dataDefinition;
+import static com.qcadoo.mes.benchmarks.fixtures.Entities.entity;
+
+import java.util.List;
+
+import org.joda.time.DateTime;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.basic.constants.BasicConstants;
+import com.qcadoo.mes.basic.constants.ShiftFields;
+import com.qcadoo.mes.basic.constants.ShiftTimetableExceptionFields;
+import com.qcadoo.mes.basic.constants.TimetableExceptionType;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Plant calendars - three-shift calendar with shifts working from monday to friday (first shift also on saturday), with a free
+ * day and an overtime every two weeks, and sparse calendar with one shift working once a week.
+ */
+public final class Shifts {
+
+    private static final String[][] L_SHIFT_HOURS = { { "06:00-14:00" }, { "14:00-22:00" }, { "22:00-23:59", "00:00-06:00" } };
+
+    private static final String[] L_WORKING_FIELDS = { ShiftFields.MONDAY_WORKING, ShiftFields.TUESDAY_WORKING,
+            ShiftFields.WENSDAY_WORKING, ShiftFields.THURSDAY_WORKING, ShiftFields.FRIDAY_WORKING, ShiftFields.SATURDAY_WORKING,
+            ShiftFields.SUNDAY_WORKING };
+
+    private static final String[] L_HOURS_FIELDS = { ShiftFields.MONDAY_HOURS, ShiftFields.TUESDAY_HOURS,
+            ShiftFields.WENSDAY_HOURS, ShiftFields.THURSDAY_HOURS, ShiftFields.FRIDAY_HOURS, ShiftFields.SATURDAY_HOURS,
+            ShiftFields.SUNDAY_HOURS };
+
+    private Shifts() {
+    }
+
+    /**
+     * Creates shifts with timetable exceptions from given day to given day.
+     *
+     * @param numberOfShifts
+     *            number of shifts, hours of shifts repeat every three shifts
+     * @param from
+     *            first day of exceptions
+     * @param days
+     *            number of days with exceptions
+     * @return shifts
+     */
+    public static List<Entity> createShifts(final int numberOfShifts, final DateTime from, final int days) {
+        DataDefinition shiftDD = dataDefinition(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_SHIFT);
+        DataDefinition exceptionDD = dataDefinition(BasicConstants.PLUGIN_IDENTIFIER,
+                BasicConstants.SHIFT_TIMETABLE_EXCEPTION);
+
+        List<Entity> shifts = Lists.newArrayList();
+
+        for (int i = 0; i < numberOfShifts; i++) {
+            Entity shift = entity(shiftDD, (long) (i + 1));
+            String hours = String.join(",", L_SHIFT_HOURS[i % L_SHIFT_HOURS.length]);
+
+            for (int day = 0; day < 7; day++) {
+                boolean working = (day < 5) || ((day == 5) && (i % L_SHIFT_HOURS.length == 0));
+
+                shift.setField(L_WORKING_FIELDS[day], working);
+                shift.setField(L_HOURS_FIELDS[day], working ? hours : "");
+            }
+
+            List<Entity> exceptions = Lists.newArrayList();
+
+            for (int day = 0; day < days; day += 14) {
+                DateTime freeDay = from.plusDays(day + 2).withTimeAtStartOfDay();
+                DateTime overtime = from.plusDays(day + 6).withTimeAtStartOfDay().withHourOfDay(8);
+
+                exceptions.add(entity(exceptionDD, (long) exceptions.size() + 1, ShiftTimetableExceptionFields.TYPE,
+                        TimetableExceptionType.FREE_TIME.getStringValue(), ShiftTimetableExceptionFields.FROM_DATE,
+                        freeDay.toDate(), ShiftTimetableExceptionFields.TO_DATE, freeDay.plusDays(1).toDate(),
+                        ShiftTimetableExceptionFields.RELATES_TO_PREV_DAY, false));
+                exceptions.add(entity(exceptionDD, (long) exceptions.size() + 1, ShiftTimetableExceptionFields.TYPE,
+                        TimetableExceptionType.WORK_TIME.getStringValue(), ShiftTimetableExceptionFields.FROM_DATE,
+                        overtime.toDate(), ShiftTimetableExceptionFields.TO_DATE, overtime.plusHours(4).toDate(),
+                        ShiftTimetableExceptionFields.RELATES_TO_PREV_DAY, false));
+            }
+
+            shift.setField(ShiftFields.TIMETABLE_EXCEPTIONS, exceptions);
+            shifts.add(shift);
+        }
+
+        return shifts;
+    }
+
+    /**
+     * Creates sparse calendar - one shift working only on monday from 06:00 to 14:00, without timetable exceptions.
+     *
+     * @return shifts
+     */
+    public static List<Entity> createWeeklyShift() {
+        Entity shift = entity(dataDefinition(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_SHIFT), 1L);
+
+        for (int day = 0; day < 7; day++) {
+            boolean working = (day == 0);
+
+            shift.setField(L_WORKING_FIELDS[day], working);
+            shift.setField(L_HOURS_FIELDS[day], working ? L_SHIFT_HOURS[0][0] : "");
+        }
+
+        shift.setField(ShiftFields.TIMETABLE_EXCEPTIONS, Lists.newArrayList());
+
+        return Lists.newArrayList(shift);
+    }
+
+}
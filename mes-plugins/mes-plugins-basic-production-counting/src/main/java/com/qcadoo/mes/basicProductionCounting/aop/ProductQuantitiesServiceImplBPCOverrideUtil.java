@@ -23,6 +23,7 @@
  */
 package com.qcadoo.mes.basicProductionCounting.aop;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.qcadoo.mes.basicProductionCounting.constants.BasicProductionCountingConstants;
 import com.qcadoo.mes.basicProductionCounting.constants.ProductionCountingOperationRunFields;
@@ -35,6 +36,7 @@ import com.qcadoo.mes.technologies.dto.OperationProductComponentEntityType;
 import com.qcadoo.mes.technologies.dto.OperationProductComponentHolder;
 import com.qcadoo.mes.technologies.dto.OperationProductComponentWithQuantityContainer;
 import com.qcadoo.mes.technologies.dto.ProductMaterialType;
+import com.qcadoo.mes.technologies.dto.ProductQuantitiesHolder;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.search.SearchRestrictions;
@@ -42,6 +44,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -60,34 +63,51 @@ public class ProductQuantitiesServiceImplBPCOverrideUtil {
             final boolean onTheFly) {
         Map<Long, OperationProductComponentWithQuantityContainer> productComponentWithQuantitiesForOrders = Maps.newHashMap();
 
-        for (Entity order : orders) {
-            BigDecimal plannedQuantity = order.getDecimalField(OrderFields.PLANNED_QUANTITY);
+        List<Entity> ordersToExplode = Lists.newArrayList();
 
+        for (Entity order : orders) {
             Entity technology = order.getBelongsToField(OrderFields.TECHNOLOGY);
 
             if (technology == null) {
                 throw new IllegalStateException("Order doesn't contain technology.");
             }
 
-            String state = order.getStringField(OrderFields.STATE);
+            if (!hasProductionCountingQuantities(order, onTheFly)) {
+                ordersToExplode.add(order);
+            }
+        }
+
+        Iterator<ProductQuantitiesHolder> explodedProductQuantities = productQuantitiesServiceImpl.getProductQuantitiesForOrders(
+                ordersToExplode).iterator();
 
-            if (!onTheFly
-                    && (OrderStateStringValues.ACCEPTED.equals(state) || OrderStateStringValues.IN_PROGRESS.equals(state) || OrderStateStringValues.INTERRUPTED
-                            .equals(state))) {
+        for (Entity order : orders) {
+            if (hasProductionCountingQuantities(order, onTheFly)) {
                 productComponentWithQuantitiesForOrders.put(order.getId(), getProductComponentWithQuantities(order));
 
                 fillOperationRuns(operationRuns, order);
                 fillNonComponents(nonComponents, order);
             } else {
-                productComponentWithQuantitiesForOrders.put(order.getId(),
-                        productQuantitiesServiceImpl.getProductComponentWithQuantitiesForTechnology(technology, plannedQuantity,
-                                operationRuns, nonComponents));
+                ProductQuantitiesHolder productQuantities = explodedProductQuantities.next();
+
+                productComponentWithQuantitiesForOrders.put(order.getId(), new OperationProductComponentWithQuantityContainer(
+                        productQuantities.getProductQuantities()));
+
+                operationRuns.putAll(productQuantities.getOperationRuns());
+                nonComponents.addAll(productQuantities.getNonComponents());
             }
         }
 
         return productQuantitiesServiceImpl.groupOperationProductComponentWithQuantities(productComponentWithQuantitiesForOrders);
     }
 
+    private boolean hasProductionCountingQuantities(final Entity order, final boolean onTheFly) {
+        String state = order.getStringField(OrderFields.STATE);
+
+        return !onTheFly
+                && (OrderStateStringValues.ACCEPTED.equals(state) || OrderStateStringValues.IN_PROGRESS.equals(state) || OrderStateStringValues.INTERRUPTED
+                        .equals(state));
+    }
+
     private OperationProductComponentWithQuantityContainer getProductComponentWithQuantities(final Entity order) {
         OperationProductComponentWithQuantityContainer productComponentWithQuantities = new OperationProductComponentWithQuantityContainer();
 
@@ -27,6 +27,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.qcadoo.mes.basic.schema.SchemaMigrationService;
 import com.qcadoo.plugin.api.Module;
 
 @Component
@@ -56,6 +57,19 @@ public class BasicOnStartupService extends Module {
     @Autowired
     private ExchangeRatesUpdateService exchangeRatesUpdateService;
 
+    @Autowired
+    private SchemaMigrationService schemaMigrationService;
+
+    @Override
+    public void enableOnStartup() {
+        schemaMigrationService.migrate();
+    }
+
+    @Override
+    public void enable() {
+        schemaMigrationService.migrate();
+    }
+
     @Override
     @Transactional
     public void multiTenantEnable() {
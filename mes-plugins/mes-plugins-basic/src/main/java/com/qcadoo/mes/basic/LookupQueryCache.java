@@ -0,0 +1,156 @@
+package com.qcadoo.mes.basic;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Short-lived cache of grid record counts and page bookmarks (sort value and id of last row of served page), grouped in regions.
+ * Region should be invalidated whenever records it covers are written, e.g. positions of one document. Invalidation inside a
+ * transaction is repeated after completion, so counts re-cached by concurrent readers from not yet committed state are dropped.
+ * Readers take {@link #getVersion(String)} before querying and pass it to puts, which are discarded if region was invalidated
+ * in the meantime.
+ */
+@Service
+public class LookupQueryCache {
+
+    private static final long L_TIME_TO_LIVE = 60_000L;
+
+    private static final int L_MAX_REGIONS = 1000;
+
+    private static final int L_VERSION_STRIPES = 1024;
+
+    private final Map<String, Region> regions = new ConcurrentHashMap<>();
+
+    private final AtomicLongArray versions = new AtomicLongArray(L_VERSION_STRIPES);
+
+    public long getVersion(final String region) {
+        return versions.get(getStripe(region));
+    }
+
+    public Integer getCount(final String region, final String signature) {
+        Region cachedRegion = getRegion(region);
+
+        return (cachedRegion == null) ? null : cachedRegion.counts.get(signature);
+    }
+
+    public void putCount(final String region, final long version, final String signature, final int count) {
+        putIfCurrent(region, version, cachedRegion -> cachedRegion.counts.put(signature, count));
+    }
+
+    public PageBookmark getBookmark(final String region, final String signature, final int page) {
+        Region cachedRegion = getRegion(region);
+
+        return (cachedRegion == null) ? null : cachedRegion.bookmarks.get(signature + "#" + page);
+    }
+
+    public void putBookmark(final String region, final long version, final String signature, final int page,
+            final PageBookmark bookmark) {
+        putIfCurrent(region, version, cachedRegion -> cachedRegion.bookmarks.put(signature + "#" + page, bookmark));
+    }
+
+    public void invalidate(final String region) {
+        evict(region);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                @Override
+                public void afterCompletion(final int status) {
+                    evict(region);
+                }
+
+            });
+        }
+    }
+
+    private void evict(final String region) {
+        versions.incrementAndGet(getStripe(region));
+        regions.remove(region);
+    }
+
+    private void putIfCurrent(final String region, final long version, final Consumer<Region> put) {
+        if (getVersion(region) != version) {
+            return;
+        }
+
+        Region cachedRegion = getOrCreateRegion(region);
+
+        put.accept(cachedRegion);
+
+        if (getVersion(region) != version) {
+            regions.remove(region, cachedRegion);
+        }
+    }
+
+    private int getStripe(final String region) {
+        return (region.hashCode() & Integer.MAX_VALUE) % L_VERSION_STRIPES;
+    }
+
+    private Region getRegion(final String region) {
+        Region cachedRegion = regions.get(region);
+
+        if ((cachedRegion != null) && cachedRegion.isExpired()) {
+            regions.remove(region, cachedRegion);
+
+            return null;
+        }
+
+        return cachedRegion;
+    }
+
+    private Region getOrCreateRegion(final String region) {
+        Region cachedRegion = getRegion(region);
+
+        if (cachedRegion == null) {
+            if (regions.size() >= L_MAX_REGIONS) {
+                regions.clear();
+            }
+
+            cachedRegion = regions.computeIfAbsent(region, key -> new Region());
+        }
+
+        return cachedRegion;
+    }
+
+    public static final class PageBookmark {
+
+        private final Object sortValue;
+
+        private final Long id;
+
+        public PageBookmark(final Object sortValue, final Long id) {
+            this.sortValue = sortValue;
+            this.id = id;
+        }
+
+        public Object getSortValue() {
+            return sortValue;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+    }
+
+    private static final class Region {
+
+        private final long createTime = System.currentTimeMillis();
+
+        private final Map<String, Integer> counts = new ConcurrentHashMap<>();
+
+        private final Map<String, PageBookmark> bookmarks = new ConcurrentHashMap<>();
+
+        private boolean isExpired() {
+            return System.currentTimeMillis() - createTime > L_TIME_TO_LIVE;
+        }
+
+    }
+
+}
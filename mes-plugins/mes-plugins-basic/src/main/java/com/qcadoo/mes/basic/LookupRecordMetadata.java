@@ -0,0 +1,116 @@
+package com.qcadoo.mes.basic;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import org.springframework.jdbc.core.RowMapper;
+
+/**
+ * Reflection data of lookup record class (searchable fields, search types and row mapper), computed once per class and reused by
+ * every grid request.
+ */
+final class LookupRecordMetadata {
+
+    private static final Map<Class<?>, LookupRecordMetadata> METADATA = new ConcurrentHashMap<>();
+
+    private final Map<String, Field> fieldsByLowerCaseName;
+
+    private final Map<String, SearchAttribute.SEARCH_TYPE> searchTypes;
+
+    private final RowMapper<?> rowMapper;
+
+    private LookupRecordMetadata(final Class<?> recordClass) {
+        Map<String, Field> fields = new LinkedHashMap<>();
+        Map<String, SearchAttribute.SEARCH_TYPE> types = new HashMap<>();
+
+        for (Field field : recordClass.getDeclaredFields()) {
+            field.setAccessible(true);
+
+            fields.put(field.getName().toLowerCase(), field);
+            types.put(field.getName(), field.isAnnotationPresent(SearchAttribute.class) ? field.getAnnotation(SearchAttribute.class)
+                    .searchType() : SearchAttribute.SEARCH_TYPE.LIKE);
+        }
+
+        this.fieldsByLowerCaseName = Collections.unmodifiableMap(fields);
+        this.searchTypes = Collections.unmodifiableMap(types);
+        this.rowMapper = new BeanPropertyRowMapper<>(recordClass);
+    }
+
+    static LookupRecordMetadata of(final Class<?> recordClass) {
+        return METADATA.computeIfAbsent(recordClass, LookupRecordMetadata::new);
+    }
+
+    boolean hasField(final String lowerCaseName) {
+        return fieldsByLowerCaseName.containsKey(lowerCaseName);
+    }
+
+    @SuppressWarnings("unchecked")
+    <R> RowMapper<R> getRowMapper() {
+        return (RowMapper<R>) rowMapper;
+    }
+
+    Object getValue(final Object record, final String lowerCaseName) {
+        return getValue(record, fieldsByLowerCaseName.get(lowerCaseName));
+    }
+
+    List<String> getWhereItems(final Object record) {
+        List<String> items = new ArrayList<>();
+
+        if (record != null) {
+            for (Field field : fieldsByLowerCaseName.values()) {
+                Object value = getValue(record, field);
+
+                if (value instanceof Number || value instanceof Date || value instanceof Boolean) {
+                    items.add(String.format("%s = :%s", field.getName(), field.getName()));
+                } else if (value instanceof String) {
+                    if (searchTypes.get(field.getName()) == SearchAttribute.SEARCH_TYPE.EXACT_MATCH) {
+                        items.add(String.format("lower(%s) = lower(:%s)", field.getName(), field.getName()));
+                    } else {
+                        items.add(String.format("lower(%s) like lower(:%s)", field.getName(), field.getName()));
+                    }
+                }
+            }
+        }
+
+        return items;
+    }
+
+    Map<String, Object> getParameters(final Object record) {
+        Map<String, Object> parameters = new HashMap<>();
+
+        if (record != null) {
+            for (Field field : fieldsByLowerCaseName.values()) {
+                Object value = getValue(record, field);
+
+                if (value instanceof String) {
+                    if (searchTypes.get(field.getName()) == SearchAttribute.SEARCH_TYPE.EXACT_MATCH) {
+                        parameters.put(field.getName(), value);
+                    } else {
+                        parameters.put(field.getName(), "%" + value + "%");
+                    }
+                } else if (value != null) {
+                    parameters.put(field.getName(), value);
+                }
+            }
+        }
+
+        return parameters;
+    }
+
+    private Object getValue(final Object record, final Field field) {
+        try {
+            return field.get(record);
+        } catch (IllegalArgumentException | IllegalAccessException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+}
@@ -1,126 +1,146 @@
 package com.qcadoo.mes.basic;
 
-import java.lang.reflect.Field;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
 
 import com.google.common.base.Preconditions;
+import com.qcadoo.mes.basic.LookupQueryCache.PageBookmark;
 
 @Service
 public class LookupUtils {
 
+    private static final String L_ID = "id";
+
+    private static final String L_SEEK_SORT_VALUE = "seekSortValue";
+
+    private static final String L_SEEK_ID = "seekId";
+
     @Autowired
     private NamedParameterJdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private LookupQueryCache lookupQueryCache;
+
     public <R> GridResponse<R> getGridResponse(String query, String sidx, String sord, Integer page, int perPage, R recordExample) {
         return getGridResponse(query, sidx, sord, page, perPage, recordExample, new HashMap<>());
     }
 
     public <R> GridResponse<R> getGridResponse(String query, String sidx, String sord, Integer page, int perPage, R recordExample, Map<String, Object> parameters) {
+        return getGridResponse(query, sidx, sord, page, perPage, recordExample, parameters, null);
+    }
+
+    /**
+     * Returns page of records for grid.
+     *
+     * When cache region is given, record count is cached until region is invalidated (see {@link LookupQueryCache}) and pages
+     * following an already served page are read with keyset (seek) condition on sort column and id instead of OFFSET.
+     *
+     * @param query
+     *            query with two placeholders: selected columns and (unused, kept for compatibility) inner order by clause
+     * @param cacheRegion
+     *            cache region of records, or null when counts and bookmarks shouldn't be cached
+     */
+    public <R> GridResponse<R> getGridResponse(String query, String sidx, String sord, Integer page, int perPage, R recordExample, Map<String, Object> parameters, String cacheRegion) {
         sidx = sidx != null ? sidx.toLowerCase() : "";
         sord = sord != null ? sord.toLowerCase() : "";
 
+        LookupRecordMetadata metadata = LookupRecordMetadata.of(recordExample.getClass());
+
         Preconditions.checkState(Arrays.asList("asc", "desc", "").contains(sord));
-        Preconditions.checkState(Arrays.asList(recordExample.getClass().getDeclaredFields()).stream().map(Field::getName).map(String::toLowerCase).collect(Collectors.toList()).contains(sidx));
+        Preconditions.checkState(metadata.hasField(sidx));
 
-        query += addQueryWhereForObject(recordExample);
+        List<String> whereItems = metadata.getWhereItems(recordExample);
 
-        parameters.putAll(getParametersForObject(recordExample));
+        parameters.putAll(metadata.getParameters(recordExample));
 
-        String queryCount = String.format(query, "COUNT(*)", "");
-        String queryRecords = String.format(query, "*", "ORDER BY " + sidx + " " + sord) + String.format(" LIMIT %d OFFSET %d", perPage, perPage * (page - 1));
+        String where = whereItems.isEmpty() ? "" : " WHERE " + whereItems.stream().collect(Collectors.joining(" AND "));
+        String signature = String.format(query, "", "") + where + new TreeMap<>(parameters);
 
-        Integer countRecords = jdbcTemplate.queryForObject(queryCount, parameters, Long.class).intValue();
-        List<R> records = jdbcTemplate.query(queryRecords, parameters, new BeanPropertyRowMapper(recordExample.getClass()));
+        String queryCount = String.format(query, "COUNT(*)", "") + where;
 
-        return new GridResponse<>(page, Double.valueOf(Math.ceil((1.0 * countRecords) / perPage)).intValue(), countRecords, records);
-    }
+        long cacheVersion = (cacheRegion == null) ? 0L : lookupQueryCache.getVersion(cacheRegion);
+        Integer countRecords = (cacheRegion == null) ? null : lookupQueryCache.getCount(cacheRegion, signature);
 
-    private String addQueryWhereForObject(Object object) {
-        List<String> items = new ArrayList<>();
+        if (countRecords == null) {
+            countRecords = jdbcTemplate.queryForObject(queryCount, parameters, Long.class).intValue();
 
-        if (object != null) {
-            for (Field field : object.getClass().getDeclaredFields()) {
-                try {
-                    field.setAccessible(true);
-                    Object value = field.get(object);
-                    if (value != null) {
-                        if (value instanceof Number) {
-                            items.add(String.format("%s = :%s", field.getName(), field.getName()));
+            if (cacheRegion != null) {
+                lookupQueryCache.putCount(cacheRegion, cacheVersion, signature, countRecords);
+            }
+        }
 
-                        } else if (value instanceof Date) {
-                            items.add(String.format("%s = :%s", field.getName(), field.getName()));
+        boolean descending = "desc".equals(sord);
+        boolean keyset = (cacheRegion != null) && metadata.hasField(L_ID);
 
-                        } else if (value instanceof Boolean) {
-                            items.add(String.format("%s = :%s", field.getName(), field.getName()));
+        String orderBy = " ORDER BY " + sidx + " " + sord;
 
-                        } else if (value instanceof String) {
-                            SearchAttribute.SEARCH_TYPE searchType = field.isAnnotationPresent(SearchAttribute.class) ? field.getAnnotation(SearchAttribute.class).searchType() : SearchAttribute.SEARCH_TYPE.LIKE;
+        if (keyset && !L_ID.equals(sidx)) {
+            orderBy += ", id " + sord;
+        }
 
-                            if (searchType == SearchAttribute.SEARCH_TYPE.EXACT_MATCH) {
-                                items.add(String.format("lower(%s) = lower(:%s)", field.getName(), field.getName()));
+        String pageSignature = signature + sidx + sord + perPage;
+        PageBookmark previousPage = keyset ? lookupQueryCache.getBookmark(cacheRegion, pageSignature, page - 1) : null;
 
-                            } else {
-                                items.add(String.format("lower(%s) like lower(:%s)", field.getName(), field.getName()));
-                            }
-                        }
-                    }
+        String queryRecords;
 
-                } catch (IllegalArgumentException | IllegalAccessException ex) {
-                    throw new RuntimeException(ex);
-                }
-            }
+        if (previousPage == null) {
+            queryRecords = String.format(query, "*", "") + where + orderBy
+                    + String.format(" LIMIT %d OFFSET %d", perPage, perPage * (page - 1));
+        } else {
+            String seekCondition = getSeekCondition(sidx, descending, previousPage);
+
+            parameters.put(L_SEEK_SORT_VALUE, previousPage.getSortValue());
+            parameters.put(L_SEEK_ID, previousPage.getId());
+
+            queryRecords = String.format(query, "*", "") + (where.isEmpty() ? " WHERE " : where + " AND ") + seekCondition
+                    + orderBy + String.format(" LIMIT %d", perPage);
         }
 
-        String where = "";
+        List<R> records = jdbcTemplate.query(queryRecords, parameters, metadata.<R> getRowMapper());
 
-        if (!items.isEmpty()) {
-            where = " WHERE " + items.stream().collect(Collectors.joining(" AND "));
+        if (keyset && (records.size() == perPage)) {
+            R lastRecord = records.get(records.size() - 1);
+            Object lastId = metadata.getValue(lastRecord, L_ID);
+
+            if (lastId instanceof Number) {
+                lookupQueryCache.putBookmark(cacheRegion, cacheVersion, pageSignature, page, new PageBookmark(metadata.getValue(lastRecord,
+                        sidx), ((Number) lastId).longValue()));
+            }
         }
 
-        return where;
+        return new GridResponse<>(page, Double.valueOf(Math.ceil((1.0 * countRecords) / perPage)).intValue(), countRecords, records);
     }
 
-    private Map<String, Object> getParametersForObject(Object object) {
-        Map<String, Object> parameters = new HashMap<>();
-
-        if (object != null) {
-            for (Field field : object.getClass().getDeclaredFields()) {
-                try {
-                    field.setAccessible(true);
-                    Object value = field.get(object);
-                    if (value != null) {
-                        if (value instanceof String) {
-                            SearchAttribute.SEARCH_TYPE searchType = field.isAnnotationPresent(SearchAttribute.class) ? field.getAnnotation(SearchAttribute.class).searchType() : SearchAttribute.SEARCH_TYPE.LIKE;
-
-                            if (searchType == SearchAttribute.SEARCH_TYPE.EXACT_MATCH) {
-                                parameters.put(field.getName(), value);
-
-                            } else {
-                                parameters.put(field.getName(), "%" + value + "%");
-                            }
-
-                        } else {
-                            parameters.put(field.getName(), value);
-                        }
-                    }
-
-                } catch (IllegalArgumentException | IllegalAccessException ex) {
-                    throw new RuntimeException(ex);
-                }
-            }
+    String getSeekCondition(final String sidx, final boolean descending, final PageBookmark previousPage) {
+        String idCondition = descending ? "id < :seekId" : "id > :seekId";
+
+        if (L_ID.equals(sidx)) {
+            return idCondition;
         }
 
-        return parameters;
+        // NULLs are sorted last in ascending and first in descending order
+        if (previousPage.getSortValue() == null) {
+            if (descending) {
+                return String.format("((%s IS NULL AND %s) OR %s IS NOT NULL)", sidx, idCondition, sidx);
+            } else {
+                return String.format("(%s IS NULL AND %s)", sidx, idCondition);
+            }
+        } else {
+            if (descending) {
+                return String.format("(%s < :seekSortValue OR (%s = :seekSortValue AND %s))", sidx, sidx, idCondition);
+            } else {
+                return String.format("(%s > :seekSortValue OR (%s = :seekSortValue AND %s) OR %s IS NULL)", sidx, sidx,
+                        idCondition, sidx);
+            }
+        }
     }
+
 }
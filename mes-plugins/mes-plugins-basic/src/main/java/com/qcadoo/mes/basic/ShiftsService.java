@@ -32,6 +32,7 @@ import org.joda.time.LocalTime;
 
 import com.qcadoo.mes.basic.ShiftsServiceImpl.ShiftHour;
 import com.qcadoo.mes.basic.shift.Shift;
+import com.qcadoo.mes.basic.shift.WorkingCalendar;
 import com.qcadoo.model.api.Entity;
 
 //FIXME maku: replace bounded time/date ranges with JodaTime's intervals.
@@ -46,6 +47,11 @@ public interface ShiftsService {
 
     Date findDateToForOrder(final Date dateFrom, final long seconds);
 
+    /**
+     * Returns calendar of working time of all shifts, compiled once and reused until any shift or timetable exception changes.
+     */
+    WorkingCalendar getWorkingCalendar();
+
     List<ShiftHour> getHoursForShift(final Entity shift, final Date dateFrom, final Date dateTo);
 
     Entity getShiftFromDateWithTime(final Date date);
@@ -0,0 +1,58 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.constants;
+
+public final class AsyncJobFields {
+
+    private AsyncJobFields() {
+
+    }
+
+    public static final String TYPE = "type";
+
+    public static final String ENTITY_ID = "entityId";
+
+    public static final String ENTITY_KEY = "entityKey";
+
+    public static final String IDEMPOTENCY_KEY = "idempotencyKey";
+
+    public static final String STATUS = "status";
+
+    public static final String ATTEMPTS = "attempts";
+
+    public static final String MAX_ATTEMPTS = "maxAttempts";
+
+    public static final String CREATE_DATE = "createDate";
+
+    public static final String START_DATE = "startDate";
+
+    public static final String FINISH_DATE = "finishDate";
+
+    public static final String NEXT_ATTEMPT_DATE = "nextAttemptDate";
+
+    public static final String CREATE_USER = "createUser";
+
+    public static final String MESSAGES = "messages";
+
+}
@@ -0,0 +1,50 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.constants;
+
+public enum AsyncJobStatus {
+
+    PENDING("01pending"), RUNNING("02running"), SUCCESSFUL("03successful"), FAILED("04failed");
+
+    private final String stringValue;
+
+    private AsyncJobStatus(final String stringValue) {
+        this.stringValue = stringValue;
+    }
+
+    public String getStringValue() {
+        return stringValue;
+    }
+
+    public static AsyncJobStatus parseString(final String stringValue) {
+        for (AsyncJobStatus status : values()) {
+            if (status.getStringValue().equals(stringValue)) {
+                return status;
+            }
+        }
+
+        throw new IllegalArgumentException("Couldn't parse AsyncJobStatus from string '" + stringValue + "'");
+    }
+
+}
@@ -87,6 +87,8 @@ public final class BasicConstants {
     
     public static final String MODEL_LOG = "log";
 
+    public static final String MODEL_ASYNC_JOB = "asyncJob";
+
     // VIEW
 
     public static final String VIEW_MACHINE_DETAILS = "machineDetails";
@@ -1,6 +1,5 @@
 package com.qcadoo.mes.basic.controllers.dataProvider;
 
-import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
 import com.qcadoo.mes.basic.controllers.dataProvider.dto.AbstractDTO;
 import com.qcadoo.mes.basic.controllers.dataProvider.dto.AdditionalCodeDTO;
@@ -32,25 +31,11 @@ public class DataProvider {
 
     private static final int MAX_RESULTS = 20;
 
-    private String prepareProductsQuery() {
-        return "SELECT product.id as id, product.number as code, product.number as number, product.name as name "
-                + "FROM basic_product product WHERE product.active = true and product.number ilike :query ;";
-    }
-
     private String prepareProductsQueryWithLimit(int limit) {
         return "SELECT product.id as id, product.number as code, product.number as number, product.name as name "
                 + "FROM basic_product product WHERE product.active = true and product.number ilike :query LIMIT " + limit + ";";
     }
 
-    private String prepareAdditionalCodeQuery(String productnumber) {
-        String productNumberCondition = Strings.isNullOrEmpty(productnumber) ? "" : "and product.number = '" + productnumber + "'";
-
-        return "SELECT additionalcode.id as id, additionalcode.code as code, product.number as productnumber "
-                + "FROM basic_additionalcode additionalcode "
-                + "JOIN basic_product product ON (additionalcode.product_id = product.id " + productNumberCondition + ")"
-                + "WHERE additionalcode.code ilike :query;";
-    }
-
     private String prepareAdditionalCodeQueryWithLimit(int limit) {
         return "SELECT additionalcode.id as id, additionalcode.code as code, product.number as productnumber "
                 + "FROM basic_additionalcode additionalcode "
@@ -58,11 +43,6 @@ public class DataProvider {
                 + "WHERE additionalcode.code ilike :query LIMIT " + limit + ";";
     }
 
-    private String preparePalletNumbersQuery() {
-        return "SELECT palletnumber.id as id, palletnumber.number as code, palletnumber.number as number "
-                + "FROM basic_palletnumber palletnumber WHERE palletnumber.active = true and palletnumber.number ilike :query;";
-    }
-
     private String preparePalletNumbersQueryWithLimit(int limit) {
         return "SELECT palletnumber.id as id, palletnumber.number as code, palletnumber.number as number "
                 + "FROM basic_palletnumber palletnumber WHERE palletnumber.active = true and palletnumber.number ilike :query LIMIT "
@@ -70,24 +50,28 @@ public class DataProvider {
     }
 
     private int countQueryResults(String preparedQuery, String query, Map<String, Object> paramMap) {
-        String countQuery = "SELECT count(*) as cnt FROM (" + preparedQuery.replace(";", "") + ") sq;";
+        String countQuery = "SELECT count(*) as cnt FROM (" + preparedQuery.replace(";", "") + " LIMIT " + (MAX_RESULTS + 1)
+                + ") sq;";
         paramMap.put("query", "%" + query + "%");
         return jdbcTemplate.queryForObject(countQuery, paramMap, Integer.class);
     }
 
     public DataResponse getProductsResponseByQuery(String query) {
-        return getDataResponse(query, prepareProductsQuery(), getProductsByQuery(query), new HashMap<String, Object>());
+        return getLimitedDataResponse(getProductsByQuery(query, MAX_RESULTS + 1));
     }
 
     public DataResponse getAdditionalCodesResponseByQuery(String query, String productnumber) {
-        return getDataResponse(query, prepareAdditionalCodeQuery(productnumber), getAdditionalCodesByQuery(query, productnumber),
-                new HashMap<String, Object>());
+        return getLimitedDataResponse(getAdditionalCodesByQuery(query, productnumber, MAX_RESULTS + 1));
     }
 
     public DataResponse getPalletNumbersResponseByQuery(String query) {
-        return getDataResponse(query, preparePalletNumbersQuery(), getPalletNumbersByQuery(query), new HashMap<String, Object>());
+        return getLimitedDataResponse(getPalletNumbersByQuery(query, MAX_RESULTS + 1));
     }
 
+    /**
+     * Number of results is counted up to MAX_RESULTS + 1 only, which is enough to tell that there are too many matches to be
+     * shown.
+     */
     public DataResponse getDataResponse(String query, String preparedQuery, List<AbstractDTO> entities,
             Map<String, Object> paramMap) {
         int numberOfResults = countQueryResults(preparedQuery, query, paramMap);
@@ -97,6 +81,13 @@ public class DataProvider {
         return new DataResponse(entities, numberOfResults);
     }
 
+    private DataResponse getLimitedDataResponse(List<AbstractDTO> entities) {
+        if (entities.size() > MAX_RESULTS) {
+            return new DataResponse(Lists.newArrayList(), entities.size());
+        }
+        return new DataResponse(entities, entities.size());
+    }
+
     public List<ProductDTO> getAllProducts(String sidx, String sord) {
         // TODO sort
         String _query = "SELECT product.id, product.number as code, product.number, product.name, product.ean, product.globaltypeofmaterial, product.category "
@@ -109,7 +100,11 @@ public class DataProvider {
     }
 
     public List<AbstractDTO> getProductsByQuery(String query) {
-        String _query = prepareProductsQueryWithLimit(MAX_RESULTS);
+        return getProductsByQuery(query, MAX_RESULTS);
+    }
+
+    private List<AbstractDTO> getProductsByQuery(String query, int limit) {
+        String _query = prepareProductsQueryWithLimit(limit);
 
         Map<String, Object> parameters = new HashMap<>();
         parameters.put("query", "%" + query + "%");
@@ -133,7 +128,11 @@ public class DataProvider {
     }
 
     public List<AbstractDTO> getAdditionalCodesByQuery(String query, String productnumber) {
-        String _query = prepareAdditionalCodeQueryWithLimit(MAX_RESULTS);
+        return getAdditionalCodesByQuery(query, productnumber, MAX_RESULTS);
+    }
+
+    private List<AbstractDTO> getAdditionalCodesByQuery(String query, String productnumber, int limit) {
+        String _query = prepareAdditionalCodeQueryWithLimit(limit);
 
         Map<String, Object> parameters = new HashMap<>();
         parameters.put("query", "%" + query + "%");
@@ -156,7 +155,11 @@ public class DataProvider {
     }
 
     public List<AbstractDTO> getPalletNumbersByQuery(String query) {
-        String _query = preparePalletNumbersQueryWithLimit(MAX_RESULTS);
+        return getPalletNumbersByQuery(query, MAX_RESULTS);
+    }
+
+    private List<AbstractDTO> getPalletNumbersByQuery(String query, int limit) {
+        String _query = preparePalletNumbersQueryWithLimit(limit);
 
         Map<String, Object> parameters = new HashMap<>();
         parameters.put("query", "%" + query + "%");
@@ -0,0 +1,88 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.jobs;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import com.google.common.collect.Maps;
+import com.qcadoo.localization.api.TranslationService;
+import com.qcadoo.mes.basic.constants.AsyncJobFields;
+import com.qcadoo.model.api.Entity;
+
+@Controller
+@RequestMapping("/rest/asyncJobs")
+public class AsyncJobController {
+
+    @Autowired
+    private AsyncJobService asyncJobService;
+
+    @Autowired
+    private TranslationService translationService;
+
+    @ResponseBody
+    @RequestMapping(method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE, value = "{id}")
+    public Map<String, Object> getStatus(@PathVariable Long id) {
+        Map<String, Object> status = Maps.newHashMap();
+        Entity job = asyncJobService.getJob(id);
+
+        status.put("exists", job != null);
+
+        if (job != null) {
+            Locale locale = LocaleContextHolder.getLocale();
+            List<String> messages = asyncJobService.getMessages(job).stream()
+                    .map(message -> translationService.translate(message.getMessage(), locale, message.getVars()))
+                    .collect(Collectors.toList());
+
+            status.put(AsyncJobFields.TYPE, job.getStringField(AsyncJobFields.TYPE));
+            status.put(AsyncJobFields.ENTITY_ID, Long.valueOf(job.getStringField(AsyncJobFields.ENTITY_ID)));
+            status.put(AsyncJobFields.STATUS, job.getStringField(AsyncJobFields.STATUS));
+            status.put(AsyncJobFields.ATTEMPTS, job.getIntegerField(AsyncJobFields.ATTEMPTS));
+            status.put(AsyncJobFields.FINISH_DATE, job.getDateField(AsyncJobFields.FINISH_DATE));
+            status.put(AsyncJobFields.MESSAGES, messages);
+        }
+
+        return status;
+    }
+
+    @ResponseBody
+    @RequestMapping(method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_VALUE, value = "{id}/retry")
+    public Map<String, Object> retry(@PathVariable Long id) {
+        asyncJobService.retry(id);
+
+        return getStatus(id);
+    }
+
+}
@@ -0,0 +1,49 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.jobs;
+
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Performs jobs of one type taken from the asynchronous job queue, see {@link AsyncJobService}. Jobs are performed as the user
+ * who submitted them, in a transaction which is rolled back when the returned entity has errors.
+ *
+ * Handlers have to be idempotent - a job which runs longer than an hour is considered stale and started again, and a failed job
+ * can be retried, see {@link AsyncJobService#retry(Long)}. A handler should check whether its work was already done (e.g. the
+ * document is accepted or created) and return without changes in that case.
+ */
+public interface AsyncJobHandler {
+
+    String getType();
+
+    /**
+     * Performs job for entity with given id. Errors added to the returned entity fail the job, exceptions make it retried.
+     *
+     * @param entityId
+     *            id of entity given when job was submitted
+     * @return processed entity
+     */
+    Entity execute(final Long entityId);
+
+}
@@ -0,0 +1,84 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.jobs;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.qcadoo.model.api.validators.ErrorMessage;
+
+final class AsyncJobMessages {
+
+    private static final String L_MESSAGE = "message";
+
+    private static final String L_VARS = "vars";
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private AsyncJobMessages() {
+
+    }
+
+    static String toJson(final List<ErrorMessage> messages) {
+        List<Map<String, Object>> values = Lists.newArrayList();
+
+        for (ErrorMessage message : messages) {
+            values.add(ImmutableMap.of(L_MESSAGE, message.getMessage(), L_VARS, Lists.newArrayList(message.getVars())));
+        }
+
+        try {
+            return OBJECT_MAPPER.writeValueAsString(values);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static List<ErrorMessage> fromJson(final String json) throws IOException {
+        if (StringUtils.isEmpty(json)) {
+            return Collections.emptyList();
+        }
+
+        List<Map<String, Object>> values = OBJECT_MAPPER.readValue(json, new TypeReference<List<Map<String, Object>>>() {
+        });
+        List<ErrorMessage> messages = Lists.newArrayList();
+
+        for (Map<String, Object> value : values) {
+            @SuppressWarnings("unchecked")
+            List<String> vars = (List<String>) value.get(L_VARS);
+
+            messages.add(new ErrorMessage((String) value.get(L_MESSAGE), vars.toArray(new String[vars.size()])));
+        }
+
+        return messages;
+    }
+
+}
@@ -0,0 +1,154 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.jobs;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.basic.constants.AsyncJobStatus;
+import com.qcadoo.model.api.Entity;
+
+@Service
+public class AsyncJobQueue {
+
+    private static final long CLAIM_LOCK_KEY = 20170501L;
+
+    private static final int ENTITY_LOCK_NAMESPACE = 20170502;
+
+    private static final String LOCK_QUERY = "SELECT 1 FROM pg_advisory_xact_lock(:lockKey)";
+
+    private static final String LOCK_ENTITY_QUERY = "SELECT 1 FROM pg_advisory_xact_lock(:namespace, hashtext(:entityKey))";
+
+    private static final String CLAIM_QUERY = "UPDATE basic_asyncjob SET status = :running, startdate = :now, "
+            + "attempts = COALESCE(attempts, 0) + 1 WHERE id = (SELECT job.id FROM basic_asyncjob job "
+            + "WHERE job.status = :pending AND (job.nextattemptdate IS NULL OR job.nextattemptdate <= :now) "
+            + "AND NOT EXISTS (SELECT 1 FROM basic_asyncjob other WHERE other.entitykey = job.entitykey "
+            + "AND (other.status = :running OR (other.status = :pending AND other.id < job.id))) "
+            + "ORDER BY job.id LIMIT 1) RETURNING id";
+
+    private static final String REQUEUE_STALE_QUERY = "UPDATE basic_asyncjob SET status = :pending "
+            + "WHERE status = :running AND startdate < :staleBefore";
+
+    private static final String LOCK_PENDING_QUERY = "SELECT id FROM basic_asyncjob WHERE type = :type "
+            + "AND entitykey = :entityKey AND status = :pending ORDER BY id LIMIT 1 FOR UPDATE";
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    /**
+     * Marks the oldest pending job as running and returns its id. Jobs for the same entity key are taken in order of
+     * submission and never run at the same time - claims are serialized with an advisory lock, so that a job started by another
+     * worker is always visible here.
+     */
+    @Transactional
+    public Optional<Long> claimNext() {
+        Map<String, Object> params = Maps.newHashMap();
+
+        params.put("lockKey", CLAIM_LOCK_KEY);
+        params.put("pending", AsyncJobStatus.PENDING.getStringValue());
+        params.put("running", AsyncJobStatus.RUNNING.getStringValue());
+        params.put("now", new Date());
+
+        jdbcTemplate.queryForObject(LOCK_QUERY, params, Integer.class);
+
+        List<Long> ids = jdbcTemplate.queryForList(CLAIM_QUERY, params, Long.class);
+
+        if (ids.isEmpty()) {
+            return Optional.absent();
+        }
+
+        return Optional.of(ids.get(0));
+    }
+
+    /**
+     * Returns id of pending job of given type for given entity key and locks it until the current transaction ends, so that it
+     * can't be claimed before changes made in this transaction are committed. A job claimed in the meantime isn't returned.
+     */
+    @Transactional
+    public Optional<Long> lockPending(final String type, final String entityKey) {
+        Map<String, Object> params = Maps.newHashMap();
+
+        params.put("type", type);
+        params.put("entityKey", entityKey);
+        params.put("pending", AsyncJobStatus.PENDING.getStringValue());
+
+        List<Long> ids = jdbcTemplate.queryForList(LOCK_PENDING_QUERY, params, Long.class);
+
+        if (ids.isEmpty()) {
+            return Optional.absent();
+        }
+
+        return Optional.of(ids.get(0));
+    }
+
+    /**
+     * Performs job in one transaction, holding a lock on its entity key until the transaction ends. A job requeued as stale
+     * while it's still running waits here for the first run to finish and then sees its committed changes, so handlers only
+     * have to skip work which is already done. Changes of job which returned entity with errors are rolled back.
+     */
+    @Transactional
+    public Entity executeExclusively(final String entityKey, final Supplier<Entity> job) {
+        Map<String, Object> params = Maps.newHashMap();
+
+        params.put("namespace", ENTITY_LOCK_NAMESPACE);
+        params.put("entityKey", entityKey);
+
+        jdbcTemplate.queryForObject(LOCK_ENTITY_QUERY, params, Integer.class);
+
+        Entity entity = job.get();
+
+        if (!entity.isValid()) {
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+        }
+
+        return entity;
+    }
+
+    /**
+     * Returns jobs left running by a worker which didn't finish them, e.g. because of a restart, back to the queue. A job which
+     * is just slow is requeued as well and may run twice - the second run waits for the first one in
+     * {@link #executeExclusively(String, Supplier)}.
+     */
+    @Transactional
+    public void requeueStale(final Date staleBefore) {
+        Map<String, Object> params = Maps.newHashMap();
+
+        params.put("pending", AsyncJobStatus.PENDING.getStringValue());
+        params.put("running", AsyncJobStatus.RUNNING.getStringValue());
+        params.put("staleBefore", staleBefore);
+
+        jdbcTemplate.update(REQUEUE_STALE_QUERY, params);
+    }
+
+}
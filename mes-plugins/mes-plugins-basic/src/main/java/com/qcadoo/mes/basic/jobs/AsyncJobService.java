@@ -0,0 +1,209 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.jobs;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.basic.constants.AsyncJobFields;
+import com.qcadoo.mes.basic.constants.AsyncJobStatus;
+import com.qcadoo.mes.basic.constants.BasicConstants;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.SearchRestrictions;
+import com.qcadoo.model.api.validators.ErrorMessage;
+import com.qcadoo.security.api.SecurityService;
+
+/**
+ * Persistent queue of jobs which are too heavy to be done in the request thread. Jobs are stored in the asyncJob table and
+ * performed by {@link AsyncJobWorker} on the application task executor, using the {@link AsyncJobHandler} of their type.
+ */
+@Service
+public class AsyncJobService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncJobService.class);
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    @Autowired
+    private SecurityService securityService;
+
+    @Autowired
+    private AsyncJobWorker asyncJobWorker;
+
+    @Autowired
+    private AsyncJobQueue asyncJobQueue;
+
+    /**
+     * Adds job to the queue. The job is started after the current transaction commits, so it is dropped together with the
+     * changes that requested it when the transaction is rolled back.
+     *
+     * @param type
+     *            type of job, see {@link AsyncJobHandler#getType()}
+     * @param entityId
+     *            id of entity passed to the handler
+     * @param entityKey
+     *            key of the entity the job changes, jobs with the same key are never performed at the same time
+     * @param idempotencyKey
+     *            key identifying the request, a job already submitted with the same key is returned instead of adding a new one
+     *            unless it has failed
+     * @return submitted job
+     */
+    public Entity submit(final String type, final Long entityId, final String entityKey, final String idempotencyKey) {
+        Entity job = getAsyncJobDD().find().add(SearchRestrictions.eq(AsyncJobFields.IDEMPOTENCY_KEY, idempotencyKey))
+                .setMaxResults(1).uniqueResult();
+
+        if (job == null) {
+            job = getAsyncJobDD().create();
+
+            job.setField(AsyncJobFields.TYPE, type);
+            job.setField(AsyncJobFields.ENTITY_ID, entityId.toString());
+            job.setField(AsyncJobFields.ENTITY_KEY, entityKey);
+            job.setField(AsyncJobFields.IDEMPOTENCY_KEY, idempotencyKey);
+        } else if (!AsyncJobStatus.FAILED.getStringValue().equals(job.getStringField(AsyncJobFields.STATUS))) {
+            return job;
+        }
+
+        return enqueue(job);
+    }
+
+    /**
+     * Adds failed job to the queue again, e.g. after the cause of failure was fixed. Jobs submitted by state changes (creating
+     * documents of a received delivery, closing an order) can't be submitted again from the view, this is the only way to
+     * repeat them.
+     *
+     * @param jobId
+     *            id of job
+     * @return job added to the queue or absent if there is no such job or it hasn't failed
+     */
+    public Optional<Entity> retry(final Long jobId) {
+        Entity job = getAsyncJobDD().get(jobId);
+
+        if (job == null || !AsyncJobStatus.FAILED.getStringValue().equals(job.getStringField(AsyncJobFields.STATUS))) {
+            return Optional.absent();
+        }
+
+        return Optional.of(enqueue(job));
+    }
+
+    private Entity enqueue(final Entity job) {
+        job.setField(AsyncJobFields.STATUS, AsyncJobStatus.PENDING.getStringValue());
+        job.setField(AsyncJobFields.ATTEMPTS, 0);
+        job.setField(AsyncJobFields.CREATE_DATE, new Date());
+        job.setField(AsyncJobFields.CREATE_USER, securityService.getCurrentUserName());
+        job.setField(AsyncJobFields.START_DATE, null);
+        job.setField(AsyncJobFields.FINISH_DATE, null);
+        job.setField(AsyncJobFields.NEXT_ATTEMPT_DATE, null);
+        job.setField(AsyncJobFields.MESSAGES, null);
+
+        Entity savedJob = getAsyncJobDD().save(job);
+
+        processQueueAfterCommit();
+
+        return savedJob;
+    }
+
+    /**
+     * Adds job to the queue unless a job of the same type for the same entity key is still pending. Pending job hasn't started
+     * yet, so it will see all changes committed before it runs - used for recalculations, where only the latest state of the
+     * entity matters and many changes in a row should end with one recalculation.
+     *
+     * @param type
+     *            type of job, see {@link AsyncJobHandler#getType()}
+     * @param entityId
+     *            id of entity passed to the handler
+     * @param entityKey
+     *            key of the entity the job changes
+     * @return submitted or already pending job
+     */
+    public Entity submitCoalesced(final String type, final Long entityId, final String entityKey) {
+        Optional<Long> pendingJobId = asyncJobQueue.lockPending(type, entityKey);
+
+        if (pendingJobId.isPresent()) {
+            return getAsyncJobDD().get(pendingJobId.get());
+        }
+
+        return submit(type, entityId, entityKey, type + ":" + entityKey + ":" + UUID.randomUUID());
+    }
+
+    /**
+     * Checks if there is a pending or running job of given type for given entity key.
+     */
+    public boolean hasUnfinishedJob(final String type, final String entityKey) {
+        return getAsyncJobDD()
+                .find()
+                .add(SearchRestrictions.eq(AsyncJobFields.TYPE, type))
+                .add(SearchRestrictions.eq(AsyncJobFields.ENTITY_KEY, entityKey))
+                .add(SearchRestrictions.in(AsyncJobFields.STATUS,
+                        Lists.newArrayList(AsyncJobStatus.PENDING.getStringValue(), AsyncJobStatus.RUNNING.getStringValue())))
+                .setMaxResults(1).uniqueResult() != null;
+    }
+
+    public Entity getJob(final Long jobId) {
+        return getAsyncJobDD().get(jobId);
+    }
+
+    public List<ErrorMessage> getMessages(final Entity job) {
+        try {
+            return AsyncJobMessages.fromJson(job.getStringField(AsyncJobFields.MESSAGES));
+        } catch (IOException e) {
+            LOG.warn("Can't read messages of async job " + job.getId(), e);
+
+            return Collections.emptyList();
+        }
+    }
+
+    private void processQueueAfterCommit() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                @Override
+                public void afterCommit() {
+                    asyncJobWorker.processQueue();
+                }
+            });
+        } else {
+            asyncJobWorker.processQueue();
+        }
+    }
+
+    private DataDefinition getAsyncJobDD() {
+        return dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_ASYNC_JOB);
+    }
+
+}
@@ -0,0 +1,198 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.jobs;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.basic.constants.AsyncJobFields;
+import com.qcadoo.mes.basic.constants.AsyncJobStatus;
+import com.qcadoo.mes.basic.constants.BasicConstants;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.validators.ErrorMessage;
+
+@Service
+public class AsyncJobWorker {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncJobWorker.class);
+
+    private static final int MAX_WORKERS = 2;
+
+    private static final long STALE_AFTER = TimeUnit.HOURS.toMillis(1);
+
+    private static final long RETRY_DELAY = TimeUnit.MINUTES.toMillis(1);
+
+    private final AtomicInteger activeWorkers = new AtomicInteger();
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    @Autowired
+    private AsyncJobQueue asyncJobQueue;
+
+    @Autowired(required = false)
+    private List<AsyncJobHandler> asyncJobHandlers = Lists.newArrayList();
+
+    /**
+     * Performs pending jobs until the queue is empty. Called after a job is submitted and periodically, to pick up retried jobs
+     * and jobs left after a restart. At most {@link #MAX_WORKERS} threads of the executor are taken at the same time.
+     */
+    @Async
+    @Scheduled(fixedDelay = 30000)
+    public void processQueue() {
+        if (activeWorkers.incrementAndGet() > MAX_WORKERS) {
+            activeWorkers.decrementAndGet();
+
+            return;
+        }
+
+        try {
+            asyncJobQueue.requeueStale(new Date(System.currentTimeMillis() - STALE_AFTER));
+
+            for (Optional<Long> jobId = asyncJobQueue.claimNext(); jobId.isPresent(); jobId = asyncJobQueue.claimNext()) {
+                execute(getAsyncJobDD().get(jobId.get()));
+            }
+        } catch (Exception e) {
+            LOG.warn("Can't process async job queue", e);
+        } finally {
+            activeWorkers.decrementAndGet();
+        }
+    }
+
+    private void execute(final Entity job) {
+        Optional<AsyncJobHandler> maybeHandler = findHandler(job.getStringField(AsyncJobFields.TYPE));
+
+        if (!maybeHandler.isPresent()) {
+            finish(job, AsyncJobStatus.FAILED, Lists.newArrayList(new ErrorMessage("basic.asyncJob.error.unknownType")));
+
+            return;
+        }
+
+        try {
+            Entity entity = executeAsCreateUser(maybeHandler.get(), job);
+
+            if (entity.isValid()) {
+                finish(job, AsyncJobStatus.SUCCESSFUL, getMessages(entity));
+            } else {
+                finish(job, AsyncJobStatus.FAILED, getMessages(entity));
+            }
+        } catch (Exception e) {
+            LOG.warn(String.format("Async job %d of type %s failed", job.getId(), job.getStringField(AsyncJobFields.TYPE)), e);
+
+            List<ErrorMessage> messages = Lists.newArrayList(new ErrorMessage("basic.asyncJob.error.internalError"));
+            int attempts = job.getIntegerField(AsyncJobFields.ATTEMPTS);
+
+            if (attempts < job.getIntegerField(AsyncJobFields.MAX_ATTEMPTS)) {
+                retry(job, new Date(System.currentTimeMillis() + RETRY_DELAY * attempts), messages);
+            } else {
+                finish(job, AsyncJobStatus.FAILED, messages);
+            }
+        }
+    }
+
+    /**
+     * Performs job as the user who submitted it, so that hooks which read the current user (e.g. document and state change
+     * builders) see the same user as in the request thread. Jobs for the same entity key are performed exclusively, see
+     * {@link AsyncJobQueue#executeExclusively(String, java.util.function.Supplier)}.
+     */
+    private Entity executeAsCreateUser(final AsyncJobHandler asyncJobHandler, final Entity job) {
+        String createUser = job.getStringField(AsyncJobFields.CREATE_USER);
+        Long entityId = Long.valueOf(job.getStringField(AsyncJobFields.ENTITY_ID));
+
+        SecurityContext previousContext = SecurityContextHolder.getContext();
+
+        if (createUser != null) {
+            SecurityContext context = SecurityContextHolder.createEmptyContext();
+
+            context.setAuthentication(new UsernamePasswordAuthenticationToken(createUser, null, Collections
+                    .<GrantedAuthority> emptyList()));
+
+            SecurityContextHolder.setContext(context);
+        }
+
+        try {
+            return asyncJobQueue.executeExclusively(job.getStringField(AsyncJobFields.ENTITY_KEY),
+                    () -> asyncJobHandler.execute(entityId));
+        } finally {
+            SecurityContextHolder.setContext(previousContext);
+        }
+    }
+
+    private Optional<AsyncJobHandler> findHandler(final String type) {
+        for (AsyncJobHandler asyncJobHandler : asyncJobHandlers) {
+            if (asyncJobHandler.getType().equals(type)) {
+                return Optional.of(asyncJobHandler);
+            }
+        }
+
+        return Optional.absent();
+    }
+
+    private List<ErrorMessage> getMessages(final Entity entity) {
+        List<ErrorMessage> messages = Lists.newArrayList(entity.getGlobalErrors());
+
+        messages.addAll(entity.getErrors().values());
+
+        return messages;
+    }
+
+    private void finish(final Entity job, final AsyncJobStatus status, final List<ErrorMessage> messages) {
+        job.setField(AsyncJobFields.STATUS, status.getStringValue());
+        job.setField(AsyncJobFields.FINISH_DATE, new Date());
+        job.setField(AsyncJobFields.MESSAGES, AsyncJobMessages.toJson(messages));
+
+        getAsyncJobDD().save(job);
+    }
+
+    private void retry(final Entity job, final Date nextAttemptDate, final List<ErrorMessage> messages) {
+        job.setField(AsyncJobFields.STATUS, AsyncJobStatus.PENDING.getStringValue());
+        job.setField(AsyncJobFields.NEXT_ATTEMPT_DATE, nextAttemptDate);
+        job.setField(AsyncJobFields.MESSAGES, AsyncJobMessages.toJson(messages));
+
+        getAsyncJobDD().save(job);
+    }
+
+    private DataDefinition getAsyncJobDD() {
+        return dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_ASYNC_JOB);
+    }
+
+}
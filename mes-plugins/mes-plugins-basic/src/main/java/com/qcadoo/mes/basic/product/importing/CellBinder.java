@@ -25,11 +25,7 @@ package com.qcadoo.mes.basic.product.importing;
 
 import com.qcadoo.model.api.Entity;
 import org.apache.commons.lang3.builder.ToStringBuilder;
-import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.ss.usermodel.DataFormatter;
-import org.springframework.context.i18n.LocaleContextHolder;
 
-import java.util.Locale;
 import java.util.function.Consumer;
 
 abstract class CellBinder {
@@ -48,12 +44,6 @@ abstract class CellBinder {
         return new RequiredCellBinder(fieldName, cellParser);
     }
 
-    private static String formatCell(final Cell cell) {
-        Locale locale = LocaleContextHolder.getLocale();
-        final DataFormatter dataFormatter = new DataFormatter(null == locale ? Locale.getDefault() : locale);
-        return dataFormatter.formatCellValue(cell).trim();
-    }
-
     public static CellBinder optional(String fieldName, CellParser cellParser) {
         return new OptionalCellBinder(fieldName, cellParser);
     }
@@ -71,7 +61,13 @@ abstract class CellBinder {
         return cellParser;
     }
 
-    abstract void bind(Cell cell, Entity entity, BindingErrorsAccessor errorsAccessor);
+    /**
+     * Binds already formatted cell value, as delivered by streaming (SAX) spreadsheet reader.
+     *
+     * @param cellValue
+     *            formatted and trimmed cell value, or null when cell is blank
+     */
+    abstract void bind(String cellValue, Entity entity, BindingErrorsAccessor errorsAccessor);
 
     public String getFieldName() {
         return fieldName;
@@ -96,9 +92,9 @@ abstract class CellBinder {
         }
 
         @Override
-        public void bind(Cell cell, Entity entity, BindingErrorsAccessor errorsAccessor) {
-            if (cell != null) {
-                getCellParser().parse(formatCell(cell), errorsAccessor, o -> entity.setField(getFieldName(), o));
+        public void bind(String cellValue, Entity entity, BindingErrorsAccessor errorsAccessor) {
+            if (cellValue != null) {
+                getCellParser().parse(cellValue, errorsAccessor, o -> entity.setField(getFieldName(), o));
             }
         }
     }
@@ -114,11 +110,11 @@ abstract class CellBinder {
         }
 
         @Override
-        public void bind(Cell cell, Entity entity, BindingErrorsAccessor errorsAccessor) {
-            if (cell == null) {
+        public void bind(String cellValue, Entity entity, BindingErrorsAccessor errorsAccessor) {
+            if (cellValue == null) {
                 errorsAccessor.addError("qcadooView.validate.field.error.missing");
             } else {
-                getCellParser().parse(formatCell(cell), errorsAccessor, o -> entity.setField(getFieldName(), o));
+                getCellParser().parse(cellValue, errorsAccessor, o -> entity.setField(getFieldName(), o));
             }
         }
     }
@@ -0,0 +1,73 @@
+/*
+ * **************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * **************************************************************************
+ */
+package com.qcadoo.mes.basic.product.importing;
+
+import org.springframework.util.Assert;
+
+public class ImportOptions {
+
+    public enum Mode {
+        /**
+         * Whole file is imported in one transaction, which is rolled back if any row has errors.
+         */
+        ALL_OR_NOTHING,
+
+        /**
+         * Every batch is saved in its own transaction, batches without errors are committed.
+         */
+        COMMIT_VALID_BATCHES
+    }
+
+    public static final int DEFAULT_BATCH_SIZE = 200;
+
+    private final Mode mode;
+    private final int batchSize;
+
+    public ImportOptions(Mode mode, int batchSize) {
+        Assert.notNull(mode, "Import mode is required");
+        Assert.isTrue(batchSize > 0, "Batch size has to be positive");
+        this.mode = mode;
+        this.batchSize = batchSize;
+    }
+
+    public static ImportOptions allOrNothing() {
+        return new ImportOptions(Mode.ALL_OR_NOTHING, DEFAULT_BATCH_SIZE);
+    }
+
+    public static ImportOptions commitValidBatches(int batchSize) {
+        return new ImportOptions(Mode.COMMIT_VALID_BATCHES, batchSize);
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public boolean isAllOrNothing() {
+        return Mode.ALL_OR_NOTHING == mode;
+    }
+}
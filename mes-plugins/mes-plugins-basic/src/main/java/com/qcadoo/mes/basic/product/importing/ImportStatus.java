@@ -33,6 +33,7 @@ import java.util.Set;
 public class ImportStatus {
 
     private int rowsProcessed;
+    private int rowsImported;
     private Set<ImportError> errors = new HashSet<>();
 
     public int getRowsProcessed() {
@@ -43,6 +44,18 @@ public class ImportStatus {
         rowsProcessed++;
     }
 
+    /**
+     * Number of rows which were saved and committed, in "commit valid batches" mode it may be positive even if import has
+     * errors.
+     */
+    public int getRowsImported() {
+        return rowsImported;
+    }
+
+    void addRowsImported(int rows) {
+        rowsImported += rows;
+    }
+
     public boolean hasErrors() {
         return !CollectionUtils.isEmpty(errors);
     }
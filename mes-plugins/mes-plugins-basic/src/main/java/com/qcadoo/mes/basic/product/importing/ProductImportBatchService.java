@@ -0,0 +1,146 @@
+/*
+ * **************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * **************************************************************************
+ */
+package com.qcadoo.mes.basic.product.importing;
+
+import com.qcadoo.model.internal.api.HibernateService;
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+/**
+ * Transactional steps of streaming import - kept in separate bean, so that transactions are applied when called from
+ * {@link XlsxImportService} and its parsing workers.
+ */
+@Service
+class ProductImportBatchService {
+
+    /**
+     * Reads and saves all batches of all-or-nothing import.
+     */
+    interface BatchesImport {
+
+        void run() throws IOException;
+    }
+
+    private final RowProcessorFactory rowProcessorFactory;
+
+    private final HibernateService hibernateService;
+
+    @Autowired
+    ProductImportBatchService(RowProcessorFactory rowProcessorFactory, HibernateService hibernateService) {
+        this.rowProcessorFactory = rowProcessorFactory;
+        this.hibernateService = hibernateService;
+    }
+
+    /**
+     * Runs whole import in one transaction, which is rolled back if any row has errors.
+     */
+    @Transactional(rollbackFor = IOException.class)
+    public void importAllOrNothing(final ImportStatus importStatus, final BatchesImport batchesImport) throws IOException {
+        batchesImport.run();
+
+        if (importStatus.hasErrors()) { // We have to rollback transaction here
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+        } else {
+            importStatus.addRowsImported(importStatus.getRowsProcessed());
+        }
+    }
+
+    /**
+     * Parses and validates rows on worker thread. Dictionary and lookup parsers query database, so they need their own
+     * (read only) transaction, and locale of the importing user.
+     */
+    @Transactional(readOnly = true)
+    public List<ParsedRow> parse(final List<SheetRow> sheetRows, final Locale locale) {
+        Locale previousLocale = LocaleContextHolder.getLocale();
+        LocaleContextHolder.setLocale(locale);
+        try {
+            return sheetRows.stream().map(rowProcessorFactory::parse).collect(Collectors.toList());
+        } finally {
+            LocaleContextHolder.setLocale(previousLocale);
+        }
+    }
+
+    /**
+     * Saves batch in current transaction.
+     *
+     * @return true if all rows of batch were saved without errors
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public boolean save(final List<ParsedRow> parsedRows, final ImportStatus importStatus) {
+        boolean valid = true;
+        for (ParsedRow parsedRow : parsedRows) {
+            if (parsedRow.hasErrors()) {
+                // Lookups on worker thread don't see products saved earlier in this transaction (e.g. parent family
+                // defined a few rows above), so rows with errors are bound once again before saving.
+                parsedRow = rowProcessorFactory.parse(parsedRow.getSheetRow());
+            }
+            valid &= rowProcessorFactory.save(parsedRow, importStatus);
+        }
+        return valid;
+    }
+
+    /**
+     * Saves batch in current transaction, then flushes and clears session, so that products of already saved batches
+     * aren't kept in session until the end of long all-or-nothing import.
+     *
+     * @return true if all rows of batch were saved without errors
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public boolean saveAndFlush(final List<ParsedRow> parsedRows, final ImportStatus importStatus) {
+        boolean valid = save(parsedRows, importStatus);
+
+        Session session = hibernateService.getCurrentSession();
+        session.flush();
+        session.clear();
+
+        return valid;
+    }
+
+    /**
+     * Saves batch in its own transaction, which is committed only if all rows of batch are valid.
+     *
+     * @return true if batch was committed
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public boolean saveInNewTransaction(final List<ParsedRow> parsedRows, final ImportStatus importStatus) {
+        boolean valid = save(parsedRows, importStatus);
+        if (valid) {
+            importStatus.addRowsImported(parsedRows.size());
+        } else {
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+        }
+        return valid;
+    }
+
+}
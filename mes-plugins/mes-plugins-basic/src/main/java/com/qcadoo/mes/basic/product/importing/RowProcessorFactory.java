@@ -30,7 +30,6 @@ import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.validators.ErrorMessage;
-import org.apache.poi.ss.usermodel.Cell;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
@@ -65,73 +64,35 @@ class RowProcessorFactory {
         return entity;
     }
 
-    RowProcessor create(final ImportStatus importStatus, int rowIndex) {
-        return new RowProcessorImpl(importStatus, createEntityWithDefaultValues(), rowIndex);
-    }
-
-    private class RowProcessorImpl implements RowProcessor {
-
-        private final ImportStatus importStatus;
-        private final Entity entity;
-        private final int currentRow;
-        private boolean finished;
-        private int index;
-        private boolean empty = true;
-        private List<ImportError> rowErrors = new ArrayList<>();
-
-        RowProcessorImpl(ImportStatus importStatus, Entity entity, int rowIndx) {
-            this.importStatus = importStatus;
-            this.entity = entity;
-            this.currentRow = rowIndx;
-        }
-
-        @Override
-        public boolean isEmpty() {
-            return empty;
-        }
-
-        @Override
-        public void append(final Cell cell) {
-            assureNotProcessedYet();
-            if (null != cell) {
-                empty = false;
-            }
-            final CellBinder binder = cellBinderRegistry.getCellBinder(index++);
+    ParsedRow parse(final SheetRow sheetRow) {
+        final Entity entity = createEntityWithDefaultValues();
+        final List<ImportError> rowErrors = new ArrayList<>();
+        for (int colIndex = 0; colIndex < SpreadsheetSchemaInfo.COLUMN_NUMBER; colIndex++) {
+            final CellBinder binder = cellBinderRegistry.getCellBinder(colIndex);
             binder.bind(
-                    cell,
+                    sheetRow.getValue(colIndex),
                     entity,
-                    errorCode -> rowErrors.add(new ImportError(currentRow, binder.getFieldName(), errorCode))
+                    errorCode -> rowErrors.add(new ImportError(sheetRow.getRowIndex(), binder.getFieldName(), errorCode))
             );
         }
+        return new ParsedRow(sheetRow, entity, rowErrors);
+    }
 
-        private void assureNotProcessedYet() {
-            if (finished) {
-                throw new IllegalStateException("Row already processed");
-            }
-        }
-
-        @Override
-        public void process() {
-            assureNotProcessedYet();
-            finished = true;
-            importStatus.incrementRowsProcessedCounter();
-            final Entity savedEntity = getProductDataDefinition().save(entity);
-            populateImportStatusWithBindingErrors();
-            populateImportStatusWithEntityErrors(savedEntity);
-        }
-
-        private void populateImportStatusWithBindingErrors() {
-            rowErrors.forEach(importStatus::addError);
-        }
+    boolean save(final ParsedRow parsedRow, final ImportStatus importStatus) {
+        importStatus.incrementRowsProcessedCounter();
+        final Entity savedEntity = getProductDataDefinition().save(parsedRow.getEntity());
+        parsedRow.getErrors().forEach(importStatus::addError);
+        populateImportStatusWithEntityErrors(importStatus, parsedRow.getRowIndex(), savedEntity);
+        return parsedRow.getErrors().isEmpty() && savedEntity.isValid();
+    }
 
-        private void populateImportStatusWithEntityErrors(Entity entity) {
-            if (!entity.isValid()) {
-                for (Map.Entry<String, ErrorMessage> entry : entity.getErrors().entrySet()) {
-                    importStatus.addError(
-                            new ImportError(
-                                    currentRow, entry.getKey(), entry.getValue().getMessage(), entry.getValue().getVars())
-                    );
-                }
+    private void populateImportStatusWithEntityErrors(ImportStatus importStatus, int rowIndex, Entity entity) {
+        if (!entity.isValid()) {
+            for (Map.Entry<String, ErrorMessage> entry : entity.getErrors().entrySet()) {
+                importStatus.addError(
+                        new ImportError(
+                                rowIndex, entry.getKey(), entry.getValue().getMessage(), entry.getValue().getVars())
+                );
             }
         }
     }
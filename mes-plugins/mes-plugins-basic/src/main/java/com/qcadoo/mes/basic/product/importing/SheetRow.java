@@ -23,13 +23,21 @@
  */
 package com.qcadoo.mes.basic.product.importing;
 
-import org.apache.poi.ss.usermodel.Cell;
+class SheetRow {
 
-public interface RowProcessor {
+    private final int rowIndex;
+    private final String[] values;
 
-    boolean isEmpty();
+    SheetRow(int rowIndex, String[] values) {
+        this.rowIndex = rowIndex;
+        this.values = values;
+    }
 
-    void append(Cell cell);
+    int getRowIndex() {
+        return rowIndex;
+    }
 
-    void process();
+    String getValue(int colIndex) {
+        return values[colIndex];
+    }
 }
@@ -0,0 +1,137 @@
+/*
+ * **************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * **************************************************************************
+ */
+package com.qcadoo.mes.basic.product.importing;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler.SheetContentsHandler;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.springframework.stereotype.Component;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+/**
+ * Reads first sheet of spreadsheet with SAX event reader, so only the row being read is kept in memory (contrary to
+ * {@link org.apache.poi.xssf.usermodel.XSSFWorkbook}, which loads whole document). Rows are read starting from
+ * {@link SpreadsheetSchemaInfo#START_ROW_INDEX} up to first missing or empty row.
+ */
+@Component
+class StreamingSheetReader {
+
+    void read(final File file, final Locale locale, final Consumer<SheetRow> rowConsumer) throws IOException {
+        OPCPackage opcPackage = null;
+        try {
+            opcPackage = OPCPackage.open(file, PackageAccess.READ);
+            ReadOnlySharedStringsTable sharedStrings = new ReadOnlySharedStringsTable(opcPackage);
+            XSSFReader xssfReader = new XSSFReader(opcPackage);
+            StylesTable styles = xssfReader.getStylesTable();
+
+            Iterator<InputStream> sheets = xssfReader.getSheetsData();
+            if (!sheets.hasNext()) {
+                return;
+            }
+            try (InputStream sheet = sheets.next()) {
+                XMLReader xmlReader = createXmlReader();
+                xmlReader.setContentHandler(new XSSFSheetXMLHandler(styles, null, sharedStrings,
+                        new RowCollector(rowConsumer), new DataFormatter(locale), false));
+                xmlReader.parse(new InputSource(sheet));
+            }
+        } catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+            throw new IllegalStateException("Couldn't read spreadsheet " + file.getName(), e);
+        } finally {
+            if (opcPackage != null) {
+                opcPackage.revert(); // package is opened read only, there is nothing to save
+            }
+        }
+    }
+
+    private XMLReader createXmlReader() throws ParserConfigurationException, SAXException {
+        SAXParserFactory saxParserFactory = SAXParserFactory.newInstance();
+        saxParserFactory.setNamespaceAware(true);
+        return saxParserFactory.newSAXParser().getXMLReader();
+    }
+
+    private static class RowCollector implements SheetContentsHandler {
+
+        private final Consumer<SheetRow> rowConsumer;
+        private int expectedRowIndex = SpreadsheetSchemaInfo.START_ROW_INDEX;
+        private boolean finished;
+        private String[] values;
+        private boolean empty;
+
+        RowCollector(Consumer<SheetRow> rowConsumer) {
+            this.rowConsumer = rowConsumer;
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            values = new String[SpreadsheetSchemaInfo.COLUMN_NUMBER];
+            empty = true;
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            int colIndex = new CellReference(cellReference).getCol();
+            if (colIndex < SpreadsheetSchemaInfo.COLUMN_NUMBER && formattedValue != null && !formattedValue.trim().isEmpty()) {
+                values[colIndex] = formattedValue.trim();
+                empty = false;
+            }
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            if (finished || rowNum < SpreadsheetSchemaInfo.START_ROW_INDEX) {
+                return;
+            }
+            if (rowNum != expectedRowIndex || empty) { // Missing or empty row ends the data, just like in XlsxImportService
+                finished = true;
+                return;
+            }
+            expectedRowIndex++;
+            rowConsumer.accept(new SheetRow(rowNum, values));
+        }
+
+        @Override
+        public void headerFooter(String text, boolean isHeader, String tagName) {
+            // header and footer aren't imported
+        }
+    }
+}
@@ -23,50 +23,115 @@
  */
 package com.qcadoo.mes.basic.product.importing;
 
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.xssf.usermodel.XSSFSheet;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import com.google.common.collect.Lists;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
-import org.springframework.transaction.interceptor.TransactionAspectSupport;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 @Service
 public class XlsxImportService {
 
-    private final RowProcessorFactory rowProcessorFactory;
+    private final StreamingSheetReader streamingSheetReader;
+
+    private final ProductImportBatchService productImportBatchService;
+
+    private final ThreadPoolTaskExecutor parsingExecutor;
+
+    private final int parsingThreads;
 
     @Autowired
-    public XlsxImportService(RowProcessorFactory rowProcessorFactory) {
-        this.rowProcessorFactory = rowProcessorFactory;
+    public XlsxImportService(StreamingSheetReader streamingSheetReader, ProductImportBatchService productImportBatchService,
+            @Qualifier("productImportExecutor") ThreadPoolTaskExecutor parsingExecutor) {
+        this.streamingSheetReader = streamingSheetReader;
+        this.productImportBatchService = productImportBatchService;
+        this.parsingExecutor = parsingExecutor;
+        this.parsingThreads = Math.max(1, Math.min(parsingExecutor.getMaxPoolSize(), Runtime.getRuntime().availableProcessors()));
     }
 
-    @Transactional
-    public ImportStatus importFrom(final XSSFWorkbook workbook) {
-
+    /**
+     * Imports products from xlsx file without loading whole workbook into memory. Rows are read with SAX event reader,
+     * parsed and validated in parallel, and saved in batches of {@link ImportOptions#getBatchSize()} rows.
+     *
+     * @param file
+     *            xlsx file
+     * @param options
+     *            batch size and whether import should be rolled back as a whole or only invalid batches are skipped
+     * @return import status with errors of all rows
+     */
+    public ImportStatus importFrom(final File file, final ImportOptions options) throws IOException {
         ImportStatus importStatus = new ImportStatus();
-        XSSFSheet sheet = workbook.getSheetAt(0);
 
-        for (int rowIndex = SpreadsheetSchemaInfo.START_ROW_INDEX; rowIndex <= sheet.getLastRowNum(); rowIndex++) {
+        if (options.isAllOrNothing()) {
+            productImportBatchService.importAllOrNothing(importStatus, () -> importBatches(file, options, importStatus));
+        } else {
+            // no surrounding transaction - every batch is committed on its own, as soon as it's saved
+            importBatches(file, options, importStatus);
+        }
+        return importStatus;
+    }
 
-            Row row = sheet.getRow(rowIndex);
-            if (row == null) { // This whole row is empty
-                break;
-            }
-            final RowProcessor rowProcessor = rowProcessorFactory.create(importStatus, rowIndex);
-            for (int colIndex = 0; colIndex < SpreadsheetSchemaInfo.COLUMN_NUMBER; colIndex++) {
-                rowProcessor.append(row.getCell(colIndex, Row.RETURN_BLANK_AS_NULL));
-            }
-            if (rowProcessor.isEmpty()) {
-                break; // We are done. The whole row was empty so stop processing
+    private void importBatches(final File file, final ImportOptions options, final ImportStatus importStatus)
+            throws IOException {
+        Locale locale = LocaleContextHolder.getLocale();
+        List<SheetRow> batch = Lists.newArrayListWithCapacity(options.getBatchSize());
+
+        streamingSheetReader.read(file, locale, sheetRow -> {
+            batch.add(sheetRow);
+            if (batch.size() == options.getBatchSize()) {
+                processBatch(batch, locale, options, importStatus);
+                batch.clear();
             }
-            rowProcessor.process();
+        });
+        if (!batch.isEmpty()) {
+            processBatch(batch, locale, options, importStatus);
         }
+    }
+
+    private void processBatch(final List<SheetRow> batch, final Locale locale, final ImportOptions options,
+            final ImportStatus importStatus) {
+        List<ParsedRow> parsedRows = parse(batch, locale);
 
-        if (importStatus.hasErrors()) { // We have to rollback transaction here
-            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+        if (options.isAllOrNothing()) {
+            productImportBatchService.saveAndFlush(parsedRows, importStatus);
+        } else {
+            productImportBatchService.saveInNewTransaction(parsedRows, importStatus);
         }
-        return importStatus;
+    }
+
+    private List<ParsedRow> parse(final List<SheetRow> batch, final Locale locale) {
+        int sliceSize = (batch.size() + parsingThreads - 1) / parsingThreads;
+        List<Future<List<ParsedRow>>> futures = Lists.newArrayList();
+
+        for (List<SheetRow> slice : Lists.partition(Lists.newArrayList(batch), sliceSize)) {
+            futures.add(parsingExecutor.submit(() -> productImportBatchService.parse(slice, locale)));
+        }
+
+        List<ParsedRow> parsedRows = Lists.newArrayListWithCapacity(batch.size());
+        try {
+            for (Future<List<ParsedRow>> future : futures) {
+                parsedRows.addAll(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futures.forEach(future -> future.cancel(true));
+            throw new IllegalStateException("Product import was interrupted", e);
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+        return parsedRows;
     }
 
 }
@@ -0,0 +1,144 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.schema;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.core.io.support.ResourcePatternResolver;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.FileCopyUtils;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Applies schema changes which hibernate (hbm2ddl update) doesn't make by itself - unique and functional indexes, triggers and
+ * data fixes they need - to existing databases. Extensions (pg_trgm) are installed by the database owner, migrations which use
+ * them check if they're installed and skip their part with a warning otherwise.
+ *
+ * Migrations are SQL scripts found on classpath under schema/migrations, so every plugin can ship its own. They're applied in
+ * order of file names, each one once, and applied versions are stored in basic_schemamigration table. Scripts are also run on
+ * freshly created databases, right after views.sql, so they have to be idempotent (IF NOT EXISTS, CREATE OR REPLACE).
+ */
+@Service
+public class SchemaMigrationService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SchemaMigrationService.class);
+
+    private static final String L_MIGRATIONS_LOCATION = "classpath*:schema/migrations/*.sql";
+
+    private static final String L_SQL_EXTENSION = ".sql";
+
+    private static final long L_MIGRATION_LOCK_KEY = 20170601L;
+
+    private static final String L_LOCK_QUERY = "SELECT 1 FROM pg_advisory_xact_lock(:lockKey)";
+
+    private static final String L_CREATE_MIGRATION_TABLE_QUERY = "CREATE TABLE IF NOT EXISTS basic_schemamigration "
+            + "(version varchar(255) PRIMARY KEY, appliedon timestamp NOT NULL)";
+
+    private static final String L_APPLIED_VERSIONS_QUERY = "SELECT version FROM basic_schemamigration";
+
+    private static final String L_ADD_APPLIED_VERSION_QUERY = "INSERT INTO basic_schemamigration (version, appliedon) "
+            + "VALUES (:version, :appliedOn)";
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    private ResourcePatternResolver resourcePatternResolver = new PathMatchingResourcePatternResolver();
+
+    /**
+     * Applies all migrations which weren't applied yet. Migrations run in one transaction, serialized with an advisory lock, so
+     * nodes started at the same time don't apply the same script twice.
+     */
+    @Transactional
+    public void migrate() {
+        jdbcTemplate.queryForObject(L_LOCK_QUERY, Collections.singletonMap("lockKey", L_MIGRATION_LOCK_KEY), Integer.class);
+        jdbcTemplate.getJdbcOperations().execute(L_CREATE_MIGRATION_TABLE_QUERY);
+
+        Set<String> appliedVersions = Sets.newHashSet(jdbcTemplate.getJdbcOperations().queryForList(L_APPLIED_VERSIONS_QUERY,
+                String.class));
+
+        for (Resource script : getScripts()) {
+            String version = getVersion(script);
+
+            if (appliedVersions.contains(version)) {
+                continue;
+            }
+
+            LOG.info("Applying schema migration " + version);
+
+            jdbcTemplate.getJdbcOperations().execute(readScript(script));
+
+            Map<String, Object> params = Maps.newHashMap();
+
+            params.put("version", version);
+            params.put("appliedOn", new Date());
+
+            jdbcTemplate.update(L_ADD_APPLIED_VERSION_QUERY, params);
+        }
+    }
+
+    private List<Resource> getScripts() {
+        try {
+            List<Resource> scripts = Arrays.asList(resourcePatternResolver.getResources(L_MIGRATIONS_LOCATION));
+
+            scripts.sort(Comparator.comparing(Resource::getFilename));
+
+            return scripts;
+        } catch (IOException e) {
+            throw new IllegalStateException("Schema migrations can't be listed", e);
+        }
+    }
+
+    private String getVersion(final Resource script) {
+        String fileName = script.getFilename();
+
+        return fileName.substring(0, fileName.length() - L_SQL_EXTENSION.length());
+    }
+
+    private String readScript(final Resource script) {
+        try {
+            return FileCopyUtils.copyToString(new InputStreamReader(script.getInputStream(), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new IllegalStateException("Schema migration " + script.getFilename() + " can't be read", e);
+        }
+    }
+
+}
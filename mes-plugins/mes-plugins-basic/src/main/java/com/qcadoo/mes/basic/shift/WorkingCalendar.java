@@ -0,0 +1,471 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.shift;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.commons.dateTime.TimeRange;
+import com.qcadoo.mes.basic.constants.ShiftFields;
+import com.qcadoo.mes.basic.constants.ShiftTimetableExceptionFields;
+import com.qcadoo.mes.basic.constants.TimetableExceptionType;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Working time of all shifts compiled for date arithmetic of scheduling.
+ *
+ * Weekly hours and timetable exceptions of shifts are parsed once into primitive arrays. Working intervals of a year are generated
+ * on first use, merged across shifts and kept with prefix sums of their durations, so adding working time to a date or counting
+ * working time between dates takes binary searches instead of loading and iterating shift hours.
+ *
+ * Calendar is immutable snapshot of shifts, see {@link WorkingCalendarCache}.
+ */
+public final class WorkingCalendar {
+
+    private static final int MIN_YEAR = 2000;
+
+    private static final int MAX_YEAR = 2099;
+
+    private static final int MAX_SEGMENTS = 200;
+
+    private static final long MILLIS_PER_SECOND = 1000L;
+
+    private static final String[][] DAYS = { { ShiftFields.MONDAY_WORKING, ShiftFields.MONDAY_HOURS },
+            { ShiftFields.TUESDAY_WORKING, ShiftFields.TUESDAY_HOURS }, { ShiftFields.WENSDAY_WORKING, ShiftFields.WENSDAY_HOURS },
+            { ShiftFields.THURSDAY_WORKING, ShiftFields.THURSDAY_HOURS }, { ShiftFields.FRIDAY_WORKING, ShiftFields.FRIDAY_HOURS },
+            { ShiftFields.SATURDAY_WORKING, ShiftFields.SATURDAY_HOURS }, { ShiftFields.SUNDAY_WORKING, ShiftFields.SUNDAY_HOURS } };
+
+    private final List<ShiftPattern> patterns;
+
+    private final DateTimeZone zone;
+
+    private final Map<Integer, Segment> segments = new ConcurrentHashMap<>();
+
+    private WorkingCalendar(final List<ShiftPattern> patterns, final DateTimeZone zone) {
+        this.patterns = Collections.unmodifiableList(patterns);
+        this.zone = zone;
+    }
+
+    public static WorkingCalendar compile(final List<Entity> shifts) {
+        return compile(shifts, DateTimeZone.getDefault());
+    }
+
+    public static WorkingCalendar compile(final List<Entity> shifts, final DateTimeZone zone) {
+        List<ShiftPattern> patterns = Lists.newArrayListWithCapacity(shifts.size());
+
+        for (Entity shift : shifts) {
+            patterns.add(new ShiftPattern(shift));
+        }
+
+        return new WorkingCalendar(patterns, zone);
+    }
+
+    public boolean isEmpty() {
+        return patterns.isEmpty();
+    }
+
+    /**
+     * Returns date when given number of working seconds, counted from given date, elapses.
+     *
+     * @return date, or null when there is not enough working time before the end of year 2099
+     */
+    public Date addWorkingSeconds(final Date dateFrom, final long seconds) {
+        long time = dateFrom.getTime();
+        long remaining = seconds * MILLIS_PER_SECOND;
+        int year = getYear(time);
+
+        while (year <= MAX_YEAR) {
+            Segment segment = getSegment(year);
+
+            int index = segment.firstEndingAfter(time);
+            long workedBefore = segment.workedBefore(time, index);
+            long available = segment.total() - workedBefore;
+
+            if ((index < segment.size()) && (remaining <= available)) {
+                return new Date(segment.timeOfFirst(workedBefore + remaining, index));
+            }
+
+            remaining -= available;
+            time = segment.end;
+            year++;
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns date from which given number of working seconds elapses until given date.
+     *
+     * @return date, or null when there is not enough working time after the beginning of year 2000
+     */
+    public Date subtractWorkingSeconds(final Date dateTo, final long seconds) {
+        long time = dateTo.getTime();
+        long remaining = seconds * MILLIS_PER_SECOND;
+        int year = getYear(time);
+
+        while (year >= MIN_YEAR) {
+            Segment segment = getSegment(year);
+
+            int index = segment.firstEndingAfter(time);
+            int lastIndex = segment.lastStartingBefore(time, index);
+            long workedBefore = segment.workedBefore(time, index);
+
+            if ((lastIndex >= 0) && (remaining <= workedBefore)) {
+                return new Date(segment.timeOfLast(workedBefore - remaining, lastIndex));
+            }
+
+            remaining -= workedBefore;
+            time = segment.start;
+            year--;
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns number of working seconds between given dates, or 0 when dateTo isn't after dateFrom.
+     */
+    public long getWorkingSecondsBetween(final Date dateFrom, final Date dateTo) {
+        long from = dateFrom.getTime();
+        long to = dateTo.getTime();
+
+        if (to <= from) {
+            return 0L;
+        }
+
+        long worked = 0L;
+
+        for (int year = getYear(from); year <= getYear(to); year++) {
+            Segment segment = getSegment(year);
+
+            worked += segment.workedBefore(Math.min(to, segment.end)) - segment.workedBefore(Math.max(from, segment.start));
+        }
+
+        return worked / MILLIS_PER_SECOND;
+    }
+
+    private int getYear(final long time) {
+        return new DateTime(time, zone).getYear();
+    }
+
+    private Segment getSegment(final int year) {
+        Segment segment = segments.get(year);
+
+        if (segment == null) {
+            if (segments.size() >= MAX_SEGMENTS) {
+                segments.clear();
+            }
+
+            segment = segments.computeIfAbsent(year, this::compileSegment);
+        }
+
+        return segment;
+    }
+
+    private Segment compileSegment(final int year) {
+        long start = new LocalDate(year, 1, 1).toDateTimeAtStartOfDay(zone).getMillis();
+        long end = new LocalDate(year + 1, 1, 1).toDateTimeAtStartOfDay(zone).getMillis();
+
+        List<long[]> intervals = Lists.newArrayList();
+
+        for (ShiftPattern pattern : patterns) {
+            intervals.addAll(pattern.getIntervals(start, end, zone));
+        }
+
+        List<long[]> merged = merge(intervals);
+
+        long[] starts = new long[merged.size()];
+        long[] ends = new long[merged.size()];
+        long[] cumulative = new long[merged.size() + 1];
+
+        int size = 0;
+
+        for (long[] interval : merged) {
+            long intervalStart = Math.max(interval[0], start);
+            long intervalEnd = Math.min(interval[1], end);
+
+            if (intervalStart < intervalEnd) {
+                starts[size] = intervalStart;
+                ends[size] = intervalEnd;
+                cumulative[size + 1] = cumulative[size] + (intervalEnd - intervalStart);
+
+                size++;
+            }
+        }
+
+        return new Segment(start, end, Arrays.copyOf(starts, size), Arrays.copyOf(ends, size), Arrays.copyOf(cumulative, size + 1));
+    }
+
+    private static List<long[]> merge(final List<long[]> intervals) {
+        intervals.sort((first, second) -> Long.compare(first[0], second[0]));
+
+        List<long[]> merged = Lists.newArrayListWithCapacity(intervals.size());
+
+        long[] current = null;
+
+        for (long[] interval : intervals) {
+            if (interval[0] >= interval[1]) {
+                continue;
+            }
+            if ((current == null) || (current[1] < interval[0])) {
+                current = new long[] { interval[0], interval[1] };
+
+                merged.add(current);
+            } else if (current[1] < interval[1]) {
+                current[1] = interval[1];
+            }
+        }
+
+        return merged;
+    }
+
+    private static final class ShiftPattern {
+
+        private final int[][] fromMillisOfDay = new int[DAYS.length][];
+
+        private final int[][] toMillisOfDay = new int[DAYS.length][];
+
+        private final List<long[]> workTimes = Lists.newArrayList();
+
+        private final List<long[]> freeTimes = Lists.newArrayList();
+
+        private ShiftPattern(final Entity shift) {
+            for (int day = 0; day < DAYS.length; day++) {
+                List<TimeRange> ranges = Collections.emptyList();
+
+                if (shift.getBooleanField(DAYS[day][0])) {
+                    ranges = Lists.newArrayList(new WorkingHours(shift.getStringField(DAYS[day][1])).getTimeRanges());
+                }
+
+                fromMillisOfDay[day] = new int[ranges.size()];
+                toMillisOfDay[day] = new int[ranges.size()];
+
+                for (int i = 0; i < ranges.size(); i++) {
+                    fromMillisOfDay[day][i] = ranges.get(i).getFrom().getMillisOfDay();
+                    toMillisOfDay[day][i] = ranges.get(i).getTo().getMillisOfDay();
+                }
+            }
+
+            List<Entity> exceptions = shift.getHasManyField(ShiftFields.TIMETABLE_EXCEPTIONS);
+
+            if (exceptions != null) {
+                for (Entity exception : exceptions) {
+                    long[] interval = { exception.getDateField(ShiftTimetableExceptionFields.FROM_DATE).getTime(),
+                            exception.getDateField(ShiftTimetableExceptionFields.TO_DATE).getTime() };
+
+                    if (TimetableExceptionType.WORK_TIME.getStringValue().equals(
+                            exception.getStringField(ShiftTimetableExceptionFields.TYPE))) {
+                        workTimes.add(interval);
+                    } else {
+                        freeTimes.add(interval);
+                    }
+                }
+            }
+        }
+
+        private List<long[]> getIntervals(final long start, final long end, final DateTimeZone zone) {
+            List<long[]> intervals = Lists.newArrayList();
+
+            LocalDate day = new LocalDate(start, zone).minusDays(1);
+            LocalDate lastDay = new LocalDate(end - 1, zone);
+
+            while (!day.isAfter(lastDay)) {
+                int dayIndex = day.getDayOfWeek() - 1;
+
+                for (int i = 0; i < fromMillisOfDay[dayIndex].length; i++) {
+                    int from = fromMillisOfDay[dayIndex][i];
+                    int to = toMillisOfDay[dayIndex][i];
+
+                    // hours like 22:00-06:00 end on the next day
+                    long intervalStart = toInstant(day, from, zone);
+                    long intervalEnd = (from > to) ? toInstant(day.plusDays(1), to, zone) : toInstant(day, to, zone);
+
+                    if ((intervalStart < end) && (intervalEnd > start)) {
+                        intervals.add(new long[] { intervalStart, intervalEnd });
+                    }
+                }
+
+                day = day.plusDays(1);
+            }
+
+            for (long[] workTime : workTimes) {
+                if ((workTime[0] < end) && (workTime[1] > start)) {
+                    intervals.add(workTime);
+                }
+            }
+
+            List<long[]> merged = merge(intervals);
+
+            for (long[] freeTime : freeTimes) {
+                if ((freeTime[0] < end) && (freeTime[1] > start)) {
+                    merged = subtract(merged, freeTime);
+                }
+            }
+
+            return merged;
+        }
+
+        private static List<long[]> subtract(final List<long[]> intervals, final long[] freeTime) {
+            List<long[]> result = Lists.newArrayListWithCapacity(intervals.size() + 1);
+
+            for (long[] interval : intervals) {
+                if ((interval[1] <= freeTime[0]) || (interval[0] >= freeTime[1])) {
+                    result.add(interval);
+
+                    continue;
+                }
+                if (interval[0] < freeTime[0]) {
+                    result.add(new long[] { interval[0], freeTime[0] });
+                }
+                if (interval[1] > freeTime[1]) {
+                    result.add(new long[] { freeTime[1], interval[1] });
+                }
+            }
+
+            return result;
+        }
+
+        private static long toInstant(final LocalDate day, final int millisOfDay, final DateTimeZone zone) {
+            long localMillis = day.toDateTimeAtStartOfDay(DateTimeZone.UTC).getMillis() + millisOfDay;
+
+            // local times skipped by daylight saving change are moved forward instead of failing
+            return zone.convertLocalToUTC(localMillis, false);
+        }
+
+    }
+
+    /**
+     * Merged working intervals of one year, cumulative[i] is working time before starts[i].
+     */
+    private static final class Segment {
+
+        private final long start;
+
+        private final long end;
+
+        private final long[] starts;
+
+        private final long[] ends;
+
+        private final long[] cumulative;
+
+        private Segment(final long start, final long end, final long[] starts, final long[] ends, final long[] cumulative) {
+            this.start = start;
+            this.end = end;
+            this.starts = starts;
+            this.ends = ends;
+            this.cumulative = cumulative;
+        }
+
+        private int size() {
+            return starts.length;
+        }
+
+        private long total() {
+            return cumulative[starts.length];
+        }
+
+        private int firstEndingAfter(final long time) {
+            int low = 0;
+            int high = ends.length;
+
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+
+                if (ends[middle] > time) {
+                    high = middle;
+                } else {
+                    low = middle + 1;
+                }
+            }
+
+            return low;
+        }
+
+        private int lastStartingBefore(final long time, final int firstEndingAfter) {
+            if ((firstEndingAfter < starts.length) && (starts[firstEndingAfter] < time)) {
+                return firstEndingAfter;
+            }
+
+            return firstEndingAfter - 1;
+        }
+
+        private long workedBefore(final long time) {
+            return workedBefore(time, firstEndingAfter(time));
+        }
+
+        private long workedBefore(final long time, final int index) {
+            if (index == starts.length) {
+                return total();
+            }
+
+            return cumulative[index] + Math.max(0L, time - starts[index]);
+        }
+
+        private long timeOfFirst(final long worked, final int fromIndex) {
+            int low = fromIndex;
+            int high = starts.length - 1;
+
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+
+                if (cumulative[middle + 1] >= worked) {
+                    high = middle;
+                } else {
+                    low = middle + 1;
+                }
+            }
+
+            return starts[low] + (worked - cumulative[low]);
+        }
+
+        private long timeOfLast(final long worked, final int toIndex) {
+            int low = 0;
+            int high = toIndex;
+
+            while (low < high) {
+                int middle = (low + high + 1) >>> 1;
+
+                if (cumulative[middle] <= worked) {
+                    low = middle;
+                } else {
+                    high = middle - 1;
+                }
+            }
+
+            return starts[low] + (worked - cumulative[low]);
+        }
+
+    }
+
+}
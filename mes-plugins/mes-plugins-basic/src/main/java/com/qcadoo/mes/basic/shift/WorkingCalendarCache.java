@@ -0,0 +1,86 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.shift;
+
+import java.util.function.Supplier;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Holds {@link WorkingCalendar} compiled from current shifts. Calendar is invalidated by shift and timetable exception hooks,
+ * once when record is written and once again after transaction completes, so calendar compiled from data of unfinished
+ * transaction isn't kept.
+ */
+@Service
+public class WorkingCalendarCache {
+
+    private WorkingCalendar calendar;
+
+    private long version;
+
+    public WorkingCalendar get(final Supplier<WorkingCalendar> compiler) {
+        long compiledVersion;
+
+        synchronized (this) {
+            if (calendar != null) {
+                return calendar;
+            }
+
+            compiledVersion = version;
+        }
+
+        WorkingCalendar compiled = compiler.get();
+
+        synchronized (this) {
+            if (version == compiledVersion) {
+                calendar = compiled;
+            }
+        }
+
+        return compiled;
+    }
+
+    public void invalidate() {
+        invalidateNow();
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                @Override
+                public void afterCompletion(final int status) {
+                    invalidateNow();
+                }
+
+            });
+        }
+    }
+
+    private synchronized void invalidateNow() {
+        calendar = null;
+        version++;
+    }
+
+}
@@ -0,0 +1,48 @@
+--
+-- ***************************************************************************
+-- Copyright (c) 2010 Qcadoo Limited
+-- Project: Qcadoo MES
+-- Version: 1.4
+--
+-- This file is part of Qcadoo.
+--
+-- Qcadoo is free software; you can redistribute it and/or modify
+-- it under the terms of the GNU Affero General Public License as published
+-- by the Free Software Foundation; either version 3 of the License,
+-- or (at your option) any later version.
+--
+-- This program is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty
+-- of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+-- See the GNU Affero General Public License for more details.
+--
+-- You should have received a copy of the GNU Affero General Public License
+-- along with this program; if not, write to the Free Software
+-- Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+-- ***************************************************************************
+--
+
+-- Autocomplete lookups filter product numbers, additional codes and pallet numbers with ilike '%q%', which only trigram
+-- indexes can serve.
+--
+-- Trigram indexes need pg_trgm extension, which has to be installed by the database owner before the application is
+-- started (CREATE EXTENSION IF NOT EXISTS pg_trgm;). Migrations don't create extensions - it needs privileges the
+-- application role usually doesn't have, and a failure would roll back all pending migrations. Without the extension the
+-- indexes are skipped with a warning, lookups still work with sequential scans. To create them after installing the
+-- extension, delete version 002_trigram_lookup_indexes from basic_schemamigration and restart the application.
+
+DO $$
+BEGIN
+    IF NOT EXISTS (SELECT 1 FROM pg_extension WHERE extname = 'pg_trgm') THEN
+        RAISE WARNING 'pg_trgm extension is not installed, trigram indexes of autocomplete lookups are not created';
+
+        RETURN;
+    END IF;
+
+    CREATE INDEX IF NOT EXISTS basic_product_number_trgm_idx ON basic_product USING gin (number gin_trgm_ops);
+
+    CREATE INDEX IF NOT EXISTS basic_additionalcode_code_trgm_idx ON basic_additionalcode USING gin (code gin_trgm_ops);
+
+    CREATE INDEX IF NOT EXISTS basic_palletnumber_number_trgm_idx ON basic_palletnumber USING gin (number gin_trgm_ops);
+END
+$$;
@@ -0,0 +1,105 @@
+package com.qcadoo.mes.basic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.qcadoo.mes.basic.LookupQueryCache.PageBookmark;
+
+public class LookupQueryCacheTest {
+
+    private static final String L_REGION = "documentPositions.1";
+
+    private static final String L_SIGNATURE = "SELECT * FROM q";
+
+    private LookupQueryCache lookupQueryCache;
+
+    @Before
+    public void init() {
+        lookupQueryCache = new LookupQueryCache();
+    }
+
+    @After
+    public void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    public final void shouldReturnCachedCountAndBookmark() {
+        // when
+        long version = lookupQueryCache.getVersion(L_REGION);
+
+        lookupQueryCache.putCount(L_REGION, version, L_SIGNATURE, 42);
+        lookupQueryCache.putBookmark(L_REGION, version, L_SIGNATURE, 1, new PageBookmark("A", 7L));
+
+        // then
+        assertEquals(Integer.valueOf(42), lookupQueryCache.getCount(L_REGION, L_SIGNATURE));
+        assertEquals("A", lookupQueryCache.getBookmark(L_REGION, L_SIGNATURE, 1).getSortValue());
+        assertEquals(Long.valueOf(7L), lookupQueryCache.getBookmark(L_REGION, L_SIGNATURE, 1).getId());
+        assertNull(lookupQueryCache.getBookmark(L_REGION, L_SIGNATURE, 2));
+        assertNull(lookupQueryCache.getCount("documentPositions.2", L_SIGNATURE));
+    }
+
+    @Test
+    public final void shouldForgetCountAndBookmarksAfterInvalidation() {
+        // given
+        long version = lookupQueryCache.getVersion(L_REGION);
+
+        lookupQueryCache.putCount(L_REGION, version, L_SIGNATURE, 42);
+        lookupQueryCache.putBookmark(L_REGION, version, L_SIGNATURE, 1, new PageBookmark("A", 7L));
+
+        // when
+        lookupQueryCache.invalidate(L_REGION);
+
+        // then
+        assertNull(lookupQueryCache.getCount(L_REGION, L_SIGNATURE));
+        assertNull(lookupQueryCache.getBookmark(L_REGION, L_SIGNATURE, 1));
+    }
+
+    @Test
+    public final void shouldDiscardPutsReadBeforeInvalidation() {
+        // given
+        long version = lookupQueryCache.getVersion(L_REGION);
+
+        lookupQueryCache.invalidate(L_REGION);
+
+        // when
+        lookupQueryCache.putCount(L_REGION, version, L_SIGNATURE, 42);
+        lookupQueryCache.putBookmark(L_REGION, version, L_SIGNATURE, 1, new PageBookmark("A", 7L));
+
+        // then
+        assertNull(lookupQueryCache.getCount(L_REGION, L_SIGNATURE));
+        assertNull(lookupQueryCache.getBookmark(L_REGION, L_SIGNATURE, 1));
+    }
+
+    @Test
+    public final void shouldInvalidateAgainAfterTransactionCompletion() {
+        // given
+        TransactionSynchronizationManager.initSynchronization();
+
+        lookupQueryCache.invalidate(L_REGION);
+
+        long version = lookupQueryCache.getVersion(L_REGION);
+
+        lookupQueryCache.putCount(L_REGION, version, L_SIGNATURE, 42);
+
+        // when
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+
+        synchronizations.forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+
+        // then
+        assertEquals(1, synchronizations.size());
+        assertNull(lookupQueryCache.getCount(L_REGION, L_SIGNATURE));
+    }
+
+}
@@ -0,0 +1,203 @@
+package com.qcadoo.mes.basic;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.basic.LookupQueryCache.PageBookmark;
+
+public class LookupUtilsTest {
+
+    private static final String L_ID = "id";
+
+    private static final String L_NUMBER = "number";
+
+    private static final Pattern L_TOKEN = Pattern.compile("\\(|\\)|[<>=]|[A-Za-z_:]+");
+
+    private LookupUtils lookupUtils;
+
+    @Before
+    public void init() {
+        lookupUtils = new LookupUtils();
+    }
+
+    @Test
+    public final void shouldSeekByIdOnly() {
+        // when
+        String ascending = lookupUtils.getSeekCondition(L_ID, false, new PageBookmark(5L, 5L));
+        String descending = lookupUtils.getSeekCondition(L_ID, true, new PageBookmark(5L, 5L));
+
+        // then
+        assertEquals("id > :seekId", ascending);
+        assertEquals("id < :seekId", descending);
+    }
+
+    @Test
+    public final void shouldSeekPastNullSortValues() {
+        // when
+        String ascending = lookupUtils.getSeekCondition(L_NUMBER, false, new PageBookmark(null, 5L));
+        String descending = lookupUtils.getSeekCondition(L_NUMBER, true, new PageBookmark(null, 5L));
+
+        // then
+        assertEquals("(number IS NULL AND id > :seekId)", ascending);
+        assertEquals("((number IS NULL AND id < :seekId) OR number IS NOT NULL)", descending);
+    }
+
+    @Test
+    public final void shouldReturnSamePagesAsOffsetPaging() {
+        // given
+        List<Map<String, Object>> rows = Lists.newArrayList();
+        Integer[] numbers = { 3, null, 1, 3, null, 2, 1, 3, null, 2, 5, 1, null, 4 };
+
+        for (int index = 0; index < numbers.length; index++) {
+            rows.add(row((long) (100 - index * 7 % 31), numbers[index]));
+        }
+
+        for (boolean descending : new boolean[] { false, true }) {
+            for (String sidx : new String[] { L_ID, L_NUMBER }) {
+                for (int perPage = 1; perPage <= 4; perPage++) {
+                    // when
+                    List<Map<String, Object>> sorted = rows.stream().sorted(getComparator(sidx, descending))
+                            .collect(Collectors.toList());
+                    List<Map<String, Object>> seeked = Lists.newArrayList();
+
+                    List<Map<String, Object>> page = sorted.subList(0, perPage);
+
+                    while (!page.isEmpty()) {
+                        seeked.addAll(page);
+
+                        Map<String, Object> last = page.get(page.size() - 1);
+                        PageBookmark bookmark = new PageBookmark(last.get(sidx), (Long) last.get(L_ID));
+                        String condition = lookupUtils.getSeekCondition(sidx, descending, bookmark);
+
+                        page = sorted.stream().filter(row -> evaluate(condition, row, bookmark)).limit(perPage)
+                                .collect(Collectors.toList());
+                    }
+
+                    // then
+                    assertEquals(sidx + (descending ? " desc " : " asc ") + perPage, sorted, seeked);
+                }
+            }
+        }
+    }
+
+    private Map<String, Object> row(final Long id, final Integer number) {
+        Map<String, Object> row = Maps.newHashMap();
+
+        row.put(L_ID, id);
+        row.put(L_NUMBER, number);
+
+        return row;
+    }
+
+    // same order as PostgreSQL: NULLs last in ascending and first in descending order, id as tiebreaker
+    private Comparator<Map<String, Object>> getComparator(final String sidx, final boolean descending) {
+        Comparator<Map<String, Object>> comparator = Comparator.comparing(row -> (Comparable) row.get(sidx),
+                Comparator.nullsLast(Comparator.naturalOrder()));
+
+        comparator = comparator.thenComparing(row -> (Long) row.get(L_ID));
+
+        return descending ? comparator.reversed() : comparator;
+    }
+
+    private boolean evaluate(final String condition, final Map<String, Object> row, final PageBookmark bookmark) {
+        LinkedList<String> tokens = new LinkedList<>();
+        Matcher matcher = L_TOKEN.matcher(condition);
+
+        while (matcher.find()) {
+            tokens.add(matcher.group());
+        }
+
+        Map<String, Object> values = Maps.newHashMap(row);
+
+        values.put(":seekSortValue", bookmark.getSortValue());
+        values.put(":seekId", bookmark.getId());
+
+        boolean result = parseOr(tokens, values);
+
+        assertEquals(condition, 0, tokens.size());
+
+        return result;
+    }
+
+    private boolean parseOr(final LinkedList<String> tokens, final Map<String, Object> values) {
+        boolean result = parseAnd(tokens, values);
+
+        while ("OR".equals(tokens.peek())) {
+            tokens.poll();
+            result |= parseAnd(tokens, values);
+        }
+
+        return result;
+    }
+
+    private boolean parseAnd(final LinkedList<String> tokens, final Map<String, Object> values) {
+        boolean result = parseFactor(tokens, values);
+
+        while ("AND".equals(tokens.peek())) {
+            tokens.poll();
+            result &= parseFactor(tokens, values);
+        }
+
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean parseFactor(final LinkedList<String> tokens, final Map<String, Object> values) {
+        if ("(".equals(tokens.peek())) {
+            tokens.poll();
+
+            boolean result = parseOr(tokens, values);
+
+            assertEquals(")", tokens.poll());
+
+            return result;
+        }
+
+        Object left = values.get(tokens.poll());
+        String operator = tokens.poll();
+
+        if ("IS".equals(operator)) {
+            if ("NOT".equals(tokens.peek())) {
+                tokens.poll();
+                assertEquals("NULL", tokens.poll());
+
+                return left != null;
+            }
+
+            assertEquals("NULL", tokens.poll());
+
+            return left == null;
+        }
+
+        Object right = values.get(tokens.poll());
+
+        // comparison with NULL is never true in SQL
+        if ((left == null) || (right == null)) {
+            return false;
+        }
+
+        int compare = ((Comparable<Object>) left).compareTo(right);
+
+        switch (operator) {
+            case "<":
+                return compare < 0;
+            case ">":
+                return compare > 0;
+            default:
+                return compare == 0;
+        }
+    }
+
+}
@@ -39,6 +39,7 @@ import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import com.qcadoo.mes.basic.shift.WorkingCalendarCache;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
@@ -69,6 +70,7 @@ public class ShiftsServiceTest {
         MockitoAnnotations.initMocks(this);
 
         ReflectionTestUtils.setField(shiftsService, "dataDefinitionService", dataDefinitionService);
+        ReflectionTestUtils.setField(shiftsService, "workingCalendarCache", new WorkingCalendarCache());
     }
 
     private EntityList mockEntityList(List<Entity> list) {
@@ -0,0 +1,147 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.jobs;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.base.Optional;
+import com.qcadoo.mes.basic.constants.AsyncJobFields;
+import com.qcadoo.mes.basic.constants.AsyncJobStatus;
+import com.qcadoo.mes.basic.constants.BasicConstants;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.model.api.search.SearchCriterion;
+import com.qcadoo.security.api.SecurityService;
+
+public class AsyncJobServiceTest {
+
+    private static final String L_TYPE = "test.job";
+
+    private static final String L_ENTITY_KEY = "order:7";
+
+    private static final Long L_JOB_ID = 1L;
+
+    private static final Long L_ENTITY_ID = 7L;
+
+    private AsyncJobService asyncJobService;
+
+    @Mock
+    private DataDefinitionService dataDefinitionService;
+
+    @Mock
+    private DataDefinition asyncJobDD;
+
+    @Mock
+    private SearchCriteriaBuilder searchCriteriaBuilder;
+
+    @Mock
+    private SecurityService securityService;
+
+    @Mock
+    private AsyncJobWorker asyncJobWorker;
+
+    @Mock
+    private AsyncJobQueue asyncJobQueue;
+
+    @Mock
+    private Entity job, newJob;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        asyncJobService = new AsyncJobService();
+
+        ReflectionTestUtils.setField(asyncJobService, "dataDefinitionService", dataDefinitionService);
+        ReflectionTestUtils.setField(asyncJobService, "securityService", securityService);
+        ReflectionTestUtils.setField(asyncJobService, "asyncJobWorker", asyncJobWorker);
+        ReflectionTestUtils.setField(asyncJobService, "asyncJobQueue", asyncJobQueue);
+
+        given(dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_ASYNC_JOB)).willReturn(asyncJobDD);
+        given(asyncJobDD.get(L_JOB_ID)).willReturn(job);
+        given(asyncJobDD.find()).willReturn(searchCriteriaBuilder);
+        given(asyncJobDD.create()).willReturn(newJob);
+        given(asyncJobDD.save(newJob)).willReturn(newJob);
+        given(searchCriteriaBuilder.add(any(SearchCriterion.class))).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.setMaxResults(1)).willReturn(searchCriteriaBuilder);
+    }
+
+    @Test
+    public final void shouldReturnPendingJobInsteadOfSubmittingNewOne() {
+        // given
+        given(asyncJobQueue.lockPending(L_TYPE, L_ENTITY_KEY)).willReturn(Optional.of(L_JOB_ID));
+
+        // when
+        Entity submittedJob = asyncJobService.submitCoalesced(L_TYPE, L_ENTITY_ID, L_ENTITY_KEY);
+
+        // then
+        assertEquals(job, submittedJob);
+        verify(asyncJobDD, never()).save(any(Entity.class));
+        verify(asyncJobWorker, never()).processQueue();
+    }
+
+    @Test
+    public final void shouldSubmitNewJobWhenThereIsNoPendingOne() {
+        // given
+        given(asyncJobQueue.lockPending(L_TYPE, L_ENTITY_KEY)).willReturn(Optional.<Long> absent());
+
+        // when
+        Entity submittedJob = asyncJobService.submitCoalesced(L_TYPE, L_ENTITY_ID, L_ENTITY_KEY);
+
+        // then
+        assertEquals(newJob, submittedJob);
+        verify(newJob).setField(AsyncJobFields.TYPE, L_TYPE);
+        verify(newJob).setField(AsyncJobFields.ENTITY_KEY, L_ENTITY_KEY);
+        verify(newJob).setField(AsyncJobFields.STATUS, AsyncJobStatus.PENDING.getStringValue());
+        verify(asyncJobDD).save(newJob);
+        verify(asyncJobWorker).processQueue();
+    }
+
+    @Test
+    public final void shouldKeepEntityIdOutOfIntegerRange() {
+        // given
+        Long entityId = Integer.MAX_VALUE + 1L;
+
+        given(asyncJobQueue.lockPending(L_TYPE, L_ENTITY_KEY)).willReturn(Optional.<Long> absent());
+
+        // when
+        asyncJobService.submitCoalesced(L_TYPE, entityId, L_ENTITY_KEY);
+
+        // then
+        verify(newJob).setField(AsyncJobFields.ENTITY_ID, "2147483648");
+    }
+
+}
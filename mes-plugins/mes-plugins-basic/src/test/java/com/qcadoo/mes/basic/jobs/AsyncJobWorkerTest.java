@@ -0,0 +1,210 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.jobs;
+
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.function.Supplier;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.basic.constants.AsyncJobFields;
+import com.qcadoo.mes.basic.constants.AsyncJobStatus;
+import com.qcadoo.mes.basic.constants.BasicConstants;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.validators.ErrorMessage;
+
+public class AsyncJobWorkerTest {
+
+    private static final String L_TYPE = "test.job";
+
+    private static final Long L_JOB_ID = 1L;
+
+    private static final Long L_ENTITY_ID = 7L;
+
+    private static final String L_ENTITY_KEY = "test:7";
+
+    private static final String L_CREATE_USER = "admin";
+
+    private AsyncJobWorker asyncJobWorker;
+
+    @Mock
+    private DataDefinitionService dataDefinitionService;
+
+    @Mock
+    private DataDefinition asyncJobDD;
+
+    @Mock
+    private AsyncJobQueue asyncJobQueue;
+
+    @Mock
+    private AsyncJobHandler asyncJobHandler;
+
+    @Mock
+    private Entity job, entity;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        asyncJobWorker = new AsyncJobWorker();
+
+        ReflectionTestUtils.setField(asyncJobWorker, "dataDefinitionService", dataDefinitionService);
+        ReflectionTestUtils.setField(asyncJobWorker, "asyncJobQueue", asyncJobQueue);
+        ReflectionTestUtils.setField(asyncJobWorker, "asyncJobHandlers", Lists.newArrayList(asyncJobHandler));
+
+        given(dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_ASYNC_JOB)).willReturn(asyncJobDD);
+        given(asyncJobDD.get(L_JOB_ID)).willReturn(job);
+        given(asyncJobQueue.claimNext()).willReturn(Optional.of(L_JOB_ID), Optional.<Long> absent());
+        given(asyncJobQueue.executeExclusively(anyString(), any(Supplier.class))).willAnswer(
+                invocation -> ((Supplier<?>) invocation.getArguments()[1]).get());
+
+        given(asyncJobHandler.getType()).willReturn(L_TYPE);
+
+        given(job.getId()).willReturn(L_JOB_ID);
+        given(job.getStringField(AsyncJobFields.TYPE)).willReturn(L_TYPE);
+        given(job.getStringField(AsyncJobFields.ENTITY_ID)).willReturn(L_ENTITY_ID.toString());
+        given(job.getStringField(AsyncJobFields.ENTITY_KEY)).willReturn(L_ENTITY_KEY);
+        given(job.getStringField(AsyncJobFields.CREATE_USER)).willReturn(L_CREATE_USER);
+        given(job.getIntegerField(AsyncJobFields.ATTEMPTS)).willReturn(1);
+        given(job.getIntegerField(AsyncJobFields.MAX_ATTEMPTS)).willReturn(3);
+
+        given(entity.getGlobalErrors()).willReturn(Collections.<ErrorMessage> emptyList());
+        given(entity.getErrors()).willReturn(Collections.<String, ErrorMessage> emptyMap());
+    }
+
+    @Test
+    public void shouldMarkJobAsSuccessfulWhenEntityIsValid() {
+        // given
+        given(asyncJobHandler.execute(L_ENTITY_ID)).willReturn(entity);
+        given(entity.isValid()).willReturn(true);
+
+        // when
+        asyncJobWorker.processQueue();
+
+        // then
+        verify(job).setField(AsyncJobFields.STATUS, AsyncJobStatus.SUCCESSFUL.getStringValue());
+        verify(asyncJobDD).save(job);
+    }
+
+    @After
+    public void clearSecurityContext() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    public void shouldExecuteJobExclusivelyAsUserWhoSubmittedIt() {
+        // given
+        given(asyncJobHandler.execute(L_ENTITY_ID)).willAnswer(invocation -> {
+            Assert.assertEquals(L_CREATE_USER, SecurityContextHolder.getContext().getAuthentication().getName());
+
+            return entity;
+        });
+        given(entity.isValid()).willReturn(true);
+
+        // when
+        asyncJobWorker.processQueue();
+
+        // then
+        verify(asyncJobQueue).executeExclusively(eq(L_ENTITY_KEY), any(Supplier.class));
+        verify(job).setField(AsyncJobFields.STATUS, AsyncJobStatus.SUCCESSFUL.getStringValue());
+        Assert.assertNull(SecurityContextHolder.getContext().getAuthentication());
+    }
+
+    @Test
+    public void shouldMarkJobAsFailedWithoutRetryWhenEntityIsInvalid() {
+        // given
+        given(asyncJobHandler.execute(L_ENTITY_ID)).willReturn(entity);
+        given(entity.isValid()).willReturn(false);
+        given(entity.getGlobalErrors()).willReturn(Lists.newArrayList(new ErrorMessage("test.error", "1")));
+
+        // when
+        asyncJobWorker.processQueue();
+
+        // then
+        verify(job).setField(AsyncJobFields.STATUS, AsyncJobStatus.FAILED.getStringValue());
+        verify(job).setField(AsyncJobFields.MESSAGES, "[{\"message\":\"test.error\",\"vars\":[\"1\"]}]");
+        verify(job, never()).setField(AsyncJobFields.STATUS, AsyncJobStatus.PENDING.getStringValue());
+    }
+
+    @Test
+    public void shouldRetryJobWhenHandlerThrowsException() {
+        // given
+        given(asyncJobHandler.execute(L_ENTITY_ID)).willThrow(new IllegalStateException());
+
+        // when
+        asyncJobWorker.processQueue();
+
+        // then
+        verify(job).setField(AsyncJobFields.STATUS, AsyncJobStatus.PENDING.getStringValue());
+        verify(job).setField(eq(AsyncJobFields.NEXT_ATTEMPT_DATE), any(Date.class));
+        verify(asyncJobDD).save(job);
+    }
+
+    @Test
+    public void shouldMarkJobAsFailedWhenAttemptsAreExhausted() {
+        // given
+        given(asyncJobHandler.execute(L_ENTITY_ID)).willThrow(new IllegalStateException());
+        given(job.getIntegerField(AsyncJobFields.ATTEMPTS)).willReturn(3);
+
+        // when
+        asyncJobWorker.processQueue();
+
+        // then
+        verify(job).setField(AsyncJobFields.STATUS, AsyncJobStatus.FAILED.getStringValue());
+        verify(job, never()).setField(AsyncJobFields.STATUS, AsyncJobStatus.PENDING.getStringValue());
+    }
+
+    @Test
+    public void shouldMarkJobAsFailedWhenThereIsNoHandler() {
+        // given
+        given(asyncJobHandler.getType()).willReturn("other.job");
+
+        // when
+        asyncJobWorker.processQueue();
+
+        // then
+        verify(job).setField(AsyncJobFields.STATUS, AsyncJobStatus.FAILED.getStringValue());
+        verify(asyncJobHandler, never()).execute(L_ENTITY_ID);
+    }
+
+}
@@ -0,0 +1,252 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.product.importing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import org.hibernate.Session;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.interceptor.DefaultTransactionAttribute;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.internal.api.HibernateService;
+
+public class ProductImportBatchServiceTest {
+
+    private ProductImportBatchService productImportBatchService;
+
+    @Mock
+    private RowProcessorFactory rowProcessorFactory;
+
+    @Mock
+    private HibernateService hibernateService;
+
+    @Mock
+    private Session session;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionStatus transactionStatus;
+
+    private TransactionBinder transactionBinder;
+
+    private ImportStatus importStatus;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        productImportBatchService = new ProductImportBatchService(rowProcessorFactory, hibernateService);
+
+        given(hibernateService.getCurrentSession()).willReturn(session);
+        given(rowProcessorFactory.save(any(ParsedRow.class), any(ImportStatus.class))).willAnswer(invocation -> {
+            ((ImportStatus) invocation.getArguments()[1]).incrementRowsProcessedCounter();
+            return !((ParsedRow) invocation.getArguments()[0]).hasErrors();
+        });
+
+        transactionStatus = new SimpleTransactionStatus();
+        given(transactionManager.getTransaction(any(TransactionDefinition.class))).willReturn(transactionStatus);
+        transactionBinder = new TransactionBinder();
+        transactionBinder.begin(transactionManager);
+
+        importStatus = new ImportStatus();
+    }
+
+    @After
+    public void cleanUp() {
+        transactionBinder.end();
+    }
+
+    @Test
+    public void shouldCommitValidBatchAndCountItsRows() {
+        // given
+        List<ParsedRow> parsedRows = Lists.newArrayList(validRow(1), validRow(2));
+
+        // when
+        boolean committed = productImportBatchService.saveInNewTransaction(parsedRows, importStatus);
+
+        // then
+        assertTrue(committed);
+        assertFalse(transactionStatus.isRollbackOnly());
+        assertEquals(2, importStatus.getRowsProcessed());
+        assertEquals(2, importStatus.getRowsImported());
+    }
+
+    @Test
+    public void shouldRollbackOnlyBatchWithInvalidRow() {
+        // given
+        ParsedRow invalidRow = invalidRow(2);
+        given(rowProcessorFactory.parse(invalidRow.getSheetRow())).willReturn(invalidRow);
+
+        // when
+        boolean committed = productImportBatchService.saveInNewTransaction(Lists.newArrayList(validRow(1), invalidRow),
+                importStatus);
+
+        // then
+        assertFalse(committed);
+        assertTrue(transactionStatus.isRollbackOnly());
+        assertEquals(2, importStatus.getRowsProcessed());
+        assertEquals(0, importStatus.getRowsImported());
+    }
+
+    @Test
+    public void shouldBindRowsWithErrorsAgainBeforeSaving() {
+        // given
+        ParsedRow rowBoundOnWorker = invalidRow(1);
+        ParsedRow rowBoundAgain = validRow(1);
+        given(rowProcessorFactory.parse(rowBoundOnWorker.getSheetRow())).willReturn(rowBoundAgain);
+
+        // when
+        boolean valid = productImportBatchService.save(Lists.newArrayList(rowBoundOnWorker), importStatus);
+
+        // then
+        assertTrue(valid);
+        verify(rowProcessorFactory).save(rowBoundAgain, importStatus);
+        verify(rowProcessorFactory, never()).save(rowBoundOnWorker, importStatus);
+    }
+
+    @Test
+    public void shouldFlushAndClearSessionAfterSavingAllOrNothingBatch() {
+        // given
+        ParsedRow parsedRow = validRow(1);
+
+        // when
+        productImportBatchService.saveAndFlush(Lists.newArrayList(parsedRow), importStatus);
+
+        // then
+        InOrder inOrder = inOrder(rowProcessorFactory, session);
+        inOrder.verify(rowProcessorFactory).save(parsedRow, importStatus);
+        inOrder.verify(session).flush();
+        inOrder.verify(session).clear();
+        assertFalse(transactionStatus.isRollbackOnly());
+    }
+
+    @Test
+    public void shouldCountAllRowsOfSuccessfulAllOrNothingImport() throws Exception {
+        // when
+        productImportBatchService.importAllOrNothing(importStatus,
+                () -> productImportBatchService.saveAndFlush(Lists.newArrayList(validRow(1), validRow(2)), importStatus));
+
+        // then
+        assertFalse(transactionStatus.isRollbackOnly());
+        assertEquals(2, importStatus.getRowsImported());
+    }
+
+    @Test
+    public void shouldRollbackWholeImportWhenAnyRowHasErrors() throws Exception {
+        // given
+        ParsedRow invalidRow = invalidRow(3);
+        given(rowProcessorFactory.parse(invalidRow.getSheetRow())).willReturn(invalidRow);
+
+        // when
+        productImportBatchService.importAllOrNothing(importStatus, () -> {
+            productImportBatchService.saveAndFlush(Lists.newArrayList(validRow(1), validRow(2)), importStatus);
+            productImportBatchService.saveAndFlush(Lists.newArrayList(invalidRow), importStatus);
+        });
+
+        // then
+        assertTrue(transactionStatus.isRollbackOnly());
+        assertEquals(3, importStatus.getRowsProcessed());
+        assertEquals(0, importStatus.getRowsImported());
+    }
+
+    @Test
+    public void shouldParseRowsWithLocaleOfImportingUser() {
+        // given
+        Locale workerLocale = Locale.ENGLISH;
+        LocaleContextHolder.setLocale(workerLocale);
+        List<Locale> parsingLocales = Lists.newArrayList();
+        given(rowProcessorFactory.parse(any(SheetRow.class))).willAnswer(invocation -> {
+            parsingLocales.add(LocaleContextHolder.getLocale());
+            return validRow(((SheetRow) invocation.getArguments()[0]).getRowIndex());
+        });
+
+        // when
+        List<ParsedRow> parsedRows = productImportBatchService.parse(Lists.newArrayList(sheetRow(1), sheetRow(2)),
+                Locale.GERMAN);
+
+        // then
+        assertEquals(2, parsedRows.size());
+        assertEquals(Lists.newArrayList(Locale.GERMAN, Locale.GERMAN), parsingLocales);
+        assertEquals(workerLocale, LocaleContextHolder.getLocale());
+
+        LocaleContextHolder.resetLocaleContext();
+    }
+
+    private SheetRow sheetRow(final int rowIndex) {
+        return new SheetRow(rowIndex, new String[SpreadsheetSchemaInfo.COLUMN_NUMBER]);
+    }
+
+    private ParsedRow validRow(final int rowIndex) {
+        return new ParsedRow(sheetRow(rowIndex), mock(Entity.class), Collections.emptyList());
+    }
+
+    private ParsedRow invalidRow(final int rowIndex) {
+        return new ParsedRow(sheetRow(rowIndex), mock(Entity.class),
+                Lists.newArrayList(new ImportError(rowIndex, "number", "qcadooView.validate.field.error.missing")));
+    }
+
+    /**
+     * Binds transaction status to current thread, as transactional proxy would, so that service can mark it rollback only.
+     */
+    private static class TransactionBinder extends TransactionAspectSupport {
+
+        private TransactionInfo transactionInfo;
+
+        void begin(final PlatformTransactionManager transactionManager) {
+            transactionInfo = createTransactionIfNecessary(transactionManager, new DefaultTransactionAttribute(),
+                    ProductImportBatchServiceTest.class.getName());
+        }
+
+        void end() {
+            cleanupTransactionInfo(transactionInfo);
+        }
+    }
+
+}
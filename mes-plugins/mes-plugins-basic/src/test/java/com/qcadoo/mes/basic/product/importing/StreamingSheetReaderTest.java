@@ -0,0 +1,142 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.product.importing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Locale;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.Lists;
+
+public class StreamingSheetReaderTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private StreamingSheetReader streamingSheetReader;
+
+    private XSSFWorkbook workbook;
+
+    private XSSFSheet sheet;
+
+    @Before
+    public void init() {
+        streamingSheetReader = new StreamingSheetReader();
+
+        workbook = new XSSFWorkbook();
+        sheet = workbook.createSheet();
+        sheet.createRow(0).createCell(0).setCellValue("number");
+    }
+
+    @Test
+    public void shouldReadTrimmedValuesOfDataRows() throws IOException {
+        // given
+        Row first = sheet.createRow(1);
+        first.createCell(0).setCellValue(" P1 ");
+        first.createCell(1).setCellValue("Product 1");
+        first.createCell(2).setCellValue("   ");
+        first.createCell(10).setCellValue(12.5);
+        first.createCell(SpreadsheetSchemaInfo.COLUMN_NUMBER).setCellValue("not imported");
+        Row second = sheet.createRow(2);
+        second.createCell(0).setCellValue("P2");
+
+        // when
+        List<SheetRow> rows = read();
+
+        // then
+        assertEquals(2, rows.size());
+        assertEquals(1, rows.get(0).getRowIndex());
+        assertEquals("P1", rows.get(0).getValue(0));
+        assertEquals("Product 1", rows.get(0).getValue(1));
+        assertNull(rows.get(0).getValue(2));
+        assertNull(rows.get(0).getValue(3));
+        assertEquals("12.5", rows.get(0).getValue(10));
+        assertEquals(2, rows.get(1).getRowIndex());
+        assertEquals("P2", rows.get(1).getValue(0));
+    }
+
+    @Test
+    public void shouldStopAtFirstEmptyRow() throws IOException {
+        // given
+        sheet.createRow(1).createCell(0).setCellValue("P1");
+        sheet.createRow(2).createCell(0).setCellValue(" ");
+        sheet.createRow(3).createCell(0).setCellValue("P3");
+
+        // when
+        List<SheetRow> rows = read();
+
+        // then
+        assertEquals(1, rows.size());
+        assertEquals("P1", rows.get(0).getValue(0));
+    }
+
+    @Test
+    public void shouldStopAtFirstMissingRow() throws IOException {
+        // given
+        sheet.createRow(1).createCell(0).setCellValue("P1");
+        sheet.createRow(3).createCell(0).setCellValue("P3");
+
+        // when
+        List<SheetRow> rows = read();
+
+        // then
+        assertEquals(1, rows.size());
+        assertEquals("P1", rows.get(0).getValue(0));
+    }
+
+    @Test
+    public void shouldReadNothingFromSheetWithHeaderOnly() throws IOException {
+        // when
+        List<SheetRow> rows = read();
+
+        // then
+        assertEquals(0, rows.size());
+    }
+
+    private List<SheetRow> read() throws IOException {
+        File file = temporaryFolder.newFile("products.xlsx");
+        try (OutputStream outputStream = new FileOutputStream(file)) {
+            workbook.write(outputStream);
+        }
+
+        List<SheetRow> rows = Lists.newArrayList();
+        streamingSheetReader.read(file, Locale.ENGLISH, rows::add);
+        return rows;
+    }
+
+}
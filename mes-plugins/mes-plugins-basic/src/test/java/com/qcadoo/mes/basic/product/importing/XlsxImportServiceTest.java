@@ -0,0 +1,201 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.product.importing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.model.api.Entity;
+
+public class XlsxImportServiceTest {
+
+    private static final File L_FILE = new File("products.xlsx");
+
+    private XlsxImportService xlsxImportService;
+
+    @Mock
+    private StreamingSheetReader streamingSheetReader;
+
+    @Mock
+    private ProductImportBatchService productImportBatchService;
+
+    private ThreadPoolTaskExecutor parsingExecutor;
+
+    private List<List<Integer>> savedBatches;
+
+    @Before
+    public void init() throws Exception {
+        MockitoAnnotations.initMocks(this);
+
+        parsingExecutor = new ThreadPoolTaskExecutor();
+        parsingExecutor.setCorePoolSize(4);
+        parsingExecutor.setMaxPoolSize(4);
+        parsingExecutor.initialize();
+
+        xlsxImportService = new XlsxImportService(streamingSheetReader, productImportBatchService, parsingExecutor);
+
+        given(productImportBatchService.parse(anyListOf(SheetRow.class), any(Locale.class))).willAnswer(
+                invocation -> parse((List<SheetRow>) invocation.getArguments()[0]));
+
+        savedBatches = Lists.newArrayList();
+        given(productImportBatchService.saveAndFlush(anyListOf(ParsedRow.class), any(ImportStatus.class))).willAnswer(
+                invocation -> savedBatches.add(rowIndexes((List<ParsedRow>) invocation.getArguments()[0])));
+        given(productImportBatchService.saveInNewTransaction(anyListOf(ParsedRow.class), any(ImportStatus.class)))
+                .willAnswer(invocation -> savedBatches.add(rowIndexes((List<ParsedRow>) invocation.getArguments()[0])));
+        doAnswer(invocation -> {
+            ((ProductImportBatchService.BatchesImport) invocation.getArguments()[1]).run();
+            return null;
+        }).when(productImportBatchService).importAllOrNothing(any(ImportStatus.class),
+                any(ProductImportBatchService.BatchesImport.class));
+    }
+
+    @After
+    public void cleanUp() {
+        parsingExecutor.shutdown();
+    }
+
+    @Test
+    public void shouldSaveAllBatchesInOneTransactionInAllOrNothingMode() throws Exception {
+        // given
+        givenSheetRows(5);
+
+        // when
+        xlsxImportService.importFrom(L_FILE, new ImportOptions(ImportOptions.Mode.ALL_OR_NOTHING, 2));
+
+        // then
+        verify(productImportBatchService).importAllOrNothing(any(ImportStatus.class),
+                any(ProductImportBatchService.BatchesImport.class));
+        verify(productImportBatchService, never()).saveInNewTransaction(anyListOf(ParsedRow.class), any(ImportStatus.class));
+        assertEquals(Lists.newArrayList(Lists.newArrayList(1, 2), Lists.newArrayList(3, 4), Lists.newArrayList(5)),
+                savedBatches);
+    }
+
+    @Test
+    public void shouldSaveEveryBatchInOwnTransactionWithoutSurroundingOneInCommitValidBatchesMode() throws Exception {
+        // given
+        givenSheetRows(5);
+
+        // when
+        xlsxImportService.importFrom(L_FILE, ImportOptions.commitValidBatches(2));
+
+        // then
+        verify(productImportBatchService, never()).importAllOrNothing(any(ImportStatus.class),
+                any(ProductImportBatchService.BatchesImport.class));
+        verify(productImportBatchService, never()).saveAndFlush(anyListOf(ParsedRow.class), any(ImportStatus.class));
+        assertEquals(Lists.newArrayList(Lists.newArrayList(1, 2), Lists.newArrayList(3, 4), Lists.newArrayList(5)),
+                savedBatches);
+    }
+
+    @Test
+    public void shouldParseSlicesOfBatchConcurrentlyAndKeepRowOrder() throws Exception {
+        // given
+        int parsingThreads = (Integer) ReflectionTestUtils.getField(xlsxImportService, "parsingThreads");
+        CountDownLatch allSlicesStarted = new CountDownLatch(parsingThreads);
+        Set<String> parsingThreadNames = Collections.newSetFromMap(new ConcurrentHashMap<>());
+        given(productImportBatchService.parse(anyListOf(SheetRow.class), any(Locale.class))).willAnswer(invocation -> {
+            parsingThreadNames.add(Thread.currentThread().getName());
+            allSlicesStarted.countDown();
+            // slices wait for each other, so test fails if they aren't parsed at the same time
+            assertTrue(allSlicesStarted.await(10, TimeUnit.SECONDS));
+            return parse((List<SheetRow>) invocation.getArguments()[0]);
+        });
+        givenSheetRows(4 * parsingThreads);
+
+        // when
+        xlsxImportService.importFrom(L_FILE, ImportOptions.commitValidBatches(4 * parsingThreads));
+
+        // then
+        assertEquals(parsingThreads, parsingThreadNames.size());
+        assertEquals(Lists.newArrayList(IntStream.rangeClosed(1, 4 * parsingThreads).boxed().collect(Collectors.toList())),
+                savedBatches);
+    }
+
+    @Test
+    public void shouldRethrowParsingException() throws Exception {
+        // given
+        IllegalStateException parsingException = new IllegalStateException("lookup failed");
+        given(productImportBatchService.parse(anyListOf(SheetRow.class), any(Locale.class))).willThrow(parsingException);
+        givenSheetRows(3);
+
+        // when
+        try {
+            xlsxImportService.importFrom(L_FILE, ImportOptions.commitValidBatches(2));
+            fail();
+        } catch (IllegalStateException e) {
+            // then
+            assertSame(parsingException, e);
+        }
+        verify(productImportBatchService, never()).saveInNewTransaction(anyListOf(ParsedRow.class), any(ImportStatus.class));
+    }
+
+    private void givenSheetRows(final int count) throws Exception {
+        doAnswer(invocation -> {
+            Consumer<SheetRow> rowConsumer = (Consumer<SheetRow>) invocation.getArguments()[2];
+            for (int rowIndex = SpreadsheetSchemaInfo.START_ROW_INDEX; rowIndex <= count; rowIndex++) {
+                rowConsumer.accept(new SheetRow(rowIndex, new String[SpreadsheetSchemaInfo.COLUMN_NUMBER]));
+            }
+            return null;
+        }).when(streamingSheetReader).read(any(File.class), any(Locale.class), any(Consumer.class));
+    }
+
+    private List<ParsedRow> parse(final List<SheetRow> sheetRows) {
+        return sheetRows.stream().map(sheetRow -> new ParsedRow(sheetRow, mock(Entity.class), Collections.emptyList()))
+                .collect(Collectors.toList());
+    }
+
+    private List<Integer> rowIndexes(final List<ParsedRow> parsedRows) {
+        return parsedRows.stream().map(ParsedRow::getRowIndex).collect(Collectors.toList());
+    }
+
+}
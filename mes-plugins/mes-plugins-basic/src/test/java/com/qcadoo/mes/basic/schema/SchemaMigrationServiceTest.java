@@ -0,0 +1,150 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.schema;
+
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.argThat;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.startsWith;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import org.hamcrest.BaseMatcher;
+import org.hamcrest.Description;
+import org.hamcrest.Matcher;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.ResourcePatternResolver;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+
+public class SchemaMigrationServiceTest {
+
+    private SchemaMigrationService schemaMigrationService;
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Mock
+    private JdbcOperations jdbcOperations;
+
+    @Mock
+    private ResourcePatternResolver resourcePatternResolver;
+
+    @Before
+    public void init() throws IOException {
+        MockitoAnnotations.initMocks(this);
+
+        schemaMigrationService = new SchemaMigrationService();
+
+        ReflectionTestUtils.setField(schemaMigrationService, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(schemaMigrationService, "resourcePatternResolver", resourcePatternResolver);
+
+        given(jdbcTemplate.getJdbcOperations()).willReturn(jdbcOperations);
+
+        Resource second = mockScript("002_second.sql", "SELECT 2;");
+        Resource first = mockScript("001_first.sql", "SELECT 1;");
+        Resource third = mockScript("003_third.sql", "SELECT 3;");
+
+        given(resourcePatternResolver.getResources("classpath*:schema/migrations/*.sql")).willReturn(
+                new Resource[] { second, third, first });
+    }
+
+    @Test
+    public void shouldApplyNotAppliedMigrationsInOrderOfFileNames() {
+        // given
+        given(jdbcOperations.queryForList(anyString(), eq(String.class))).willReturn(Lists.newArrayList("002_second"));
+
+        // when
+        schemaMigrationService.migrate();
+
+        // then
+        InOrder inOrder = inOrder(jdbcTemplate, jdbcOperations);
+
+        inOrder.verify(jdbcTemplate).queryForObject(anyString(), anyMapOf(String.class, Object.class), eq(Integer.class));
+        inOrder.verify(jdbcOperations).execute("SELECT 1;");
+        inOrder.verify(jdbcTemplate).update(anyString(), argThat(hasVersion("001_first")));
+        inOrder.verify(jdbcOperations).execute("SELECT 3;");
+        inOrder.verify(jdbcTemplate).update(anyString(), argThat(hasVersion("003_third")));
+
+        verify(jdbcOperations, never()).execute("SELECT 2;");
+        verify(jdbcTemplate, times(2)).update(anyString(), anyMapOf(String.class, Object.class));
+    }
+
+    @Test
+    public void shouldNotApplyAnythingWhenAllMigrationsAreApplied() {
+        // given
+        given(jdbcOperations.queryForList(anyString(), eq(String.class))).willReturn(
+                Lists.newArrayList("001_first", "002_second", "003_third"));
+
+        // when
+        schemaMigrationService.migrate();
+
+        // then
+        verify(jdbcOperations, never()).execute(startsWith("SELECT"));
+        verify(jdbcTemplate, never()).update(anyString(), anyMapOf(String.class, Object.class));
+    }
+
+    private Resource mockScript(final String fileName, final String sql) throws IOException {
+        Resource script = mock(Resource.class);
+
+        given(script.getFilename()).willReturn(fileName);
+        given(script.getInputStream()).willReturn(new ByteArrayInputStream(sql.getBytes(StandardCharsets.UTF_8)));
+
+        return script;
+    }
+
+    private Matcher<Map<String, Object>> hasVersion(final String version) {
+        return new BaseMatcher<Map<String, Object>>() {
+
+            @Override
+            public boolean matches(final Object item) {
+                return version.equals(((Map<?, ?>) item).get("version"));
+            }
+
+            @Override
+            public void describeTo(final Description description) {
+                description.appendText("parameters of version " + version);
+            }
+        };
+    }
+
+}
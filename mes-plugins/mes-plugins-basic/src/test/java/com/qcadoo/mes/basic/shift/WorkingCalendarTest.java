@@ -0,0 +1,194 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.shift;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+import java.util.List;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.basic.constants.ShiftFields;
+import com.qcadoo.mes.basic.constants.ShiftTimetableExceptionFields;
+import com.qcadoo.mes.basic.constants.TimetableExceptionType;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.EntityList;
+
+public class WorkingCalendarTest {
+
+    private static final String[][] WORKING_DAYS = { { ShiftFields.MONDAY_WORKING, ShiftFields.MONDAY_HOURS },
+            { ShiftFields.TUESDAY_WORKING, ShiftFields.TUESDAY_HOURS }, { ShiftFields.WENSDAY_WORKING, ShiftFields.WENSDAY_HOURS },
+            { ShiftFields.THURSDAY_WORKING, ShiftFields.THURSDAY_HOURS }, { ShiftFields.FRIDAY_WORKING, ShiftFields.FRIDAY_HOURS } };
+
+    private static final long HOUR = 3600L;
+
+    private static final DateTime MONDAY = new DateTime(2017, 1, 2, 0, 0, DateTimeZone.UTC);
+
+    private Entity shift;
+
+    @Before
+    public final void init() {
+        shift = mock(Entity.class);
+
+        for (String[] day : WORKING_DAYS) {
+            given(shift.getBooleanField(day[0])).willReturn(true);
+            given(shift.getStringField(day[1])).willReturn("06:00-14:00");
+        }
+
+        withExceptions();
+    }
+
+    @Test
+    public final void shouldAddWorkingTimeAcrossDays() {
+        // when
+        WorkingCalendar calendar = compile(shift);
+
+        // then
+        assertEquals(MONDAY.plusDays(1).plusHours(7).toDate(), calendar.addWorkingSeconds(MONDAY.plusHours(10).toDate(), 5 * HOUR));
+    }
+
+    @Test
+    public final void shouldSubtractWorkingTimeAcrossDays() {
+        // when
+        WorkingCalendar calendar = compile(shift);
+
+        // then
+        assertEquals(MONDAY.plusHours(10).toDate(),
+                calendar.subtractWorkingSeconds(MONDAY.plusDays(1).plusHours(7).toDate(), 5 * HOUR));
+    }
+
+    @Test
+    public final void shouldAddWorkingTimeAcrossYears() {
+        // when
+        WorkingCalendar calendar = compile(shift);
+
+        // then
+        assertEquals(MONDAY.plusHours(7).toDate(), calendar.addWorkingSeconds(MONDAY.minusDays(3).plusHours(13).toDate(), 2 * HOUR));
+        assertEquals(MONDAY.minusDays(3).plusHours(13).toDate(), calendar.subtractWorkingSeconds(MONDAY.plusHours(7).toDate(), 2 * HOUR));
+    }
+
+    @Test
+    public final void shouldMoveZeroWorkingTimeToNearestWorkingTime() {
+        // when
+        WorkingCalendar calendar = compile(shift);
+
+        // then
+        DateTime saturday = MONDAY.plusDays(5).plusHours(10);
+
+        assertEquals(MONDAY.plusDays(7).plusHours(6).toDate(), calendar.addWorkingSeconds(saturday.toDate(), 0L));
+        assertEquals(MONDAY.plusDays(4).plusHours(14).toDate(), calendar.subtractWorkingSeconds(saturday.toDate(), 0L));
+    }
+
+    @Test
+    public final void shouldEndNightHoursOnNextDay() {
+        // given
+        given(shift.getStringField(ShiftFields.MONDAY_HOURS)).willReturn("22:00-06:00");
+
+        // when
+        WorkingCalendar calendar = compile(shift);
+
+        // then
+        assertEquals(MONDAY.plusDays(1).plusHours(4).toDate(), calendar.addWorkingSeconds(MONDAY.plusHours(23).toDate(), 5 * HOUR));
+    }
+
+    @Test
+    public final void shouldApplyTimetableExceptions() {
+        // given
+        withExceptions(mockTimetableException(TimetableExceptionType.FREE_TIME, MONDAY, MONDAY.plusDays(1)),
+                mockTimetableException(TimetableExceptionType.WORK_TIME, MONDAY.plusDays(5).plusHours(8),
+                        MONDAY.plusDays(5).plusHours(12)));
+
+        // when
+        WorkingCalendar calendar = compile(shift);
+
+        // then
+        assertEquals(MONDAY.plusDays(1).plusHours(7).toDate(), calendar.addWorkingSeconds(MONDAY.toDate(), HOUR));
+        assertEquals(4 * HOUR,
+                calendar.getWorkingSecondsBetween(MONDAY.plusDays(4).plusHours(14).toDate(), MONDAY.plusDays(7).plusHours(6).toDate()));
+    }
+
+    @Test
+    public final void shouldCountWorkingTimeOfShiftsOnce() {
+        // given
+        Entity secondShift = mock(Entity.class);
+
+        given(secondShift.getBooleanField(ShiftFields.MONDAY_WORKING)).willReturn(true);
+        given(secondShift.getStringField(ShiftFields.MONDAY_HOURS)).willReturn("12:00-20:00");
+        EntityList exceptions = mockEntityList(Lists.<Entity> newArrayList());
+        given(secondShift.getHasManyField(ShiftFields.TIMETABLE_EXCEPTIONS)).willReturn(exceptions);
+
+        // when
+        WorkingCalendar calendar = compile(shift, secondShift);
+
+        // then
+        assertEquals(14 * HOUR, calendar.getWorkingSecondsBetween(MONDAY.toDate(), MONDAY.plusDays(1).toDate()));
+    }
+
+    @Test
+    public final void shouldReturnNullWhenThereIsNoWorkingTime() {
+        // given
+        for (String[] day : WORKING_DAYS) {
+            given(shift.getBooleanField(day[0])).willReturn(false);
+        }
+
+        // when
+        WorkingCalendar calendar = compile(shift);
+
+        // then
+        assertNull(calendar.addWorkingSeconds(MONDAY.toDate(), HOUR));
+        assertNull(calendar.subtractWorkingSeconds(MONDAY.toDate(), HOUR));
+    }
+
+    private WorkingCalendar compile(final Entity... shifts) {
+        return WorkingCalendar.compile(Lists.newArrayList(shifts), DateTimeZone.UTC);
+    }
+
+    private void withExceptions(final Entity... exceptions) {
+        EntityList timetableExceptions = mockEntityList(Lists.newArrayList(exceptions));
+        given(shift.getHasManyField(ShiftFields.TIMETABLE_EXCEPTIONS)).willReturn(timetableExceptions);
+    }
+
+    private EntityList mockEntityList(final List<Entity> entities) {
+        EntityList entityList = mock(EntityList.class);
+        given(entityList.iterator()).willReturn(entities.iterator());
+        given(entityList.isEmpty()).willReturn(entities.isEmpty());
+        return entityList;
+    }
+
+    private Entity mockTimetableException(final TimetableExceptionType type, final DateTime from, final DateTime to) {
+        Entity timetableException = mock(Entity.class);
+        given(timetableException.getStringField(ShiftTimetableExceptionFields.TYPE)).willReturn(type.getStringValue());
+        given(timetableException.getDateField(ShiftTimetableExceptionFields.FROM_DATE)).willReturn(from.toDate());
+        given(timetableException.getDateField(ShiftTimetableExceptionFields.TO_DATE)).willReturn(to.toDate());
+        return timetableException;
+    }
+
+}
@@ -23,7 +23,7 @@ import com.qcadoo.model.api.Entity;
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
-    @RequestMapping(value = "/cmmsMachineParts/timeUsageReport.xls", method = RequestMethod.GET)
+    @RequestMapping(value = "/cmmsMachineParts/timeUsageReport.xlsx", method = RequestMethod.GET)
     public ModelAndView generatePlannedEventsReport(@RequestParam("filterId") final Long filterId) {
         DataDefinition dataDefinition = dataDefinitionService.get(CmmsMachinePartsConstants.PLUGIN_IDENTIFIER,
                 CmmsMachinePartsConstants.MODEL_TIME_USAGE_REPORT_FILTER);
@@ -0,0 +1,52 @@
+package com.qcadoo.mes.cmmsMachineParts.reports.xls;
+
+import java.util.Map;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.springframework.web.servlet.view.AbstractView;
+
+/**
+ * Xlsx view writing rows through {@link SXSSFWorkbook} - only last {@value #ROW_ACCESS_WINDOW_SIZE} rows of sheet are kept in
+ * memory, older ones are flushed to temporary file. Rows have to be written in order, row flushed out of window can't be
+ * accessed again.
+ */
+public abstract class AbstractStreamingXlsxView extends AbstractView {
+
+    private static final int ROW_ACCESS_WINDOW_SIZE = 100;
+
+    public AbstractStreamingXlsxView() {
+        setContentType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+    }
+
+    @Override
+    protected boolean generatesDownloadContent() {
+        return true;
+    }
+
+    @Override
+    protected final void renderMergedOutputModel(final Map<String, Object> model, final HttpServletRequest request,
+            final HttpServletResponse response) throws Exception {
+        SXSSFWorkbook workbook = new SXSSFWorkbook(ROW_ACCESS_WINDOW_SIZE);
+        workbook.setCompressTempFiles(true);
+
+        try {
+            buildExcelDocument(model, workbook, request, response);
+
+            response.setContentType(getContentType());
+
+            ServletOutputStream out = response.getOutputStream();
+            workbook.write(out);
+            out.flush();
+        } finally {
+            workbook.dispose();
+        }
+    }
+
+    protected abstract void buildExcelDocument(final Map<String, Object> model, final SXSSFWorkbook workbook,
+            final HttpServletRequest request, final HttpServletResponse response);
+
+}
@@ -0,0 +1,96 @@
+package com.qcadoo.mes.cmmsMachineParts.reports.xls;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.PreparedStatementCreatorFactory;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.SqlParameter;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterUtils;
+import org.springframework.jdbc.core.namedparam.ParsedSql;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Reads report rows with forward-only cursor, fetching {@value #FETCH_SIZE} rows at a time, so whole result is never held in
+ * memory. Cursor is kept open only inside read-only transaction (PostgreSQL driver fetches everything in autocommit mode).
+ */
+@Service
+public class StreamingQueryService {
+
+    private static final int FETCH_SIZE = 500;
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Transactional(readOnly = true)
+    public <T> void stream(final String query, final Map<String, ?> parameters, final RowMapper<T> rowMapper,
+            final Consumer<T> rowConsumer) {
+        int[] rowNum = { 0 };
+
+        jdbcTemplate.getJdbcOperations().query(createPreparedStatementCreator(query, parameters),
+                (RowCallbackHandler) resultSet -> rowConsumer.accept(rowMapper.mapRow(resultSet, rowNum[0]++)));
+    }
+
+    /**
+     * Streams rows grouped by key. Query has to be ordered by group key, so rows of one group are consecutive - only current
+     * group is buffered and passed to consumer as soon as next group starts.
+     */
+    @Transactional(readOnly = true)
+    public <T> void streamGroups(final String query, final Map<String, ?> parameters, final RowMapper<T> rowMapper,
+            final Function<T, ?> groupKey, final Consumer<List<T>> groupConsumer) {
+        List<T> group = Lists.newArrayList();
+        Object[] currentKey = { null };
+
+        stream(query, parameters, rowMapper, row -> {
+            Object key = groupKey.apply(row);
+
+            if (!group.isEmpty() && !Objects.equals(key, currentKey[0])) {
+                groupConsumer.accept(Lists.newArrayList(group));
+                group.clear();
+            }
+
+            currentKey[0] = key;
+            group.add(row);
+        });
+
+        if (!group.isEmpty()) {
+            groupConsumer.accept(group);
+        }
+    }
+
+    private PreparedStatementCreator createPreparedStatementCreator(final String query, final Map<String, ?> parameters) {
+        ParsedSql parsedSql = NamedParameterUtils.parseSqlStatement(query);
+        SqlParameterSource parameterSource = new MapSqlParameterSource(parameters);
+
+        String queryToUse = NamedParameterUtils.substituteNamedParameters(parsedSql, parameterSource);
+        List<SqlParameter> declaredParameters = NamedParameterUtils.buildSqlParameterList(parsedSql, parameterSource);
+        Object[] values = NamedParameterUtils.buildValueArray(parsedSql, parameterSource, null);
+
+        PreparedStatementCreatorFactory factory = new PreparedStatementCreatorFactory(queryToUse, declaredParameters);
+        factory.setResultSetType(ResultSet.TYPE_FORWARD_ONLY);
+
+        PreparedStatementCreator preparedStatementCreator = factory.newPreparedStatementCreator(values);
+
+        return connection -> {
+            PreparedStatement preparedStatement = preparedStatementCreator.createPreparedStatement(connection);
+            preparedStatement.setFetchSize(FETCH_SIZE);
+
+            return preparedStatement;
+        };
+    }
+
+}
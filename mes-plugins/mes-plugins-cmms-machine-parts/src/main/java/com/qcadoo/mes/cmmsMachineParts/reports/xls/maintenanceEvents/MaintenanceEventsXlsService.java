@@ -13,7 +13,9 @@ import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellStyle;
 import org.apache.poi.ss.usermodel.DataFormat;
 import org.apache.poi.ss.usermodel.Font;
-import org.apache.poi.xssf.usermodel.*;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -34,205 +36,103 @@ public class MaintenanceEventsXlsService {
     @Autowired
     private MaintenanceEventsXLSDataProvider dataProvider;
 
-    public void buildExcelDocument(final XSSFWorkbook xssfWorkbook, final Map<String, Object> filters, final Locale locale) {
-        XSSFSheet sheet = xssfWorkbook.createSheet(translationService.translate("cmmsMachineParts.eventsList.report.title",
+    public void buildExcelDocument(final Workbook workbook, final Map<String, Object> filters, final Locale locale) {
+        Sheet sheet = workbook.createSheet(translationService.translate("cmmsMachineParts.eventsList.report.title",
                 locale));
-        fillHeaderRow(xssfWorkbook, sheet, 0, locale);
+        fillHeaderRow(workbook, sheet, 0, locale);
 
-        DataFormat dataFormat = xssfWorkbook.createDataFormat();
-        CellStyle numberStyle = xssfWorkbook.createCellStyle();
+        DataFormat dataFormat = workbook.createDataFormat();
+        CellStyle numberStyle = workbook.createCellStyle();
         numberStyle.setDataFormat(dataFormat.getFormat("0.00###"));
 
-        CellStyle dateStyle = xssfWorkbook.createCellStyle();
+        CellStyle dateStyle = workbook.createCellStyle();
         dateStyle.setDataFormat(dataFormat.getFormat("yyyy-mm-dd"));
 
-        CellStyle dateTimeStyle = xssfWorkbook.createCellStyle();
+        CellStyle dateTimeStyle = workbook.createCellStyle();
         dateTimeStyle.setDataFormat(dataFormat.getFormat("yyyy-mm-dd hh:mm"));
 
-        CellStyle timeStyle = xssfWorkbook.createCellStyle();
+        CellStyle timeStyle = workbook.createCellStyle();
         timeStyle.setDataFormat(dataFormat.getFormat("[HH]:MM:SS"));
 
-        List<MaintenanceEventDTO> events = dataProvider.getEvents(filters);
-        int rowCounter = 1;
-        for (MaintenanceEventDTO maintenanceEventDTO : events) {
-            rowCounter = fillEventsRows(xssfWorkbook, sheet, maintenanceEventDTO, rowCounter, numberStyle, dateStyle,
-                    dateTimeStyle, timeStyle, locale);
-        }
-
-    }
-
-    private int fillEventsRows(XSSFWorkbook xssfWorkbook, XSSFSheet sheet, MaintenanceEventDTO event, int rowCounter,
-            CellStyle numberStyle, CellStyle dateStyle, CellStyle dateTimeStyle, CellStyle timeStyle, Locale locale) {
-        int rowCounterCopy = rowCounter;
-        int partsCounter = rowCounterCopy;
-        int realizationsCounter = rowCounterCopy;
-
-        XSSFFont font = xssfWorkbook.createFont();
+        Font font = workbook.createFont();
         font.setFontHeightInPoints((short) 10);
         font.setFontName("ARIAL");
         font.setItalic(false);
-        font.setBold(false);
         font.setBoldweight(Font.BOLDWEIGHT_NORMAL);
 
         font.setColor(HSSFColor.BLACK.index);
 
-        XSSFRow eventLine = sheet.createRow(rowCounterCopy);
+        int[] rowCounter = { 1 };
+        dataProvider.processEvents(filters, maintenanceEventDTO -> rowCounter[0] = fillEventsRows(sheet, maintenanceEventDTO,
+                rowCounter[0], font, numberStyle, dateStyle, dateTimeStyle, timeStyle, locale));
 
-        XSSFCell number = eventLine.createCell(MaintenanceEventsElementsReportEnum.NUMBER.getPosition());
+    }
+
+    private int fillEventsRows(Sheet sheet, MaintenanceEventDTO event, int rowCounter, Font font, CellStyle numberStyle,
+            CellStyle dateStyle, CellStyle dateTimeStyle, CellStyle timeStyle, Locale locale) {
+        Row eventLine = sheet.createRow(rowCounter);
+
+        Cell number = eventLine.createCell(MaintenanceEventsElementsReportEnum.NUMBER.getPosition());
         number.setCellValue(event.getNumber());
         number.getCellStyle().setFont(font);
 
-        XSSFCell type = eventLine.createCell(MaintenanceEventsElementsReportEnum.TYPE.getPosition());
+        Cell type = eventLine.createCell(MaintenanceEventsElementsReportEnum.TYPE.getPosition());
         type.setCellValue(XlsDataType.getValue(translationService, locale, event.getType()));
 
-        XSSFCell factoryNumber = eventLine.createCell(MaintenanceEventsElementsReportEnum.FACTORY_NUMBER.getPosition());
+        Cell factoryNumber = eventLine.createCell(MaintenanceEventsElementsReportEnum.FACTORY_NUMBER.getPosition());
         factoryNumber.setCellValue(event.getFactoryNumber());
 
-        XSSFCell divisionNumber = eventLine.createCell(MaintenanceEventsElementsReportEnum.DIVISION_NUMBER.getPosition());
+        Cell divisionNumber = eventLine.createCell(MaintenanceEventsElementsReportEnum.DIVISION_NUMBER.getPosition());
         divisionNumber.setCellValue(event.getDivisionNumber());
 
-        XSSFCell productionLineNumber = eventLine.createCell(MaintenanceEventsElementsReportEnum.PRODUCTION_LINE_NUMBER
+        Cell productionLineNumber = eventLine.createCell(MaintenanceEventsElementsReportEnum.PRODUCTION_LINE_NUMBER
                 .getPosition());
         productionLineNumber.setCellValue(event.getProductionLineNumber());
 
-        XSSFCell workstationNumber = eventLine.createCell(MaintenanceEventsElementsReportEnum.WORKSTATION_NUMBER.getPosition());
+        Cell workstationNumber = eventLine.createCell(MaintenanceEventsElementsReportEnum.WORKSTATION_NUMBER.getPosition());
         workstationNumber.setCellValue(event.getWorkstationNumber());
 
-        XSSFCell subassemblyNumber = eventLine.createCell(MaintenanceEventsElementsReportEnum.SUNASSEMBY_NUMBER.getPosition());
+        Cell subassemblyNumber = eventLine.createCell(MaintenanceEventsElementsReportEnum.SUNASSEMBY_NUMBER.getPosition());
         subassemblyNumber.setCellValue(event.getSubassemblyNumber());
 
-        XSSFCell faultTypeName = eventLine.createCell(MaintenanceEventsElementsReportEnum.FAULT_TYPE_NAME.getPosition());
+        Cell faultTypeName = eventLine.createCell(MaintenanceEventsElementsReportEnum.FAULT_TYPE_NAME.getPosition());
         faultTypeName.setCellValue(event.getFaultTypeName());
 
-        XSSFCell description = eventLine.createCell(MaintenanceEventsElementsReportEnum.DESCRIPTION.getPosition());
+        Cell description = eventLine.createCell(MaintenanceEventsElementsReportEnum.DESCRIPTION.getPosition());
         description.setCellValue(event.getDescription());
 
-        XSSFCell personReceiving = eventLine.createCell(MaintenanceEventsElementsReportEnum.PERSON_RECEIVING.getPosition());
+        Cell personReceiving = eventLine.createCell(MaintenanceEventsElementsReportEnum.PERSON_RECEIVING.getPosition());
         personReceiving.setCellValue(event.getPersonReceiving());
 
-        XSSFCell sourceCost = eventLine.createCell(MaintenanceEventsElementsReportEnum.SOURCE_COST.getPosition());
+        Cell sourceCost = eventLine.createCell(MaintenanceEventsElementsReportEnum.SOURCE_COST.getPosition());
         sourceCost.setCellValue(event.getSourceCost());
 
+        fillStateChanges(event, eventLine, dateStyle, dateTimeStyle, locale);
+
+        Cell solutionDescription = eventLine.createCell(MaintenanceEventsElementsReportEnum.SOLUTION_DESCRIPTION
+                .getPosition());
+        solutionDescription.setCellValue(event.getSolutionDescription());
+
+        List<WorkTimeDTO> workTimes = event.getWorkTimes();
+        List<MachinePartDTO> machineParts = event.getMachineParts();
         int rowsToAdd = event.subListSize();
-        if (rowsToAdd > 0) {
-            for (int i = 1; i < rowsToAdd; i++) {
-                int r = rowCounterCopy + i;
-                XSSFRow subEventLine = sheet.createRow(r);
-                XSSFCell subnumber = subEventLine.createCell(MaintenanceEventsElementsReportEnum.NUMBER.getPosition());
+
+        for (int i = 0; i < rowsToAdd; i++) {
+            Row subEventLine = eventLine;
+
+            if (i > 0) {
+                subEventLine = sheet.createRow(rowCounter + i);
+                Cell subnumber = subEventLine.createCell(MaintenanceEventsElementsReportEnum.NUMBER.getPosition());
                 subnumber.setCellValue(event.getNumber());
             }
-        }
-
-        boolean first = true;
-        if (rowsToAdd > 0) {
-            for (WorkTimeDTO workTime : event.getWorkTimes()) {
-
-                if (first) {
-                    XSSFCell staffWorkTimeWorker = eventLine
-                            .createCell(MaintenanceEventsElementsReportEnum.STAFF_WORK_TIME_WORKER.getPosition());
-                    staffWorkTimeWorker.setCellValue(workTime.getStaffWorkTimeWorker());
-
-                    XSSFCell staffWorkTimeLaborTime = eventLine
-                            .createCell(MaintenanceEventsElementsReportEnum.STAFF_WORK_TIME_LABOR_TIME.getPosition());
-                    if (workTime.getStaffWorkTimeLaborTime() != null) {
-                        staffWorkTimeLaborTime.setCellStyle(timeStyle);
-                        staffWorkTimeLaborTime.setCellValue(convertTimeInternal(XlsDataType.getValue(workTime
-                                .getStaffWorkTimeLaborTime())));
-                        staffWorkTimeLaborTime.setCellType(Cell.CELL_TYPE_NUMERIC);
-                    }
-                    first = false;
-
-                } else {
-                    realizationsCounter++;
-                    XSSFRow subEventLine = sheet.getRow(realizationsCounter);
-
-                    XSSFCell staffWorkTimeWorker = subEventLine
-                            .createCell(MaintenanceEventsElementsReportEnum.STAFF_WORK_TIME_WORKER.getPosition());
-                    staffWorkTimeWorker.setCellValue(workTime.getStaffWorkTimeWorker());
-
-                    XSSFCell staffWorkTimeLaborTime = subEventLine
-                            .createCell(MaintenanceEventsElementsReportEnum.STAFF_WORK_TIME_LABOR_TIME.getPosition());
-                    if (workTime.getStaffWorkTimeLaborTime() != null) {
-
-                        staffWorkTimeLaborTime.setCellStyle(timeStyle);
-                        staffWorkTimeLaborTime.setCellValue(convertTimeInternal(XlsDataType.getValue(workTime
-                                .getStaffWorkTimeLaborTime())));
-                        staffWorkTimeLaborTime.setCellType(Cell.CELL_TYPE_NUMERIC);
-                    }
-                }
+            if (i < workTimes.size()) {
+                fillWorkTime(subEventLine, workTimes.get(i), timeStyle);
             }
-
-            first = true;
-            for (MachinePartDTO part : event.getMachineParts()) {
-                if (first) {
-                    XSSFCell partNumber = eventLine.createCell(MaintenanceEventsElementsReportEnum.PART_NUMBER.getPosition());
-                    partNumber.setCellValue(part.getPartNumber());
-
-                    XSSFCell partName = eventLine.createCell(MaintenanceEventsElementsReportEnum.PART_NAME.getPosition());
-                    partName.setCellValue(part.getPartName());
-
-                    XSSFCell warehouseNumber = eventLine.createCell(MaintenanceEventsElementsReportEnum.WAREHOUSE_NUMBER
-                            .getPosition());
-                    warehouseNumber.setCellValue(part.getWarehouseNumber());
-
-                    XSSFCell partPlannedQuantity = eventLine.createCell(MaintenanceEventsElementsReportEnum.PART_PLANNED_QUANTITY
-                            .getPosition());
-                    partPlannedQuantity.setCellStyle(numberStyle);
-                    partPlannedQuantity.setCellType(Cell.CELL_TYPE_NUMERIC);
-                    if (part.getPartPlannedQuantity() != null) {
-                        partPlannedQuantity.setCellValue(part.getPartPlannedQuantity().setScale(5).doubleValue());
-                    }
-                    XSSFCell partUnit = eventLine.createCell(MaintenanceEventsElementsReportEnum.PART_UNIT.getPosition());
-                    partUnit.setCellValue(part.getPartUnit());
-
-                    XSSFCell value = eventLine.createCell(MaintenanceEventsElementsReportEnum.VALUE.getPosition());
-                    value.setCellStyle(numberStyle);
-                    value.setCellType(Cell.CELL_TYPE_NUMERIC);
-                    if (part.getValue() != null) {
-                        value.setCellValue(part.getValue().setScale(5).doubleValue());
-                    }
-                    first = false;
-
-                } else {
-                    partsCounter++;
-                    XSSFRow subEventLine = sheet.getRow(partsCounter);
-
-                    XSSFCell partNumber = subEventLine.createCell(MaintenanceEventsElementsReportEnum.PART_NUMBER.getPosition());
-                    partNumber.setCellValue(part.getPartNumber());
-
-                    XSSFCell partName = subEventLine.createCell(MaintenanceEventsElementsReportEnum.PART_NAME.getPosition());
-                    partName.setCellValue(part.getPartName());
-
-                    XSSFCell warehouseNumber = subEventLine.createCell(MaintenanceEventsElementsReportEnum.WAREHOUSE_NUMBER
-                            .getPosition());
-                    warehouseNumber.setCellValue(part.getWarehouseNumber());
-
-                    XSSFCell partPlannedQuantity = subEventLine
-                            .createCell(MaintenanceEventsElementsReportEnum.PART_PLANNED_QUANTITY.getPosition());
-                    partPlannedQuantity.setCellStyle(numberStyle);
-                    partPlannedQuantity.setCellType(Cell.CELL_TYPE_NUMERIC);
-                    if (part.getPartPlannedQuantity() != null) {
-                        partPlannedQuantity.setCellValue(part.getPartPlannedQuantity().setScale(5).doubleValue());
-                    }
-                    XSSFCell partUnit = subEventLine.createCell(MaintenanceEventsElementsReportEnum.PART_UNIT.getPosition());
-                    partUnit.setCellValue(part.getPartUnit());
-
-                    XSSFCell value = subEventLine.createCell(MaintenanceEventsElementsReportEnum.VALUE.getPosition());
-                    value.setCellStyle(numberStyle);
-                    value.setCellType(Cell.CELL_TYPE_NUMERIC);
-                    if (part.getValue() != null) {
-                        value.setCellValue(part.getValue().setScale(5).doubleValue());
-                    }
-                }
+            if (i < machineParts.size()) {
+                fillMachinePart(subEventLine, machineParts.get(i), numberStyle);
             }
         }
 
-        fillStateChanges(event, eventLine, dateStyle, dateTimeStyle, locale);
-
-        XSSFCell solutionDescription = eventLine.createCell(MaintenanceEventsElementsReportEnum.SOLUTION_DESCRIPTION
-                .getPosition());
-        solutionDescription.setCellValue(event.getSolutionDescription());
-
         if (rowsToAdd > 1) {
             return rowCounter + rowsToAdd;
         } else {
@@ -241,59 +141,101 @@ public class MaintenanceEventsXlsService {
 
     }
 
-    private void fillStateChanges(MaintenanceEventDTO event, XSSFRow eventLine, CellStyle dateStyle, CellStyle dateTimeStyle,
+    private void fillWorkTime(Row subEventLine, WorkTimeDTO workTime, CellStyle timeStyle) {
+        Cell staffWorkTimeWorker = subEventLine.createCell(MaintenanceEventsElementsReportEnum.STAFF_WORK_TIME_WORKER
+                .getPosition());
+        staffWorkTimeWorker.setCellValue(workTime.getStaffWorkTimeWorker());
+
+        Cell staffWorkTimeLaborTime = subEventLine.createCell(MaintenanceEventsElementsReportEnum.STAFF_WORK_TIME_LABOR_TIME
+                .getPosition());
+        if (workTime.getStaffWorkTimeLaborTime() != null) {
+            staffWorkTimeLaborTime.setCellStyle(timeStyle);
+            staffWorkTimeLaborTime.setCellValue(convertTimeInternal(XlsDataType.getValue(workTime.getStaffWorkTimeLaborTime())));
+            staffWorkTimeLaborTime.setCellType(Cell.CELL_TYPE_NUMERIC);
+        }
+    }
+
+    private void fillMachinePart(Row subEventLine, MachinePartDTO part, CellStyle numberStyle) {
+        Cell partNumber = subEventLine.createCell(MaintenanceEventsElementsReportEnum.PART_NUMBER.getPosition());
+        partNumber.setCellValue(part.getPartNumber());
+
+        Cell partName = subEventLine.createCell(MaintenanceEventsElementsReportEnum.PART_NAME.getPosition());
+        partName.setCellValue(part.getPartName());
+
+        Cell warehouseNumber = subEventLine.createCell(MaintenanceEventsElementsReportEnum.WAREHOUSE_NUMBER.getPosition());
+        warehouseNumber.setCellValue(part.getWarehouseNumber());
+
+        Cell partPlannedQuantity = subEventLine.createCell(MaintenanceEventsElementsReportEnum.PART_PLANNED_QUANTITY
+                .getPosition());
+        partPlannedQuantity.setCellStyle(numberStyle);
+        partPlannedQuantity.setCellType(Cell.CELL_TYPE_NUMERIC);
+        if (part.getPartPlannedQuantity() != null) {
+            partPlannedQuantity.setCellValue(part.getPartPlannedQuantity().setScale(5).doubleValue());
+        }
+        Cell partUnit = subEventLine.createCell(MaintenanceEventsElementsReportEnum.PART_UNIT.getPosition());
+        partUnit.setCellValue(part.getPartUnit());
+
+        Cell value = subEventLine.createCell(MaintenanceEventsElementsReportEnum.VALUE.getPosition());
+        value.setCellStyle(numberStyle);
+        value.setCellType(Cell.CELL_TYPE_NUMERIC);
+        if (part.getValue() != null) {
+            value.setCellValue(part.getValue().setScale(5).doubleValue());
+        }
+    }
+
+    private void fillStateChanges(MaintenanceEventDTO event, Row eventLine, CellStyle dateStyle, CellStyle dateTimeStyle,
             Locale locale) {
 
-        XSSFCell createDate = eventLine.createCell(MaintenanceEventsElementsReportEnum.CREATE_DATE.getPosition());
+        Cell createDate = eventLine.createCell(MaintenanceEventsElementsReportEnum.CREATE_DATE.getPosition());
         if (event.getCreateDate() != null) {
             createDate.setCellValue(event.getCreateDate());
             createDate.setCellStyle(dateTimeStyle);
         }
-        XSSFCell createUser = eventLine.createCell(MaintenanceEventsElementsReportEnum.CREATE_USER.getPosition());
+        Cell createUser = eventLine.createCell(MaintenanceEventsElementsReportEnum.CREATE_USER.getPosition());
         createUser.setCellValue(event.getCreateUser());
 
-        XSSFCell dateBoot = eventLine.createCell(MaintenanceEventsElementsReportEnum.DATE_BOOT.getPosition());
+        Cell dateBoot = eventLine.createCell(MaintenanceEventsElementsReportEnum.DATE_BOOT.getPosition());
         dateBoot.setCellStyle(dateTimeStyle);
         Date _dateBoot = getDateForState(MaintenanceEventStateStringValues.IN_PROGRESS, event.getStateChange());
         if (_dateBoot != null) {
             dateBoot.setCellValue(_dateBoot);
         }
-        XSSFCell dateBootUser = eventLine.createCell(MaintenanceEventsElementsReportEnum.DATE_BOOT_USER.getPosition());
+        Cell dateBootUser = eventLine.createCell(MaintenanceEventsElementsReportEnum.DATE_BOOT_USER.getPosition());
         dateBootUser.setCellValue(getWorkerForState(MaintenanceEventStateStringValues.IN_PROGRESS, event.getStateChange()));
 
-        XSSFCell dateApplication = eventLine.createCell(MaintenanceEventsElementsReportEnum.DATE_APPLICATION.getPosition());
+        Cell dateApplication = eventLine.createCell(MaintenanceEventsElementsReportEnum.DATE_APPLICATION.getPosition());
         dateApplication.setCellStyle(dateTimeStyle);
 
         Date _dateApplication = getDateForState(MaintenanceEventStateStringValues.EDITED, event.getStateChange());
         if (_dateApplication != null) {
             dateApplication.setCellValue(_dateApplication);
         }
-        XSSFCell dateApplicationUser = eventLine.createCell(MaintenanceEventsElementsReportEnum.DATE_APPLICATION_USER
+        Cell dateApplicationUser = eventLine.createCell(MaintenanceEventsElementsReportEnum.DATE_APPLICATION_USER
                 .getPosition());
         dateApplicationUser.setCellValue(getWorkerForState(MaintenanceEventStateStringValues.EDITED, event.getStateChange()));
 
-        XSSFCell dateAcceptance = eventLine.createCell(MaintenanceEventsElementsReportEnum.DATE_ACCEPTANCE.getPosition());
+        Cell dateAcceptance = eventLine.createCell(MaintenanceEventsElementsReportEnum.DATE_ACCEPTANCE.getPosition());
         dateAcceptance.setCellStyle(dateTimeStyle);
         Date _dateAcceptance = getDateForState(MaintenanceEventStateStringValues.ACCEPTED, event.getStateChange());
         if (_dateAcceptance != null) {
             dateAcceptance.setCellValue(_dateAcceptance);
         }
-        XSSFCell dateAcceptanceUser = eventLine
+        Cell dateAcceptanceUser = eventLine
                 .createCell(MaintenanceEventsElementsReportEnum.DATE_ACCEPTANCE_USER.getPosition());
         dateAcceptanceUser.setCellValue(getWorkerForState(MaintenanceEventStateStringValues.ACCEPTED, event.getStateChange()));
 
-        XSSFCell endDate = eventLine.createCell(MaintenanceEventsElementsReportEnum.END_DATE.getPosition());
+        Cell endDate = eventLine.createCell(MaintenanceEventsElementsReportEnum.END_DATE.getPosition());
         endDate.setCellStyle(dateTimeStyle);
 
         Date _endDate = getDateForState(MaintenanceEventStateStringValues.CLOSED, event.getStateChange());
         if (_endDate != null) {
             endDate.setCellValue(_endDate);
         }
-        XSSFCell endDateUser = eventLine.createCell(MaintenanceEventsElementsReportEnum.END_DATE_USER.getPosition());
+        Cell endDateUser = eventLine.createCell(MaintenanceEventsElementsReportEnum.END_DATE_USER.getPosition());
 
         endDateUser.setCellValue(getWorkerForState(MaintenanceEventStateStringValues.CLOSED, event.getStateChange()));
 
-        XSSFCell state = eventLine.createCell(MaintenanceEventsElementsReportEnum.STATE.getPosition());
+        Cell state = eventLine.createCell(MaintenanceEventsElementsReportEnum.STATE.getPosition());
         state.setCellValue(XlsDataType.getValue(translationService, locale, event.getState()));
     }
 
@@ -315,26 +257,25 @@ public class MaintenanceEventsXlsService {
         return "";
     }
 
-    private void fillHeaderRow(XSSFWorkbook xssfWorkbook, XSSFSheet sheet, Integer rowNum, Locale locale) {
-        XSSFRow headerLine = sheet.createRow(rowNum);
+    private void fillHeaderRow(Workbook workbook, Sheet sheet, Integer rowNum, Locale locale) {
+        Row headerLine = sheet.createRow(rowNum);
 
-        XSSFFont font = xssfWorkbook.createFont();
+        Font font = workbook.createFont();
         font.setFontHeightInPoints((short) 10);
         font.setFontName("ARIAL");
         font.setItalic(false);
-        font.setBold(true);
         font.setBoldweight(Font.BOLDWEIGHT_BOLD);
 
         font.setColor(HSSFColor.BLACK.index);
-        XSSFCellStyle style = xssfWorkbook.createCellStyle();
+        CellStyle style = workbook.createCellStyle();
         style.setFont(font);
 
         Lists.newArrayList(MaintenanceEventsElementsReportEnum.values()).forEach(
                 e -> createHeaderCell(e, headerLine, style, locale));
     }
 
-    private void createHeaderCell(MaintenanceEventsElementsReportEnum e, XSSFRow headerLine, XSSFCellStyle style, Locale locale) {
-        XSSFCell headerCell = headerLine.createCell(e.getPosition());
+    private void createHeaderCell(MaintenanceEventsElementsReportEnum e, Row headerLine, CellStyle style, Locale locale) {
+        Cell headerCell = headerLine.createCell(e.getPosition());
         headerCell.setCellValue(e.getLabel(translationService, locale));
         headerCell.setCellStyle(style);
     }
@@ -1,25 +1,40 @@
 package com.qcadoo.mes.cmmsMachineParts.reports.xls.maintenanceEvents;
 
-import com.qcadoo.report.api.xls.abstractview.AbstractXLSXView;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import com.qcadoo.localization.api.TranslationService;
+import com.qcadoo.localization.api.utils.DateUtils;
+import com.qcadoo.mes.cmmsMachineParts.reports.xls.AbstractStreamingXlsxView;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.i18n.LocaleContextHolder;
 import org.springframework.stereotype.Component;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.text.SimpleDateFormat;
+import java.util.Date;
 import java.util.Map;
 
 @Component
-public class MaintenanceEventsXlsView extends AbstractXLSXView {
+public class MaintenanceEventsXlsView extends AbstractStreamingXlsxView {
 
     @Autowired
     private MaintenanceEventsXlsService maintenanceEventsXlsService;
 
+    @Autowired
+    private TranslationService translationService;
+
     @Override
-    protected void buildExcelDocument(Map<String, Object> filters, XSSFWorkbook xssfWorkbook, HttpServletRequest request,
+    protected void buildExcelDocument(Map<String, Object> filters, SXSSFWorkbook workbook, HttpServletRequest request,
             HttpServletResponse response){
-        maintenanceEventsXlsService.buildExcelDocument(xssfWorkbook, filters, LocaleContextHolder.getLocale());
+        response.setHeader("Content-Disposition", "attachment; filename=\"" + generateFilename() + ".xlsx\"");
+        maintenanceEventsXlsService.buildExcelDocument(workbook, filters, LocaleContextHolder.getLocale());
+    }
+
+    private String generateFilename() {
+        String reportTitle = translationService.translate("cmmsMachineParts.eventsList.report.title",
+                LocaleContextHolder.getLocale());
+        String date = new SimpleDateFormat(DateUtils.L_REPORT_DATE_TIME_FORMAT, LocaleContextHolder.getLocale()).format(new Date());
+        return reportTitle + "_" + date;
     }
 
 }
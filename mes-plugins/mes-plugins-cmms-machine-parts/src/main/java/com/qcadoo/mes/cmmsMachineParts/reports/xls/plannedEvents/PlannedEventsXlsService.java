@@ -15,7 +15,9 @@ import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellStyle;
 import org.apache.poi.ss.usermodel.DataFormat;
 import org.apache.poi.ss.usermodel.Font;
-import org.apache.poi.xssf.usermodel.*;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.i18n.LocaleContextHolder;
 import org.springframework.stereotype.Service;
@@ -45,9 +47,8 @@ public class PlannedEventsXlsService {
         return translationService.translate(PlannedEventsXlsConstants.REPORT_TITLE, locale);
     }
 
-    public void buildExcelContent(final XSSFWorkbook workbook, final XSSFSheet sheet, final Map<String, Object> filters,
+    public void buildExcelContent(final Workbook workbook, final Sheet sheet, final Map<String, Object> filters,
             final Locale locale) {
-        List<PlannedEventDTO> events = plannedEventsXLSDataProvider.getEvents(filters);
         fillHeaderRow(workbook, sheet, 0, locale);
         DataFormat dataFormat = workbook.createDataFormat();
         CellStyle numberStyle = workbook.createCellStyle();
@@ -62,229 +63,151 @@ public class PlannedEventsXlsService {
         CellStyle timeStyle = workbook.createCellStyle();
         timeStyle.setDataFormat(dataFormat.getFormat("[HH]:MM:SS"));
 
-        int rowCounter = 1;
-        for (PlannedEventDTO plannedEventDTO : events) {
-            rowCounter = fillEventsRows(workbook, sheet, plannedEventDTO, rowCounter++, numberStyle, dateStyle, dateTimeStyle,
-                    timeStyle, locale);
-        }
+        Font font = workbook.createFont();
+        font.setFontName(HSSFFont.FONT_ARIAL);
+        font.setFontHeightInPoints((short) 10);
+        font.setBoldweight(Font.BOLDWEIGHT_NORMAL);
+
+        int[] rowCounter = { 1 };
+        plannedEventsXLSDataProvider.processEvents(filters, plannedEventDTO -> rowCounter[0] = fillEventsRows(sheet,
+                plannedEventDTO, rowCounter[0], font, numberStyle, dateStyle, dateTimeStyle, timeStyle, locale));
     }
 
-    private void fillHeaderRow(final XSSFWorkbook workbook, final XSSFSheet sheet, Integer rowNum, final Locale locale) {
-        XSSFRow headerLine = sheet.createRow(rowNum);
-        XSSFFont font = workbook.createFont();
+    private void fillHeaderRow(final Workbook workbook, final Sheet sheet, Integer rowNum, final Locale locale) {
+        Row headerLine = sheet.createRow(rowNum);
+        Font font = workbook.createFont();
         font.setFontHeightInPoints((short) 10);
         font.setFontName("ARIAL");
         font.setItalic(false);
-        font.setBold(true);
         font.setBoldweight(Font.BOLDWEIGHT_BOLD);
 
         font.setColor(HSSFColor.BLACK.index);
-        XSSFCellStyle style = workbook.createCellStyle();
+        CellStyle style = workbook.createCellStyle();
 
         style.setFont(font);
 
         int colNumber = 0;
         for (String column : PlannedEventsXlsConstants.ALL_COLUMNS) {
-            XSSFCell headerCell = headerLine.createCell(colNumber);
+            Cell headerCell = headerLine.createCell(colNumber);
             headerCell.setCellValue(translationService.translate(column, locale));
             headerCell.setCellStyle(style);
             colNumber++;
         }
     }
 
-    private int fillEventsRows(final XSSFWorkbook workbook, final XSSFSheet sheet, final PlannedEventDTO event, int rowCounter,
+    private int fillEventsRows(final Sheet sheet, final PlannedEventDTO event, int rowCounter, Font font,
             CellStyle numberStyle, CellStyle dateStyle, CellStyle dateTimeStyle, CellStyle timeStyle, final Locale locale) {
-        Font font = workbook.createFont();
-        font.setFontName(HSSFFont.FONT_ARIAL);
-        font.setFontHeightInPoints((short) 10);
-        font.setBoldweight(Font.BOLDWEIGHT_NORMAL);
+        Row eventLine = sheet.createRow(rowCounter);
 
-        int rowCounterCopy = rowCounter;
-        int partsCounter = rowCounterCopy;
-        int realizationsCounter = rowCounterCopy;
-        XSSFRow eventLine = sheet.createRow(rowCounterCopy);
-
-        XSSFCell numberCell = eventLine.createCell(0);
+        Cell numberCell = eventLine.createCell(0);
         numberCell.setCellValue(event.getNumber());
         numberCell.getCellStyle().setFont(font);
-        XSSFCell typeCell = eventLine.createCell(1);
+        Cell typeCell = eventLine.createCell(1);
         typeCell.setCellValue(translationService.translate(event.getType(), locale));
 
-        XSSFCell factoryCell = eventLine.createCell(2);
+        Cell factoryCell = eventLine.createCell(2);
         factoryCell.setCellValue(event.getFactoryNumber());
 
-        XSSFCell divisionCell = eventLine.createCell(3);
+        Cell divisionCell = eventLine.createCell(3);
         divisionCell.setCellValue(event.getDivisionNumber());
 
-        XSSFCell productionLineCell = eventLine.createCell(4);
+        Cell productionLineCell = eventLine.createCell(4);
         productionLineCell.setCellValue(event.getProductionLineNumber());
 
-        XSSFCell workstationCell = eventLine.createCell(5);
+        Cell workstationCell = eventLine.createCell(5);
         workstationCell.setCellValue(event.getWorkstationNumber());
 
-        XSSFCell subassemblyCell = eventLine.createCell(6);
+        Cell subassemblyCell = eventLine.createCell(6);
         subassemblyCell.setCellValue(event.getSubassemblyNumber());
 
-        XSSFCell descriptionCell = eventLine.createCell(7);
+        Cell descriptionCell = eventLine.createCell(7);
         descriptionCell.setCellValue(event.getDescription());
 
-        XSSFCell ownerNameCell = eventLine.createCell(8);
+        Cell ownerNameCell = eventLine.createCell(8);
         ownerNameCell.setCellValue(event.getOwnerName());
 
-        XSSFCell plannedSeparatelyCell = eventLine.createCell(9);
+        Cell plannedSeparatelyCell = eventLine.createCell(9);
         plannedSeparatelyCell.setCellValue(getValue(event.getPlannedSeparately()));
 
-        XSSFCell requiresShutdownCell = eventLine.createCell(10);
+        Cell requiresShutdownCell = eventLine.createCell(10);
         requiresShutdownCell.setCellValue(getValue(event.getRequiresShutdown()));
 
-        XSSFCell basedOnCell = eventLine.createCell(11);
+        Cell basedOnCell = eventLine.createCell(11);
         basedOnCell.setCellValue(translationService.translate(event.getBasedOn(), locale));
 
-        XSSFCell dateCell = eventLine.createCell(12);
+        Cell dateCell = eventLine.createCell(12);
         if (event.getDate() != null) {
             dateCell.setCellValue(event.getDate());
             dateCell.setCellStyle(dateStyle);
         }
 
-        XSSFCell counterCell = eventLine.createCell(13);
+        Cell counterCell = eventLine.createCell(13);
         counterCell.setCellStyle(numberStyle);
         counterCell.setCellType(Cell.CELL_TYPE_NUMERIC);
         if (event.getCounter() != null) {
             counterCell.setCellValue(event.getCounter().setScale(5).doubleValue());
         }
 
-        XSSFCell counterToleranceCell = eventLine.createCell(14);
+        Cell counterToleranceCell = eventLine.createCell(14);
         counterToleranceCell.setCellStyle(numberStyle);
         counterToleranceCell.setCellType(Cell.CELL_TYPE_NUMERIC);
         if (event.getCounterTolerance() != null) {
             counterToleranceCell.setCellValue(event.getCounterTolerance().setScale(5).doubleValue());
         }
 
-        XSSFCell sourceCostNumberCell = eventLine.createCell(15);
+        Cell sourceCostNumberCell = eventLine.createCell(15);
         sourceCostNumberCell.setCellValue(event.getSourceCostNumber());
 
-        XSSFCell durationCell = eventLine.createCell(16);
+        Cell durationCell = eventLine.createCell(16);
         if (event.getDuration() != null) {
             durationCell.setCellStyle(timeStyle);
             durationCell.setCellValue(convertTimeInternal(XlsDataType.getValue(event.getDuration())));
             durationCell.setCellType(Cell.CELL_TYPE_NUMERIC);
         }
-        XSSFCell effectiveCounterCell = eventLine.createCell(17);
+        Cell effectiveCounterCell = eventLine.createCell(17);
         effectiveCounterCell.setCellStyle(numberStyle);
         effectiveCounterCell.setCellType(Cell.CELL_TYPE_NUMERIC);
         if (event.getEffectiveCounter() != null) {
             effectiveCounterCell.setCellValue(event.getEffectiveCounter().setScale(5).doubleValue());
         }
-        XSSFCell startDateCell = eventLine.createCell(18);
+        Cell startDateCell = eventLine.createCell(18);
         if (event.getStartDate() != null) {
             startDateCell.setCellValue(event.getStartDate());
             startDateCell.setCellStyle(dateTimeStyle);
         }
 
-        XSSFCell finishDateCell = eventLine.createCell(19);
+        Cell finishDateCell = eventLine.createCell(19);
         if (event.getFinishDate() != null) {
             finishDateCell.setCellValue(event.getFinishDate());
             finishDateCell.setCellStyle(dateTimeStyle);
         }
 
-        XSSFCell solutionDescriptionCell = eventLine.createCell(20);
+        Cell solutionDescriptionCell = eventLine.createCell(20);
         solutionDescriptionCell.setCellValue(event.getSolutionDescription());
 
+        fillStateChange(eventLine, event, dateTimeStyle);
+
         // dodanie sub wierszy
+        List<PlannedEventRealizationDTO> realizations = event.getRealizations();
+        List<MachinePartForEventDTO> parts = event.getParts();
         int rowsToAdd = event.subListSize();
-        for (int i = 1; i < rowsToAdd; i++) {
-            int r = rowCounterCopy + i;
-            XSSFRow subEventLine = sheet.createRow(r);
-            XSSFCell subEventLineNumberCell = subEventLine.createCell(0);
-            subEventLineNumberCell.setCellValue(event.getNumber());
-        }
 
-        if (rowsToAdd > 0) {
-            boolean first = true;
-            for (PlannedEventRealizationDTO realization : event.getRealizations()) {
-
-                if (first) {
-                    XSSFCell realizationWorkerNameCell = eventLine.createCell(21);
-                    realizationWorkerNameCell.setCellValue(realization.getRealizationWorkerName() + " "
-                            + realization.getRealizationWorkerSurname());
-                    XSSFCell realizationDurationNumberCell = eventLine.createCell(22);
-                    if (realization.getRealizationDuration() != null) {
-                        realizationDurationNumberCell.setCellStyle(timeStyle);
-                        realizationDurationNumberCell.setCellValue(convertTimeInternal(XlsDataType.getValue(realization
-                                .getRealizationDuration())));
-                        realizationDurationNumberCell.setCellType(Cell.CELL_TYPE_NUMERIC);
-                    }
-                    first = false;
-
-                } else {
-                    realizationsCounter++;
-                    XSSFRow subEventLine = sheet.getRow(realizationsCounter);
-                    XSSFCell realizationWorkerNameCell = subEventLine.createCell(21);
-                    realizationWorkerNameCell.setCellValue(realization.getRealizationWorkerName() + " "
-                            + realization.getRealizationWorkerSurname());
-                    XSSFCell realizationDurationNumberCell = subEventLine.createCell(22);
-                    if (realization.getRealizationDuration() != null) {
-                        realizationDurationNumberCell.setCellStyle(timeStyle);
-                        realizationDurationNumberCell.setCellValue(convertTimeInternal(XlsDataType.getValue(realization
-                                .getRealizationDuration())));
-                        realizationDurationNumberCell.setCellType(Cell.CELL_TYPE_NUMERIC);
-                    }
-                }
-            }
+        for (int i = 0; i < rowsToAdd; i++) {
+            Row subEventLine = eventLine;
 
-            first = true;
-            for (MachinePartForEventDTO part : event.getParts()) {
-                if (first) {
-                    XSSFCell machinePartNumberCell = eventLine.createCell(23);
-                    machinePartNumberCell.setCellValue(part.getMachinePartNumber());
-                    XSSFCell machinePartNameCell = eventLine.createCell(24);
-                    machinePartNameCell.setCellValue(part.getMachinePartName());
-
-                    XSSFCell machinePartQuantityCell = eventLine.createCell(25);
-                    machinePartQuantityCell.setCellStyle(numberStyle);
-                    machinePartQuantityCell.setCellType(Cell.CELL_TYPE_NUMERIC);
-
-                    if (part.getMachinePartPlannedQuantity() != null) {
-                        machinePartQuantityCell.setCellValue(part.getMachinePartPlannedQuantity().setScale(5).doubleValue());
-                    }
-                    XSSFCell machinePartUnitCell = eventLine.createCell(26);
-                    machinePartUnitCell.setCellValue(part.getMachinePartUnit());
-
-                    XSSFCell valueCell = eventLine.createCell(27);
-                    valueCell.setCellStyle(numberStyle);
-                    valueCell.setCellType(Cell.CELL_TYPE_NUMERIC);
-                    if (part.getMachinePartPlannedQuantity() != null) {
-                        valueCell.setCellValue(convertNullToZero(part.getValue()).setScale(5).doubleValue());
-                    }
-                    first = false;
-
-                } else {
-                    partsCounter++;
-                    XSSFRow subEventLine = sheet.getRow(partsCounter);
-                    XSSFCell machinePartNumberCell = subEventLine.createCell(23);
-                    machinePartNumberCell.setCellValue(part.getMachinePartNumber());
-                    XSSFCell machinePartNameCell = subEventLine.createCell(24);
-                    machinePartNameCell.setCellValue(part.getMachinePartName());
-                    XSSFCell machinePartQuantityCell = subEventLine.createCell(25);
-                    machinePartQuantityCell.setCellStyle(numberStyle);
-                    machinePartQuantityCell.setCellType(Cell.CELL_TYPE_NUMERIC);
-                    if (part.getMachinePartPlannedQuantity() != null) {
-                        machinePartQuantityCell.setCellValue(part.getMachinePartPlannedQuantity().setScale(5).doubleValue());
-                    }
-                    XSSFCell machinePartUnitCell = subEventLine.createCell(26);
-                    machinePartUnitCell.setCellValue(part.getMachinePartUnit());
-                    XSSFCell valueCell = subEventLine.createCell(27);
-                    valueCell.setCellStyle(numberStyle);
-                    valueCell.setCellType(Cell.CELL_TYPE_NUMERIC);
-                    if (part.getMachinePartPlannedQuantity() != null) {
-                        valueCell.setCellValue(convertNullToZero(part.getValue()).setScale(5).doubleValue());
-                    }
-                }
+            if (i > 0) {
+                subEventLine = sheet.createRow(rowCounter + i);
+                Cell subEventLineNumberCell = subEventLine.createCell(0);
+                subEventLineNumberCell.setCellValue(event.getNumber());
+            }
+            if (i < realizations.size()) {
+                fillRealization(subEventLine, realizations.get(i), timeStyle);
+            }
+            if (i < parts.size()) {
+                fillPart(subEventLine, parts.get(i), numberStyle);
             }
         }
 
-        fillStateChange(eventLine, event, dateTimeStyle);
-
         if (rowsToAdd > 1) {
             return rowCounter + rowsToAdd;
         } else {
@@ -292,78 +215,112 @@ public class PlannedEventsXlsService {
         }
     }
 
-    private void fillStateChange(XSSFRow eventLine, PlannedEventDTO event, CellStyle dateTimeStyle) {
+    private void fillRealization(final Row subEventLine, final PlannedEventRealizationDTO realization, final CellStyle timeStyle) {
+        Cell realizationWorkerNameCell = subEventLine.createCell(21);
+        realizationWorkerNameCell.setCellValue(realization.getRealizationWorkerName() + " "
+                + realization.getRealizationWorkerSurname());
+        Cell realizationDurationNumberCell = subEventLine.createCell(22);
+        if (realization.getRealizationDuration() != null) {
+            realizationDurationNumberCell.setCellStyle(timeStyle);
+            realizationDurationNumberCell.setCellValue(convertTimeInternal(XlsDataType.getValue(realization
+                    .getRealizationDuration())));
+            realizationDurationNumberCell.setCellType(Cell.CELL_TYPE_NUMERIC);
+        }
+    }
+
+    private void fillPart(final Row subEventLine, final MachinePartForEventDTO part, final CellStyle numberStyle) {
+        Cell machinePartNumberCell = subEventLine.createCell(23);
+        machinePartNumberCell.setCellValue(part.getMachinePartNumber());
+        Cell machinePartNameCell = subEventLine.createCell(24);
+        machinePartNameCell.setCellValue(part.getMachinePartName());
+        Cell machinePartQuantityCell = subEventLine.createCell(25);
+        machinePartQuantityCell.setCellStyle(numberStyle);
+        machinePartQuantityCell.setCellType(Cell.CELL_TYPE_NUMERIC);
+        if (part.getMachinePartPlannedQuantity() != null) {
+            machinePartQuantityCell.setCellValue(part.getMachinePartPlannedQuantity().setScale(5).doubleValue());
+        }
+        Cell machinePartUnitCell = subEventLine.createCell(26);
+        machinePartUnitCell.setCellValue(part.getMachinePartUnit());
+        Cell valueCell = subEventLine.createCell(27);
+        valueCell.setCellStyle(numberStyle);
+        valueCell.setCellType(Cell.CELL_TYPE_NUMERIC);
+        if (part.getMachinePartPlannedQuantity() != null) {
+            valueCell.setCellValue(convertNullToZero(part.getValue()).setScale(5).doubleValue());
+        }
+    }
+
+    private void fillStateChange(Row eventLine, PlannedEventDTO event, CellStyle dateTimeStyle) {
         List<PlannedEventStateChangeDTO> states = event.getStateChanges();
 
-        XSSFCell createDateCell = eventLine.createCell(28);
+        Cell createDateCell = eventLine.createCell(28);
         if (event.getCreatedate() != null) {
             createDateCell.setCellValue(event.getCreatedate());
             createDateCell.setCellStyle(dateTimeStyle);
         }
-        XSSFCell stateAuthorCell = eventLine.createCell(29);
+        Cell stateAuthorCell = eventLine.createCell(29);
         stateAuthorCell.setCellValue(event.getCreateuser());
 
-        XSSFCell stateStartDateCell = eventLine.createCell(30);
+        Cell stateStartDateCell = eventLine.createCell(30);
         stateStartDateCell.setCellStyle(dateTimeStyle);
         Date stateStartDate = getDateForState(PlannedEventStateStringValues.IN_PLAN, states);
         if (stateStartDate != null) {
             stateStartDateCell.setCellValue(stateStartDate);
         }
 
-        XSSFCell stateStartDateWCell = eventLine.createCell(31);
+        Cell stateStartDateWCell = eventLine.createCell(31);
         stateStartDateWCell.setCellValue(getWorkerForState(PlannedEventStateStringValues.IN_PLAN, states));
 
-        XSSFCell stateStopDateCell = eventLine.createCell(32);
+        Cell stateStopDateCell = eventLine.createCell(32);
         stateStopDateCell.setCellStyle(dateTimeStyle);
         Date stateStopDate = getDateForState(PlannedEventStateStringValues.PLANNED, states);
         if (stateStopDate != null) {
             stateStopDateCell.setCellValue(stateStopDate);
         }
 
-        XSSFCell stateStopDateWCell = eventLine.createCell(33);
+        Cell stateStopDateWCell = eventLine.createCell(33);
         stateStopDateWCell.setCellValue(getWorkerForState(PlannedEventStateStringValues.PLANNED, states));
 
-        XSSFCell stateInRealizationDateCell = eventLine.createCell(34);
+        Cell stateInRealizationDateCell = eventLine.createCell(34);
         stateInRealizationDateCell.setCellStyle(dateTimeStyle);
         Date stateInRealizationDate = getFirstDateForState(PlannedEventStateStringValues.IN_REALIZATION, states);
         if (stateInRealizationDate != null) {
             stateInRealizationDateCell.setCellValue(stateInRealizationDate);
         }
 
-        XSSFCell stateInRealizationDateWCell = eventLine.createCell(35);
+        Cell stateInRealizationDateWCell = eventLine.createCell(35);
         stateInRealizationDateWCell.setCellValue(getFirstWorkerForState(PlannedEventStateStringValues.IN_REALIZATION, states));
 
-        XSSFCell stateInEditingDateCell = eventLine.createCell(36);
+        Cell stateInEditingDateCell = eventLine.createCell(36);
         stateInEditingDateCell.setCellStyle(dateTimeStyle);
         Date stateInEditingDate = getDateForState(PlannedEventStateStringValues.IN_EDITING, states);
         if (stateInEditingDate != null) {
             stateInEditingDateCell.setCellValue(stateInEditingDate);
         }
 
-        XSSFCell stateInEditingDateWCell = eventLine.createCell(37);
+        Cell stateInEditingDateWCell = eventLine.createCell(37);
         stateInEditingDateWCell.setCellValue(getWorkerForState(PlannedEventStateStringValues.IN_EDITING, states));
 
-        XSSFCell stateAcceptedDateDateCell = eventLine.createCell(38);
+        Cell stateAcceptedDateDateCell = eventLine.createCell(38);
         stateAcceptedDateDateCell.setCellStyle(dateTimeStyle);
         Date stateAcceptedDateDate = getDateForState(PlannedEventStateStringValues.ACCEPTED, states);
         if (stateAcceptedDateDate != null) {
             stateAcceptedDateDateCell.setCellValue(stateAcceptedDateDate);
         }
 
-        XSSFCell stateAcceptedDateWCell = eventLine.createCell(39);
+        Cell stateAcceptedDateWCell = eventLine.createCell(39);
         stateAcceptedDateWCell.setCellValue(getWorkerForState(PlannedEventStateStringValues.ACCEPTED, states));
 
-        XSSFCell stateRealizationDateCell = eventLine.createCell(40);
+        Cell stateRealizationDateCell = eventLine.createCell(40);
         stateRealizationDateCell.setCellStyle(dateTimeStyle);
         Date stateRealizationDate = getDateForState(PlannedEventStateStringValues.REALIZED, states);
         if (stateRealizationDate != null) {
             stateRealizationDateCell.setCellValue(stateRealizationDate);
         }
 
-        XSSFCell stateRealizationDateWCell = eventLine.createCell(41);
+        Cell stateRealizationDateWCell = eventLine.createCell(41);
         stateRealizationDateWCell.setCellValue(getWorkerForState(PlannedEventStateStringValues.REALIZED, states));
 
-        XSSFCell stateCell = eventLine.createCell(42);
+        Cell stateCell = eventLine.createCell(42);
         stateCell.setCellValue(translationService.translate(event.getState(), LocaleContextHolder.getLocale()));
     }
 
@@ -1,25 +1,35 @@
 package com.qcadoo.mes.cmmsMachineParts.reports.xls.plannedEvents;
 
-import com.qcadoo.report.api.xls.abstractview.AbstractXLSXView;
-import org.apache.poi.xssf.usermodel.XSSFSheet;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import com.qcadoo.localization.api.utils.DateUtils;
+import com.qcadoo.mes.cmmsMachineParts.reports.xls.AbstractStreamingXlsxView;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.i18n.LocaleContextHolder;
 import org.springframework.stereotype.Component;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.text.SimpleDateFormat;
+import java.util.Date;
 import java.util.Map;
 
 @Component
-public class PlannedEventsXlsView  extends AbstractXLSXView {
+public class PlannedEventsXlsView extends AbstractStreamingXlsxView {
 
     @Autowired
     private PlannedEventsXlsService plannedEventsXlsService;
 
-    @Override protected void buildExcelDocument(Map<String, Object> filters, XSSFWorkbook xssfWorkbook,
+    @Override protected void buildExcelDocument(Map<String, Object> filters, SXSSFWorkbook workbook,
             HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse){
-        XSSFSheet sheet = xssfWorkbook.createSheet( plannedEventsXlsService.getReportTitle(LocaleContextHolder.getLocale()));
-        plannedEventsXlsService.buildExcelContent(xssfWorkbook, sheet,filters, LocaleContextHolder.getLocale());
+        String reportTitle = plannedEventsXlsService.getReportTitle(LocaleContextHolder.getLocale());
+        httpServletResponse.setHeader("Content-Disposition", "attachment; filename=\"" + generateFilename(reportTitle) + ".xlsx\"");
+        Sheet sheet = workbook.createSheet(reportTitle);
+        plannedEventsXlsService.buildExcelContent(workbook, sheet, filters, LocaleContextHolder.getLocale());
+    }
+
+    private String generateFilename(final String reportTitle) {
+        String date = new SimpleDateFormat(DateUtils.L_REPORT_DATE_TIME_FORMAT, LocaleContextHolder.getLocale()).format(new Date());
+        return reportTitle + "_" + date;
     }
 }
@@ -1,34 +1,34 @@
 package com.qcadoo.mes.cmmsMachineParts.reports.xls.sourceCost;
 
-import org.apache.poi.hssf.usermodel.HSSFCellStyle;
-import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.CellStyle;
 import org.apache.poi.ss.usermodel.DataFormat;
+import org.apache.poi.ss.usermodel.Workbook;
 
 public class ReportStyleFactory {
 
     private boolean isFirst = false;
 
-    private short alignment = HSSFCellStyle.ALIGN_LEFT;
+    private short alignment = CellStyle.ALIGN_LEFT;
 
-    private static final short LEFT = HSSFCellStyle.ALIGN_LEFT;
+    private static final short LEFT = CellStyle.ALIGN_LEFT;
 
-    private static final short RIGHT = HSSFCellStyle.ALIGN_RIGHT;
+    private static final short RIGHT = CellStyle.ALIGN_RIGHT;
 
-    private HSSFCellStyle firstLeftWhite;
+    private CellStyle firstLeftWhite;
 
-    private HSSFCellStyle firstRightWhite;
+    private CellStyle firstRightWhite;
 
-    private HSSFCellStyle leftWhite;
+    private CellStyle leftWhite;
 
-    private HSSFCellStyle rightWhite;
+    private CellStyle rightWhite;
 
     private DataFormat dataFormat;
 
-    public ReportStyleFactory(final HSSFWorkbook workbook) {
+    public ReportStyleFactory(final Workbook workbook) {
         init(workbook);
     }
 
-    private void init(HSSFWorkbook workbook) {
+    private void init(Workbook workbook) {
         dataFormat = workbook.createDataFormat();
         firstLeftWhite = createStyle(workbook, true, LEFT);
         firstRightWhite = createStyle(workbook, true, RIGHT);
@@ -36,10 +36,10 @@ public class ReportStyleFactory {
         rightWhite = createStyle(workbook, false, RIGHT);
     }
 
-    private HSSFCellStyle createStyle(final HSSFWorkbook workbook, boolean isFirst, short align) {
-        HSSFCellStyle style = workbook.createCellStyle();
+    private CellStyle createStyle(final Workbook workbook, boolean isFirst, short align) {
+        CellStyle style = workbook.createCellStyle();
         if (isFirst) {
-            style.setBorderTop(HSSFCellStyle.BORDER_THIN);
+            style.setBorderTop(CellStyle.BORDER_THIN);
         }
         if (align == RIGHT) {
             style.setAlignment(RIGHT);
@@ -48,7 +48,7 @@ public class ReportStyleFactory {
         return style;
     }
 
-    public HSSFCellStyle getStyle() {
+    public CellStyle getStyle() {
         if (isFirst) {
             if (alignment == LEFT) {
                 return firstLeftWhite;
@@ -18,8 +18,18 @@ public class WorkerCostsRowMapper implements RowMapper<WorkerCostsDTO> {
         workerCosts.setEvent(rs.getString("number"));
         workerCosts.setType(rs.getString("type"));
         workerCosts.setWorkTime(rs.getInt("worktime"));
+        workerCosts.setWorkerTimeSum(getInteger(rs, "workertimesum"));
+        workerCosts.setCostSourceTimeSum(getInteger(rs, "costsourcetimesum"));
 
         return workerCosts;
     }
 
+    private Integer getInteger(ResultSet rs, String column) throws SQLException {
+        long value = rs.getLong(column);
+        if (rs.wasNull()) {
+            return null;
+        }
+        return (int) value;
+    }
+
 }
@@ -3,15 +3,16 @@ package com.qcadoo.mes.cmmsMachineParts.reports.xls.sourceCost;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 import org.joda.time.DateTime;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
 import com.google.common.collect.Lists;
 import com.qcadoo.mes.cmmsMachineParts.constants.SourceCostReportFilterFields;
+import com.qcadoo.mes.cmmsMachineParts.reports.xls.StreamingQueryService;
 import com.qcadoo.mes.cmmsMachineParts.reports.xls.sourceCost.dto.WorkerCostsDTO;
 import com.qcadoo.mes.cmmsMachineParts.states.constants.MaintenanceEventStateStringValues;
 import com.qcadoo.mes.cmmsMachineParts.states.constants.PlannedEventStateStringValues;
@@ -20,7 +21,7 @@ import com.qcadoo.mes.cmmsMachineParts.states.constants.PlannedEventStateStringV
 public class WorkerCostsXlsDataProvider {
 
     @Autowired
-    private NamedParameterJdbcTemplate jdbcTemplate;
+    private StreamingQueryService streamingQueryService;
 
     private final static String plannedEventQuery = "SELECT cost.id as id, cost.number as sourcecost, worker.surname || ' ' || worker.name as worker,\n"
             + "event.number, event.type, realization.duration as worktime\n"
@@ -44,9 +45,9 @@ public class WorkerCostsXlsDataProvider {
             + allowedMaintenanceStates()
             + ")";
 
-    public List<WorkerCostsDTO> getCosts(Map<String, Object> filters) {
+    public void processCosts(Map<String, Object> filters, Consumer<WorkerCostsDTO> costConsumer) {
         String query = prepareQuery(filters, plannedEventQuery, maintenanceEventQuery);
-        return jdbcTemplate.query(query, filters, new WorkerCostsRowMapper());
+        streamingQueryService.stream(query, filters, new WorkerCostsRowMapper(), costConsumer);
     }
 
 
@@ -57,8 +58,8 @@ public class WorkerCostsXlsDataProvider {
         DateTime fromDate = new DateTime((Date) filters.get("fromDate"));
         filters.put("fromDate", fromDate.plusHours(6).toDate());
 
-        StringBuilder builder = new StringBuilder("SELECT * FROM ( " + plannedEventQueryPart + " UNION ALL "
-                + maintenanceEventQueryPart + " ) AS events");
+        StringBuilder builder = new StringBuilder("SELECT events.*, " + workerTimeSum() + ", " + costSourceTimeSum()
+                + " FROM ( " + plannedEventQueryPart + " UNION ALL " + maintenanceEventQueryPart + " ) AS events");
         if (filters.get(SourceCostReportFilterFields.SOURCE_COST) != null) {
             builder.append(" WHERE id = :sourceCost");
         }
@@ -66,6 +67,16 @@ public class WorkerCostsXlsDataProvider {
         return builder.toString();
     }
 
+    private static String workerTimeSum() {
+        return "CASE WHEN row_number() OVER (PARTITION BY sourcecost, worker ORDER BY number) = 1 "
+                + "THEN sum(worktime) OVER (PARTITION BY sourcecost, worker) END AS workertimesum";
+    }
+
+    private static String costSourceTimeSum() {
+        return "CASE WHEN row_number() OVER (PARTITION BY sourcecost ORDER BY worker, number) = 1 "
+                + "THEN sum(worktime) OVER (PARTITION BY sourcecost) END AS costsourcetimesum";
+    }
+
     private static String allowedMaintenanceStates() {
         List<String> allowed = Lists.newArrayList(MaintenanceEventStateStringValues.CLOSED,
                 MaintenanceEventStateStringValues.EDITED, MaintenanceEventStateStringValues.IN_PROGRESS,
@@ -1,14 +1,14 @@
 package com.qcadoo.mes.cmmsMachineParts.reports.xls.timeUsage;
 
-import org.apache.poi.hssf.usermodel.HSSFCellStyle;
-import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.CellStyle;
 import org.apache.poi.ss.usermodel.IndexedColors;
+import org.apache.poi.ss.usermodel.Workbook;
 
 public class ReportStyleFactory {
 
     private boolean isFirst = false;
 
-    private short alignment = HSSFCellStyle.ALIGN_LEFT;
+    private short alignment = CellStyle.ALIGN_LEFT;
 
     private short color = IndexedColors.WHITE.getIndex();
 
@@ -18,39 +18,39 @@ public class ReportStyleFactory {
 
     private static final short GREEN = IndexedColors.LIME.getIndex();
 
-    private static final short LEFT = HSSFCellStyle.ALIGN_LEFT;
+    private static final short LEFT = CellStyle.ALIGN_LEFT;
 
-    private static final short RIGHT = HSSFCellStyle.ALIGN_RIGHT;
+    private static final short RIGHT = CellStyle.ALIGN_RIGHT;
 
-    private HSSFCellStyle firstLeftWhite;
+    private CellStyle firstLeftWhite;
 
-    private HSSFCellStyle firstLeftRed;
+    private CellStyle firstLeftRed;
 
-    private HSSFCellStyle firstLeftGreen;
+    private CellStyle firstLeftGreen;
 
-    private HSSFCellStyle firstRightWhite;
+    private CellStyle firstRightWhite;
 
-    private HSSFCellStyle firstRightRed;
+    private CellStyle firstRightRed;
 
-    private HSSFCellStyle firstRightGreen;
+    private CellStyle firstRightGreen;
 
-    private HSSFCellStyle leftWhite;
+    private CellStyle leftWhite;
 
-    private HSSFCellStyle leftRed;
+    private CellStyle leftRed;
 
-    private HSSFCellStyle leftGreen;
+    private CellStyle leftGreen;
 
-    private HSSFCellStyle rightWhite;
+    private CellStyle rightWhite;
 
-    private HSSFCellStyle rightRed;
+    private CellStyle rightRed;
 
-    private HSSFCellStyle rightGreen;
+    private CellStyle rightGreen;
 
-    public ReportStyleFactory(final HSSFWorkbook workbook) {
+    public ReportStyleFactory(final Workbook workbook) {
         init(workbook);
     }
 
-    private void init(HSSFWorkbook workbook) {
+    private void init(Workbook workbook) {
         firstLeftWhite = createStyle(workbook, true, LEFT, WHITE);
         firstLeftRed = createStyle(workbook, true, LEFT, RED);
         firstLeftGreen = createStyle(workbook, true, LEFT, GREEN);
@@ -65,14 +65,14 @@ public class ReportStyleFactory {
         rightGreen = createStyle(workbook, false, RIGHT, GREEN);
     }
 
-    private HSSFCellStyle createStyle(final HSSFWorkbook workbook, boolean isFirst, short align, short color) {
-        HSSFCellStyle style = workbook.createCellStyle();
+    private CellStyle createStyle(final Workbook workbook, boolean isFirst, short align, short color) {
+        CellStyle style = workbook.createCellStyle();
         if (isFirst) {
-            style.setBorderTop(HSSFCellStyle.BORDER_THIN);
+            style.setBorderTop(CellStyle.BORDER_THIN);
         }
         if (color != WHITE) {
             style.setFillForegroundColor(color);
-            style.setFillPattern(HSSFCellStyle.SOLID_FOREGROUND);
+            style.setFillPattern(CellStyle.SOLID_FOREGROUND);
         }
         if (align == RIGHT) {
             style.setAlignment(RIGHT);
@@ -80,7 +80,7 @@ public class ReportStyleFactory {
         return style;
     }
 
-    public HSSFCellStyle getStyle() {
+    public CellStyle getStyle() {
         if (isFirst) {
             if (alignment == LEFT) {
                 if (color == WHITE) {
@@ -1,22 +1,24 @@
 package com.qcadoo.mes.cmmsMachineParts.reports.xls.timeUsage;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
 import com.google.common.collect.Lists;
 import com.qcadoo.mes.cmmsMachineParts.constants.TimeUsageReportFilterFields;
-import com.qcadoo.mes.cmmsMachineParts.reports.xls.timeUsage.dto.TimeUsageDTO;
+import com.qcadoo.mes.cmmsMachineParts.reports.xls.StreamingQueryService;
+import com.qcadoo.mes.cmmsMachineParts.reports.xls.timeUsage.dto.TimeUsageGroupDTO;
 
 @Service
 public class TimeUsageXlsDataProvider {
 
     @Autowired
-    private NamedParameterJdbcTemplate jdbcTemplate;
+    private StreamingQueryService streamingQueryService;
 
     private final static String plannedEventQuery = "SELECT staff.surname || ' ' || staff.name AS worker, staff.id AS worker_id, 'planned' AS event_type,\n"
             + "realization.startdate,\n"
@@ -60,9 +62,12 @@ public class TimeUsageXlsDataProvider {
             + "LEFT JOIN basic_division division ON event.division_id=division.id\n"
             + "LEFT JOIN basic_factory factory ON event.factory_id=factory.id\n";
 
-    public List<TimeUsageDTO> getUsages(Map<String, Object> filters) {
+    public void processGroups(Map<String, Object> filters, Consumer<TimeUsageGroupDTO> groupConsumer) {
         String query = prepareQuery(filters, plannedEventQuery, maintenanceEventQuery);
-        return jdbcTemplate.query(query, filters, new TimeUsageRowMapper());
+        streamingQueryService.streamGroups(query, filters, new TimeUsageRowMapper(),
+                usage -> Arrays.asList(usage.getWorker(), usage.getStartDate()),
+                usages -> groupConsumer.accept(new TimeUsageGroupDTO(usages.get(0).getStartDate(), usages.get(0).getWorker(),
+                        usages)));
     }
 
     private String prepareQuery(Map<String, Object> filters, String plannedEventQueryPart, String maintenanceEventQueryPart) {
@@ -81,6 +86,7 @@ public class TimeUsageXlsDataProvider {
             }
             builder.append(" WHERE ").append(StringUtils.collectionToDelimitedString(whereFilters, " AND "));
         }
+        builder.append(" ORDER BY worker, startDate, number");
         return builder.toString();
     }
 }
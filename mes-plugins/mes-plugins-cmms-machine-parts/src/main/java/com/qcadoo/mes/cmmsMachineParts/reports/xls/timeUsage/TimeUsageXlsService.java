@@ -5,22 +5,18 @@ import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.stream.Collectors;
 
-import org.apache.poi.hssf.usermodel.HSSFCell;
-import org.apache.poi.hssf.usermodel.HSSFCellStyle;
 import org.apache.poi.hssf.usermodel.HSSFFont;
-import org.apache.poi.hssf.usermodel.HSSFRow;
-import org.apache.poi.hssf.usermodel.HSSFSheet;
-import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
 import org.apache.poi.ss.usermodel.Font;
 import org.apache.poi.ss.usermodel.IndexedColors;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import com.google.common.collect.Lists;
 import com.qcadoo.localization.api.TranslationService;
 import com.qcadoo.localization.api.utils.DateUtils;
 import com.qcadoo.mes.cmmsMachineParts.constants.PlannedEventFields;
@@ -56,18 +52,16 @@ import com.qcadoo.security.constants.QcadooSecurityConstants;
         return translationService.translate(TimeUsageXlsConstants.REPORT_TITLE, locale);
     }
 
-    public void buildExcelContent(final HSSFWorkbook workbook, final HSSFSheet sheet, Map<String, Object> filters,
+    public void buildExcelContent(final Workbook workbook, final Sheet sheet, Map<String, Object> filters,
             final Locale locale) {
         reportStyleFactory = new ReportStyleFactory(workbook);
-        List<TimeUsageDTO> usages = timeUsageXLSDataProvider.getUsages((Map<String, Object>) filters.get("filtersMap"));
-        updatePartsAndDescription(usages, locale);
         fillHeaderData(workbook, sheet, 0, locale, (Map<String, Object>) filters.get("filtersMap"));
         fillHeaderRow(workbook, sheet, 4, locale);
-        List<TimeUsageGroupDTO> timeUsageGroups = group(usages);
-        int rowCounter = 5;
-        for (TimeUsageGroupDTO timeUsageGroupDTO : timeUsageGroups) {
-            rowCounter = fillTimeUsageRows(workbook, sheet, timeUsageGroupDTO, rowCounter++, locale);
-        }
+        int[] rowCounter = { 5 };
+        timeUsageXLSDataProvider.processGroups((Map<String, Object>) filters.get("filtersMap"), timeUsageGroupDTO -> {
+            updatePartsAndDescription(timeUsageGroupDTO.getTimeUsages(), locale);
+            rowCounter[0] = fillTimeUsageRows(workbook, sheet, timeUsageGroupDTO, rowCounter[0], locale);
+        });
         setColumnsWidths(sheet);
     }
 
@@ -88,7 +82,7 @@ import com.qcadoo.security.constants.QcadooSecurityConstants;
         }
     }
 
-    private void setColumnsWidths(HSSFSheet sheet) {
+    private void setColumnsWidths(Sheet sheet) {
         sheet.setColumnWidth(0, 5000);
         sheet.setColumnWidth(1, 3500);
         sheet.setColumnWidth(2, 3500);
@@ -103,62 +97,42 @@ import com.qcadoo.security.constants.QcadooSecurityConstants;
         sheet.setColumnWidth(11, 5000);
     }
 
-    private List<TimeUsageGroupDTO> group(List<TimeUsageDTO> usages) {
-        List<TimeUsageGroupDTO> groups = Lists.newLinkedList();
-        Map<String, List<TimeUsageDTO>> workerMap = usages.stream().collect(Collectors.groupingBy(TimeUsageDTO::getWorker));
-        for (Entry<String, List<TimeUsageDTO>> entry : workerMap.entrySet()) {
-            Map<Date, List<TimeUsageDTO>> dateMap = entry.getValue().stream()
-                    .collect(Collectors.groupingBy(TimeUsageDTO::getStartDate));
-            for (Date date : dateMap.keySet()) {
-                TimeUsageGroupDTO timeUsageGroup = new TimeUsageGroupDTO(date, entry.getKey(), dateMap.get(date));
-                groups.add(timeUsageGroup);
-            }
-        }
-        return groups.stream().sorted((g1, g2) -> {
-            if (g1.getWorker().equals(g2.getWorker())) {
-                return g1.getDate().compareTo(g2.getDate());
-            } else {
-                return g1.getWorker().compareTo(g2.getWorker());
-            }
-        }).collect(Collectors.toList());
-    }
-
-    private void fillHeaderData(final HSSFWorkbook workbook, final HSSFSheet sheet, Integer rowNum, final Locale locale,
+    private void fillHeaderData(final Workbook workbook, final Sheet sheet, Integer rowNum, final Locale locale,
             Map<String, Object> filters) {
         Font font = workbook.createFont();
         font.setFontName(HSSFFont.FONT_ARIAL);
         font.setFontHeightInPoints((short) 10);
         font.setBoldweight(Font.BOLDWEIGHT_BOLD);
-        HSSFCellStyle style = workbook.createCellStyle();
+        CellStyle style = workbook.createCellStyle();
         style.setFont(font);
 
-        HSSFRow titleRow = sheet.createRow(0);
-        HSSFCell titleCell = titleRow.createCell(0);
+        Row titleRow = sheet.createRow(0);
+        Cell titleCell = titleRow.createCell(0);
         titleCell.setCellValue(translationService.translate("cmmsMachineParts.timeUsageReport.report.title", locale));
         titleCell.setCellStyle(style);
 
-        HSSFRow datesRow = sheet.createRow(1);
-        HSSFCell startingFromLabelCell = datesRow.createCell(0);
+        Row datesRow = sheet.createRow(1);
+        Cell startingFromLabelCell = datesRow.createCell(0);
         startingFromLabelCell.setCellValue(translationService.translate("cmmsMachineParts.timeUsageReport.report.startingFrom",
                 locale));
         startingFromLabelCell.setCellStyle(style);
         if (filters.containsKey("fromDate")) {
-            HSSFCell startingFromCell = datesRow.createCell(1);
+            Cell startingFromCell = datesRow.createCell(1);
             startingFromCell.setCellValue(getDateOnly((Date) filters.get("fromDate")));
         }
-        HSSFCell toLabelCell = datesRow.createCell(2);
+        Cell toLabelCell = datesRow.createCell(2);
         toLabelCell.setCellValue(translationService.translate("cmmsMachineParts.timeUsageReport.report.to", locale));
         toLabelCell.setCellStyle(style);
         if (filters.containsKey("toDate")) {
-            HSSFCell toCell = datesRow.createCell(3);
+            Cell toCell = datesRow.createCell(3);
             toCell.setCellValue(getDateOnly((Date) filters.get("toDate")));
         }
 
-        HSSFRow authorRow = sheet.createRow(2);
-        HSSFCell authorLabelCell = authorRow.createCell(0);
+        Row authorRow = sheet.createRow(2);
+        Cell authorLabelCell = authorRow.createCell(0);
         authorLabelCell.setCellValue(translationService.translate("cmmsMachineParts.timeUsageReport.report.generatedBy", locale));
         authorLabelCell.setCellStyle(style);
-        HSSFCell authorCell = authorRow.createCell(1);
+        Cell authorCell = authorRow.createCell(1);
         authorCell.setCellValue(getUserString());
     }
 
@@ -174,48 +148,43 @@ import com.qcadoo.security.constants.QcadooSecurityConstants;
         return builder.toString();
     }
 
-    private void fillHeaderRow(final HSSFWorkbook workbook, final HSSFSheet sheet, Integer rowNum, final Locale locale) {
-        HSSFRow headerLine = sheet.createRow(rowNum);
+    private void fillHeaderRow(final Workbook workbook, final Sheet sheet, Integer rowNum, final Locale locale) {
+        Row headerLine = sheet.createRow(rowNum);
         headerLine.setHeight((short) 800);
         Font font = workbook.createFont();
         font.setFontName(HSSFFont.FONT_ARIAL);
         font.setFontHeightInPoints((short) 10);
         font.setBoldweight(Font.BOLDWEIGHT_NORMAL);
-        HSSFCellStyle style = workbook.createCellStyle();
+        CellStyle style = workbook.createCellStyle();
         style.setFont(font);
-        style.setBorderBottom(HSSFCellStyle.BORDER_THIN);
-        style.setBorderTop(HSSFCellStyle.BORDER_THIN);
-        style.setBorderLeft(HSSFCellStyle.BORDER_THIN);
-        style.setBorderRight(HSSFCellStyle.BORDER_THIN);
-        style.setFillPattern(HSSFCellStyle.SOLID_FOREGROUND);
+        style.setBorderBottom(CellStyle.BORDER_THIN);
+        style.setBorderTop(CellStyle.BORDER_THIN);
+        style.setBorderLeft(CellStyle.BORDER_THIN);
+        style.setBorderRight(CellStyle.BORDER_THIN);
+        style.setFillPattern(CellStyle.SOLID_FOREGROUND);
         style.setFillForegroundColor(IndexedColors.GREY_25_PERCENT.getIndex());
         style.setWrapText(true);
-        style.setAlignment(HSSFCellStyle.ALIGN_CENTER);
-        style.setVerticalAlignment(HSSFCellStyle.VERTICAL_CENTER);
+        style.setAlignment(CellStyle.ALIGN_CENTER);
+        style.setVerticalAlignment(CellStyle.VERTICAL_CENTER);
 
         int colNumber = 0;
         for (String column : TimeUsageXlsConstants.ALL_COLUMNS) {
-            HSSFCell headerCell = headerLine.createCell(colNumber);
+            Cell headerCell = headerLine.createCell(colNumber);
             headerCell.setCellValue(translationService.translate(column, locale));
             headerCell.setCellStyle(style);
             colNumber++;
         }
     }
 
-    private int fillTimeUsageRows(final HSSFWorkbook workbook, final HSSFSheet sheet, final TimeUsageGroupDTO timeUsage,
+    private int fillTimeUsageRows(final Workbook workbook, final Sheet sheet, final TimeUsageGroupDTO timeUsage,
             int rowCounter, final Locale locale) {
-        Font font = workbook.createFont();
-        font.setFontName(HSSFFont.FONT_ARIAL);
-        font.setFontHeightInPoints((short) 10);
-        font.setBoldweight(Font.BOLDWEIGHT_NORMAL);
-
         int usagesCounter = 0;
 
         for (TimeUsageDTO usage : timeUsage.getTimeUsages()) {
-            HSSFRow usageRow = sheet.createRow(rowCounter + usagesCounter);
+            Row usageRow = sheet.createRow(rowCounter + usagesCounter);
             boolean isFirst = usagesCounter == 0;
-            HSSFCellStyle style = getLeftAlignedStyle(workbook, isFirst, usage);
-            HSSFCellStyle styleRight = getRightAlignedStyle(workbook, isFirst, usage);
+            CellStyle style = getLeftAlignedStyle(workbook, isFirst, usage);
+            CellStyle styleRight = getRightAlignedStyle(workbook, isFirst, usage);
             addNewRow(usageRow, usage, locale, style, styleRight);
             if (isFirst) {
                 addNewCell(usageRow, timeUsage.getDurationSum().toString(), 10, styleRight, true);
@@ -230,8 +199,8 @@ import com.qcadoo.security.constants.QcadooSecurityConstants;
         return rowCounter + usagesCounter;
     }
 
-    private void addNewRow(HSSFRow usageRow, TimeUsageDTO timeUsage, Locale locale, HSSFCellStyle style,
-            HSSFCellStyle styleAlignRight) {
+    private void addNewRow(Row usageRow, TimeUsageDTO timeUsage, Locale locale, CellStyle style,
+            CellStyle styleAlignRight) {
         addNewCell(usageRow, timeUsage.getWorker(), 0, style, false);
         addNewCell(usageRow, getDateOnly(timeUsage.getStartDate()), 1, styleAlignRight, false);
         addNewCell(usageRow, timeUsage.getNumber(), 2, style, false);
@@ -244,8 +213,8 @@ import com.qcadoo.security.constants.QcadooSecurityConstants;
         addNewCell(usageRow, timeUsage.getRegisteredTime().toString(), 9, styleAlignRight, true);
     }
 
-    private void addNewCell(HSSFRow row, String value, int column, HSSFCellStyle style, boolean numeric) {
-        HSSFCell cell = row.createCell(column);
+    private void addNewCell(Row row, String value, int column, CellStyle style, boolean numeric) {
+        Cell cell = row.createCell(column);
         cell.setCellStyle(style);
         if(numeric){
             cell.setCellType(Cell.CELL_TYPE_NUMERIC);
@@ -257,7 +226,7 @@ import com.qcadoo.security.constants.QcadooSecurityConstants;
 
     }
 
-    private HSSFCellStyle getStyle(final HSSFWorkbook workbook, boolean isFirst, TimeUsageDTO usage, boolean isLeft) {
+    private CellStyle getStyle(final Workbook workbook, boolean isFirst, TimeUsageDTO usage, boolean isLeft) {
         reportStyleFactory.setFirst(isFirst);
         if (isLeft) {
             reportStyleFactory.setLeftAligned();
@@ -276,11 +245,11 @@ import com.qcadoo.security.constants.QcadooSecurityConstants;
         return reportStyleFactory.getStyle();
     }
 
-    private HSSFCellStyle getRightAlignedStyle(final HSSFWorkbook workbook, boolean isFirst, TimeUsageDTO usage) {
+    private CellStyle getRightAlignedStyle(final Workbook workbook, boolean isFirst, TimeUsageDTO usage) {
         return getStyle(workbook, isFirst, usage, false);
     }
 
-    private HSSFCellStyle getLeftAlignedStyle(final HSSFWorkbook workbook, boolean isFirst, TimeUsageDTO usage) {
+    private CellStyle getLeftAlignedStyle(final Workbook workbook, boolean isFirst, TimeUsageDTO usage) {
         return getStyle(workbook, isFirst, usage, true);
     }
 
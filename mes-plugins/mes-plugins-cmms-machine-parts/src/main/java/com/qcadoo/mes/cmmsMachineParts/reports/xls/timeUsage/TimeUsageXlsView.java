@@ -9,18 +9,18 @@ import java.util.Map;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import org.apache.poi.hssf.usermodel.HSSFSheet;
-import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.i18n.LocaleContextHolder;
 import org.springframework.stereotype.Component;
-import org.springframework.web.servlet.view.document.AbstractExcelView;
 
 import com.qcadoo.localization.api.TranslationService;
 import com.qcadoo.localization.api.utils.DateUtils;
+import com.qcadoo.mes.cmmsMachineParts.reports.xls.AbstractStreamingXlsxView;
 
 @Component
-public class TimeUsageXlsView  extends AbstractExcelView {
+public class TimeUsageXlsView extends AbstractStreamingXlsxView {
 
     @Autowired
     private TimeUsageXlsService timeUsageXlsService;
@@ -30,12 +30,12 @@ public class TimeUsageXlsView  extends AbstractExcelView {
 
     private final String localePrefix = "cmmsMachineParts.timeUsageReport.report.filename";
 
-    @Override protected void buildExcelDocument(Map<String, Object> filters, HSSFWorkbook hssfWorkbook,
+    @Override protected void buildExcelDocument(Map<String, Object> filters, SXSSFWorkbook workbook,
             HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse){
         String fileName = generateFilename();
-        httpServletResponse.setHeader("Content-Disposition", "attachment; filename=\"" + fileName + ".xls\"");
-        HSSFSheet sheet = hssfWorkbook.createSheet(timeUsageXlsService.getReportTitle(LocaleContextHolder.getLocale()));
-        timeUsageXlsService.buildExcelContent(hssfWorkbook, sheet, filters, LocaleContextHolder.getLocale());
+        httpServletResponse.setHeader("Content-Disposition", "attachment; filename=\"" + fileName + ".xlsx\"");
+        Sheet sheet = workbook.createSheet(timeUsageXlsService.getReportTitle(LocaleContextHolder.getLocale()));
+        timeUsageXlsService.buildExcelContent(workbook, sheet, filters, LocaleContextHolder.getLocale());
     }
 
     private String generateFilename() {
@@ -408,7 +408,7 @@ myApp.controller('GridController', ['$scope', '$window', '$http', function ($sco
                             autoCompleteResult = false;
                             response([{
                                     id: 0,
-                                    code: QCD.translate('actionsGrid.autocomplete.tooManyResults') + ' (' + data.numberOfResults + ')'
+                                    code: QCD.translate('actionsGrid.autocomplete.tooManyResults') + ' (> ' + (data.numberOfResults - 1) + ')'
                                 }]);
                         } else {
                             autoCompleteResult = true;
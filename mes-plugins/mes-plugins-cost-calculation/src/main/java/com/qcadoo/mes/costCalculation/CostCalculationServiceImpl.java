@@ -40,10 +40,9 @@ import com.qcadoo.mes.costCalculation.constants.SourceOfOperationCosts;
 import com.qcadoo.mes.costNormsForMaterials.ProductsCostCalculationService;
 import com.qcadoo.mes.costNormsForOperation.constants.CalculateOperationCostMode;
 import com.qcadoo.mes.operationCostCalculations.OperationsCostCalculationService;
-import com.qcadoo.mes.technologies.constants.OperationProductOutComponentFields;
-import com.qcadoo.mes.technologies.constants.TechnologyFields;
-import com.qcadoo.mes.technologies.constants.TechnologyOperationComponentFields;
-import com.qcadoo.mes.timeNormsForOperations.constants.TechnologyOperationComponentFieldsTNFO;
+import com.qcadoo.mes.technologies.graph.TechnologyGraphNode;
+import com.qcadoo.mes.technologies.graph.TechnologyGraphProductComponent;
+import com.qcadoo.mes.technologies.graph.TechnologyGraphService;
 import com.qcadoo.model.api.BigDecimalUtils;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.NumberService;
@@ -60,6 +59,9 @@ public class CostCalculationServiceImpl implements CostCalculationService {
     @Autowired
     private NumberService numberService;
 
+    @Autowired
+    private TechnologyGraphService technologyGraphService;
+
     private final BigDecimal ONE_HUNDRED = BigDecimal.valueOf(100);
 
     @Override
@@ -114,17 +116,15 @@ public class CostCalculationServiceImpl implements CostCalculationService {
 
     private BigDecimal getEffectiveQuantity(final Entity entity) {
         Entity technology = entity.getBelongsToField(CostCalculationFields.TECHNOLOGY);
-        Entity rootOperation = technology.getTreeField(TechnologyFields.OPERATION_COMPONENTS).getRoot();
+        TechnologyGraphNode rootOperation = technologyGraphService.getTechnologyGraph(technology).getRoot();
         BigDecimal effectiveQuantity = entity.getDecimalField(CostCalculationFields.QUANTITY);
 
-        boolean areProductQuantitiesDivisible = rootOperation
-                .getBooleanField(TechnologyOperationComponentFieldsTNFO.ARE_PRODUCT_QUANTITIES_DIVISIBLE);
+        boolean areProductQuantitiesDivisible = rootOperation.areProductQuantitiesDivisible();
         if (!areProductQuantitiesDivisible) {
-            List<Entity> opocs = rootOperation
-                    .getHasManyField(TechnologyOperationComponentFields.OPERATION_PRODUCT_OUT_COMPONENTS);
+            List<TechnologyGraphProductComponent> opocs = rootOperation.getOperationProductOutComponents();
             if (opocs.size() == 1) {
-                Entity opoc = opocs.get(0);
-                BigDecimal quantityInSingleCycle = opoc.getDecimalField(OperationProductOutComponentFields.QUANTITY);
+                TechnologyGraphProductComponent opoc = opocs.get(0);
+                BigDecimal quantityInSingleCycle = opoc.getQuantity();
                 BigDecimal quantity = effectiveQuantity.divide(quantityInSingleCycle, new MathContext(2, RoundingMode.UP));
                 effectiveQuantity = quantityInSingleCycle.multiply(quantity, numberService.getMathContext());
             }
@@ -29,7 +29,6 @@ import java.util.List;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import com.google.common.base.Optional;
@@ -38,25 +37,38 @@ import com.qcadoo.mes.basic.ParameterService;
 import com.qcadoo.mes.basic.constants.CurrencyFields;
 import com.qcadoo.mes.basic.constants.ParameterFields;
 import com.qcadoo.mes.basic.constants.ProductFields;
+import com.qcadoo.mes.basic.jobs.AsyncJobService;
 import com.qcadoo.mes.deliveries.constants.DeliveredProductFields;
+import com.qcadoo.mes.deliveries.constants.DeliveriesConstants;
 import com.qcadoo.mes.deliveries.constants.DeliveryFields;
 import com.qcadoo.mes.deliveriesToMaterialFlow.constants.DeliveredProductFieldsDTMF;
 import com.qcadoo.mes.deliveriesToMaterialFlow.constants.DocumentFieldsDTMF;
 import com.qcadoo.mes.materialFlow.constants.LocationFields;
 import com.qcadoo.mes.materialFlowResources.constants.DocumentFields;
 import com.qcadoo.mes.materialFlowResources.constants.LocationFieldsMFR;
+import com.qcadoo.mes.materialFlowResources.constants.MaterialFlowResourcesConstants;
 import com.qcadoo.mes.materialFlowResources.service.DocumentBuilder;
 import com.qcadoo.mes.materialFlowResources.service.DocumentManagementService;
 import com.qcadoo.mes.states.StateChangeContext;
-import com.qcadoo.mes.states.constants.StateChangeStatus;
+import com.qcadoo.mes.states.messages.constants.StateMessageType;
+import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.NumberService;
+import com.qcadoo.model.api.search.SearchRestrictions;
 import com.qcadoo.model.api.units.UnitConversionService;
 import com.qcadoo.model.api.validators.ErrorMessage;
 
 @Service
 public class DeliveryStateServiceMF {
 
+    public static final String CREATE_DOCUMENTS_JOB_TYPE = "deliveriesToMaterialFlow.createDocuments";
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    @Autowired
+    private AsyncJobService asyncJobService;
+
     @Autowired
     private DocumentManagementService documentManagementService;
 
@@ -72,15 +84,42 @@ public class DeliveryStateServiceMF {
     public void createDocumentsForTheReceivedProducts(final StateChangeContext stateChangeContext) {
         final Entity delivery = stateChangeContext.getOwner();
 
-        createDocuments(delivery);
-        if (!delivery.isValid()) {
-            stateChangeContext.setStatus(StateChangeStatus.FAILURE);
+        if (location(delivery) == null) {
+            return;
+        }
+
+        Entity job = asyncJobService.submit(CREATE_DOCUMENTS_JOB_TYPE, delivery.getId(),
+                DeliveriesConstants.MODEL_DELIVERY + ":" + delivery.getId(), CREATE_DOCUMENTS_JOB_TYPE + ":" + delivery.getId());
+
+        stateChangeContext.addMessage("basic.asyncJob.submitted", StateMessageType.INFO, false, job.getId().toString());
+    }
+
+    /**
+     * Creates receipt document for received delivery. The delivery is already received when this runs, so a failure doesn't
+     * change its state - errors are kept on the job, which can be retried (see AsyncJobService#retry). Document already created
+     * for the delivery by an earlier run of the job isn't created again.
+     */
+    @Transactional
+    public Entity createDocuments(final Long deliveryId) {
+        Entity delivery = dataDefinitionService.get(DeliveriesConstants.PLUGIN_IDENTIFIER, DeliveriesConstants.MODEL_DELIVERY)
+                .get(deliveryId);
+
+        if (documentExists(delivery)) {
+            return delivery;
         }
+
+        createDocuments(delivery);
+
+        return delivery;
     }
 
-    @Transactional(propagation = Propagation.REQUIRES_NEW)
-    private void createDocuments(final Entity delivery) {
+    private boolean documentExists(final Entity delivery) {
+        return dataDefinitionService
+                .get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER, MaterialFlowResourcesConstants.MODEL_DOCUMENT).find()
+                .add(SearchRestrictions.belongsTo(DocumentFieldsDTMF.DELIVERY, delivery)).setMaxResults(1).uniqueResult() != null;
+    }
 
+    private void createDocuments(final Entity delivery) {
         Entity location = location(delivery);
         if (location == null) {
             return;
@@ -0,0 +1,119 @@
+package com.qcadoo.mes.materialFlowResources;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.materialFlowResources.constants.DocumentType;
+
+/**
+ * Lookups of facts, which are needed many times while document positions are written. Document headers and locations are
+ * memoized in current request or, outside of request, in current transaction, so they are read once per position write.
+ * Memoized document is evicted when the document is saved, see {@link #evictDocument(Long)}. Parameters come from
+ * {@link DocumentPositionParametersCache}.
+ */
+@Service
+public class DocumentPositionLookups {
+
+    private static final String L_SCOPE_KEY = DocumentPositionLookups.class.getName();
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DocumentPositionParametersCache documentPositionParametersCache;
+
+    public DocumentDTO getDocument(final Long documentId) {
+        return lookup("document." + documentId, () -> jdbcTemplate.queryForObject(
+                "SELECT * FROM materialflowresources_document WHERE id = :id", Collections.singletonMap("id", documentId),
+                new BeanPropertyRowMapper<DocumentDTO>(DocumentDTO.class)));
+    }
+
+    public void evictDocument(final Long documentId) {
+        Map<String, Object> scope = getScope();
+
+        if (scope != null) {
+            scope.remove("document." + documentId);
+        }
+    }
+
+    public LocationDTO getLocation(final Long locationId) {
+        return lookup("location." + locationId, () -> {
+            BeanPropertyRowMapper<LocationDTO> rowMapper = new BeanPropertyRowMapper<>(LocationDTO.class);
+            rowMapper.setPrimitivesDefaultedForNullValue(true);
+
+            return jdbcTemplate.queryForObject("SELECT * FROM materialflow_location WHERE id = :id",
+                    Collections.singletonMap("id", locationId), rowMapper);
+        });
+    }
+
+    public boolean reservationsEnabled(final Long documentId) {
+        if (!documentPositionParametersCache.isDraftMakesReservation()) {
+            return false;
+        }
+
+        DocumentDTO document = getDocument(documentId);
+
+        return DocumentType.isOutbound(document.getType()) && !Boolean.TRUE.equals(document.getInBuffer());
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T lookup(final String key, final Supplier<T> loader) {
+        Map<String, Object> scope = getScope();
+
+        if (scope == null) {
+            return loader.get();
+        }
+
+        return (T) scope.computeIfAbsent(key, k -> loader.get());
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> getScope() {
+        RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+
+        if (requestAttributes != null) {
+            Map<String, Object> scope = (Map<String, Object>) requestAttributes.getAttribute(L_SCOPE_KEY,
+                    RequestAttributes.SCOPE_REQUEST);
+
+            if (scope == null) {
+                scope = Maps.newHashMap();
+                requestAttributes.setAttribute(L_SCOPE_KEY, scope, RequestAttributes.SCOPE_REQUEST);
+            }
+
+            return scope;
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            Map<String, Object> scope = (Map<String, Object>) TransactionSynchronizationManager.getResource(L_SCOPE_KEY);
+
+            if (scope == null) {
+                scope = Maps.newHashMap();
+                TransactionSynchronizationManager.bindResource(L_SCOPE_KEY, scope);
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                    @Override
+                    public void afterCompletion(final int status) {
+                        TransactionSynchronizationManager.unbindResourceIfPossible(L_SCOPE_KEY);
+                    }
+
+                });
+            }
+
+            return scope;
+        }
+
+        return null;
+    }
+
+}
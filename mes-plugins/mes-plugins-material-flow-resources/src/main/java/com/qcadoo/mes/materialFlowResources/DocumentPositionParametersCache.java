@@ -0,0 +1,138 @@
+package com.qcadoo.mes.materialFlowResources;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Holds document position parameters and grid columns configuration, which are read by every position write and grid load.
+ * Cache is invalidated by parameters hooks, once when record is written and once again after transaction completes, so
+ * parameters read from unfinished transaction aren't kept. Hooks invalidate cache only on the node which saves parameters, so
+ * parameters also expire after {@link #L_TIME_TO_LIVE} milliseconds, after which changes made on other nodes are seen.
+ */
+@Service
+public class DocumentPositionParametersCache {
+
+    private static final long L_TIME_TO_LIVE = 30000L;
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    private DocumentPositionParameters parameters;
+
+    private long loadedAt;
+
+    private long version;
+
+    public boolean exists() {
+        return get().exists;
+    }
+
+    public boolean isDraftMakesReservation() {
+        return get().draftMakesReservation;
+    }
+
+    public boolean isSuggestResource() {
+        return get().suggestResource;
+    }
+
+    public Map<String, Object> getColumns() {
+        return get().columns;
+    }
+
+    public void invalidate() {
+        invalidateNow();
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                @Override
+                public void afterCompletion(final int status) {
+                    invalidateNow();
+                }
+
+            });
+        }
+    }
+
+    private synchronized void invalidateNow() {
+        parameters = null;
+        version++;
+    }
+
+    private DocumentPositionParameters get() {
+        long loadedVersion;
+
+        long now = System.currentTimeMillis();
+
+        synchronized (this) {
+            if ((parameters != null) && (now - loadedAt < L_TIME_TO_LIVE)) {
+                return parameters;
+            }
+
+            loadedVersion = version;
+        }
+
+        DocumentPositionParameters loaded = load();
+
+        synchronized (this) {
+            if (version == loadedVersion) {
+                parameters = loaded;
+                loadedAt = now;
+            }
+        }
+
+        return loaded;
+    }
+
+    private DocumentPositionParameters load() {
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                "SELECT suggestresource, draftmakesreservation FROM materialflowresources_documentpositionparameters LIMIT 1",
+                Collections.emptyMap());
+        List<Map<String, Object>> items = jdbcTemplate.queryForList(
+                "SELECT name, checked FROM materialflowresources_documentpositionparametersitem ORDER BY ordering",
+                Collections.emptyMap());
+
+        Map<String, Object> columns = new LinkedHashMap<>();
+        for (Map<String, Object> item : items) {
+            columns.put(item.get("name").toString(), item.get("checked"));
+        }
+
+        if (rows.isEmpty()) {
+            return new DocumentPositionParameters(false, false, false, columns);
+        }
+
+        Map<String, Object> row = rows.get(0);
+
+        return new DocumentPositionParameters(true, Boolean.TRUE.equals(row.get("suggestresource")),
+                Boolean.TRUE.equals(row.get("draftmakesreservation")), columns);
+    }
+
+    private static final class DocumentPositionParameters {
+
+        private final boolean exists;
+
+        private final boolean suggestResource;
+
+        private final boolean draftMakesReservation;
+
+        private final Map<String, Object> columns;
+
+        private DocumentPositionParameters(final boolean exists, final boolean suggestResource,
+                final boolean draftMakesReservation, final Map<String, Object> columns) {
+            this.exists = exists;
+            this.suggestResource = suggestResource;
+            this.draftMakesReservation = draftMakesReservation;
+            this.columns = Collections.unmodifiableMap(columns);
+        }
+
+    }
+
+}
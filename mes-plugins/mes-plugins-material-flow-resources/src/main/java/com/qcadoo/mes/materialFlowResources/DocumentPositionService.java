@@ -4,6 +4,7 @@ import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.qcadoo.mes.basic.GridResponse;
+import com.qcadoo.mes.basic.LookupQueryCache;
 import com.qcadoo.mes.basic.LookupUtils;
 import com.qcadoo.mes.basic.controllers.dataProvider.DataProvider;
 import com.qcadoo.mes.basic.controllers.dataProvider.dto.AbstractDTO;
@@ -15,8 +16,11 @@ import com.qcadoo.mes.materialFlowResources.service.ReservationsService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
 
 import java.math.BigDecimal;
@@ -26,6 +30,8 @@ import java.util.stream.Collectors;
 @Repository
 public class DocumentPositionService {
 
+    private static final String L_POSITIONS_CACHE_REGION = "documentPositions.";
+
     @Autowired
     private NamedParameterJdbcTemplate jdbcTemplate;
 
@@ -35,6 +41,9 @@ public class DocumentPositionService {
     @Autowired
     private LookupUtils lookupUtils;
 
+    @Autowired
+    private LookupQueryCache lookupQueryCache;
+
     @Autowired
     private DataProvider dataProvider;
 
@@ -44,6 +53,12 @@ public class DocumentPositionService {
     @Autowired
     private ReservationsService reservationsService;
 
+    @Autowired
+    private DocumentPositionLookups documentPositionLookups;
+
+    @Autowired
+    private DocumentPositionParametersCache documentPositionParametersCache;
+
     public GridResponse<DocumentPositionDTO> findAll(final Long documentId, final String _sidx, final String _sord, int page,
             int perPage, DocumentPositionDTO position) {
         String query = "SELECT %s FROM ( SELECT p.*, p.document_id as document, product.number as product, product.name as productName, product.unit, additionalcode.code as additionalcode, "
@@ -58,7 +73,12 @@ public class DocumentPositionService {
         Map<String, Object> parameters = new HashMap<>();
         parameters.put("documentId", documentId);
 
-        return lookupUtils.getGridResponse(query, _sidx, _sord, page, perPage, position, parameters);
+        return lookupUtils.getGridResponse(query, _sidx, _sord, page, perPage, position, parameters,
+                L_POSITIONS_CACHE_REGION + documentId);
+    }
+
+    public void invalidatePositionsCache(final Long documentId) {
+        lookupQueryCache.invalidate(L_POSITIONS_CACHE_REGION + documentId);
     }
 
     public void delete(Long id) {
@@ -73,6 +93,7 @@ public class DocumentPositionService {
         params.putAll(result);
         reservationsService.deleteReservationFromDocumentPosition(params);
         jdbcTemplate.update(queryBuilder.toString(), params);
+        invalidatePositionsCache(((Number) result.get("document_id")).longValue());
     }
 
     public void create(DocumentPositionDTO documentPositionVO) {
@@ -97,6 +118,47 @@ public class DocumentPositionService {
             params.put("id", positionId);
             reservationsService.createReservationFromDocumentPosition(params);
         }
+
+        invalidatePositionsCache(documentPositionVO.getDocument());
+    }
+
+    /**
+     * Creates many positions of one document in one transaction. Positions and their reservations are inserted with batch
+     * statements, so the number of round trips doesn't depend on the number of positions.
+     *
+     * @param documentPositionVOs
+     *            new positions of one document
+     */
+    @Transactional
+    public void create(List<DocumentPositionDTO> documentPositionVOs) {
+        List<Map<String, Object>> positionsParams = validator.validateAndTryMapBeforeCreate(documentPositionVOs);
+        Long documentId = documentPositionVOs.get(0).getDocument();
+
+        DocumentDTO document = documentPositionLookups.getDocument(documentId);
+        List<Long> positionIds = jdbcTemplate.queryForList(
+                "SELECT nextval('materialflowresources_position_id_seq') FROM generate_series(1, :count)",
+                Collections.singletonMap("count", positionsParams.size()), Long.class);
+
+        for (int index = 0; index < positionsParams.size(); index++) {
+            Map<String, Object> params = positionsParams.get(index);
+
+            params.put("id", positionIds.get(index));
+            params.put("type", document.getType());
+            params.put("state", document.getState());
+        }
+
+        Set<String> keySet = positionsParams.get(0).keySet();
+        String keys = keySet.stream().collect(Collectors.joining(", "));
+        String values = keySet.stream().map(key -> ":" + key).collect(Collectors.joining(", "));
+        String query = String.format("INSERT INTO materialflowresources_position (%s) VALUES (%s)", keys, values);
+
+        SqlParameterSource[] batchParams = positionsParams.stream().map(MapSqlParameterSource::new)
+                .toArray(SqlParameterSource[]::new);
+
+        jdbcTemplate.batchUpdate(query, batchParams);
+        reservationsService.createReservationsFromDocumentPositions(documentId, positionsParams);
+
+        invalidatePositionsCache(documentId);
     }
 
     public void update(Long id, DocumentPositionDTO documentPositionVO) {
@@ -111,6 +173,7 @@ public class DocumentPositionService {
 
         reservationsService.updateReservationFromDocumentPosition(params);
         jdbcTemplate.update(query, params);
+        invalidatePositionsCache(documentPositionVO.getDocument());
     }
 
     public List<AbstractDTO> getStorageLocations(String q, String product, String document) {
@@ -157,19 +220,15 @@ public class DocumentPositionService {
 
     public Map<String, Object> getGridConfig(Long documentId) {
         try {
-            String query = "select * from materialflowresources_documentpositionparametersitem order by ordering";
-            List<Map<String, Object>> items = jdbcTemplate.queryForList(query, Collections.EMPTY_MAP);
+            if (!documentPositionParametersCache.exists()) {
+                return Collections.EMPTY_MAP;
+            }
 
             Map<String, Object> config = new HashMap<>();
             config.put("readOnly", isGridReadOnly(documentId));
             config.put("suggestResource", shouldSuggestResource());
             config.put("outDocument", isOutDocument(documentId));
-
-            Map<String, Object> columns = new LinkedHashMap<>();
-            for (Map<String, Object> item : items) {
-                columns.put(item.get("name").toString(), item.get("checked"));
-            }
-            config.put("columns", columns);
+            config.put("columns", documentPositionParametersCache.getColumns());
 
             return config;
 
@@ -204,26 +263,14 @@ public class DocumentPositionService {
     }
 
     public void updateDocumentPositionsNumbers(final Long documentId) {
-        String query = "SELECT p.*, p.document_id as document, product.number as product, product.unit, additionalcode.code as additionalcode, palletnumber.number as palletnumber, "
-                + "location.number as storagelocationnumber\n" + "	FROM materialflowresources_position p\n"
-                + "	left join basic_product product on (p.product_id = product.id)\n"
-                + "	left join basic_additionalcode additionalcode on (p.additionalcode_id = additionalcode.id)\n"
-                + "	left join basic_palletnumber palletnumber on (p.palletnumber_id = palletnumber.id)\n"
-                + "	left join materialflowresources_storagelocation location on (p.storagelocation_id = location.id) WHERE p.document_id = :documentId ORDER BY p.number";
-
-        List<DocumentPositionDTO> list = jdbcTemplate.query(query, Collections.singletonMap("documentId", documentId),
-                new BeanPropertyRowMapper(DocumentPositionDTO.class));
-        int index = 1;
-        for (DocumentPositionDTO documentPositionDTO : list) {
-            documentPositionDTO.setNumber(index);
-            Map<String, Object> parameters = new HashMap<>();
-            parameters.put("number", documentPositionDTO.getNumber());
-            parameters.put("id", documentPositionDTO.getId());
-            String _query = "UPDATE materialflowresources_position SET number = :number WHERE id = :id ";
-            jdbcTemplate.update(_query, parameters);
-            index++;
-        }
+        String query = "UPDATE materialflowresources_position p SET number = numbered.rownumber "
+                + "FROM (SELECT id, ROW_NUMBER() OVER (ORDER BY number, id) AS rownumber "
+                + "FROM materialflowresources_position WHERE document_id = :documentId) numbered "
+                + "WHERE p.id = numbered.id AND p.number IS DISTINCT FROM numbered.rownumber";
+
+        jdbcTemplate.update(query, Collections.singletonMap("documentId", documentId));
 
+        invalidatePositionsCache(documentId);
     }
 
     public Long findDocumentByPosition(final Long positionId) {
@@ -290,21 +337,17 @@ public class DocumentPositionService {
     }
 
     private boolean isGridReadOnly(Long documentId) {
-        String query = "select state from materialflowresources_document WHERE id = :id";
-        String stateString = jdbcTemplate.queryForObject(query, Collections.singletonMap("id", documentId), String.class);
+        String stateString = documentPositionLookups.getDocument(documentId).getState();
 
         return DocumentState.parseString(stateString) == DocumentState.ACCEPTED;
     }
 
     private boolean shouldSuggestResource() {
-        String query = "select suggestResource from materialflowresources_documentpositionparameters limit 1";
-        Boolean suggestResource = jdbcTemplate.queryForObject(query, Collections.EMPTY_MAP, Boolean.class);
-        return suggestResource;
+        return documentPositionParametersCache.isSuggestResource();
     }
 
     private Object isOutDocument(Long documentId) {
-        String query = "select type from materialflowresources_document WHERE id = :id";
-        String stateString = jdbcTemplate.queryForObject(query, Collections.singletonMap("id", documentId), String.class);
+        String stateString = documentPositionLookups.getDocument(documentId).getType();
         DocumentType type = DocumentType.parseString(stateString);
         return type == DocumentType.INTERNAL_OUTBOUND || type == DocumentType.RELEASE || type == DocumentType.TRANSFER;
     }
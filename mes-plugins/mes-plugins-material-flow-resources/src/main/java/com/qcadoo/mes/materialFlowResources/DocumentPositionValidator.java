@@ -11,25 +11,26 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.i18n.LocaleContextHolder;
 import org.springframework.dao.DataAccessException;
 import org.springframework.dao.EmptyResultDataAccessException;
-import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
 
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.qcadoo.localization.api.TranslationService;
 import com.qcadoo.mes.basic.BasicException;
-import com.qcadoo.mes.basic.controllers.dataProvider.dto.AbstractDTO;
-import com.qcadoo.mes.basic.controllers.dataProvider.responses.DataResponse;
 import com.qcadoo.mes.materialFlowResources.constants.DocumentState;
 import com.qcadoo.mes.materialFlowResources.constants.DocumentType;
 import com.qcadoo.mes.materialFlowResources.constants.WarehouseAlgorithm;
@@ -37,6 +38,24 @@ import com.qcadoo.mes.materialFlowResources.constants.WarehouseAlgorithm;
 @Service
 public class DocumentPositionValidator {
 
+    private static final String L_PRODUCT_NOT_FOUND = "Nie znaleziono takiego produktu: '%s'.";
+
+    private static final String L_ADDITIONAL_CODE_NOT_FOUND = "Nie znaleziono takiego dodatkowego kodu: '%s'.";
+
+    private static final String L_PALLET_NUMBER_NOT_FOUND = "Nie znaleziono takiego numeru palety: '%s'.";
+
+    private static final String L_STORAGE_LOCATION_NOT_FOUND = "Nie znaleziono takiego miejsca składowania: '%s'.";
+
+    private static final String L_RESOURCE_NOT_FOUND = "Nie znaleziono takiego zasobu: '%s'.";
+
+    private static final String L_RESOURCE_NUMBERS_QUERY = "SELECT product.number, resource.conversion, additionalcode.code, "
+            + "resource.number FROM materialflowresources_resource resource "
+            + "JOIN basic_product product ON (resource.product_id = product.id) "
+            + "LEFT JOIN basic_additionalcode additionalcode ON (resource.additionalcode_id = additionalcode.id) "
+            + "WHERE resource.location_id IN (SELECT DISTINCT COALESCE(locationfrom_id, locationto_id) "
+            + "FROM materialflowresources_document WHERE id = :document) AND product.number IN (:products) "
+            + "AND (resource.number IN (:numbers)";
+
     @Autowired
     private NamedParameterJdbcTemplate jdbcTemplate;
 
@@ -46,10 +65,113 @@ public class DocumentPositionValidator {
     @Autowired
     private DocumentPositionService documentPositionService;
 
+    @Autowired
+    private DocumentPositionLookups documentPositionLookups;
+
     public Map<String, Object> validateAndTryMapBeforeCreate(DocumentPositionDTO documentPositionDTO) {
         return validateAndMap(documentPositionDTO);
     }
 
+    /**
+     * Validates many new positions of one document at once. Referenced numbers are resolved with one query per dictionary and
+     * available quantities are checked against sums of all positions for given product and resource.
+     *
+     * @param positions
+     *            new positions of one document
+     * @return params of positions, in the same order as given positions
+     */
+    public List<Map<String, Object>> validateAndTryMapBeforeCreate(List<DocumentPositionDTO> positions) {
+        Preconditions.checkArgument(positions != null && !positions.isEmpty(), "documentGrid.required.documentPosition");
+
+        Long documentId = positions.get(0).getDocument();
+
+        Preconditions.checkNotNull(documentId, "documentGrid.required.documentPosition.document");
+
+        for (DocumentPositionDTO position : positions) {
+            Preconditions.checkArgument(documentId.equals(position.getDocument()),
+                    "documentGrid.required.documentPosition.document");
+        }
+
+        DocumentDTO document = documentPositionLookups.getDocument(documentId);
+
+        if (isGridReadOnly(document)) {
+            throw new BasicException("documentGrid.error.position.documentAccepted");
+        }
+
+        Map<String, Long> productIds = getIdsByNumbers(
+                "SELECT number, id FROM basic_product WHERE number IN (:numbers)",
+                positions.stream().map(DocumentPositionDTO::getProduct));
+        Map<String, Map<String, Long>> additionalCodeIds = getAdditionalCodeIdsByCodes(positions.stream()
+                .map(DocumentPositionDTO::getAdditionalCode));
+        Map<String, Long> palletNumberIds = getIdsByNumbers(
+                "SELECT number, id FROM basic_palletnumber WHERE number IN (:numbers)",
+                positions.stream().map(DocumentPositionDTO::getPalletNumber));
+        Map<String, Long> storageLocationIds = getIdsByNumbers(
+                "SELECT number, id FROM materialflowresources_storagelocation WHERE number IN (:numbers)",
+                positions.stream().map(DocumentPositionDTO::getStorageLocation));
+        Map<String, Long> resourceIds = getIdsByNumbers(
+                "SELECT number, id FROM materialflowresources_resource WHERE number IN (:numbers)",
+                positions.stream().map(DocumentPositionDTO::getResource));
+
+        LocationDTO warehouseTo = requiresPositionAttributes(document) ? getWarehouseById(document.getLocationTo_id()) : null;
+        boolean resourceRequired = isResourceRequired(document);
+        Map<List<Object>, Set<String>> resourceNumbers = getResourceNumbers(documentId, positions);
+
+        List<String> errors = new ArrayList<>();
+        List<Map<String, Object>> positionsParams = new ArrayList<>();
+
+        for (int index = 0; index < positions.size(); index++) {
+            DocumentPositionDTO position = positions.get(index);
+            List<String> positionErrors = new ArrayList<>();
+
+            if (Strings.isNullOrEmpty(position.getProduct())) {
+                positionErrors.add("documentGrid.error.position.product.required");
+            }
+            if (Strings.isNullOrEmpty(position.getUnit())) {
+                positionErrors.add("documentGrid.error.position.unit.required");
+            }
+
+            positionErrors.addAll(validateConversion(position));
+            positionErrors.addAll(validateAdditionalCode(position, additionalCodeIds));
+            positionErrors.addAll(validatePrice(position));
+            positionErrors.addAll(validateQuantity(position));
+            positionErrors.addAll(validateGivenquantity(position));
+            positionErrors.addAll(validateDates(position));
+
+            if (warehouseTo != null) {
+                positionErrors.addAll(checkAttributesRequirement(position, warehouseTo));
+            }
+
+            positionErrors.addAll(validateResources(position, resourceRequired, resourceNumbers));
+            positionErrors.addAll(validatePallet(position, document));
+
+            Long productId = getIdByNumber(productIds, position.getProduct(), L_PRODUCT_NOT_FOUND, positionErrors);
+            Long additionalCodeId = getAdditionalCodeId(additionalCodeIds, position, positionErrors);
+            Long palletNumberId = getIdByNumber(palletNumberIds, position.getPalletNumber(), L_PALLET_NUMBER_NOT_FOUND,
+                    positionErrors);
+            Long storageLocationId = getIdByNumber(storageLocationIds, position.getStorageLocation(),
+                    L_STORAGE_LOCATION_NOT_FOUND, positionErrors);
+            Long resourceId = getIdByNumber(resourceIds, position.getResource(), L_RESOURCE_NOT_FOUND, positionErrors);
+
+            if (positionErrors.isEmpty()) {
+                positionsParams.add(mapDocumentPositionVOToParams(position, productId, additionalCodeId, palletNumberId,
+                        storageLocationId, resourceId));
+            } else {
+                addPositionErrors(errors, index, positionErrors);
+            }
+        }
+
+        if (errors.isEmpty()) {
+            errors.addAll(validateAvailableQuantities(positionsParams, document));
+        }
+
+        if (!errors.isEmpty()) {
+            throw new BasicException(errors.stream().collect(Collectors.joining("\n")));
+        }
+
+        return positionsParams;
+    }
+
     public Map<String, Object> validateAndTryMapBeforeUpdate(DocumentPositionDTO documentPositionDTO) {
         return validateAndMap(documentPositionDTO);
     }
@@ -61,9 +183,7 @@ public class DocumentPositionValidator {
         Preconditions.checkNotNull(position, "documentGrid.required.documentPosition");
         Preconditions.checkNotNull(position.getDocument(), "documentGrid.required.documentPosition.document");
 
-        DocumentDTO document = jdbcTemplate
-                .queryForObject("SELECT * FROM materialflowresources_document WHERE id = :id", Collections.singletonMap("id",
-                        position.getDocument()), new BeanPropertyRowMapper<DocumentDTO>(DocumentDTO.class));
+        DocumentDTO document = documentPositionLookups.getDocument(position.getDocument());
 
         List<String> errors = new ArrayList<>();
         Map<String, Object> params = null;
@@ -108,24 +228,26 @@ public class DocumentPositionValidator {
     }
 
     private List<String> checkAttributesRequirement(final DocumentPositionDTO position, final DocumentDTO document) {
-        DocumentType documentType = DocumentType.parseString(document.getType());
-
-        if (documentType == DocumentType.RECEIPT || documentType == DocumentType.INTERNAL_INBOUND) {
-            LocationDTO warehouseTo = getWarehouseById(document.getLocationTo_id());
-
-            return validatePositionAttributes(position, warehouseTo.isRequirePrice(), warehouseTo.isRequirebatch(),
-                    warehouseTo.isRequirEproductionDate(), warehouseTo.isRequirEexpirationDate());
+        if (requiresPositionAttributes(document)) {
+            return checkAttributesRequirement(position, getWarehouseById(document.getLocationTo_id()));
         }
 
         return Arrays.asList();
     }
 
+    private List<String> checkAttributesRequirement(final DocumentPositionDTO position, final LocationDTO warehouseTo) {
+        return validatePositionAttributes(position, warehouseTo.isRequirePrice(), warehouseTo.isRequirebatch(),
+                warehouseTo.isRequirEproductionDate(), warehouseTo.isRequirEexpirationDate());
+    }
+
+    private boolean requiresPositionAttributes(final DocumentDTO document) {
+        DocumentType documentType = DocumentType.parseString(document.getType());
+
+        return documentType == DocumentType.RECEIPT || documentType == DocumentType.INTERNAL_INBOUND;
+    }
+
     private List<String> validateAvailableQuantity(DocumentPositionDTO position, DocumentDTO document, List<String> errors) {
-        String type = document.getType();
-        String query = "SELECT draftmakesreservation FROM materialflowresources_documentpositionparameters LIMIT 1";
-        Boolean enabled = jdbcTemplate.queryForObject(query, new HashMap<String, Object>() {
-        }, Boolean.class);
-        if (enabled && DocumentType.isOutbound(type) && !document.getInBuffer()) {
+        if (documentPositionLookups.reservationsEnabled(document.getId())) {
             BigDecimal availableQuantity = getAvailableQuantityForProductAndLocation(position,
                     tryGetProductIdByNumber(position.getProduct(), errors), document.getLocationFrom_id());
             BigDecimal quantity = position.getQuantity();
@@ -146,6 +268,77 @@ public class DocumentPositionValidator {
         return Arrays.asList();
     }
 
+    private List<String> validateAvailableQuantities(List<Map<String, Object>> positionsParams, DocumentDTO document) {
+        List<String> errors = new ArrayList<>();
+
+        if (!documentPositionLookups.reservationsEnabled(document.getId())) {
+            return errors;
+        }
+
+        Map<Long, BigDecimal> quantitiesByProduct = sumQuantities(positionsParams, "product_id");
+        Map<Long, BigDecimal> quantitiesByResource = sumQuantities(positionsParams, "resource_id");
+
+        Map<String, Object> params = Maps.newHashMap();
+        params.put("location_id", document.getLocationFrom_id());
+        params.put("product_ids", quantitiesByProduct.keySet());
+
+        Map<Long, BigDecimal> availableQuantitiesByProduct = getAvailableQuantities(
+                "SELECT product_id, availableQuantity FROM materialflowresources_resourcestock "
+                        + "WHERE location_id = :location_id AND product_id IN (:product_ids)", params);
+        Map<Long, BigDecimal> availableQuantitiesByResource = quantitiesByResource.isEmpty() ? Collections.emptyMap()
+                : getAvailableQuantities("SELECT id, availableQuantity FROM materialflowresources_resource WHERE id IN (:resource_ids)",
+                        Collections.singletonMap("resource_ids", quantitiesByResource.keySet()));
+
+        for (int index = 0; index < positionsParams.size(); index++) {
+            Long productId = (Long) positionsParams.get(index).get("product_id");
+            Long resourceId = (Long) positionsParams.get(index).get("resource_id");
+
+            if (!isQuantityAvailable(quantitiesByProduct.get(productId), availableQuantitiesByProduct.get(productId))
+                    || (resourceId != null && !isQuantityAvailable(quantitiesByResource.get(resourceId),
+                            availableQuantitiesByResource.get(resourceId)))) {
+                addPositionErrors(errors, index, Arrays.asList("documentGrid.error.position.quantity.notEnoughResources"));
+            }
+        }
+
+        return errors;
+    }
+
+    private Map<Long, BigDecimal> sumQuantities(List<Map<String, Object>> positionsParams, String key) {
+        Map<Long, BigDecimal> quantities = Maps.newHashMap();
+
+        for (Map<String, Object> params : positionsParams) {
+            if (params.get(key) != null) {
+                quantities.merge((Long) params.get(key), (BigDecimal) params.get("quantity"), BigDecimal::add);
+            }
+        }
+
+        return quantities;
+    }
+
+    private Map<Long, BigDecimal> getAvailableQuantities(String query, Map<String, ?> params) {
+        Map<Long, BigDecimal> availableQuantities = Maps.newHashMap();
+
+        jdbcTemplate.query(query, params, new RowCallbackHandler() {
+
+            @Override
+            public void processRow(ResultSet rs) throws SQLException {
+                availableQuantities.put(rs.getLong(1), rs.getBigDecimal(2));
+            }
+        });
+
+        return availableQuantities;
+    }
+
+    private boolean isQuantityAvailable(BigDecimal quantity, BigDecimal availableQuantity) {
+        return availableQuantity != null && quantity.compareTo(availableQuantity) <= 0;
+    }
+
+    private void addPositionErrors(List<String> errors, int index, List<String> positionErrors) {
+        for (String error : positionErrors) {
+            errors.add(String.format("%d: %s", index + 1, error));
+        }
+    }
+
     private BigDecimal getAvailableQuantityForResource(DocumentPositionDTO position, Long productId, Long locationId) {
 
         Long positionId = 0L;
@@ -284,40 +477,117 @@ public class DocumentPositionValidator {
             return Arrays.asList();
         }
 
+        return validateResources(position, isResourceRequired(document),
+                getResourceNumbers(position.getDocument(), Collections.singletonList(position)));
+    }
+
+    private List<String> validateResources(final DocumentPositionDTO position, final boolean resourceRequired,
+            final Map<List<Object>, Set<String>> resourceNumbers) {
+        if (resourceRequired && position.getResource() == null) {
+            return Arrays.asList("documentGrid.error.position.resource.required");
+        }
+
+        if (!Strings.isNullOrEmpty(position.getResource())) {
+            Set<String> numbers = resourceNumbers.getOrDefault(
+                    getResourcesKey(position.getProduct(), position.getConversion(), position.getAdditionalCode()),
+                    Collections.emptySet());
+
+            if (!numbers.contains(position.getResource())) {
+                position.setResource(null);
+                return Arrays.asList("documentGrid.error.position.resource.invalid");
+            }
+        }
+
+        return Arrays.asList();
+    }
+
+    private boolean isResourceRequired(final DocumentDTO document) {
         DocumentType type = DocumentType.parseString(document.getType());
 
         if (DocumentType.TRANSFER.equals(type) || DocumentType.RELEASE.equals(type)
                 || DocumentType.INTERNAL_OUTBOUND.equals(type)) {
             LocationDTO warehouseFrom = getWarehouseById(document.getLocationFrom_id());
             String algorithm = warehouseFrom.getAlgorithm();
-            if (WarehouseAlgorithm.MANUAL.getStringValue().compareTo(algorithm) == 0) {
-                boolean isValid = position.getResource() != null;
-                if (!isValid) {
-                    return Arrays.asList("documentGrid.error.position.resource.required");
-                }
-            }
+
+            return WarehouseAlgorithm.MANUAL.getStringValue().compareTo(algorithm) == 0;
         }
 
-        if (!Strings.isNullOrEmpty(position.getResource())) {
-            boolean find = false;
-            DataResponse resourcesResponse = documentPositionService.getResourcesResponse(position.getDocument(), "",
-                    position.getProduct(), position.getConversion(), position.getAdditionalCode());
-            List<AbstractDTO> resources = resourcesResponse.getEntities();
-            for (AbstractDTO abstractDTO : resources) {
-                ResourceDTO resourceDTO = (ResourceDTO) abstractDTO;
-
-                if (position.getResource().equals(resourceDTO.getNumber())) {
-                    find = true;
-                    break;
+        return false;
+    }
+
+    /**
+     * Resolves resources of given positions with one query. Resources are matched by product, conversion and location of the
+     * document, and by additional code if there are any resources with it - the same way as the resource lookup of the grid.
+     *
+     * @return numbers of resources which given positions can refer to, by product, conversion and additional code
+     */
+    private Map<List<Object>, Set<String>> getResourceNumbers(final Long documentId, final List<DocumentPositionDTO> positions) {
+        Map<List<Object>, Set<String>> resourceNumbers = Maps.newHashMap();
+        List<DocumentPositionDTO> positionsWithResource = positions.stream()
+                .filter(position -> !Strings.isNullOrEmpty(position.getResource()) && !Strings.isNullOrEmpty(position.getProduct()))
+                .collect(Collectors.toList());
+
+        if (positionsWithResource.isEmpty()) {
+            return resourceNumbers;
+        }
+
+        Set<String> additionalCodes = positionsWithResource.stream().map(DocumentPositionDTO::getAdditionalCode)
+                .filter(code -> !Strings.isNullOrEmpty(code)).collect(Collectors.toSet());
+        Map<String, Object> params = Maps.newHashMap();
+
+        params.put("document", documentId);
+        params.put("products", positionsWithResource.stream().map(DocumentPositionDTO::getProduct).collect(Collectors.toSet()));
+        params.put("numbers", positionsWithResource.stream().map(DocumentPositionDTO::getResource).collect(Collectors.toSet()));
+
+        StringBuilder query = new StringBuilder(L_RESOURCE_NUMBERS_QUERY);
+
+        if (!additionalCodes.isEmpty()) {
+            query.append(" OR additionalcode.code IN (:additionalCodes)");
+            params.put("additionalCodes", additionalCodes);
+        }
+
+        query.append(")");
+
+        Map<List<Object>, Set<String>> numbersWithAdditionalCode = Maps.newHashMap();
+        Map<List<Object>, Set<String>> numbersWithoutAdditionalCode = Maps.newHashMap();
+
+        jdbcTemplate.query(query.toString(), params, new RowCallbackHandler() {
+
+            @Override
+            public void processRow(ResultSet rs) throws SQLException {
+                String product = rs.getString(1);
+                BigDecimal conversion = rs.getBigDecimal(2);
+                String additionalCode = rs.getString(3);
+                String number = rs.getString(4);
+
+                numbersWithoutAdditionalCode.computeIfAbsent(getResourcesKey(product, conversion, null),
+                        key -> Sets.newHashSet()).add(number);
+
+                if (additionalCode != null) {
+                    numbersWithAdditionalCode.computeIfAbsent(getResourcesKey(product, conversion, additionalCode),
+                            key -> Sets.newHashSet()).add(number);
                 }
             }
-            if (!find) {
-                position.setResource(null);
-                return Arrays.asList("documentGrid.error.position.resource.invalid");
+        });
+
+        for (DocumentPositionDTO position : positionsWithResource) {
+            List<Object> key = getResourcesKey(position.getProduct(), position.getConversion(), position.getAdditionalCode());
+            Set<String> numbers = numbersWithAdditionalCode.get(key);
+
+            if (numbers == null) {
+                numbers = numbersWithoutAdditionalCode.getOrDefault(
+                        getResourcesKey(position.getProduct(), position.getConversion(), null), Collections.emptySet());
             }
+
+            resourceNumbers.put(key, numbers);
         }
 
-        return Arrays.asList();
+        return resourceNumbers;
+    }
+
+    private List<Object> getResourcesKey(final String product, final BigDecimal conversion, final String additionalCode) {
+        return Arrays.asList(product, (conversion == null) ? null : conversion.stripTrailingZeros(),
+                Strings.emptyToNull(additionalCode));
     }
 
     private List<String> validateDates(final DocumentPositionDTO position) {
@@ -331,11 +601,7 @@ public class DocumentPositionValidator {
     }
 
     private LocationDTO getWarehouseById(Long id) {
-        BeanPropertyRowMapper<LocationDTO> x = new BeanPropertyRowMapper<>(LocationDTO.class);
-        x.setPrimitivesDefaultedForNullValue(true);
-
-        return jdbcTemplate.queryForObject("SELECT * FROM materialflow_location WHERE id = :id",
-                Collections.singletonMap("id", id), x);
+        return documentPositionLookups.getLocation(id);
     }
 
     private Collection<? extends String> validateQuantity(DocumentPositionDTO position) {
@@ -405,24 +671,114 @@ public class DocumentPositionValidator {
         return Arrays.asList();
     }
 
+    private Collection<? extends String> validateAdditionalCode(DocumentPositionDTO position,
+            Map<String, Map<String, Long>> additionalCodeIds) {
+        String additionalCode = position.getAdditionalCode();
+        if (!StringUtils.isEmpty(additionalCode) && additionalCodeIds.containsKey(additionalCode)
+                && !additionalCodeIds.get(additionalCode).containsKey(position.getProduct())) {
+            return Arrays.asList("documentGrid.error.position.additionalCode.doesntMatch");
+        }
+        return Arrays.asList();
+    }
+
+    private Map<String, Map<String, Long>> getAdditionalCodeIdsByCodes(Stream<String> codes) {
+        Set<String> distinctCodes = codes.filter(code -> !Strings.isNullOrEmpty(code)).collect(Collectors.toSet());
+        Map<String, Map<String, Long>> additionalCodeIds = Maps.newHashMap();
+
+        if (distinctCodes.isEmpty()) {
+            return additionalCodeIds;
+        }
+
+        jdbcTemplate.query("SELECT additionalcode.code, product.number, additionalcode.id FROM basic_additionalcode additionalcode "
+                + "JOIN basic_product product ON (additionalcode.product_id = product.id) WHERE additionalcode.code IN (:codes)",
+                Collections.singletonMap("codes", distinctCodes), new RowCallbackHandler() {
+
+                    @Override
+                    public void processRow(ResultSet rs) throws SQLException {
+                        additionalCodeIds.computeIfAbsent(rs.getString(1), code -> Maps.newHashMap()).put(rs.getString(2),
+                                rs.getLong(3));
+                    }
+                });
+
+        return additionalCodeIds;
+    }
+
+    private Long getAdditionalCodeId(Map<String, Map<String, Long>> additionalCodeIds, DocumentPositionDTO position,
+            List<String> errors) {
+        String additionalCode = position.getAdditionalCode();
+        if (Strings.isNullOrEmpty(additionalCode)) {
+            return null;
+        }
+
+        Map<String, Long> idsByProduct = additionalCodeIds.get(additionalCode);
+
+        if (idsByProduct == null) {
+            errors.add(String.format(L_ADDITIONAL_CODE_NOT_FOUND, additionalCode));
+            return null;
+        }
+
+        return idsByProduct.get(position.getProduct());
+    }
+
+    private Map<String, Long> getIdsByNumbers(String query, Stream<String> numbers) {
+        Set<String> distinctNumbers = numbers.filter(number -> !Strings.isNullOrEmpty(number)).collect(Collectors.toSet());
+        Map<String, Long> ids = Maps.newHashMap();
+
+        if (distinctNumbers.isEmpty()) {
+            return ids;
+        }
+
+        jdbcTemplate.query(query, Collections.singletonMap("numbers", distinctNumbers), new RowCallbackHandler() {
+
+            @Override
+            public void processRow(ResultSet rs) throws SQLException {
+                ids.put(rs.getString(1), rs.getLong(2));
+            }
+        });
+
+        return ids;
+    }
+
+    private Long getIdByNumber(Map<String, Long> ids, String number, String notFoundMessage, List<String> errors) {
+        if (Strings.isNullOrEmpty(number)) {
+            return null;
+        }
+
+        Long id = ids.get(number);
+
+        if (id == null) {
+            errors.add(String.format(notFoundMessage, number));
+        }
+
+        return id;
+    }
+
     private Map<String, Object> tryMapDocumentPositionVOToParams(DocumentPositionDTO vo, List<String> errors) {
+        return mapDocumentPositionVOToParams(vo, tryGetProductIdByNumber(vo.getProduct(), errors),
+                tryGetAdditionalCodeIdByCode(vo.getAdditionalCode(), errors),
+                tryGetPalletNumberIdByNumber(vo.getPalletNumber(), errors),
+                tryGetStorageLocationIdByNumber(vo.getStorageLocation(), errors), tryGetResourceIdByNumber(vo.getResource(), errors));
+    }
+
+    private Map<String, Object> mapDocumentPositionVOToParams(DocumentPositionDTO vo, Long productId, Long additionalCodeId,
+            Long palletNumberId, Long storageLocationId, Object resourceId) {
         Map<String, Object> params = new HashMap<>();
 
         params.put("id", vo.getId());
-        params.put("product_id", tryGetProductIdByNumber(vo.getProduct(), errors));
-        params.put("additionalcode_id", tryGetAdditionalCodeIdByCode(vo.getAdditionalCode(), errors));
+        params.put("product_id", productId);
+        params.put("additionalcode_id", additionalCodeId);
         params.put("quantity", vo.getQuantity());
         params.put("givenquantity", vo.getGivenquantity());
         params.put("givenunit", vo.getGivenunit());
         params.put("conversion", vo.getUnit().equals(vo.getGivenunit()) ? 1 : vo.getConversion());
         params.put("expirationDate", vo.getExpirationDate());
-        params.put("palletnumber_id", tryGetPalletNumberIdByNumber(vo.getPalletNumber(), errors));
+        params.put("palletnumber_id", palletNumberId);
         params.put("typeofpallet", vo.getTypeOfPallet());
-        params.put("storagelocation_id", tryGetStorageLocationIdByNumber(vo.getStorageLocation(), errors));
+        params.put("storagelocation_id", storageLocationId);
         params.put("document_id", vo.getDocument());
         params.put("productionDate", vo.getProductionDate());
         params.put("price", vo.getPrice());
-        params.put("resource_id", tryGetResourceIdByNumber(vo.getResource(), errors));
+        params.put("resource_id", resourceId);
         params.put("batch", vo.getBatch().trim());
         params.put("waste", vo.isWaste());
 
@@ -442,7 +798,7 @@ public class DocumentPositionValidator {
             return productId;
 
         } catch (EmptyResultDataAccessException e) {
-            errors.add(String.format("Nie znaleziono takiego produktu: '%s'.", productNumber));
+            errors.add(String.format(L_PRODUCT_NOT_FOUND, productNumber));
             return null;
         }
     }
@@ -460,7 +816,7 @@ public class DocumentPositionValidator {
             return additionalCodeId;
 
         } catch (EmptyResultDataAccessException e) {
-            errors.add(String.format("Nie znaleziono takiego dodatkowego kodu: '%s'.", additionalCode));
+            errors.add(String.format(L_ADDITIONAL_CODE_NOT_FOUND, additionalCode));
             return null;
         }
     }
@@ -478,7 +834,7 @@ public class DocumentPositionValidator {
             return palletNumberId;
 
         } catch (EmptyResultDataAccessException e) {
-            errors.add(String.format("Nie znaleziono takiego numeru palety: '%s'.", palletNumber));
+            errors.add(String.format(L_PALLET_NUMBER_NOT_FOUND, palletNumber));
             return null;
         }
     }
@@ -497,7 +853,7 @@ public class DocumentPositionValidator {
             return storageLocationId;
 
         } catch (EmptyResultDataAccessException e) {
-            errors.add(String.format("Nie znaleziono takiego miejsca składowania: '%s'.", storageLocationNumber));
+            errors.add(String.format(L_STORAGE_LOCATION_NOT_FOUND, storageLocationNumber));
             return null;
         }
     }
@@ -514,7 +870,7 @@ public class DocumentPositionValidator {
             return resourceId;
 
         } catch (EmptyResultDataAccessException e) {
-            errors.add(String.format("Nie znaleziono takiego zasobu: '%s'.", resource));
+            errors.add(String.format(L_RESOURCE_NOT_FOUND, resource));
             return null;
         }
     }
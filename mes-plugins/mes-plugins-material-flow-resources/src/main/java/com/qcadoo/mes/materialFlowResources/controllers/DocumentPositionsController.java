@@ -4,6 +4,7 @@ import java.io.UnsupportedEncodingException;
 import java.math.BigDecimal;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.TimeZone;
@@ -69,6 +70,13 @@ public class DocumentPositionsController {
         documentPositionRepository.updateDocumentPositionsNumbers(documentPositionVO.getDocument());
     }
 
+    @ResponseBody
+    @RequestMapping(value = "batch", method = RequestMethod.PUT)
+    public void createAll(@RequestBody List<DocumentPositionDTO> documentPositionVOs) {
+        documentPositionRepository.create(documentPositionVOs);
+        documentPositionRepository.updateDocumentPositionsNumbers(documentPositionVOs.get(0).getDocument());
+    }
+
     @ResponseBody
     @RequestMapping(value = "{id}", method = RequestMethod.DELETE)
     public void delete(@PathVariable Long id) {
@@ -30,6 +30,8 @@ import org.springframework.context.i18n.LocaleContextHolder;
 import org.springframework.stereotype.Service;
 
 import com.qcadoo.localization.api.TranslationService;
+import com.qcadoo.mes.materialFlowResources.DocumentPositionLookups;
+import com.qcadoo.mes.materialFlowResources.DocumentPositionService;
 import com.qcadoo.mes.materialFlowResources.constants.DocumentFields;
 import com.qcadoo.mes.materialFlowResources.service.ReservationsService;
 import com.qcadoo.mes.materialFlowResources.validators.DocumentValidators;
@@ -50,6 +52,12 @@ public class DocumentModelHooks {
     @Autowired
     private ReservationsService reservationsService;
 
+    @Autowired
+    private DocumentPositionService documentPositionService;
+
+    @Autowired
+    private DocumentPositionLookups documentPositionLookups;
+
     public void onCreate(final DataDefinition documentDD, final Entity document) {
         setInitialDocumentNumber(document);
         setInitialDocumentInBuffer(document);
@@ -72,6 +80,18 @@ public class DocumentModelHooks {
         if (reservationsService.reservationsEnabledForDocumentPositions(document)) {
             documentValidators.validateAvailableQuantities(document);
         }
+
+        if (document.getId() != null) {
+            documentPositionService.invalidatePositionsCache(document.getId());
+            documentPositionLookups.evictDocument(document.getId());
+        }
+    }
+
+    public boolean onDelete(final DataDefinition documentDD, final Entity document) {
+        documentPositionService.invalidatePositionsCache(document.getId());
+        documentPositionLookups.evictDocument(document.getId());
+
+        return true;
     }
 
     private String getTranslatedType(Entity document) {
@@ -0,0 +1,26 @@
+package com.qcadoo.mes.materialFlowResources.hooks;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.qcadoo.mes.materialFlowResources.DocumentPositionParametersCache;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+
+@Service
+public class DocumentPositionParametersHooks {
+
+    @Autowired
+    private DocumentPositionParametersCache documentPositionParametersCache;
+
+    public void onSave(final DataDefinition documentPositionParametersDD, final Entity documentPositionParameters) {
+        documentPositionParametersCache.invalidate();
+    }
+
+    public boolean onDelete(final DataDefinition documentPositionParametersDD, final Entity documentPositionParameters) {
+        documentPositionParametersCache.invalidate();
+
+        return true;
+    }
+
+}
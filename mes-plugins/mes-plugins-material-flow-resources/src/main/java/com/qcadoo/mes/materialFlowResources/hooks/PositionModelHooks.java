@@ -26,6 +26,7 @@ package com.qcadoo.mes.materialFlowResources.hooks;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.qcadoo.mes.materialFlowResources.DocumentPositionService;
 import com.qcadoo.mes.materialFlowResources.MaterialFlowResourcesService;
 import com.qcadoo.mes.materialFlowResources.constants.DocumentFields;
 import com.qcadoo.mes.materialFlowResources.constants.DocumentState;
@@ -54,6 +55,9 @@ public class PositionModelHooks {
     @Autowired
     private ResourceReservationsService resourceReservationsService;
 
+    @Autowired
+    private DocumentPositionService documentPositionService;
+
     public void onSave(final DataDefinition positionDD, final Entity position) {
         Entity resource = position.getBelongsToField(PositionFields.RESOURCE);
         if (resource != null) {
@@ -69,6 +73,8 @@ public class PositionModelHooks {
 
             position.setField(PositionFields.TYPE, type.getStringValue());
             position.setField(PositionFields.STATE, state.getStringValue());
+
+            documentPositionService.invalidatePositionsCache(document.getId());
         }
 
         // if (positionValidators.validateAvailableQuantity(positionDD, position)) {
@@ -96,6 +102,13 @@ public class PositionModelHooks {
     public boolean onDelete(final DataDefinition positionDD, final Entity position) {
         resourceReservationsService.updateResourceQuantites(position,
                 position.getDecimalField(ReservationFields.QUANTITY).negate());
+
+        Entity document = position.getBelongsToField(PositionFields.DOCUMENT);
+
+        if (document != null) {
+            documentPositionService.invalidatePositionsCache(document.getId());
+        }
+
         return true;
     }
 
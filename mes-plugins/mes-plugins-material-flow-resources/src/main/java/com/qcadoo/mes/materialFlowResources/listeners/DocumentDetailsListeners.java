@@ -44,6 +44,7 @@ import com.qcadoo.localization.api.TranslationService;
 import com.qcadoo.mes.basic.ParameterService;
 import com.qcadoo.mes.basic.constants.ProductFields;
 import com.qcadoo.mes.basic.constants.UnitConversionItemFieldsB;
+import com.qcadoo.mes.materialFlowResources.DocumentPositionService;
 import com.qcadoo.mes.materialFlowResources.MaterialFlowResourcesService;
 import com.qcadoo.mes.materialFlowResources.constants.DocumentFields;
 import com.qcadoo.mes.materialFlowResources.constants.DocumentState;
@@ -118,6 +119,9 @@ public class DocumentDetailsListeners {
     @Autowired
     private ResourceReservationsService resourceReservationsService;
 
+    @Autowired
+    private DocumentPositionService documentPositionService;
+
     public void printDocument(final ViewDefinitionState view, final ComponentState componentState, final String[] args) {
         FormComponent documentForm = (FormComponent) view.getComponentByReference(L_FORM);
 
@@ -278,6 +282,8 @@ public class DocumentDetailsListeners {
         params.put("document_id", document.getId());
 
         jdbcTemplate.update(query, params);
+
+        documentPositionService.invalidatePositionsCache(document.getId());
     }
 
     @Transactional
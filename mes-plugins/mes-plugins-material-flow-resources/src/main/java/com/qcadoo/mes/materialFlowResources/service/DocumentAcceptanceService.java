@@ -0,0 +1,169 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialFlowResources.service;
+
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.basic.jobs.AsyncJobHandler;
+import com.qcadoo.mes.materialFlowResources.DocumentPositionService;
+import com.qcadoo.mes.materialFlowResources.constants.DocumentFields;
+import com.qcadoo.mes.materialFlowResources.constants.DocumentState;
+import com.qcadoo.mes.materialFlowResources.constants.DocumentType;
+import com.qcadoo.mes.materialFlowResources.constants.LocationFieldsMFR;
+import com.qcadoo.mes.materialFlowResources.constants.MaterialFlowResourcesConstants;
+import com.qcadoo.mes.materialFlowResources.constants.PositionFields;
+import com.qcadoo.mes.materialFlowResources.constants.WarehouseAlgorithm;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+
+@Service
+public class DocumentAcceptanceService implements AsyncJobHandler {
+
+    public static final String ACCEPT_DOCUMENT_JOB_TYPE = "materialFlowResources.acceptDocument";
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ResourceManagementService resourceManagementService;
+
+    @Autowired
+    private DocumentPositionService documentPositionService;
+
+    @Override
+    public String getType() {
+        return ACCEPT_DOCUMENT_JOB_TYPE;
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public Entity execute(final Long documentId) {
+        return accept(documentId);
+    }
+
+    /**
+     * Accepts draft document and creates, updates or moves resources of its positions. Document and its resources are changed
+     * in one transaction - document which can't be accepted is rolled back, stays draft and is returned with errors, so an
+     * accepted document always has its resources. Documents which aren't drafts are returned unchanged.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public Entity accept(final Long documentId) {
+        DataDefinition documentDD = getDocumentDD();
+
+        Entity document = documentDD.get(documentId);
+        String documentState = document.getStringField(DocumentFields.STATE);
+
+        if (!DocumentState.DRAFT.getStringValue().equals(documentState)) {
+            return document;
+        }
+
+        document.setField(DocumentFields.STATE, DocumentState.ACCEPTED.getStringValue());
+        Entity documentToCreateResourcesFor = documentDD.save(document);
+
+        if (!documentToCreateResourcesFor.isValid()) {
+            return rollbackAcceptance(documentToCreateResourcesFor);
+        }
+
+        if (!validateResourceAttribute(document)) {
+            documentToCreateResourcesFor.addGlobalError("materialFlow.error.position.batch.required");
+
+            return rollbackAcceptance(documentToCreateResourcesFor);
+        }
+
+        if (documentToCreateResourcesFor.getHasManyField(DocumentFields.POSITIONS).isEmpty()) {
+            documentToCreateResourcesFor.addGlobalError("materialFlow.document.validate.global.error.emptyPositions");
+
+            return rollbackAcceptance(documentToCreateResourcesFor);
+        }
+
+        resourceManagementService.createResources(documentToCreateResourcesFor);
+
+        if (!documentToCreateResourcesFor.isValid()) {
+            return rollbackAcceptance(documentToCreateResourcesFor);
+        }
+
+        Entity savedDocument = documentDD.save(documentToCreateResourcesFor);
+        updatePositions(savedDocument);
+
+        return savedDocument;
+    }
+
+    private Entity rollbackAcceptance(final Entity document) {
+        TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+
+        document.setField(DocumentFields.STATE, DocumentState.DRAFT.getStringValue());
+
+        return document;
+    }
+
+    private boolean validateResourceAttribute(final Entity document) {
+        DocumentType type = DocumentType.of(document);
+        if (DocumentType.TRANSFER.equals(type) || DocumentType.RELEASE.equals(type)) {
+            Entity warehouseFrom = document.getBelongsToField(DocumentFields.LOCATION_FROM);
+            String algorithm = warehouseFrom.getStringField(LocationFieldsMFR.ALGORITHM);
+            boolean result = true;
+            for (Entity position : document.getHasManyField(DocumentFields.POSITIONS)) {
+                boolean resultForPosition = !algorithm.equalsIgnoreCase(WarehouseAlgorithm.MANUAL.getStringValue())
+                        || position.getField(PositionFields.RESOURCE) != null;
+                if (!resultForPosition) {
+                    result = false;
+                    position.addError(position.getDataDefinition().getField(PositionFields.RESOURCE),
+                            "materialFlow.error.position.batch.required");
+                }
+            }
+            return result;
+        }
+        return true;
+    }
+
+    private void updatePositions(final Entity document) {
+        String query = "UPDATE materialflowresources_position "
+                + "SET type = (SELECT type FROM materialflowresources_document WHERE id=:document_id), state = (SELECT state FROM materialflowresources_document WHERE id=:document_id) "
+                + "WHERE document_id = :document_id ";
+
+        Map<String, Object> params = Maps.newHashMap();
+        params.put("document_id", document.getId());
+        jdbcTemplate.update(query, params);
+
+        documentPositionService.invalidatePositionsCache(document.getId());
+    }
+
+    private DataDefinition getDocumentDD() {
+        return dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
+                MaterialFlowResourcesConstants.MODEL_DOCUMENT);
+    }
+
+}
@@ -3,22 +3,25 @@ package com.qcadoo.mes.materialFlowResources.service;
 import java.math.BigDecimal;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
 import org.springframework.stereotype.Service;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.qcadoo.mes.materialFlowResources.DocumentPositionLookups;
+import com.qcadoo.mes.materialFlowResources.DocumentPositionParametersCache;
 import com.qcadoo.mes.materialFlowResources.constants.DocumentFields;
 import com.qcadoo.mes.materialFlowResources.constants.DocumentState;
 import com.qcadoo.mes.materialFlowResources.constants.DocumentType;
 import com.qcadoo.mes.materialFlowResources.constants.MaterialFlowResourcesConstants;
-import com.qcadoo.mes.materialFlowResources.constants.ParameterFieldsMFR;
 import com.qcadoo.mes.materialFlowResources.constants.PositionFields;
 import com.qcadoo.mes.materialFlowResources.constants.ReservationFields;
 import com.qcadoo.model.api.BigDecimalUtils;
@@ -46,6 +49,12 @@ public class ReservationsService {
     @Autowired
     private MultiTenantService multiTenantService;
 
+    @Autowired
+    private DocumentPositionLookups documentPositionLookups;
+
+    @Autowired
+    private DocumentPositionParametersCache documentPositionParametersCache;
+
     private final static String L_QUANTITY = "quantity";
 
     public void cleanReservationsTrigger() {
@@ -65,12 +74,7 @@ public class ReservationsService {
     }
 
     public boolean reservationsEnabledForDocumentPositions() {
-        Entity documentPositionParameters = dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
-                MaterialFlowResourcesConstants.MODEL_DOCUMENT_POSITION_PARAMETERS).find().setMaxResults(1).uniqueResult();
-        if (documentPositionParameters != null) {
-            return documentPositionParameters.getBooleanField(ParameterFieldsMFR.DRAFT_MAKES_RESERVATION);
-        }
-        return false;
+        return documentPositionParametersCache.isDraftMakesReservation();
     }
 
     public boolean reservationsEnabledForDocumentPositions(final Entity document) {
@@ -103,6 +107,50 @@ public class ReservationsService {
         resourceReservationsService.updateResourceQuantites(params, BigDecimalUtils.convertNullToZero(params.get(L_QUANTITY)));
     }
 
+    /**
+     * Creates new reservations for many positions of one document, using specified parameters, and updates resource stock.
+     * Reservations are inserted with one batch statement and stock changes are summed per product and resource before they are
+     * applied. Uses jdbcTemplate.
+     *
+     * Warning! If logic in this method is changed, it should also be applied to corresponding single position method.
+     *
+     * @param documentId
+     *            id of document, which all positions belong to
+     * @param positionsParams
+     *            list of maps containing keys: id (position id), quantity, product_id, resource_id
+     * @see ReservationsService#createReservationFromDocumentPosition(Map)
+     */
+    public void createReservationsFromDocumentPositions(final Long documentId, final List<Map<String, Object>> positionsParams) {
+        if (positionsParams.isEmpty()
+                || !documentPositionLookups.reservationsEnabled(documentId)) {
+            return;
+        }
+
+        Long locationId = documentPositionLookups.getDocument(documentId).getLocationFrom_id();
+
+        List<SqlParameterSource> reservationsParams = Lists.newArrayList();
+        Map<Long, BigDecimal> quantitiesByProduct = Maps.newHashMap();
+        Map<Long, BigDecimal> quantitiesByResource = Maps.newHashMap();
+
+        for (Map<String, Object> params : positionsParams) {
+            BigDecimal quantity = BigDecimalUtils.convertNullToZero(params.get(L_QUANTITY));
+
+            reservationsParams.add(new MapSqlParameterSource(params).addValue("location_id", locationId));
+            quantitiesByProduct.merge((Long) params.get("product_id"), quantity, BigDecimal::add);
+
+            if (params.get("resource_id") != null) {
+                quantitiesByResource.merge((Long) params.get("resource_id"), quantity, BigDecimal::add);
+            }
+        }
+
+        String query = "INSERT INTO materialflowresources_reservation (location_id, product_id, quantity, position_id, resource_id) "
+                + "VALUES (:location_id, :product_id, :quantity, :id, :resource_id)";
+
+        jdbcTemplate.batchUpdate(query, reservationsParams.toArray(new SqlParameterSource[reservationsParams.size()]));
+        resourceStockService.updateResourceStock(locationId, quantitiesByProduct);
+        resourceReservationsService.updateResourceQuantites(quantitiesByResource);
+    }
+
     /**
      * Creates new reservation for position and updates resource stock. Uses framework.
      *
@@ -273,12 +321,7 @@ public class ReservationsService {
     }
 
     public Boolean reservationsEnabledForDocumentPositions(Map<String, Object> params) {
-        String query = "SELECT draftmakesreservation FROM materialflowresources_documentpositionparameters LIMIT 1";
-        Boolean enabled = jdbcTemplate.queryForObject(query, new HashMap<String, Object>() {
-        }, Boolean.class);
-        String queryForDocumentType = "SELECT type, inBuffer FROM materialflowresources_document WHERE id = :document_id";
-        Map<String, Object> documentMap = jdbcTemplate.queryForMap(queryForDocumentType, params);
-        return enabled && DocumentType.isOutbound((String)documentMap.get("type")) && !(boolean)documentMap.get("inBuffer");
+        return documentPositionLookups.reservationsEnabled(((Number) params.get("document_id")).longValue());
     }
 
     public Entity getReservationForPosition(final Entity position) {
@@ -0,0 +1,516 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialFlowResources.service;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+
+import org.apache.commons.lang3.StringUtils;
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Service;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.qcadoo.mes.basic.constants.ProductFields;
+import com.qcadoo.mes.basic.constants.UnitConversionItemFieldsB;
+import com.qcadoo.mes.materialFlowResources.constants.AttributeValueFields;
+import com.qcadoo.mes.materialFlowResources.constants.DocumentFields;
+import com.qcadoo.mes.materialFlowResources.constants.LocationFieldsMFR;
+import com.qcadoo.mes.materialFlowResources.constants.MaterialFlowResourcesConstants;
+import com.qcadoo.mes.materialFlowResources.constants.PositionFields;
+import com.qcadoo.mes.materialFlowResources.constants.ReservationFields;
+import com.qcadoo.mes.materialFlowResources.constants.ResourceFields;
+import com.qcadoo.mes.materialFlowResources.constants.WarehouseAlgorithm;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.NumberService;
+import com.qcadoo.model.api.search.SearchCriterion;
+import com.qcadoo.model.api.search.SearchRestrictions;
+import com.qcadoo.model.api.units.PossibleUnitConversions;
+import com.qcadoo.model.api.units.UnitConversionService;
+import com.qcadoo.model.internal.api.HibernateService;
+import com.qcadoo.model.internal.api.InternalDataDefinition;
+
+/**
+ * Set-based allocation of resources for release documents.
+ *
+ * Candidate resources for all products of document are loaded with one query, positions are allocated in memory (in document
+ * order, using warehouse algorithm) and changed resources and resource stocks are written back with batched updates. Allocation
+ * gives the same results as allocating position by position with
+ * {@link ResourceManagementService#getResourcesForWarehouseProductAndAlgorithm(Entity, Entity, Entity, WarehouseAlgorithm)}.
+ * Nothing is written when at least one position can't be allocated. Resources updated with JDBC are evicted from current session,
+ * so later reads in the same transaction see written quantities.
+ */
+@Service
+public class ResourceAllocationService {
+
+    private static final String L_ID = "id";
+
+    private static final String L_PRODUCT_ID = "product.id";
+
+    private static final String L_UPDATE_RESOURCE_QUERY = "UPDATE materialflowresources_resource SET quantity = :quantity, "
+            + "availablequantity = :availableQuantity, reservedquantity = :reservedQuantity, "
+            + "quantityinadditionalunit = :quantityInAdditionalUnit WHERE id = :id";
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    @Autowired
+    private NumberService numberService;
+
+    @Autowired
+    private UnitConversionService unitConversionService;
+
+    @Autowired
+    private ResourceStockService resourceStockService;
+
+    @Autowired
+    private ReservationsService reservationsService;
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private HibernateService hibernateService;
+
+    /**
+     * Allocates resources for given positions of release document. Positions which can't be allocated get an error on quantity
+     * field and are returned unchanged.
+     *
+     * @param document
+     *            release document
+     * @param positions
+     *            positions of document
+     * @return generated positions
+     */
+    public List<Entity> allocateResourcesForReleaseDocument(final Entity document, final List<Entity> positions) {
+        Entity documentWarehouse = document.getBelongsToField(DocumentFields.LOCATION_FROM);
+        WarehouseAlgorithm warehouseAlgorithm = WarehouseAlgorithm.parseString(documentWarehouse
+                .getStringField(LocationFieldsMFR.ALGORITHM));
+
+        AllocationContext context = new AllocationContext(reservationsService.reservationsEnabledForDocumentPositions());
+
+        Map<Long, List<Entity>> candidatesByProduct = getCandidateResources(documentWarehouse, positions, warehouseAlgorithm,
+                context);
+
+        List<Entity> generatedPositions = Lists.newArrayList();
+
+        boolean enoughResources = true;
+
+        for (Entity position : positions) {
+            Entity product = position.getBelongsToField(PositionFields.PRODUCT);
+            Entity resource = position.getBelongsToField(PositionFields.RESOURCE);
+
+            Entity warehouse;
+            List<Entity> resources;
+
+            if (resource != null) {
+                warehouse = resource.getBelongsToField(ResourceFields.LOCATION);
+                resources = Lists.newArrayList(getManualResource(position, resource, context));
+            } else {
+                warehouse = documentWarehouse;
+                resources = getOrderedCandidates(candidatesByProduct.getOrDefault(product.getId(), Collections.emptyList()),
+                        product, position, context);
+            }
+
+            context.addStockDelta(warehouse.getId(), product.getId(), position.getDecimalField(PositionFields.QUANTITY));
+
+            generatedPositions.addAll(allocate(position, resources, context));
+
+            enoughResources = enoughResources && position.isValid();
+        }
+
+        if (enoughResources) {
+            writeChanges(context);
+        }
+
+        return generatedPositions;
+    }
+
+    private Map<Long, List<Entity>> getCandidateResources(final Entity warehouse, final List<Entity> positions,
+            final WarehouseAlgorithm warehouseAlgorithm, final AllocationContext context) {
+        Set<Long> productIds = Sets.newHashSet();
+        Set<Long> manualResourceIds = Sets.newHashSet();
+
+        for (Entity position : positions) {
+            Entity resource = position.getBelongsToField(PositionFields.RESOURCE);
+
+            if (resource == null) {
+                productIds.add(position.getBelongsToField(PositionFields.PRODUCT).getId());
+            } else {
+                manualResourceIds.add(resource.getId());
+            }
+        }
+
+        Map<Long, List<Entity>> candidatesByProduct = Maps.newHashMap();
+
+        if (productIds.isEmpty()) {
+            return candidatesByProduct;
+        }
+
+        SearchCriterion availableCriterion = SearchRestrictions.gt(ResourceFields.AVAILABLE_QUANTITY, BigDecimal.ZERO);
+
+        if (!manualResourceIds.isEmpty()) {
+            availableCriterion = SearchRestrictions.or(availableCriterion, SearchRestrictions.in(L_ID, manualResourceIds));
+        }
+
+        List<Entity> resources = getResourceDD().find().add(SearchRestrictions.belongsTo(ResourceFields.LOCATION, warehouse))
+                .add(SearchRestrictions.in(L_PRODUCT_ID, productIds)).add(availableCriterion).list().getEntities();
+
+        resources.sort(getResourceComparator(warehouseAlgorithm));
+
+        for (Entity resource : resources) {
+            context.resourcesById.put(resource.getId(), resource);
+            candidatesByProduct.computeIfAbsent(resource.getBelongsToField(ResourceFields.PRODUCT).getId(),
+                    productId -> Lists.newArrayList()).add(resource);
+        }
+
+        return candidatesByProduct;
+    }
+
+    private Comparator<Entity> getResourceComparator(final WarehouseAlgorithm warehouseAlgorithm) {
+        Comparator<Entity> comparator;
+
+        if (WarehouseAlgorithm.LIFO.equals(warehouseAlgorithm)) {
+            comparator = Comparator.comparing(getTimeOf(ResourceFields.TIME), Comparator.nullsLast(Comparator.<Long> naturalOrder())
+                    .reversed());
+        } else if (WarehouseAlgorithm.FEFO.equals(warehouseAlgorithm)) {
+            comparator = Comparator.comparing(getTimeOf(ResourceFields.EXPIRATION_DATE),
+                    Comparator.nullsLast(Comparator.<Long> naturalOrder()));
+        } else if (WarehouseAlgorithm.LEFO.equals(warehouseAlgorithm)) {
+            comparator = Comparator.comparing(getTimeOf(ResourceFields.EXPIRATION_DATE),
+                    Comparator.nullsLast(Comparator.<Long> naturalOrder()).reversed());
+        } else {
+            comparator = Comparator.comparing(getTimeOf(ResourceFields.TIME), Comparator.nullsLast(Comparator.<Long> naturalOrder()));
+        }
+
+        return comparator.thenComparing(Entity::getId);
+    }
+
+    private Function<Entity, Long> getTimeOf(final String dateField) {
+        return resource -> {
+            Date date = resource.getDateField(dateField);
+
+            return (date == null) ? null : date.getTime();
+        };
+    }
+
+    private Entity getManualResource(final Entity position, final Entity resource, final AllocationContext context) {
+        Entity manualResource = context.resourcesById.computeIfAbsent(resource.getId(), resourceId -> resource);
+
+        Entity reservation = reservationsService.getReservationForPosition(position);
+
+        if (reservation != null) {
+            BigDecimal reservationQuantity = reservation.getDecimalField(ReservationFields.QUANTITY);
+            BigDecimal resourceAvailableQuantity = manualResource.getDecimalField(ResourceFields.AVAILABLE_QUANTITY);
+
+            manualResource.setField(ResourceFields.AVAILABLE_QUANTITY, resourceAvailableQuantity.add(reservationQuantity));
+        }
+
+        return manualResource;
+    }
+
+    private List<Entity> getOrderedCandidates(final List<Entity> candidates, final Entity product, final Entity position,
+            final AllocationContext context) {
+        Entity additionalCode = position.getBelongsToField(PositionFields.ADDITIONAL_CODE);
+
+        BigDecimal conversion;
+
+        if (StringUtils.isEmpty(product.getStringField(ProductFields.ADDITIONAL_UNIT))) {
+            conversion = BigDecimal.ONE;
+        } else {
+            conversion = position.getDecimalField(PositionFields.CONVERSION);
+        }
+
+        List<Entity> withAdditionalCode = Lists.newArrayList();
+        List<Entity> others = Lists.newArrayList();
+
+        for (Entity resource : candidates) {
+            if (context.deletedResourceIds.contains(resource.getId()) || !isAvailable(resource)
+                    || !hasConversion(resource, conversion)) {
+                continue;
+            }
+
+            if (additionalCode != null && hasAdditionalCode(resource, additionalCode)) {
+                withAdditionalCode.add(resource);
+            } else {
+                others.add(resource);
+            }
+        }
+
+        withAdditionalCode.addAll(others);
+
+        return withAdditionalCode;
+    }
+
+    private boolean isAvailable(final Entity resource) {
+        BigDecimal availableQuantity = resource.getDecimalField(ResourceFields.AVAILABLE_QUANTITY);
+
+        return (availableQuantity != null) && (availableQuantity.compareTo(BigDecimal.ZERO) > 0);
+    }
+
+    private boolean hasConversion(final Entity resource, final BigDecimal conversion) {
+        BigDecimal resourceConversion = resource.getDecimalField(ResourceFields.CONVERSION);
+
+        return (conversion != null) && (resourceConversion != null) && (conversion.compareTo(resourceConversion) == 0);
+    }
+
+    private boolean hasAdditionalCode(final Entity resource, final Entity additionalCode) {
+        Entity resourceAdditionalCode = resource.getBelongsToField(ResourceFields.ADDITIONAL_CODE);
+
+        return (resourceAdditionalCode != null) && Objects.equals(resourceAdditionalCode.getId(), additionalCode.getId());
+    }
+
+    private List<Entity> allocate(final Entity position, final List<Entity> resources, final AllocationContext context) {
+        DataDefinition positionDD = dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
+                MaterialFlowResourcesConstants.MODEL_POSITION);
+
+        List<Entity> newPositions = Lists.newArrayList();
+
+        BigDecimal quantity = position.getDecimalField(PositionFields.QUANTITY);
+
+        for (Entity resource : resources) {
+            BigDecimal resourceQuantity = resource.getDecimalField(ResourceFields.QUANTITY);
+            BigDecimal resourceAvailableQuantity = resource.getDecimalField(ResourceFields.AVAILABLE_QUANTITY);
+
+            Entity newPosition = createPositionForResource(positionDD, position, resource);
+
+            if (quantity.compareTo(resourceAvailableQuantity) >= 0) {
+                quantity = quantity.subtract(resourceAvailableQuantity, numberService.getMathContext());
+
+                if (resourceQuantity.compareTo(resourceAvailableQuantity) <= 0) {
+                    context.deleteResource(resource);
+                } else {
+                    BigDecimal newResourceQuantity = resourceQuantity.subtract(resourceAvailableQuantity);
+                    BigDecimal resourceConversion = resource.getDecimalField(ResourceFields.CONVERSION);
+                    BigDecimal quantityInAdditionalUnit = newResourceQuantity.multiply(resourceConversion);
+
+                    resource.setField(ResourceFields.AVAILABLE_QUANTITY, BigDecimal.ZERO);
+                    resource.setField(ResourceFields.QUANTITY, newResourceQuantity);
+                    resource.setField(ResourceFields.QUANTITY_IN_ADDITIONAL_UNIT, numberService.setScale(quantityInAdditionalUnit));
+
+                    context.updateResource(resource);
+                }
+
+                newPosition.setField(PositionFields.QUANTITY, numberService.setScale(resourceAvailableQuantity));
+                newPosition.setField(PositionFields.GIVEN_QUANTITY,
+                        numberService.setScale(convertToGivenUnit(resourceAvailableQuantity, position, context)));
+
+                newPositions.add(newPosition);
+
+                if (BigDecimal.ZERO.compareTo(quantity) == 0) {
+                    return newPositions;
+                }
+            } else {
+                resourceQuantity = resourceQuantity.subtract(quantity, numberService.getMathContext());
+                resourceAvailableQuantity = resourceAvailableQuantity.subtract(quantity, numberService.getMathContext());
+
+                if ((position.getBelongsToField(PositionFields.RESOURCE) != null) && context.reservationsEnabled) {
+                    BigDecimal reservedQuantity = resource.getDecimalField(ResourceFields.RESERVED_QUANTITY).subtract(quantity,
+                            numberService.getMathContext());
+
+                    resource.setField(ResourceFields.RESERVED_QUANTITY, reservedQuantity);
+                }
+
+                BigDecimal resourceConversion = resource.getDecimalField(ResourceFields.CONVERSION);
+                BigDecimal quantityInAdditionalUnit = resourceQuantity.multiply(resourceConversion);
+
+                resource.setField(ResourceFields.QUANTITY_IN_ADDITIONAL_UNIT, numberService.setScale(quantityInAdditionalUnit));
+                resource.setField(ResourceFields.QUANTITY, numberService.setScale(resourceQuantity));
+                resource.setField(ResourceFields.AVAILABLE_QUANTITY, resourceAvailableQuantity);
+
+                context.updateResource(resource);
+
+                newPosition.setField(PositionFields.QUANTITY, numberService.setScale(quantity));
+                newPosition.setField(PositionFields.GIVEN_QUANTITY,
+                        numberService.setScale(convertToGivenUnit(quantity, position, context)));
+
+                newPositions.add(newPosition);
+
+                return newPositions;
+            }
+        }
+
+        position.addError(position.getDataDefinition().getField(PositionFields.QUANTITY),
+                "materialFlow.error.position.quantity.notEnough");
+
+        return Lists.newArrayList(position);
+    }
+
+    private Entity createPositionForResource(final DataDefinition positionDD, final Entity position, final Entity resource) {
+        Entity newPosition = positionDD.create();
+
+        newPosition.setField(PositionFields.PRODUCT, position.getBelongsToField(PositionFields.PRODUCT));
+        newPosition.setField(PositionFields.GIVEN_QUANTITY, position.getDecimalField(PositionFields.GIVEN_QUANTITY));
+        newPosition.setField(PositionFields.GIVEN_UNIT, position.getStringField(PositionFields.GIVEN_UNIT));
+        newPosition.setField(PositionFields.WASTE, resource.getBooleanField(ResourceFields.WASTE));
+        newPosition.setField(PositionFields.PRICE, resource.getField(ResourceFields.PRICE));
+        newPosition.setField(PositionFields.BATCH, resource.getField(ResourceFields.BATCH));
+        newPosition.setField(PositionFields.PRODUCTION_DATE, resource.getField(ResourceFields.PRODUCTION_DATE));
+        newPosition.setField(PositionFields.EXPIRATION_DATE, resource.getField(ResourceFields.EXPIRATION_DATE));
+        newPosition.setField(PositionFields.RESOURCE, resource);
+        newPosition.setField(PositionFields.STORAGE_LOCATION, resource.getField(ResourceFields.STORAGE_LOCATION));
+        newPosition.setField(PositionFields.ADDITIONAL_CODE, resource.getField(ResourceFields.ADDITIONAL_CODE));
+        newPosition.setField(PositionFields.CONVERSION, position.getField(PositionFields.CONVERSION));
+        newPosition.setField(PositionFields.PALLET_NUMBER, resource.getField(ResourceFields.PALLET_NUMBER));
+        newPosition.setField(PositionFields.TYPE_OF_PALLET, resource.getField(ResourceFields.TYPE_OF_PALLET));
+
+        setPositionAttributesFromResource(newPosition, resource);
+
+        return newPosition;
+    }
+
+    private void setPositionAttributesFromResource(final Entity position, final Entity resource) {
+        List<Entity> attributes = resource.getHasManyField(ResourceFields.ATRRIBUTE_VALUES);
+
+        List<Entity> newAttributes = Lists.newArrayList();
+
+        DataDefinition attributeDD = dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
+                MaterialFlowResourcesConstants.MODEL_ATTRIBUTE_VALUE);
+
+        for (Entity attribute : attributes) {
+            List<Entity> newAttribute = attributeDD.copy(attribute.getId());
+
+            newAttribute.get(0).setField(AttributeValueFields.POSITION, position);
+            newAttribute.get(0).setField(AttributeValueFields.RESOURCE, null);
+
+            newAttributes.addAll(newAttribute);
+        }
+
+        position.setField(PositionFields.ATRRIBUTE_VALUES, newAttributes);
+    }
+
+    private BigDecimal convertToGivenUnit(final BigDecimal quantity, final Entity position, final AllocationContext context) {
+        Entity product = position.getBelongsToField(PositionFields.PRODUCT);
+        String baseUnit = product.getStringField(ProductFields.UNIT);
+        String givenUnit = position.getStringField(PositionFields.GIVEN_UNIT);
+
+        if (!baseUnit.equals(givenUnit)) {
+            PossibleUnitConversions unitConversions = context.unitConversionsByProduct.computeIfAbsent(product.getId(),
+                    productId -> unitConversionService.getPossibleConversions(baseUnit,
+                            searchCriteriaBuilder -> searchCriteriaBuilder.add(SearchRestrictions.belongsTo(
+                                    UnitConversionItemFieldsB.PRODUCT, product))));
+
+            if (unitConversions.isDefinedFor(givenUnit)) {
+                return unitConversions.convertTo(quantity, givenUnit);
+            }
+        }
+
+        return quantity;
+    }
+
+    private void writeChanges(final AllocationContext context) {
+        if (!context.updatedResourceIds.isEmpty()) {
+            Session session = hibernateService.getCurrentSession();
+
+            session.flush();
+
+            List<SqlParameterSource> params = Lists.newArrayList();
+
+            for (Long resourceId : context.updatedResourceIds) {
+                Entity resource = context.resourcesById.get(resourceId);
+
+                params.add(new MapSqlParameterSource().addValue(L_ID, resourceId)
+                        .addValue("quantity", resource.getDecimalField(ResourceFields.QUANTITY))
+                        .addValue("availableQuantity", resource.getDecimalField(ResourceFields.AVAILABLE_QUANTITY))
+                        .addValue("reservedQuantity", resource.getDecimalField(ResourceFields.RESERVED_QUANTITY))
+                        .addValue("quantityInAdditionalUnit", resource.getDecimalField(ResourceFields.QUANTITY_IN_ADDITIONAL_UNIT)));
+            }
+
+            jdbcTemplate.batchUpdate(L_UPDATE_RESOURCE_QUERY, params.toArray(new SqlParameterSource[params.size()]));
+
+            evictResources(session, context.updatedResourceIds);
+        }
+
+        if (!context.deletedResourceIds.isEmpty()) {
+            getResourceDD().delete(context.deletedResourceIds.toArray(new Long[context.deletedResourceIds.size()]));
+        }
+
+        for (Map.Entry<Long, Map<Long, BigDecimal>> stockDeltas : context.stockDeltasByLocation.entrySet()) {
+            resourceStockService.removeResourceStock(stockDeltas.getKey(), stockDeltas.getValue());
+        }
+    }
+
+    private void evictResources(final Session session, final Collection<Long> resourceIds) {
+        Class<?> resourceClass = ((InternalDataDefinition) getResourceDD()).getClassForEntity();
+
+        for (Long resourceId : resourceIds) {
+            session.evict(session.load(resourceClass, resourceId));
+        }
+    }
+
+    private DataDefinition getResourceDD() {
+        return dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
+                MaterialFlowResourcesConstants.MODEL_RESOURCE);
+    }
+
+    private static class AllocationContext {
+
+        private final boolean reservationsEnabled;
+
+        private final Map<Long, Entity> resourcesById = Maps.newHashMap();
+
+        private final Set<Long> updatedResourceIds = Sets.newLinkedHashSet();
+
+        private final Set<Long> deletedResourceIds = Sets.newLinkedHashSet();
+
+        private final Map<Long, Map<Long, BigDecimal>> stockDeltasByLocation = Maps.newHashMap();
+
+        private final Map<Long, PossibleUnitConversions> unitConversionsByProduct = Maps.newHashMap();
+
+        AllocationContext(final boolean reservationsEnabled) {
+            this.reservationsEnabled = reservationsEnabled;
+        }
+
+        void updateResource(final Entity resource) {
+            updatedResourceIds.add(resource.getId());
+        }
+
+        void deleteResource(final Entity resource) {
+            updatedResourceIds.remove(resource.getId());
+            deletedResourceIds.add(resource.getId());
+        }
+
+        void addStockDelta(final Long locationId, final Long productId, final BigDecimal quantity) {
+            stockDeltasByLocation.computeIfAbsent(locationId, id -> Maps.newHashMap()).merge(productId, quantity,
+                    BigDecimal::add);
+        }
+
+    }
+
+}
@@ -34,6 +34,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
 
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Lists;
@@ -41,8 +42,10 @@ import com.google.common.collect.Multimap;
 import com.qcadoo.mes.basic.constants.ProductFields;
 import com.qcadoo.mes.basic.constants.UnitConversionItemFieldsB;
 import com.qcadoo.mes.materialFlow.constants.LocationFields;
+import com.qcadoo.mes.materialFlowResources.DocumentPositionService;
 import com.qcadoo.mes.materialFlowResources.constants.AttributeValueFields;
 import com.qcadoo.mes.materialFlowResources.constants.DocumentFields;
+import com.qcadoo.mes.materialFlowResources.constants.DocumentType;
 import com.qcadoo.mes.materialFlowResources.constants.LocationFieldsMFR;
 import com.qcadoo.mes.materialFlowResources.constants.MaterialFlowResourcesConstants;
 import com.qcadoo.mes.materialFlowResources.constants.PositionFields;
@@ -83,6 +86,12 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
     @Autowired
     private ReservationsService reservationsService;
 
+    @Autowired
+    private ResourceAllocationService resourceAllocationService;
+
+    @Autowired
+    private DocumentPositionService documentPositionService;
+
     public ResourceManagementServiceImpl() {
 
     }
@@ -94,6 +103,26 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
         this.unitConversionService = unitConversionService;
     }
 
+    @Override
+    @Transactional
+    public void createResources(final Entity document) {
+        DocumentType documentType = DocumentType.of(document);
+
+        if (DocumentType.RECEIPT.equals(documentType) || DocumentType.INTERNAL_INBOUND.equals(documentType)) {
+            createResourcesForReceiptDocuments(document);
+        } else if (DocumentType.INTERNAL_OUTBOUND.equals(documentType) || DocumentType.RELEASE.equals(documentType)) {
+            updateResourcesForReleaseDocuments(document);
+        } else if (DocumentType.TRANSFER.equals(documentType)) {
+            moveResourcesForTransferDocument(document);
+        } else {
+            throw new IllegalStateException("Unsupported document type");
+        }
+
+        if (!document.isValid()) {
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+        }
+    }
+
     @Override
     @Transactional
     public void createResourcesForReceiptDocuments(final Entity document) {
@@ -115,26 +144,6 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
         resource.setField(ResourceFields.ATRRIBUTE_VALUES, attributes);
     }
 
-    private void setPositionAttributesFromResource(final Entity position, final Entity resource) {
-        List<Entity> attributes = resource.getHasManyField(ResourceFields.ATRRIBUTE_VALUES);
-
-        List<Entity> newAttributes = Lists.newArrayList();
-
-        DataDefinition attributeDD = dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
-                MaterialFlowResourcesConstants.MODEL_ATTRIBUTE_VALUE);
-
-        for (Entity attribute : attributes) {
-            List<Entity> newAttribute = attributeDD.copy(attribute.getId());
-
-            newAttribute.get(0).setField(AttributeValueFields.POSITION, position);
-            newAttribute.get(0).setField(AttributeValueFields.RESOURCE, null);
-
-            newAttributes.addAll(newAttribute);
-        }
-
-        position.setField(PositionFields.ATRRIBUTE_VALUES, newAttributes);
-    }
-
     private void setResourceAttributesFromResource(final Entity resource, final Entity baseResource) {
         List<Entity> attributes = baseResource.getHasManyField(ResourceFields.ATRRIBUTE_VALUES);
 
@@ -405,19 +414,29 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
     @Override
     @Transactional
     public void updateResourcesForReleaseDocuments(final Entity document) {
-        Entity warehouse = document.getBelongsToField(DocumentFields.LOCATION_FROM);
-        WarehouseAlgorithm warehouseAlgorithm;
+        List<Entity> positions = document.getHasManyField(DocumentFields.POSITIONS);
 
-        boolean enoughResources = true;
+        List<Entity> generatedPositions = resourceAllocationService.allocateResourcesForReleaseDocument(document, positions);
+
+        if (positions.stream().allMatch(Entity::isValid)) {
+            deleteReservations(document);
+            document.setField(DocumentFields.POSITIONS, generatedPositions);
+
+            documentPositionService.invalidatePositionsCache(document.getId());
+        } else {
+            addNotEnoughResourcesError(document, positions);
+        }
+    }
+
+    private void addNotEnoughResourcesError(final Entity document, final List<Entity> positions) {
+        Entity warehouse = document.getBelongsToField(DocumentFields.LOCATION_FROM);
 
         StringBuilder errorMessage = new StringBuilder();
 
         Multimap<Long, BigDecimal> quantitiesForWarehouse = getQuantitiesInWarehouse(warehouse,
                 getProductsAndPositionsFromDocument(document));
 
-        List<Entity> generatedPositions = Lists.newArrayList();
-
-        for (Entity position : document.getHasManyField(DocumentFields.POSITIONS)) {
+        for (Entity position : positions) {
             Entity product = position.getBelongsToField(PositionFields.PRODUCT);
             Entity resource = position.getBelongsToField(PositionFields.RESOURCE);
 
@@ -425,22 +444,18 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
 
             if (resource != null) {
                 warehouse = resource.getBelongsToField(ResourceFields.LOCATION);
-                warehouseAlgorithm = WarehouseAlgorithm.MANUAL;
+                quantityInWarehouse = getQuantityOfProductInWarehouse(warehouse, product, position);
             } else {
                 warehouse = document.getBelongsToField(DocumentFields.LOCATION_FROM);
-                warehouseAlgorithm = WarehouseAlgorithm.parseString(warehouse.getStringField(LocationFieldsMFR.ALGORITHM));
-            }
 
-            if (warehouseAlgorithm.equals(WarehouseAlgorithm.MANUAL)) {
-                quantityInWarehouse = getQuantityOfProductInWarehouse(warehouse, product, position);
-            } else {
-                quantityInWarehouse = getQuantityOfProductFromMultimap(quantitiesForWarehouse, product);
+                if (WarehouseAlgorithm.MANUAL.equals(WarehouseAlgorithm.parseString(warehouse
+                        .getStringField(LocationFieldsMFR.ALGORITHM)))) {
+                    quantityInWarehouse = getQuantityOfProductInWarehouse(warehouse, product, position);
+                } else {
+                    quantityInWarehouse = getQuantityOfProductFromMultimap(quantitiesForWarehouse, product);
+                }
             }
 
-            generatedPositions.addAll(updateResources(warehouse, position, warehouseAlgorithm));
-
-            enoughResources = enoughResources && position.isValid();
-
             if (!position.isValid()) {
                 BigDecimal quantity = position.getDecimalField(QUANTITY);
 
@@ -453,12 +468,7 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
             }
         }
 
-        if (!enoughResources) {
-            addDocumentError(document, warehouse, errorMessage);
-        } else {
-            deleteReservations(document);
-            document.setField(DocumentFields.POSITIONS, generatedPositions);
-        }
+        addDocumentError(document, warehouse, errorMessage);
     }
 
     private void deleteReservations(Entity document) {
@@ -470,103 +480,6 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
         }
     }
 
-    private List<Entity> updateResources(Entity warehouse, Entity position, WarehouseAlgorithm warehouseAlgorithm) {
-        DataDefinition positionDD = dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
-                MaterialFlowResourcesConstants.MODEL_POSITION);
-
-        List<Entity> newPositions = Lists.newArrayList();
-
-        Entity product = position.getBelongsToField(PositionFields.PRODUCT);
-
-        List<Entity> resources = getResourcesForWarehouseProductAndAlgorithm(warehouse, product, position, warehouseAlgorithm);
-
-        BigDecimal quantity = position.getDecimalField(PositionFields.QUANTITY);
-
-        resourceStockService.removeResourceStock(product, warehouse, quantity);
-        for (Entity resource : resources) {
-            BigDecimal resourceQuantity = resource.getDecimalField(ResourceFields.QUANTITY);
-            BigDecimal resourceAvailableQuantity = resource.getDecimalField(ResourceFields.AVAILABLE_QUANTITY);
-
-            Entity newPosition = positionDD.create();
-
-            newPosition.setField(PositionFields.PRODUCT, position.getBelongsToField(PositionFields.PRODUCT));
-            newPosition.setField(PositionFields.GIVEN_QUANTITY, position.getDecimalField(PositionFields.GIVEN_QUANTITY));
-            newPosition.setField(PositionFields.GIVEN_UNIT, position.getStringField(PositionFields.GIVEN_UNIT));
-            newPosition.setField(PositionFields.WASTE, resource.getBooleanField(ResourceFields.WASTE));
-            newPosition.setField(PositionFields.PRICE, resource.getField(ResourceFields.PRICE));
-            newPosition.setField(PositionFields.BATCH, resource.getField(ResourceFields.BATCH));
-            newPosition.setField(PositionFields.PRODUCTION_DATE, resource.getField(ResourceFields.PRODUCTION_DATE));
-            newPosition.setField(PositionFields.EXPIRATION_DATE, resource.getField(ResourceFields.EXPIRATION_DATE));
-            newPosition.setField(PositionFields.RESOURCE, resource);
-            newPosition.setField(PositionFields.STORAGE_LOCATION, resource.getField(ResourceFields.STORAGE_LOCATION));
-            newPosition.setField(PositionFields.ADDITIONAL_CODE, resource.getField(ResourceFields.ADDITIONAL_CODE));
-            newPosition.setField(PositionFields.CONVERSION, position.getField(PositionFields.CONVERSION));
-            newPosition.setField(PositionFields.PALLET_NUMBER, resource.getField(ResourceFields.PALLET_NUMBER));
-            newPosition.setField(PositionFields.TYPE_OF_PALLET, resource.getField(ResourceFields.TYPE_OF_PALLET));
-            // newPosition.setField(PositionFields.GIVEN_UNIT, resource.getField(ResourceFields.GIVEN_UNIT));
-
-            setPositionAttributesFromResource(newPosition, resource);
-
-            if (quantity.compareTo(resourceAvailableQuantity) >= 0) {
-                quantity = quantity.subtract(resourceAvailableQuantity, numberService.getMathContext());
-                if (resourceQuantity.compareTo(resourceAvailableQuantity) <= 0) {
-                    resource.getDataDefinition().delete(resource.getId());
-                } else {
-                    BigDecimal newResourceQuantity = resourceQuantity.subtract(resourceAvailableQuantity);
-                    BigDecimal resourceConversion = resource.getDecimalField(ResourceFields.CONVERSION);
-                    BigDecimal quantityInAdditionalUnit = newResourceQuantity.multiply(resourceConversion);
-                    resource.setField(ResourceFields.AVAILABLE_QUANTITY, BigDecimal.ZERO);
-                    resource.setField(ResourceFields.QUANTITY, newResourceQuantity);
-                    resource.setField(ResourceFields.QUANTITY_IN_ADDITIONAL_UNIT,
-                            numberService.setScale(quantityInAdditionalUnit));
-                    resource.getDataDefinition().save(resource);
-                }
-
-                newPosition.setField(PositionFields.QUANTITY, numberService.setScale(resourceAvailableQuantity));
-
-                BigDecimal givenResourceQuantity = convertToGivenUnit(resourceAvailableQuantity, position);
-
-                newPosition.setField(PositionFields.GIVEN_QUANTITY, numberService.setScale(givenResourceQuantity));
-
-                newPositions.add(newPosition);
-
-                if (BigDecimal.ZERO.compareTo(quantity) == 0) {
-                    return newPositions;
-                }
-            } else {
-                resourceQuantity = resourceQuantity.subtract(quantity, numberService.getMathContext());
-                resourceAvailableQuantity = resourceAvailableQuantity.subtract(quantity, numberService.getMathContext());
-                if (position.getBelongsToField(PositionFields.RESOURCE) != null
-                        && reservationsService.reservationsEnabledForDocumentPositions()) {
-                    BigDecimal reservedQuantity = resource.getDecimalField(ResourceFields.RESERVED_QUANTITY).subtract(quantity,
-                            numberService.getMathContext());
-                    resource.setField(ResourceFields.RESERVED_QUANTITY, reservedQuantity);
-                }
-                BigDecimal resourceConversion = resource.getDecimalField(ResourceFields.CONVERSION);
-                BigDecimal quantityInAdditionalUnit = resourceQuantity.multiply(resourceConversion);
-
-                resource.setField(ResourceFields.QUANTITY_IN_ADDITIONAL_UNIT, numberService.setScale(quantityInAdditionalUnit));
-                resource.setField(ResourceFields.QUANTITY, numberService.setScale(resourceQuantity));
-                resource.setField(ResourceFields.AVAILABLE_QUANTITY, resourceAvailableQuantity);
-
-                resource.getDataDefinition().save(resource);
-                newPosition.setField(PositionFields.QUANTITY, numberService.setScale(quantity));
-
-                BigDecimal givenQuantity = convertToGivenUnit(quantity, position);
-
-                newPosition.setField(PositionFields.GIVEN_QUANTITY, numberService.setScale(givenQuantity));
-                newPositions.add(newPosition);
-
-                return newPositions;
-            }
-        }
-
-        position.addError(position.getDataDefinition().getField(PositionFields.QUANTITY),
-                "materialFlow.error.position.quantity.notEnough");
-
-        return Lists.newArrayList(position);
-    }
-
     public BigDecimal convertToGivenUnit(BigDecimal quantity, Entity position) {
         Entity product = position.getBelongsToField(PositionFields.PRODUCT);
         String baseUnit = product.getStringField(ProductFields.UNIT);
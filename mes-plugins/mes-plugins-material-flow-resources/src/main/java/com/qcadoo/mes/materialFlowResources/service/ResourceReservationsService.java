@@ -5,7 +5,9 @@ import java.util.List;
 import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
 import org.springframework.stereotype.Service;
 
 import com.google.common.collect.Lists;
@@ -44,6 +46,23 @@ public class ResourceReservationsService {
         }
     }
 
+    public void updateResourceQuantites(final Map<Long, BigDecimal> quantitiesByResource) {
+        if (quantitiesByResource.isEmpty()) {
+            return;
+        }
+
+        List<SqlParameterSource> params = Lists.newArrayList();
+
+        for (Map.Entry<Long, BigDecimal> quantityForResource : quantitiesByResource.entrySet()) {
+            params.add(new MapSqlParameterSource().addValue("resource_id", quantityForResource.getKey()).addValue(
+                    "quantity_to_add", quantityForResource.getValue()));
+        }
+
+        String query = "UPDATE materialflowresources_resource SET reservedquantity = reservedquantity + :quantity_to_add, "
+                + "availablequantity = availablequantity - :quantity_to_add WHERE id = :resource_id";
+        jdbcTemplate.batchUpdate(query, params.toArray(new SqlParameterSource[params.size()]));
+    }
+
     public void updateResourceQuantites(Entity position, BigDecimal quantityToAdd) {
         Entity resource = position.getBelongsToField(PositionFields.RESOURCE);
         if (resource != null) {
@@ -16,6 +16,8 @@ public interface ResourceStockService {
 
     void removeResourceStock(final Entity product, final Entity location, final BigDecimal quantity);
 
+    void removeResourceStock(final Long locationId, final Map<Long, BigDecimal> quantitiesByProduct);
+
     Optional<Entity> getResourceStockForProductAndLocation(final Entity product, final Entity location);
 
     void updateResourceStock(Map<String, Object> params, BigDecimal quantityToAdd);
@@ -23,4 +25,6 @@ public interface ResourceStockService {
     void updateResourceStock(Entity position, BigDecimal quantityToAdd);
 
     void updateResourceStock(Entity product, Entity location, BigDecimal quantityToAdd);
+
+    void updateResourceStock(final Long locationId, final Map<Long, BigDecimal> quantitiesByProduct);
 }
@@ -1,13 +1,19 @@
 package com.qcadoo.mes.materialFlowResources.service;
 
 import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
 import org.springframework.stereotype.Service;
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.qcadoo.mes.materialFlowResources.constants.DocumentFields;
 import com.qcadoo.mes.materialFlowResources.constants.MaterialFlowResourcesConstants;
 import com.qcadoo.mes.materialFlowResources.constants.PositionFields;
@@ -21,6 +27,36 @@ import com.qcadoo.model.api.search.SearchRestrictions;
 @Service
 public class ResourceStockServiceImpl implements ResourceStockService {
 
+    private static final String L_PRODUCT_ID = "product_id";
+
+    private static final String L_LOCATION_ID = "location_id";
+
+    private static final String L_QUANTITY = "quantity";
+
+    /*
+     * Resource stocks are changed with single atomic statements (instead of find and save), so concurrent changes for the same
+     * product and location can't overwrite each other. Upsert relies on unique index on (location_id, product_id), see
+     * schema/migrations/001_resource_stock_unique_index.sql.
+     */
+    private static final String L_ADD_RESOURCE_STOCK_QUERY = "INSERT INTO materialflowresources_resourcestock "
+            + "(location_id, product_id, quantity, availablequantity, reservedquantity) "
+            + "VALUES (:location_id, :product_id, :quantity, :quantity, 0) ON CONFLICT (location_id, product_id) DO UPDATE SET "
+            + "quantity = materialflowresources_resourcestock.quantity + EXCLUDED.quantity, "
+            + "availablequantity = materialflowresources_resourcestock.availablequantity + EXCLUDED.quantity";
+
+    private static final String L_REMOVE_RESOURCE_STOCK_QUERY = "UPDATE materialflowresources_resourcestock SET "
+            + "availablequantity = CASE WHEN quantity - :quantity <= 0 THEN 0 ELSE availablequantity - :quantity END, "
+            + "quantity = GREATEST(quantity - :quantity, 0) WHERE product_id = :product_id AND location_id = :location_id";
+
+    private static final String L_RESERVE_RESOURCE_STOCK_QUERY = "UPDATE materialflowresources_resourcestock SET "
+            + "availablequantity = CASE WHEN quantity = 0 THEN 0 ELSE availablequantity - :quantity END, "
+            + "reservedquantity = CASE WHEN quantity = 0 THEN 0 ELSE reservedquantity + :quantity END "
+            + "WHERE product_id = :product_id AND location_id = :location_id";
+
+    private static final String L_UPDATE_RESOURCE_STOCK_QUERY = "UPDATE materialflowresources_resourcestock SET "
+            + "reservedquantity = reservedquantity + :quantity, availablequantity = availablequantity - :quantity "
+            + "WHERE product_id = :product_id AND location_id = :location_id";
+
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
@@ -39,18 +75,13 @@ public class ResourceStockServiceImpl implements ResourceStockService {
 
     @Override
     public void addResourceStock(Entity product, Entity location, BigDecimal quantity) {
-        Entity resourceStock;
-        Optional<Entity> maybeStock = getResourceStockForProductAndLocation(product, location);
-        if (maybeStock.isPresent()) {
-            resourceStock = maybeStock.get();
-            BigDecimal oldQuantity = resourceStock.getDecimalField(ResourceStockFields.QUANTITY);
-            BigDecimal oldAvailableQuantity = resourceStock.getDecimalField(ResourceStockFields.AVAILABLE_QUANTITY);
-            resourceStock.setField(ResourceStockFields.QUANTITY, oldQuantity.add(quantity));
-            resourceStock.setField(ResourceStockFields.AVAILABLE_QUANTITY, oldAvailableQuantity.add(quantity));
-        } else {
-            resourceStock = createResourceStock(product, location, quantity);
-        }
-        getResourceStockDataDefinition().save(resourceStock);
+        Map<String, Object> params = Maps.newHashMap();
+
+        params.put(L_PRODUCT_ID, product.getId());
+        params.put(L_LOCATION_ID, location.getId());
+        params.put(L_QUANTITY, quantity);
+
+        jdbcTemplate.update(L_ADD_RESOURCE_STOCK_QUERY, params);
     }
 
     @Override
@@ -63,21 +94,23 @@ public class ResourceStockServiceImpl implements ResourceStockService {
 
     @Override
     public void removeResourceStock(Entity product, Entity location, BigDecimal quantity) {
-        Optional<Entity> maybeStock = getResourceStockForProductAndLocation(product, location);
-        if (maybeStock.isPresent()) {
-            Entity resourceStock = maybeStock.get();
-            BigDecimal oldQuantity = resourceStock.getDecimalField(ResourceStockFields.QUANTITY);
-            BigDecimal oldAvailableQuantity = resourceStock.getDecimalField(ResourceStockFields.AVAILABLE_QUANTITY);
-            BigDecimal newQuantity = oldQuantity.subtract(quantity);
-            BigDecimal newAvailableQuantity = oldAvailableQuantity.subtract(quantity);
-            if (newQuantity.compareTo(BigDecimal.ZERO) <= 0) {
-                newQuantity = BigDecimal.ZERO;
-                newAvailableQuantity = BigDecimal.ZERO;
-            }
-            resourceStock.setField(ResourceStockFields.QUANTITY, newQuantity);
-            resourceStock.setField(ResourceStockFields.AVAILABLE_QUANTITY, newAvailableQuantity);
-            getResourceStockDataDefinition().save(resourceStock);
+        removeResourceStock(location.getId(), Collections.singletonMap(product.getId(), quantity));
+    }
+
+    @Override
+    public void removeResourceStock(final Long locationId, final Map<Long, BigDecimal> quantitiesByProduct) {
+        if (quantitiesByProduct.isEmpty()) {
+            return;
         }
+
+        List<SqlParameterSource> params = Lists.newArrayList();
+
+        for (Map.Entry<Long, BigDecimal> quantityForProduct : quantitiesByProduct.entrySet()) {
+            params.add(new MapSqlParameterSource().addValue(L_PRODUCT_ID, quantityForProduct.getKey())
+                    .addValue(L_LOCATION_ID, locationId).addValue(L_QUANTITY, quantityForProduct.getValue()));
+        }
+
+        jdbcTemplate.batchUpdate(L_REMOVE_RESOURCE_STOCK_QUERY, params.toArray(new SqlParameterSource[params.size()]));
     }
 
     @Override
@@ -88,16 +121,6 @@ public class ResourceStockServiceImpl implements ResourceStockService {
         return Optional.ofNullable(existingResourceStock);
     }
 
-    private Entity createResourceStock(final Entity product, final Entity location, final BigDecimal quantity) {
-        Entity stock = getResourceStockDataDefinition().create();
-        stock.setField(ResourceStockFields.LOCATION, location);
-        stock.setField(ResourceStockFields.PRODUCT, product);
-        stock.setField(ResourceStockFields.QUANTITY, quantity);
-        stock.setField(ResourceStockFields.AVAILABLE_QUANTITY, quantity);
-        stock.setField(ResourceStockFields.RESERVED_QUANTITY, BigDecimal.ZERO);
-        return stock;
-    }
-
     private DataDefinition getResourceStockDataDefinition() {
         return dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
                 MaterialFlowResourcesConstants.MODEL_RESOURCE_STOCK);
@@ -118,23 +141,28 @@ public class ResourceStockServiceImpl implements ResourceStockService {
     }
 
     public void updateResourceStock(Entity product, Entity location, BigDecimal quantityToAdd) {
-        Optional<Entity> maybeResourceStock = getResourceStockForProductAndLocation(product, location);
-        if (maybeResourceStock.isPresent()) {
-            Entity resourceStock = maybeResourceStock.get();
-            BigDecimal reservedQuantity = resourceStock.getDecimalField(ResourceStockFields.RESERVED_QUANTITY);
-            BigDecimal availableQuantity = resourceStock.getDecimalField(ResourceStockFields.AVAILABLE_QUANTITY);
-            BigDecimal quantity = resourceStock.getDecimalField(ResourceStockFields.QUANTITY);
-            if (quantity.compareTo(BigDecimal.ZERO) == 0) {
-                reservedQuantity = BigDecimal.ZERO;
-                availableQuantity = BigDecimal.ZERO;
-            } else {
-                availableQuantity = availableQuantity.subtract(quantityToAdd);
-                reservedQuantity = reservedQuantity.add(quantityToAdd);
-            }
-            resourceStock.setField(ResourceStockFields.AVAILABLE_QUANTITY, availableQuantity);
-            resourceStock.setField(ResourceStockFields.RESERVED_QUANTITY, reservedQuantity);
-            resourceStock.getDataDefinition().save(resourceStock);
+        Map<String, Object> params = Maps.newHashMap();
+
+        params.put(L_PRODUCT_ID, product.getId());
+        params.put(L_LOCATION_ID, location.getId());
+        params.put(L_QUANTITY, quantityToAdd);
+
+        jdbcTemplate.update(L_RESERVE_RESOURCE_STOCK_QUERY, params);
+    }
+
+    @Override
+    public void updateResourceStock(final Long locationId, final Map<Long, BigDecimal> quantitiesByProduct) {
+        if (quantitiesByProduct.isEmpty()) {
+            return;
+        }
+
+        List<SqlParameterSource> params = Lists.newArrayList();
+
+        for (Map.Entry<Long, BigDecimal> quantityForProduct : quantitiesByProduct.entrySet()) {
+            params.add(new MapSqlParameterSource().addValue(L_PRODUCT_ID, quantityForProduct.getKey())
+                    .addValue(L_LOCATION_ID, locationId).addValue(L_QUANTITY, quantityForProduct.getValue()));
         }
 
+        jdbcTemplate.batchUpdate(L_UPDATE_RESOURCE_STOCK_QUERY, params.toArray(new SqlParameterSource[params.size()]));
     }
 }
@@ -483,7 +483,7 @@ myApp.controller('GridController', ['$scope', '$window', '$http', function ($sco
                             autoCompleteResult = false;
                             response([{
                                     id: 0,
-                                    code: QCD.translate('documentGrid.autocomplete.tooManyResults') + ' (' + data.numberOfResults + ')'
+                                    code: QCD.translate('documentGrid.autocomplete.tooManyResults') + ' (> ' + (data.numberOfResults - 1) + ')'
                                 }]);
                         } else {
                             autoCompleteResult = true;
@@ -0,0 +1,42 @@
+--
+-- ***************************************************************************
+-- Copyright (c) 2010 Qcadoo Limited
+-- Project: Qcadoo MES
+-- Version: 1.4
+--
+-- This file is part of Qcadoo.
+--
+-- Qcadoo is free software; you can redistribute it and/or modify
+-- it under the terms of the GNU Affero General Public License as published
+-- by the Free Software Foundation; either version 3 of the License,
+-- or (at your option) any later version.
+--
+-- This program is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty
+-- of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+-- See the GNU Affero General Public License for more details.
+--
+-- You should have received a copy of the GNU Affero General Public License
+-- along with this program; if not, write to the Free Software
+-- Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+-- ***************************************************************************
+--
+
+-- Resource stocks are changed with upserts on (location_id, product_id). Rows duplicated earlier by concurrent find and save
+-- are merged into the oldest one before unique index is created.
+
+DO $$
+BEGIN
+    IF to_regclass('materialflowresources_resourcestock') IS NULL THEN
+        RETURN;
+    END IF;
+
+    LOCK TABLE materialflowresources_resourcestock IN SHARE ROW EXCLUSIVE MODE;
+
+    UPDATE materialflowresources_resourcestock resourcestock SET quantity = duplicates.quantity, reservedquantity = duplicates.reservedquantity, availablequantity = duplicates.availablequantity FROM (SELECT MIN(id) AS id, SUM(COALESCE(quantity, 0)) AS quantity, SUM(COALESCE(reservedquantity, 0)) AS reservedquantity, SUM(COALESCE(availablequantity, 0)) AS availablequantity FROM materialflowresources_resourcestock GROUP BY location_id, product_id HAVING COUNT(*) > 1) duplicates WHERE resourcestock.id = duplicates.id;
+
+    DELETE FROM materialflowresources_resourcestock resourcestock USING materialflowresources_resourcestock kept WHERE kept.location_id = resourcestock.location_id AND kept.product_id = resourcestock.product_id AND kept.id < resourcestock.id;
+
+    CREATE UNIQUE INDEX IF NOT EXISTS materialflowresources_resourcestock_location_product_idx ON materialflowresources_resourcestock (location_id, product_id);
+END;
+$$;
@@ -0,0 +1,85 @@
+--
+-- ***************************************************************************
+-- Copyright (c) 2010 Qcadoo Limited
+-- Project: Qcadoo MES
+-- Version: 1.4
+--
+-- This file is part of Qcadoo.
+--
+-- Qcadoo is free software; you can redistribute it and/or modify
+-- it under the terms of the GNU Affero General Public License as published
+-- by the Free Software Foundation; either version 3 of the License,
+-- or (at your option) any later version.
+--
+-- This program is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty
+-- of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+-- See the GNU Affero General Public License for more details.
+--
+-- You should have received a copy of the GNU Affero General Public License
+-- along with this program; if not, write to the Free Software
+-- Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+-- ***************************************************************************
+--
+
+-- Warehouse stock used to be a view aggregating resources on every read. It is now a table refreshed by triggers for every
+-- changed (location, product), see views.sql. In databases created earlier the view is replaced with the table and filled
+-- with current stocks. Functions and triggers are (re)created every time, so fresh databases end up in the same state.
+
+DO $$
+BEGIN
+    IF to_regclass('materialflowresources_resource') IS NULL OR to_regclass('warehouseminimalstate_warehouseminimumstate') IS NULL OR to_regclass('deliveries_orderedproduct') IS NULL THEN
+        RETURN;
+    END IF;
+
+    IF EXISTS (SELECT * FROM pg_views WHERE viewname = 'materialflowresources_warehousestock') THEN
+        DROP VIEW materialflowresources_warehousestock;
+
+        CREATE TABLE materialflowresources_warehousestock (id bigserial PRIMARY KEY, location_id bigint, product_id bigint, quantity numeric(14,5), orderedquantity numeric(14,5), minimumstate numeric(14,5), CONSTRAINT warehousestock_location_fkey FOREIGN KEY (location_id) REFERENCES materialflow_location (id) DEFERRABLE, CONSTRAINT warehousestock_product_fkey FOREIGN KEY (product_id) REFERENCES basic_product (id) DEFERRABLE);
+
+        IF EXISTS (SELECT * FROM information_schema.columns WHERE table_name = 'basic_parameter' AND column_name = 'tenantid') THEN
+            ALTER TABLE materialflowresources_warehousestock ADD COLUMN tenantid integer;
+        END IF;
+    END IF;
+
+    CREATE UNIQUE INDEX IF NOT EXISTS materialflowresources_warehousestock_location_product_idx ON materialflowresources_warehousestock (location_id, product_id);
+
+    CREATE INDEX IF NOT EXISTS materialflowresources_resource_location_product_idx ON materialflowresources_resource (location_id, product_id);
+
+    CREATE INDEX IF NOT EXISTS deliveries_orderedproduct_product_idx ON deliveries_orderedproduct (product_id);
+
+    IF EXISTS (SELECT * FROM information_schema.columns WHERE table_name = 'materialflowresources_warehousestock' AND column_name = 'tenantid') THEN
+        CREATE OR REPLACE FUNCTION refresh_warehouse_stock(_location_id bigint, _product_id bigint) RETURNS VOID AS $f$ BEGIN IF _location_id IS NULL OR _product_id IS NULL THEN RETURN; END IF; PERFORM pg_advisory_xact_lock(hashtext('materialflowresources_warehousestock'), hashtext(_location_id || '.' || _product_id)); IF EXISTS (SELECT * FROM materialflowresources_resource WHERE location_id = _location_id AND product_id = _product_id) THEN INSERT INTO materialflowresources_warehousestock (location_id, product_id, minimumstate, orderedquantity, quantity, tenantid) SELECT _location_id, _product_id, (SELECT SUM(minimumstate) FROM warehouseminimalstate_warehouseminimumstate WHERE location_id = _location_id AND product_id = _product_id), (SELECT COALESCE(SUM(orderedproduct.orderedquantity), 0::numeric) FROM deliveries_orderedproduct orderedproduct JOIN deliveries_delivery delivery ON (delivery.id = orderedproduct.delivery_id) WHERE delivery.location_id = _location_id AND delivery.active = true AND orderedproduct.product_id = _product_id AND delivery.state IN ('01draft', '02prepared', '03duringCorrection', '05approved')), SUM(quantity), MIN(tenantid) FROM materialflowresources_resource WHERE location_id = _location_id AND product_id = _product_id ON CONFLICT (location_id, product_id) DO UPDATE SET minimumstate = EXCLUDED.minimumstate, orderedquantity = EXCLUDED.orderedquantity, quantity = EXCLUDED.quantity; ELSE DELETE FROM materialflowresources_warehousestock WHERE location_id = _location_id AND product_id = _product_id; END IF; END; $f$ LANGUAGE 'plpgsql';
+    ELSE
+        CREATE OR REPLACE FUNCTION refresh_warehouse_stock(_location_id bigint, _product_id bigint) RETURNS VOID AS $f$ BEGIN IF _location_id IS NULL OR _product_id IS NULL THEN RETURN; END IF; PERFORM pg_advisory_xact_lock(hashtext('materialflowresources_warehousestock'), hashtext(_location_id || '.' || _product_id)); IF EXISTS (SELECT * FROM materialflowresources_resource WHERE location_id = _location_id AND product_id = _product_id) THEN INSERT INTO materialflowresources_warehousestock (location_id, product_id, minimumstate, orderedquantity, quantity) SELECT _location_id, _product_id, (SELECT SUM(minimumstate) FROM warehouseminimalstate_warehouseminimumstate WHERE location_id = _location_id AND product_id = _product_id), (SELECT COALESCE(SUM(orderedproduct.orderedquantity), 0::numeric) FROM deliveries_orderedproduct orderedproduct JOIN deliveries_delivery delivery ON (delivery.id = orderedproduct.delivery_id) WHERE delivery.location_id = _location_id AND delivery.active = true AND orderedproduct.product_id = _product_id AND delivery.state IN ('01draft', '02prepared', '03duringCorrection', '05approved')), SUM(quantity) FROM materialflowresources_resource WHERE location_id = _location_id AND product_id = _product_id ON CONFLICT (location_id, product_id) DO UPDATE SET minimumstate = EXCLUDED.minimumstate, orderedquantity = EXCLUDED.orderedquantity, quantity = EXCLUDED.quantity; ELSE DELETE FROM materialflowresources_warehousestock WHERE location_id = _location_id AND product_id = _product_id; END IF; END; $f$ LANGUAGE 'plpgsql';
+    END IF;
+
+    CREATE OR REPLACE FUNCTION refresh_warehouse_stock_trigger() RETURNS trigger AS $f$ BEGIN IF TG_OP = 'INSERT' THEN PERFORM refresh_warehouse_stock(NEW.location_id, NEW.product_id); ELSIF TG_OP = 'DELETE' THEN PERFORM refresh_warehouse_stock(OLD.location_id, OLD.product_id); ELSE PERFORM refresh_warehouse_stock(OLD.location_id, OLD.product_id); IF OLD.location_id IS DISTINCT FROM NEW.location_id OR OLD.product_id IS DISTINCT FROM NEW.product_id THEN PERFORM refresh_warehouse_stock(NEW.location_id, NEW.product_id); END IF; END IF; RETURN NULL; END; $f$ LANGUAGE 'plpgsql';
+
+    DROP TRIGGER IF EXISTS materialflowresources_resource_trigger_warehousestock ON materialflowresources_resource;
+
+    CREATE TRIGGER materialflowresources_resource_trigger_warehousestock AFTER INSERT OR DELETE OR UPDATE OF location_id, product_id, quantity ON materialflowresources_resource FOR EACH ROW EXECUTE PROCEDURE refresh_warehouse_stock_trigger();
+
+    DROP TRIGGER IF EXISTS warehouseminimalstate_warehouseminimumstate_trigger_warehousestock ON warehouseminimalstate_warehouseminimumstate;
+
+    CREATE TRIGGER warehouseminimalstate_warehouseminimumstate_trigger_warehousestock AFTER INSERT OR DELETE OR UPDATE OF location_id, product_id, minimumstate ON warehouseminimalstate_warehouseminimumstate FOR EACH ROW EXECUTE PROCEDURE refresh_warehouse_stock_trigger();
+
+    CREATE OR REPLACE FUNCTION refresh_warehouse_stock_for_ordered_product_trigger() RETURNS trigger AS $f$ BEGIN IF TG_OP IN ('UPDATE', 'DELETE') THEN PERFORM refresh_warehouse_stock((SELECT location_id FROM deliveries_delivery WHERE id = OLD.delivery_id), OLD.product_id); END IF; IF TG_OP IN ('INSERT', 'UPDATE') THEN PERFORM refresh_warehouse_stock((SELECT location_id FROM deliveries_delivery WHERE id = NEW.delivery_id), NEW.product_id); END IF; RETURN NULL; END; $f$ LANGUAGE 'plpgsql';
+
+    DROP TRIGGER IF EXISTS deliveries_orderedproduct_trigger_warehousestock ON deliveries_orderedproduct;
+
+    CREATE TRIGGER deliveries_orderedproduct_trigger_warehousestock AFTER INSERT OR DELETE OR UPDATE OF delivery_id, product_id, orderedquantity ON deliveries_orderedproduct FOR EACH ROW EXECUTE PROCEDURE refresh_warehouse_stock_for_ordered_product_trigger();
+
+    CREATE OR REPLACE FUNCTION refresh_warehouse_stock_for_delivery_trigger() RETURNS trigger AS $f$ DECLARE _product_id bigint; BEGIN FOR _product_id IN SELECT DISTINCT product_id FROM deliveries_orderedproduct WHERE delivery_id = NEW.id LOOP PERFORM refresh_warehouse_stock(OLD.location_id, _product_id); IF OLD.location_id IS DISTINCT FROM NEW.location_id THEN PERFORM refresh_warehouse_stock(NEW.location_id, _product_id); END IF; END LOOP; RETURN NULL; END; $f$ LANGUAGE 'plpgsql';
+
+    DROP TRIGGER IF EXISTS deliveries_delivery_trigger_warehousestock ON deliveries_delivery;
+
+    CREATE TRIGGER deliveries_delivery_trigger_warehousestock AFTER UPDATE OF location_id, state, active ON deliveries_delivery FOR EACH ROW EXECUTE PROCEDURE refresh_warehouse_stock_for_delivery_trigger();
+
+    LOCK TABLE materialflowresources_resource IN SHARE ROW EXCLUSIVE MODE;
+
+    PERFORM refresh_warehouse_stock(stock.location_id, stock.product_id) FROM (SELECT DISTINCT location_id, product_id FROM materialflowresources_resource) stock;
+
+    DELETE FROM materialflowresources_warehousestock warehousestock WHERE NOT EXISTS (SELECT * FROM materialflowresources_resource resource WHERE resource.location_id = warehousestock.location_id AND resource.product_id = warehousestock.product_id);
+END;
+$$;
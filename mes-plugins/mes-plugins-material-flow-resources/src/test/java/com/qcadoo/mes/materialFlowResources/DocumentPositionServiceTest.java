@@ -0,0 +1,159 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialFlowResources;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.qcadoo.mes.basic.BasicException;
+import com.qcadoo.mes.basic.LookupQueryCache;
+import com.qcadoo.mes.materialFlowResources.constants.DocumentState;
+import com.qcadoo.mes.materialFlowResources.constants.DocumentType;
+import com.qcadoo.mes.materialFlowResources.service.ReservationsService;
+
+public class DocumentPositionServiceTest {
+
+    private static final Long L_DOCUMENT_ID = 1L;
+
+    private DocumentPositionService documentPositionService;
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Mock
+    private DocumentPositionValidator validator;
+
+    @Mock
+    private LookupQueryCache lookupQueryCache;
+
+    @Mock
+    private ReservationsService reservationsService;
+
+    @Mock
+    private DocumentPositionLookups documentPositionLookups;
+
+    private List<DocumentPositionDTO> positions;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        documentPositionService = new DocumentPositionService();
+
+        ReflectionTestUtils.setField(documentPositionService, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(documentPositionService, "validator", validator);
+        ReflectionTestUtils.setField(documentPositionService, "lookupQueryCache", lookupQueryCache);
+        ReflectionTestUtils.setField(documentPositionService, "reservationsService", reservationsService);
+        ReflectionTestUtils.setField(documentPositionService, "documentPositionLookups", documentPositionLookups);
+
+        DocumentDTO document = new DocumentDTO();
+        document.setId(L_DOCUMENT_ID);
+        document.setType(DocumentType.RELEASE.getStringValue());
+        document.setState(DocumentState.DRAFT.getStringValue());
+
+        given(documentPositionLookups.getDocument(L_DOCUMENT_ID)).willReturn(document);
+
+        DocumentPositionDTO position = new DocumentPositionDTO();
+        position.setDocument(L_DOCUMENT_ID);
+
+        positions = Arrays.asList(position, position);
+    }
+
+    @Test
+    public final void shouldInsertPositionsWithOneBatchAndCreateTheirReservations() {
+        // given
+        List<Map<String, Object>> positionsParams = Arrays.asList(createParams(3L), createParams(4L));
+
+        given(validator.validateAndTryMapBeforeCreate(positions)).willReturn(positionsParams);
+        given(jdbcTemplate.queryForList(anyString(), anyMap(), eq(Long.class))).willReturn(Arrays.asList(11L, 12L));
+
+        // when
+        documentPositionService.create(positions);
+
+        // then
+        ArgumentCaptor<SqlParameterSource[]> batchParamsCaptor = ArgumentCaptor.forClass(SqlParameterSource[].class);
+        ArgumentCaptor<String> queryCaptor = ArgumentCaptor.forClass(String.class);
+
+        verify(jdbcTemplate).batchUpdate(queryCaptor.capture(), batchParamsCaptor.capture());
+
+        SqlParameterSource[] batchParams = batchParamsCaptor.getValue();
+
+        assertEquals(2, batchParams.length);
+        assertEquals(11L, batchParams[0].getValue("id"));
+        assertEquals(3L, batchParams[0].getValue("product_id"));
+        assertEquals(12L, batchParams[1].getValue("id"));
+        assertEquals(4L, batchParams[1].getValue("product_id"));
+        assertEquals(DocumentType.RELEASE.getStringValue(), batchParams[1].getValue("type"));
+        assertEquals(DocumentState.DRAFT.getStringValue(), batchParams[1].getValue("state"));
+
+        verify(reservationsService).createReservationsFromDocumentPositions(eq(L_DOCUMENT_ID), eq(positionsParams));
+        verify(lookupQueryCache).invalidate("documentPositions." + L_DOCUMENT_ID);
+    }
+
+    @Test(expected = BasicException.class)
+    public final void shouldNotInsertAnyPositionWhenValidationFails() {
+        // given
+        given(validator.validateAndTryMapBeforeCreate(positions)).willThrow(
+                new BasicException("2: documentGrid.error.position.quantity.required"));
+
+        try {
+            // when
+            documentPositionService.create(positions);
+        } finally {
+            // then
+            verifyZeroInteractions(jdbcTemplate, reservationsService, lookupQueryCache);
+        }
+    }
+
+    private Map<String, Object> createParams(final Long productId) {
+        Map<String, Object> params = new HashMap<>();
+
+        params.put("id", null);
+        params.put("product_id", productId);
+        params.put("document_id", L_DOCUMENT_ID);
+
+        return params;
+    }
+
+}
@@ -0,0 +1,302 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialFlowResources;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.startsWith;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.qcadoo.localization.api.TranslationService;
+import com.qcadoo.mes.basic.BasicException;
+import com.qcadoo.mes.materialFlowResources.constants.DocumentState;
+import com.qcadoo.mes.materialFlowResources.constants.DocumentType;
+import com.qcadoo.mes.materialFlowResources.constants.WarehouseAlgorithm;
+
+public class DocumentPositionValidatorTest {
+
+    private static final Long L_DOCUMENT_ID = 1L;
+
+    private static final Long L_LOCATION_FROM_ID = 2L;
+
+    private static final Long L_PRODUCT_ID = 3L;
+
+    private static final String L_PRODUCT_NUMBER = "P1";
+
+    private static final String L_NOT_ENOUGH_RESOURCES = "documentGrid.error.position.quantity.notEnoughResources";
+
+    private static final String L_RESOURCE_INVALID = "documentGrid.error.position.resource.invalid";
+
+    private static final String L_RESOURCE_NUMBERS_QUERY = "SELECT product.number, resource.conversion";
+
+    private DocumentPositionValidator documentPositionValidator;
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Mock
+    private TranslationService translationService;
+
+    @Mock
+    private DocumentPositionService documentPositionService;
+
+    @Mock
+    private DocumentPositionLookups documentPositionLookups;
+
+    @Before
+    public void init() throws SQLException {
+        MockitoAnnotations.initMocks(this);
+
+        documentPositionValidator = new DocumentPositionValidator();
+
+        ReflectionTestUtils.setField(documentPositionValidator, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(documentPositionValidator, "translationService", translationService);
+        ReflectionTestUtils.setField(documentPositionValidator, "documentPositionService", documentPositionService);
+        ReflectionTestUtils.setField(documentPositionValidator, "documentPositionLookups", documentPositionLookups);
+
+        DocumentDTO document = new DocumentDTO();
+        document.setId(L_DOCUMENT_ID);
+        document.setType(DocumentType.RELEASE.getStringValue());
+        document.setState(DocumentState.DRAFT.getStringValue());
+        document.setLocationFrom_id(L_LOCATION_FROM_ID);
+
+        LocationDTO warehouseFrom = new LocationDTO();
+        warehouseFrom.setId(L_LOCATION_FROM_ID);
+        warehouseFrom.setAlgorithm(WarehouseAlgorithm.FIFO.getStringValue());
+
+        given(documentPositionLookups.getDocument(L_DOCUMENT_ID)).willReturn(document);
+        given(documentPositionLookups.getLocation(L_LOCATION_FROM_ID)).willReturn(warehouseFrom);
+
+        stubRows("SELECT number, id FROM basic_product", row(L_PRODUCT_NUMBER, L_PRODUCT_ID));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public final void shouldRejectPositionsOfDifferentDocuments() {
+        // given
+        DocumentPositionDTO otherDocumentPosition = createPosition(BigDecimal.ONE);
+        otherDocumentPosition.setDocument(L_DOCUMENT_ID + 1);
+
+        // when
+        documentPositionValidator.validateAndTryMapBeforeCreate(Arrays.asList(createPosition(BigDecimal.ONE),
+                otherDocumentPosition));
+    }
+
+    @Test
+    public final void shouldPrefixErrorsWithNumberOfPosition() {
+        // given
+        DocumentPositionDTO unknownProductPosition = createPosition(BigDecimal.ONE);
+        unknownProductPosition.setProduct("P9");
+
+        // when
+        String message = validateAndGetMessage(Arrays.asList(createPosition(BigDecimal.ONE), createPosition(null),
+                unknownProductPosition));
+
+        // then
+        assertEquals("2: documentGrid.error.position.quantity.required\n3: Nie znaleziono takiego produktu: 'P9'.", message);
+    }
+
+    @Test
+    public final void shouldCheckAvailableQuantityAgainstSumOfPositionsOfProduct() throws SQLException {
+        // given
+        given(documentPositionLookups.reservationsEnabled(L_DOCUMENT_ID)).willReturn(true);
+
+        stubRows("SELECT product_id, availableQuantity", row(L_PRODUCT_ID, new BigDecimal(5)));
+
+        // when
+        String message = validateAndGetMessage(Arrays.asList(createPosition(new BigDecimal(3)),
+                createPosition(new BigDecimal(3))));
+
+        // then
+        assertEquals("1: " + L_NOT_ENOUGH_RESOURCES + "\n2: " + L_NOT_ENOUGH_RESOURCES, message);
+    }
+
+    @Test
+    public final void shouldAcceptPositionsWhenSumOfQuantitiesIsAvailable() throws SQLException {
+        // given
+        given(documentPositionLookups.reservationsEnabled(L_DOCUMENT_ID)).willReturn(true);
+
+        stubRows("SELECT product_id, availableQuantity", row(L_PRODUCT_ID, new BigDecimal(6)));
+
+        // when
+        List<Map<String, Object>> positionsParams = documentPositionValidator.validateAndTryMapBeforeCreate(Arrays.asList(
+                createPosition(new BigDecimal(3)), createPosition(new BigDecimal(3))));
+
+        // then
+        assertEquals(2, positionsParams.size());
+    }
+
+    @Test
+    public final void shouldMapPositionsLikeSinglePosition() {
+        // given
+        given(jdbcTemplate.queryForObject(startsWith("SELECT product.id"), anyMap(), eq(Long.class))).willReturn(L_PRODUCT_ID);
+
+        // when
+        Map<String, Object> params = documentPositionValidator.validateAndTryMapBeforeCreate(createPosition(BigDecimal.TEN));
+        List<Map<String, Object>> positionsParams = documentPositionValidator.validateAndTryMapBeforeCreate(Arrays
+                .asList(createPosition(BigDecimal.TEN)));
+
+        // then
+        assertEquals(1, positionsParams.size());
+        assertEquals(params, positionsParams.get(0));
+    }
+
+    @Test
+    public final void shouldValidateResourcesOfAllPositionsWithOneQuery() throws SQLException {
+        // given
+        stubRows("SELECT number, id FROM materialflowresources_resource", row("R1", 11L), row("R2", 12L));
+        stubRows(L_RESOURCE_NUMBERS_QUERY, row(L_PRODUCT_NUMBER, new BigDecimal("1.00000"), null, "R1"));
+
+        // when
+        String message = validateAndGetMessage(Arrays.asList(createPosition(BigDecimal.ONE, "R1"),
+                createPosition(BigDecimal.ONE, "R2"), createPosition(BigDecimal.ONE, "R1")));
+
+        // then
+        assertEquals("2: " + L_RESOURCE_INVALID, message);
+        verify(jdbcTemplate, times(1)).query(startsWith(L_RESOURCE_NUMBERS_QUERY), anyMap(), any(RowCallbackHandler.class));
+    }
+
+    @Test
+    public final void shouldMatchResourcesByAdditionalCodeWhenThereAreAny() throws SQLException {
+        // given
+        stubRows("SELECT additionalcode.code", row("AC1", L_PRODUCT_NUMBER, 21L), row("AC2", L_PRODUCT_NUMBER, 22L));
+        stubRows("SELECT number, id FROM materialflowresources_resource", row("R1", 11L), row("R3", 13L));
+        stubRows(L_RESOURCE_NUMBERS_QUERY, row(L_PRODUCT_NUMBER, BigDecimal.ONE, "AC1", "R3"),
+                row(L_PRODUCT_NUMBER, BigDecimal.ONE, null, "R1"));
+
+        DocumentPositionDTO positionWithMatchingCode = createPosition(BigDecimal.ONE, "R3");
+        positionWithMatchingCode.setAdditionalCode("AC1");
+
+        DocumentPositionDTO positionWithOtherResource = createPosition(BigDecimal.ONE, "R1");
+        positionWithOtherResource.setAdditionalCode("AC1");
+
+        DocumentPositionDTO positionWithoutResourcesOfCode = createPosition(BigDecimal.ONE, "R1");
+        positionWithoutResourcesOfCode.setAdditionalCode("AC2");
+
+        // when
+        String message = validateAndGetMessage(Arrays.asList(positionWithMatchingCode, positionWithOtherResource,
+                positionWithoutResourcesOfCode));
+
+        // then
+        assertEquals("2: " + L_RESOURCE_INVALID, message);
+        verify(jdbcTemplate, times(1)).query(startsWith(L_RESOURCE_NUMBERS_QUERY), anyMap(), any(RowCallbackHandler.class));
+    }
+
+    private String validateAndGetMessage(final List<DocumentPositionDTO> positions) {
+        try {
+            documentPositionValidator.validateAndTryMapBeforeCreate(positions);
+        } catch (BasicException e) {
+            assertFalse(e.getMessage().isEmpty());
+
+            return e.getMessage();
+        }
+
+        fail("Positions should be rejected");
+
+        return null;
+    }
+
+    private DocumentPositionDTO createPosition(final BigDecimal quantity) {
+        DocumentPositionDTO position = new DocumentPositionDTO();
+
+        position.setDocument(L_DOCUMENT_ID);
+        position.setProduct(L_PRODUCT_NUMBER);
+        position.setUnit("szt");
+        position.setGivenunit("szt");
+        position.setQuantity(quantity);
+        position.setGivenquantity(BigDecimal.ONE);
+        position.setConversion(BigDecimal.ONE);
+        position.setBatch("");
+        position.setWaste(false);
+
+        return position;
+    }
+
+    private DocumentPositionDTO createPosition(final BigDecimal quantity, final String resource) {
+        DocumentPositionDTO position = createPosition(quantity);
+
+        position.setResource(resource);
+
+        return position;
+    }
+
+    private ResultSet row(final Object... columns) throws SQLException {
+        ResultSet rs = mock(ResultSet.class);
+
+        for (int index = 1; index <= columns.length; index++) {
+            Object column = columns[index - 1];
+
+            if (column instanceof String) {
+                given(rs.getString(index)).willReturn((String) column);
+            } else if (column instanceof Long) {
+                given(rs.getLong(index)).willReturn((Long) column);
+            } else if (column instanceof BigDecimal) {
+                given(rs.getBigDecimal(index)).willReturn((BigDecimal) column);
+            }
+        }
+
+        return rs;
+    }
+
+    private void stubRows(final String queryPrefix, final ResultSet... rows) {
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(final InvocationOnMock invocation) throws Throwable {
+                RowCallbackHandler handler = (RowCallbackHandler) invocation.getArguments()[2];
+
+                for (ResultSet rs : rows) {
+                    handler.processRow(rs);
+                }
+
+                return null;
+            }
+        }).when(jdbcTemplate).query(startsWith(queryPrefix), anyMap(), any(RowCallbackHandler.class));
+    }
+
+}
@@ -0,0 +1,595 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialFlowResources.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+
+import org.hibernate.Session;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.qcadoo.mes.basic.constants.ProductFields;
+import com.qcadoo.mes.materialFlowResources.constants.DocumentFields;
+import com.qcadoo.mes.materialFlowResources.constants.LocationFieldsMFR;
+import com.qcadoo.mes.materialFlowResources.constants.MaterialFlowResourcesConstants;
+import com.qcadoo.mes.materialFlowResources.constants.PositionFields;
+import com.qcadoo.mes.materialFlowResources.constants.ResourceFields;
+import com.qcadoo.mes.materialFlowResources.constants.WarehouseAlgorithm;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.FieldDefinition;
+import com.qcadoo.model.api.NumberService;
+import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.model.api.search.SearchCriterion;
+import com.qcadoo.model.api.search.SearchResult;
+import com.qcadoo.model.api.units.UnitConversionService;
+import com.qcadoo.model.internal.DefaultEntity;
+import com.qcadoo.model.internal.api.HibernateService;
+import com.qcadoo.model.internal.api.InternalDataDefinition;
+import com.qcadoo.testing.model.EntityListMock;
+
+/**
+ * Compares set-based allocation with position by position allocation, as it was done before by
+ * ResourceManagementServiceImpl.updateResources (reference implementation below reads resources again for every position, just
+ * like the old per-position queries did).
+ */
+public class ResourceAllocationServiceTest {
+
+    private static final String L_UNIT = "szt";
+
+    private static final Long L_WAREHOUSE_ID = 1L;
+
+    private ResourceAllocationService resourceAllocationService;
+
+    @Mock
+    private DataDefinitionService dataDefinitionService;
+
+    @Mock
+    private InternalDataDefinition resourceDD;
+
+    @Mock
+    private DataDefinition positionDD, productDD, locationDD, documentDD, additionalCodeDD;
+
+    @Mock
+    private NumberService numberService;
+
+    @Mock
+    private UnitConversionService unitConversionService;
+
+    @Mock
+    private ResourceStockService resourceStockService;
+
+    @Mock
+    private ReservationsService reservationsService;
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Mock
+    private HibernateService hibernateService;
+
+    @Mock
+    private Session session;
+
+    private Map<Long, Entity> databaseResources;
+
+    private Map<Long, BigDecimal> removedStock;
+
+    @Before
+    public final void init() {
+        MockitoAnnotations.initMocks(this);
+
+        resourceAllocationService = new ResourceAllocationService();
+
+        ReflectionTestUtils.setField(resourceAllocationService, "dataDefinitionService", dataDefinitionService);
+        ReflectionTestUtils.setField(resourceAllocationService, "numberService", numberService);
+        ReflectionTestUtils.setField(resourceAllocationService, "unitConversionService", unitConversionService);
+        ReflectionTestUtils.setField(resourceAllocationService, "resourceStockService", resourceStockService);
+        ReflectionTestUtils.setField(resourceAllocationService, "reservationsService", reservationsService);
+        ReflectionTestUtils.setField(resourceAllocationService, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(resourceAllocationService, "hibernateService", hibernateService);
+
+        given(dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
+                MaterialFlowResourcesConstants.MODEL_RESOURCE)).willReturn(resourceDD);
+        given(dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
+                MaterialFlowResourcesConstants.MODEL_POSITION)).willReturn(positionDD);
+        given(dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
+                MaterialFlowResourcesConstants.MODEL_ATTRIBUTE_VALUE)).willReturn(mock(DataDefinition.class));
+
+        given(positionDD.create()).willAnswer(new Answer<Entity>() {
+
+            @Override
+            public Entity answer(final InvocationOnMock invocation) throws Throwable {
+                return new DefaultEntity(positionDD);
+            }
+        });
+        FieldDefinition quantityField = mock(FieldDefinition.class);
+        given(quantityField.getName()).willReturn(PositionFields.QUANTITY);
+        given(positionDD.getField(PositionFields.QUANTITY)).willReturn(quantityField);
+
+        given(numberService.getMathContext()).willReturn(MathContext.DECIMAL64);
+        given(numberService.setScale(any(BigDecimal.class))).willAnswer(new Answer<BigDecimal>() {
+
+            @Override
+            public BigDecimal answer(final InvocationOnMock invocation) throws Throwable {
+                return (BigDecimal) invocation.getArguments()[0];
+            }
+        });
+
+        given(hibernateService.getCurrentSession()).willReturn(session);
+        doReturn(Object.class).when(resourceDD).getClassForEntity();
+
+        stubResourceQuery();
+        stubWrites();
+    }
+
+    private void stubResourceQuery() {
+        SearchCriteriaBuilder searchCriteriaBuilder = mock(SearchCriteriaBuilder.class);
+        SearchResult searchResult = mock(SearchResult.class);
+
+        given(resourceDD.find()).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.add(any(SearchCriterion.class))).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.list()).willReturn(searchResult);
+        given(searchResult.getEntities()).willAnswer(new Answer<List<Entity>>() {
+
+            @Override
+            public List<Entity> answer(final InvocationOnMock invocation) throws Throwable {
+                List<Entity> resources = Lists.newArrayList();
+
+                for (Entity resource : databaseResources.values()) {
+                    if (isPositive(resource.getDecimalField(ResourceFields.AVAILABLE_QUANTITY))) {
+                        resources.add(copyResource(resource));
+                    }
+                }
+
+                return resources;
+            }
+        });
+    }
+
+    private void stubWrites() {
+        given(jdbcTemplate.batchUpdate(anyString(), any(SqlParameterSource[].class))).willAnswer(new Answer<int[]>() {
+
+            @Override
+            public int[] answer(final InvocationOnMock invocation) throws Throwable {
+                SqlParameterSource[] params = (SqlParameterSource[]) invocation.getArguments()[1];
+
+                for (SqlParameterSource param : params) {
+                    Entity resource = databaseResources.get(param.getValue("id"));
+
+                    resource.setField(ResourceFields.QUANTITY, param.getValue("quantity"));
+                    resource.setField(ResourceFields.AVAILABLE_QUANTITY, param.getValue("availableQuantity"));
+                    resource.setField(ResourceFields.RESERVED_QUANTITY, param.getValue("reservedQuantity"));
+                    resource.setField(ResourceFields.QUANTITY_IN_ADDITIONAL_UNIT, param.getValue("quantityInAdditionalUnit"));
+                }
+
+                return new int[params.length];
+            }
+        });
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(final InvocationOnMock invocation) throws Throwable {
+                for (Object resourceId : invocation.getArguments()) {
+                    databaseResources.remove(resourceId);
+                }
+
+                return null;
+            }
+        }).when(resourceDD).delete(Matchers.<Long> anyVararg());
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public Void answer(final InvocationOnMock invocation) throws Throwable {
+                Map<Long, BigDecimal> quantitiesByProduct = (Map<Long, BigDecimal>) invocation.getArguments()[1];
+
+                for (Map.Entry<Long, BigDecimal> quantity : quantitiesByProduct.entrySet()) {
+                    removedStock.merge(quantity.getKey(), quantity.getValue(), BigDecimal::add);
+                }
+
+                return null;
+            }
+        }).when(resourceStockService).removeResourceStock(anyLong(), anyMapOf(Long.class, BigDecimal.class));
+    }
+
+    @Test
+    public final void shouldAllocateLikePositionByPositionAllocation() {
+        for (WarehouseAlgorithm warehouseAlgorithm : Lists.newArrayList(WarehouseAlgorithm.FIFO, WarehouseAlgorithm.LIFO,
+                WarehouseAlgorithm.FEFO, WarehouseAlgorithm.LEFO)) {
+            for (int seed = 0; seed < 200; seed++) {
+                // given
+                Dataset dataset = new Dataset(new Random(seed), warehouseAlgorithm);
+
+                databaseResources = copyResources(dataset.resources);
+                removedStock = Maps.newHashMap();
+
+                ReferenceAllocation reference = new ReferenceAllocation(copyResources(dataset.resources), warehouseAlgorithm);
+                List<Entity> referencePositions = dataset.createPositions();
+                List<Entity> expectedGeneratedPositions = reference.allocate(referencePositions);
+
+                List<Entity> positions = dataset.createPositions();
+
+                // when
+                List<Entity> generatedPositions = resourceAllocationService.allocateResourcesForReleaseDocument(
+                        dataset.document, positions);
+
+                // then
+                String scenario = warehouseAlgorithm + ", seed " + seed;
+
+                for (int index = 0; index < positions.size(); index++) {
+                    assertEquals(scenario, referencePositions.get(index).isValid(), positions.get(index).isValid());
+                }
+
+                if (referencePositions.stream().allMatch(Entity::isValid)) {
+                    assertEquals(scenario, describePositions(expectedGeneratedPositions), describePositions(generatedPositions));
+                    assertEquals(scenario, describeResources(reference.resources), describeResources(databaseResources));
+                    assertEquals(scenario, describeStock(reference.removedStock), describeStock(removedStock));
+                } else {
+                    assertEquals(scenario, describeResources(dataset.resources), describeResources(databaseResources));
+                    assertTrue(scenario, removedStock.isEmpty());
+                }
+            }
+        }
+    }
+
+    private String describePositions(final List<Entity> positions) {
+        StringBuilder description = new StringBuilder();
+
+        for (Entity position : positions) {
+            description.append(position.getBelongsToField(PositionFields.RESOURCE).getId()).append(':')
+                    .append(position.getDecimalField(PositionFields.QUANTITY).stripTrailingZeros().toPlainString()).append(' ');
+        }
+
+        return description.toString();
+    }
+
+    private String describeResources(final Map<Long, Entity> resources) {
+        StringBuilder description = new StringBuilder();
+
+        for (Long resourceId : Lists.newArrayList(Sets.newTreeSet(resources.keySet()))) {
+            Entity resource = resources.get(resourceId);
+
+            description.append(resourceId).append(':').append(describe(resource.getDecimalField(ResourceFields.QUANTITY)))
+                    .append('/').append(describe(resource.getDecimalField(ResourceFields.AVAILABLE_QUANTITY))).append('/')
+                    .append(describe(resource.getDecimalField(ResourceFields.QUANTITY_IN_ADDITIONAL_UNIT))).append(' ');
+        }
+
+        return description.toString();
+    }
+
+    private String describeStock(final Map<Long, BigDecimal> stock) {
+        StringBuilder description = new StringBuilder();
+
+        for (Long productId : Sets.newTreeSet(stock.keySet())) {
+            description.append(productId).append(':').append(describe(stock.get(productId))).append(' ');
+        }
+
+        return description.toString();
+    }
+
+    private String describe(final BigDecimal value) {
+        return value.stripTrailingZeros().toPlainString();
+    }
+
+    private static boolean isPositive(final BigDecimal value) {
+        return (value != null) && (value.compareTo(BigDecimal.ZERO) > 0);
+    }
+
+    private Map<Long, Entity> copyResources(final Map<Long, Entity> resources) {
+        Map<Long, Entity> copies = Maps.newLinkedHashMap();
+
+        for (Entity resource : resources.values()) {
+            copies.put(resource.getId(), copyResource(resource));
+        }
+
+        return copies;
+    }
+
+    private Entity copyResource(final Entity resource) {
+        Entity copy = new DefaultEntity(resourceDD, resource.getId());
+
+        for (String field : Lists.newArrayList(ResourceFields.LOCATION, ResourceFields.PRODUCT, ResourceFields.QUANTITY,
+                ResourceFields.AVAILABLE_QUANTITY, ResourceFields.RESERVED_QUANTITY, ResourceFields.QUANTITY_IN_ADDITIONAL_UNIT,
+                ResourceFields.CONVERSION, ResourceFields.TIME, ResourceFields.EXPIRATION_DATE, ResourceFields.ADDITIONAL_CODE,
+                ResourceFields.WASTE)) {
+            copy.setField(field, resource.getField(field));
+        }
+
+        copy.setField(ResourceFields.ATRRIBUTE_VALUES, EntityListMock.create(Collections.<Entity> emptyList()));
+
+        return copy;
+    }
+
+    private final class Dataset {
+
+        private final Random random;
+
+        private final Entity document;
+
+        private final List<Entity> products = Lists.newArrayList();
+
+        private final List<Entity> additionalCodes = Lists.newArrayList();
+
+        private final Map<Long, Entity> resources = Maps.newLinkedHashMap();
+
+        private final List<Object[]> positionData = Lists.newArrayList();
+
+        Dataset(final Random random, final WarehouseAlgorithm warehouseAlgorithm) {
+            this.random = random;
+
+            Entity warehouse = new DefaultEntity(locationDD, L_WAREHOUSE_ID);
+            warehouse.setField(LocationFieldsMFR.ALGORITHM, warehouseAlgorithm.getStringValue());
+
+            document = new DefaultEntity(documentDD, 1L);
+            document.setField(DocumentFields.LOCATION_FROM, warehouse);
+
+            for (long productId = 1; productId <= 3; productId++) {
+                Entity product = new DefaultEntity(productDD, productId);
+                product.setField(ProductFields.UNIT, L_UNIT);
+                product.setField(ProductFields.ADDITIONAL_UNIT, (productId == 3) ? "kg" : null);
+                products.add(product);
+            }
+
+            for (long additionalCodeId = 1; additionalCodeId <= 2; additionalCodeId++) {
+                additionalCodes.add(new DefaultEntity(additionalCodeDD, additionalCodeId));
+            }
+
+            int numberOfResources = 4 + random.nextInt(12);
+
+            for (long resourceId = 1; resourceId <= numberOfResources; resourceId++) {
+                Entity product = products.get(random.nextInt(products.size()));
+                BigDecimal conversion = isWithAdditionalUnit(product) ? BigDecimal.valueOf(2 + random.nextInt(2)) : BigDecimal.ONE;
+                BigDecimal quantity = BigDecimal.valueOf(1 + random.nextInt(20));
+                BigDecimal availableQuantity = random.nextInt(4) == 0 ? quantity.subtract(BigDecimal.valueOf(random
+                        .nextInt(quantity.intValue() + 1))) : quantity;
+
+                Entity resource = new DefaultEntity(resourceDD, resourceId);
+                resource.setField(ResourceFields.LOCATION, warehouse);
+                resource.setField(ResourceFields.PRODUCT, product);
+                resource.setField(ResourceFields.QUANTITY, quantity);
+                resource.setField(ResourceFields.AVAILABLE_QUANTITY, availableQuantity);
+                resource.setField(ResourceFields.RESERVED_QUANTITY, quantity.subtract(availableQuantity));
+                resource.setField(ResourceFields.CONVERSION, conversion);
+                resource.setField(ResourceFields.QUANTITY_IN_ADDITIONAL_UNIT, quantity.multiply(conversion));
+                resource.setField(ResourceFields.TIME, new Date(random.nextInt(5) * 86400000L));
+                resource.setField(ResourceFields.EXPIRATION_DATE,
+                        random.nextInt(3) == 0 ? null : new Date(random.nextInt(5) * 86400000L));
+                resource.setField(ResourceFields.ADDITIONAL_CODE,
+                        random.nextBoolean() ? null : additionalCodes.get(random.nextInt(additionalCodes.size())));
+                resource.setField(ResourceFields.WASTE, false);
+                resources.put(resourceId, resource);
+            }
+
+            int numberOfPositions = 1 + random.nextInt(6);
+
+            for (int index = 0; index < numberOfPositions; index++) {
+                Entity product = products.get(random.nextInt(products.size()));
+                BigDecimal conversion = isWithAdditionalUnit(product) ? BigDecimal.valueOf(2 + random.nextInt(2)) : BigDecimal.ONE;
+                Entity additionalCode = random.nextBoolean() ? null : additionalCodes.get(random.nextInt(additionalCodes.size()));
+
+                positionData.add(new Object[] { product, BigDecimal.valueOf(1 + random.nextInt(15)), conversion,
+                        additionalCode });
+            }
+        }
+
+        List<Entity> createPositions() {
+            List<Entity> positions = Lists.newArrayList();
+
+            for (Object[] data : positionData) {
+                Entity position = new DefaultEntity(positionDD);
+                position.setField(PositionFields.PRODUCT, data[0]);
+                position.setField(PositionFields.QUANTITY, data[1]);
+                position.setField(PositionFields.GIVEN_QUANTITY, data[1]);
+                position.setField(PositionFields.GIVEN_UNIT, L_UNIT);
+                position.setField(PositionFields.CONVERSION, data[2]);
+                position.setField(PositionFields.ADDITIONAL_CODE, data[3]);
+                positions.add(position);
+            }
+
+            return positions;
+        }
+
+    }
+
+    private static boolean isWithAdditionalUnit(final Entity product) {
+        return product.getStringField(ProductFields.ADDITIONAL_UNIT) != null;
+    }
+
+    /**
+     * Position by position allocation of the old updateResources, with resources queried again for every position (available
+     * quantity > 0, matching conversion, resources with additional code of position first) and ordered like database did
+     * (nulls last for ascending, first for descending order).
+     */
+    private final class ReferenceAllocation {
+
+        private final Map<Long, Entity> resources;
+
+        private final WarehouseAlgorithm warehouseAlgorithm;
+
+        private final Map<Long, BigDecimal> removedStock = Maps.newHashMap();
+
+        ReferenceAllocation(final Map<Long, Entity> resources, final WarehouseAlgorithm warehouseAlgorithm) {
+            this.resources = resources;
+            this.warehouseAlgorithm = warehouseAlgorithm;
+        }
+
+        List<Entity> allocate(final List<Entity> positions) {
+            List<Entity> generatedPositions = Lists.newArrayList();
+
+            for (Entity position : positions) {
+                generatedPositions.addAll(updateResources(position));
+            }
+
+            return generatedPositions;
+        }
+
+        private List<Entity> updateResources(final Entity position) {
+            List<Entity> newPositions = Lists.newArrayList();
+
+            Entity product = position.getBelongsToField(PositionFields.PRODUCT);
+            BigDecimal quantity = position.getDecimalField(PositionFields.QUANTITY);
+
+            removedStock.merge(product.getId(), quantity, BigDecimal::add);
+
+            for (Entity resource : getResources(position, product)) {
+                BigDecimal resourceQuantity = resource.getDecimalField(ResourceFields.QUANTITY);
+                BigDecimal resourceAvailableQuantity = resource.getDecimalField(ResourceFields.AVAILABLE_QUANTITY);
+
+                Entity newPosition = new DefaultEntity(positionDD);
+                newPosition.setField(PositionFields.RESOURCE, resource);
+
+                if (quantity.compareTo(resourceAvailableQuantity) >= 0) {
+                    quantity = quantity.subtract(resourceAvailableQuantity, MathContext.DECIMAL64);
+
+                    if (resourceQuantity.compareTo(resourceAvailableQuantity) <= 0) {
+                        resources.remove(resource.getId());
+                    } else {
+                        BigDecimal newResourceQuantity = resourceQuantity.subtract(resourceAvailableQuantity);
+
+                        resource.setField(ResourceFields.AVAILABLE_QUANTITY, BigDecimal.ZERO);
+                        resource.setField(ResourceFields.QUANTITY, newResourceQuantity);
+                        resource.setField(ResourceFields.QUANTITY_IN_ADDITIONAL_UNIT,
+                                newResourceQuantity.multiply(resource.getDecimalField(ResourceFields.CONVERSION)));
+                    }
+
+                    newPosition.setField(PositionFields.QUANTITY, resourceAvailableQuantity);
+                    newPositions.add(newPosition);
+
+                    if (BigDecimal.ZERO.compareTo(quantity) == 0) {
+                        return newPositions;
+                    }
+                } else {
+                    resourceQuantity = resourceQuantity.subtract(quantity, MathContext.DECIMAL64);
+                    resourceAvailableQuantity = resourceAvailableQuantity.subtract(quantity, MathContext.DECIMAL64);
+
+                    resource.setField(ResourceFields.QUANTITY_IN_ADDITIONAL_UNIT,
+                            resourceQuantity.multiply(resource.getDecimalField(ResourceFields.CONVERSION)));
+                    resource.setField(ResourceFields.QUANTITY, resourceQuantity);
+                    resource.setField(ResourceFields.AVAILABLE_QUANTITY, resourceAvailableQuantity);
+
+                    newPosition.setField(PositionFields.QUANTITY, quantity);
+                    newPositions.add(newPosition);
+
+                    return newPositions;
+                }
+            }
+
+            position.addError(positionDD.getField(PositionFields.QUANTITY), "materialFlow.error.position.quantity.notEnough");
+
+            return Lists.newArrayList(position);
+        }
+
+        private List<Entity> getResources(final Entity position, final Entity product) {
+            BigDecimal conversion = isWithAdditionalUnit(product) ? position.getDecimalField(PositionFields.CONVERSION)
+                    : BigDecimal.ONE;
+            Entity additionalCode = position.getBelongsToField(PositionFields.ADDITIONAL_CODE);
+
+            List<Entity> withAdditionalCode = Lists.newArrayList();
+            List<Entity> others = Lists.newArrayList();
+
+            for (Entity resource : resources.values()) {
+                if (!product.getId().equals(resource.getBelongsToField(ResourceFields.PRODUCT).getId())
+                        || !isPositive(resource.getDecimalField(ResourceFields.AVAILABLE_QUANTITY))
+                        || (conversion.compareTo(resource.getDecimalField(ResourceFields.CONVERSION)) != 0)) {
+                    continue;
+                }
+
+                Entity resourceAdditionalCode = resource.getBelongsToField(ResourceFields.ADDITIONAL_CODE);
+
+                if ((additionalCode != null) && (resourceAdditionalCode != null)
+                        && Objects.equals(additionalCode.getId(), resourceAdditionalCode.getId())) {
+                    withAdditionalCode.add(resource);
+                } else {
+                    others.add(resource);
+                }
+            }
+
+            withAdditionalCode.sort(getOrder());
+            others.sort(getOrder());
+            withAdditionalCode.addAll(others);
+
+            return withAdditionalCode;
+        }
+
+        private Comparator<Entity> getOrder() {
+            String field = (WarehouseAlgorithm.FEFO.equals(warehouseAlgorithm) || WarehouseAlgorithm.LEFO
+                    .equals(warehouseAlgorithm)) ? ResourceFields.EXPIRATION_DATE : ResourceFields.TIME;
+            boolean descending = WarehouseAlgorithm.LIFO.equals(warehouseAlgorithm)
+                    || WarehouseAlgorithm.LEFO.equals(warehouseAlgorithm);
+
+            return (first, second) -> {
+                Date firstDate = first.getDateField(field);
+                Date secondDate = second.getDateField(field);
+
+                int result;
+
+                if (firstDate == null || secondDate == null) {
+                    result = (firstDate == null ? 1 : 0) - (secondDate == null ? 1 : 0);
+                } else {
+                    result = firstDate.compareTo(secondDate);
+                }
+
+                if (descending) {
+                    result = -result;
+                }
+
+                return (result == 0) ? first.getId().compareTo(second.getId()) : result;
+            };
+        }
+
+    }
+
+}
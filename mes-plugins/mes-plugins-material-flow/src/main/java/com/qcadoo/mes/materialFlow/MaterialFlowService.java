@@ -28,7 +28,6 @@ import static com.qcadoo.mes.basic.constants.ProductFields.UNIT;
 import static com.qcadoo.mes.materialFlow.constants.LocationFields.EXTERNAL_NUMBER;
 import static com.qcadoo.mes.materialFlow.constants.MaterialsInLocationFields.MATERIALS_IN_LOCATION_COMPONENTS;
 import static com.qcadoo.mes.materialFlow.constants.MaterialsInLocationFields.MATERIAL_FLOW_FOR_DATE;
-import static com.qcadoo.mes.materialFlow.constants.StockCorrectionFields.FOUND;
 import static com.qcadoo.mes.materialFlow.constants.StockCorrectionFields.LOCATION;
 import static com.qcadoo.mes.materialFlow.constants.StockCorrectionFields.PRODUCT;
 import static com.qcadoo.mes.materialFlow.constants.StockCorrectionFields.SHOULD_BE;
@@ -36,22 +35,30 @@ import static com.qcadoo.mes.materialFlow.constants.StockCorrectionFields.STOCK_
 import static com.qcadoo.mes.materialFlow.constants.TransferFields.LOCATION_FROM;
 import static com.qcadoo.mes.materialFlow.constants.TransferFields.LOCATION_TO;
 import static com.qcadoo.mes.materialFlow.constants.TransferFields.NUMBER;
-import static com.qcadoo.mes.materialFlow.constants.TransferFields.QUANTITY;
-import static com.qcadoo.mes.materialFlow.constants.TransferFields.TIME;
 import static com.qcadoo.mes.materialFlow.constants.TransferFields.TYPE;
 import static com.qcadoo.mes.materialFlow.constants.TransferType.CONSUMPTION;
 import static com.qcadoo.mes.materialFlow.constants.TransferType.PRODUCTION;
 
 import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
 
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.qcadoo.localization.api.utils.DateUtils;
 import com.qcadoo.mes.basic.constants.BasicConstants;
@@ -95,13 +102,7 @@ public class MaterialFlowService {
 
     private static final String L_LOC_LOCATION_ID = "loc.location.id";
 
-    private static final String L_LOCATION_ID = "location.id";
-
-    private static final String L_LOCATION_FROM_ID = "locationFrom.id";
-
-    private static final String L_LOCATION_TO_ID = "locationTo.id";
-
-    private static final String L_PRODUCT_ID = "product.id";
+    private static final int L_PRODUCTS_CHUNK_SIZE = 1000;
 
     @Autowired
     private DataDefinitionService dataDefinitionService;
@@ -115,69 +116,67 @@ public class MaterialFlowService {
     @Autowired
     private NumberService numberService;
 
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
     public BigDecimal calculateShouldBeInLocation(final Long locationId, final Long productId, final Date forDate) {
-        BigDecimal countProductIn = BigDecimal.ZERO;
-        BigDecimal countProductOut = BigDecimal.ZERO;
-        BigDecimal countProduct = BigDecimal.ZERO;
-        Date lastCorrectionDate = null;
-        DataDefinition transferDataCorrection = dataDefinitionService.get(MaterialFlowConstants.PLUGIN_IDENTIFIER,
-                MaterialFlowConstants.MODEL_STOCK_CORRECTION);
-        DataDefinition transferTo = dataDefinitionService.get(MaterialFlowConstants.PLUGIN_IDENTIFIER,
-                MaterialFlowConstants.MODEL_TRANSFER);
-        DataDefinition transferFrom = dataDefinitionService.get(MaterialFlowConstants.PLUGIN_IDENTIFIER,
-                MaterialFlowConstants.MODEL_TRANSFER);
-
-        Entity resultDataCorrection = transferDataCorrection.find().add(SearchRestrictions.eq(L_LOCATION_ID, locationId))
-                .add(SearchRestrictions.eq(L_PRODUCT_ID, productId)).addOrder(SearchOrders.desc(STOCK_CORRECTION_DATE))
-                .setMaxResults(1).uniqueResult();
-
-        if (resultDataCorrection != null) {
-            lastCorrectionDate = (Date) resultDataCorrection.getField(STOCK_CORRECTION_DATE);
-            countProduct = (BigDecimal) resultDataCorrection.getField(FOUND);
+        Map<Long, BigDecimal> quantities = calculateShouldBeInLocations(Collections.singleton(locationId),
+                Collections.singleton(productId), forDate).get(locationId);
+
+        if ((quantities == null) || !quantities.containsKey(productId)) {
+            return BigDecimal.ZERO;
         }
 
-        SearchResult resultTo = null;
-        SearchResult resultFrom = null;
+        return quantities.get(productId);
+    }
 
-        if (lastCorrectionDate == null) {
-            resultTo = transferTo.find().add(SearchRestrictions.eq(L_LOCATION_TO_ID, locationId))
-                    .add(SearchRestrictions.eq(L_PRODUCT_ID, productId)).add(SearchRestrictions.le(TIME, forDate)).list();
+    /**
+     * Calculates quantities which should be in the given locations with one grouped query, starting from the last stock
+     * correction of each product and adding transfers made up to the given date.
+     * 
+     * @param locationIds
+     *            location ids
+     * @param productIds
+     *            product ids, or null for all products seen in the locations
+     * @param forDate
+     *            date of the stock
+     * @return quantities by location id and product id, products never transferred to nor corrected in a location are
+     *         omitted
+     */
+    public Map<Long, Map<Long, BigDecimal>> calculateShouldBeInLocations(final Collection<Long> locationIds,
+            final Collection<Long> productIds, final Date forDate) {
+        final Map<Long, Map<Long, BigDecimal>> quantities = Maps.newHashMap();
+
+        if (locationIds.isEmpty() || ((productIds != null) && productIds.isEmpty())) {
+            return quantities;
+        }
 
-            resultFrom = transferFrom.find().add(SearchRestrictions.eq(L_LOCATION_FROM_ID, locationId))
-                    .add(SearchRestrictions.eq(L_PRODUCT_ID, productId)).add(SearchRestrictions.le(TIME, forDate)).list();
+        Map<String, Object> params = Maps.newHashMap();
 
-        } else {
-            resultTo = transferTo.find().add(SearchRestrictions.eq(L_LOCATION_TO_ID, locationId))
-                    .add(SearchRestrictions.eq(L_PRODUCT_ID, productId)).add(SearchRestrictions.le(TIME, forDate))
-                    .add(SearchRestrictions.gt(TIME, lastCorrectionDate)).list();
+        params.put("locationIds", locationIds);
+        params.put("productIds", productIds);
+        params.put("forDate", new Timestamp(forDate.getTime()));
 
-            resultFrom = transferFrom.find().add(SearchRestrictions.eq(L_LOCATION_FROM_ID, locationId))
-                    .add(SearchRestrictions.eq(L_PRODUCT_ID, productId)).add(SearchRestrictions.le(TIME, forDate))
-                    .add(SearchRestrictions.gt(TIME, lastCorrectionDate)).list();
-        }
+        jdbcTemplate.query(StockBalanceQueries.balances(true, productIds != null, true), params, new RowCallbackHandler() {
 
-        for (Entity e : resultTo.getEntities()) {
-            BigDecimal quantity = (BigDecimal) e.getField(QUANTITY);
-            countProductIn = countProductIn.add(quantity, numberService.getMathContext());
-        }
+            @Override
+            public void processRow(final ResultSet resultSet) throws SQLException {
+                Long locationId = resultSet.getLong("location_id");
+                BigDecimal quantity = resultSet.getBigDecimal("quantity");
 
-        for (Entity e : resultFrom.getEntities()) {
-            BigDecimal quantity = (BigDecimal) e.getField(QUANTITY);
-            countProductOut = countProductOut.add(quantity, numberService.getMathContext());
-        }
+                if (!quantities.containsKey(locationId)) {
+                    quantities.put(locationId, Maps.<Long, BigDecimal> newHashMap());
+                }
+                if (quantity.compareTo(BigDecimal.ZERO) < 0) {
+                    quantity = BigDecimal.ZERO;
+                }
 
-        if (lastCorrectionDate == null) {
-            countProductIn = countProductIn.subtract(countProductOut, numberService.getMathContext());
-        } else {
-            countProductIn = countProductIn.add(countProduct, numberService.getMathContext());
-            countProductIn = countProductIn.subtract(countProductOut, numberService.getMathContext());
-        }
+                quantities.get(locationId).put(resultSet.getLong("product_id"), quantity);
+            }
 
-        if (countProductIn.compareTo(BigDecimal.ZERO) == -1) {
-            countProductIn = BigDecimal.ZERO;
-        }
+        });
 
-        return countProductIn;
+        return quantities;
     }
 
     public void refreshShouldBeInStockCorrectionDetails(final ViewDefinitionState state, final ComponentState componentState,
@@ -315,24 +314,63 @@ public class MaterialFlowService {
                 materialsInLocation.getHasManyField(MATERIALS_IN_LOCATION_COMPONENTS));
         Map<Entity, BigDecimal> reportData = new HashMap<Entity, BigDecimal>();
 
+        List<Long> locationIds = Lists.newArrayList();
+
         for (Entity materialsInLocationComponent : materialsInLocationComponents) {
-            Entity location = materialsInLocationComponent.getBelongsToField(LOCATION);
+            locationIds.add(materialsInLocationComponent.getBelongsToField(LOCATION).getId());
+        }
 
-            List<Entity> products = getProductsSeenInLocation(location.getStringField(NUMBER));
+        Date forDate = ((Date) materialsInLocation.getField(MATERIAL_FLOW_FOR_DATE));
 
-            Date forDate = ((Date) materialsInLocation.getField(MATERIAL_FLOW_FOR_DATE));
+        Map<Long, BigDecimal> productQuantities = sumShouldBeInLocations(locationIds, null, forDate);
 
-            for (Entity product : products) {
-                BigDecimal quantity = calculateShouldBeInLocation(location.getId(), product.getId(), forDate);
+        DataDefinition productDD = dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_PRODUCT);
 
-                if (reportData.containsKey(product)) {
-                    reportData.put(product, reportData.get(product).add(quantity, numberService.getMathContext()));
+        for (List<Long> productIds : Iterables.partition(productQuantities.keySet(), L_PRODUCTS_CHUNK_SIZE)) {
+            for (Entity product : productDD.find().add(SearchRestrictions.in(L_ID, productIds)).list().getEntities()) {
+                reportData.put(product, productQuantities.get(product.getId()));
+            }
+        }
+
+        return reportData;
+    }
+
+    /**
+     * Sums quantities which should be in the given locations by product, see
+     * {@link #calculateShouldBeInLocations(Collection, Collection, Date)}.
+     * 
+     * @param locationIds
+     *            location ids, a location given twice is counted twice
+     * @param productIds
+     *            product ids, or null for all products seen in the locations
+     * @param forDate
+     *            date of the stock
+     * @return quantities by product id
+     */
+    public Map<Long, BigDecimal> sumShouldBeInLocations(final List<Long> locationIds, final Collection<Long> productIds,
+            final Date forDate) {
+        Map<Long, Map<Long, BigDecimal>> quantitiesInLocations = calculateShouldBeInLocations(Sets.newHashSet(locationIds),
+                productIds, forDate);
+        Map<Long, BigDecimal> productQuantities = Maps.newHashMap();
+
+        for (Long locationId : locationIds) {
+            Map<Long, BigDecimal> quantities = quantitiesInLocations.get(locationId);
+
+            if (quantities == null) {
+                continue;
+            }
+
+            for (Map.Entry<Long, BigDecimal> quantity : quantities.entrySet()) {
+                if (productQuantities.containsKey(quantity.getKey())) {
+                    productQuantities.put(quantity.getKey(),
+                            productQuantities.get(quantity.getKey()).add(quantity.getValue(), numberService.getMathContext()));
                 } else {
-                    reportData.put(product, quantity);
+                    productQuantities.put(quantity.getKey(), quantity.getValue());
                 }
             }
         }
-        return reportData;
+
+        return productQuantities;
     }
 
     public List<Entity> getProductsSeenInLocation(final String locationNumber) {
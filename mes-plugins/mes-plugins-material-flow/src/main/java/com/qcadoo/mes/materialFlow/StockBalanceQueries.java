@@ -0,0 +1,106 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialFlow;
+
+/**
+ * Builds the grouped query computing stock balances of (location, product) pairs for a date, the set-based counterpart of
+ * summing transfers per product. A pair is seen in a location when it was transferred to it or corrected in it. The balance
+ * starts from the last stock correction of the pair (or from the snapshot taken after it, when one is usable) and adds
+ * transfers to and subtracts transfers from the location up to :forDate.
+ * 
+ * Selected columns: location_id, product_id, stockcorrection_id, since, quantity. The quantity is not capped at zero.
+ */
+final class StockBalanceQueries {
+
+    private StockBalanceQueries() {
+
+    }
+
+    static String balances(final boolean restrictLocations, final boolean restrictProducts, final boolean useSnapshots) {
+        String transferFilter = filter("locationto_id", restrictLocations, restrictProducts);
+        String correctionFilter = filter("location_id", restrictLocations, restrictProducts);
+
+        StringBuilder query = new StringBuilder();
+
+        query.append("WITH seen AS (");
+        query.append("SELECT locationto_id AS location_id, product_id FROM materialflow_transfer WHERE locationto_id IS NOT NULL");
+        query.append(transferFilter);
+        query.append(" UNION SELECT location_id, product_id FROM materialflow_stockcorrection WHERE location_id IS NOT NULL");
+        query.append(correctionFilter);
+        query.append("), lastcorrection AS (");
+        query.append("SELECT DISTINCT ON (location_id, product_id) id, location_id, product_id, stockcorrectiondate, found ");
+        query.append("FROM materialflow_stockcorrection WHERE location_id IS NOT NULL");
+        query.append(correctionFilter);
+        query.append(" ORDER BY location_id, product_id, stockcorrectiondate DESC, id DESC");
+        query.append("), opening AS (");
+        query.append("SELECT seen.location_id, seen.product_id, lastcorrection.id AS stockcorrection_id, ");
+
+        if (useSnapshots) {
+            query.append("CASE WHEN snapshot.id IS NULL THEN COALESCE(lastcorrection.found, 0) ELSE snapshot.quantity END ");
+            query.append("AS quantity, ");
+            query.append("CASE WHEN snapshot.id IS NULL THEN lastcorrection.stockcorrectiondate ELSE snapshot.snapshotdate END ");
+            query.append("AS since ");
+        } else {
+            query.append("COALESCE(lastcorrection.found, 0) AS quantity, lastcorrection.stockcorrectiondate AS since ");
+        }
+
+        query.append("FROM seen LEFT JOIN lastcorrection ON lastcorrection.location_id = seen.location_id ");
+        query.append("AND lastcorrection.product_id = seen.product_id ");
+
+        if (useSnapshots) {
+            // a snapshot is usable only when it was taken after the last stock correction of the pair
+            query.append("LEFT JOIN materialflow_stockbalancesnapshot snapshot ON snapshot.location_id = seen.location_id ");
+            query.append("AND snapshot.product_id = seen.product_id AND snapshot.snapshotdate <= :forDate ");
+            query.append("AND snapshot.stockcorrection_id IS NOT DISTINCT FROM lastcorrection.id ");
+            query.append("AND (lastcorrection.id IS NULL OR snapshot.snapshotdate >= lastcorrection.stockcorrectiondate) ");
+        }
+
+        query.append(") SELECT opening.location_id, opening.product_id, opening.stockcorrection_id, opening.since, ");
+        query.append("opening.quantity ");
+        query.append("+ COALESCE(SUM(CASE WHEN transfer.locationto_id = opening.location_id THEN transfer.quantity END), 0) ");
+        query.append("- COALESCE(SUM(CASE WHEN transfer.locationfrom_id = opening.location_id THEN transfer.quantity END), 0) ");
+        query.append("AS quantity ");
+        query.append("FROM opening LEFT JOIN materialflow_transfer transfer ON transfer.product_id = opening.product_id ");
+        query.append("AND (transfer.locationto_id = opening.location_id OR transfer.locationfrom_id = opening.location_id) ");
+        query.append("AND transfer.time <= :forDate AND (opening.since IS NULL OR transfer.time > opening.since) ");
+        query.append("GROUP BY opening.location_id, opening.product_id, opening.stockcorrection_id, opening.since, ");
+        query.append("opening.quantity");
+
+        return query.toString();
+    }
+
+    private static String filter(final String locationColumn, final boolean restrictLocations, final boolean restrictProducts) {
+        StringBuilder filter = new StringBuilder();
+
+        if (restrictLocations) {
+            filter.append(" AND ").append(locationColumn).append(" IN (:locationIds)");
+        }
+        if (restrictProducts) {
+            filter.append(" AND product_id IN (:productIds)");
+        }
+
+        return filter.toString();
+    }
+
+}
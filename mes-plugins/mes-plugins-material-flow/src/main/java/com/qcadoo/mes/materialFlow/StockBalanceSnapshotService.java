@@ -0,0 +1,107 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialFlow;
+
+import java.sql.Timestamp;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Map;
+
+import org.apache.commons.lang3.time.DateUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Keeps running stock balances of (location, product) pairs as of the last snapshot date, so calculating quantities in
+ * locations only has to sum transfers made after it. Snapshots are optional - pairs without a usable snapshot are calculated
+ * from their last stock correction.
+ */
+@Service
+public class StockBalanceSnapshotService {
+
+    private static final String L_FOR_DATE = "forDate";
+
+    private static final String L_PRODUCT_ID = "productId";
+
+    private static final String L_SINCE = "since";
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Transactional
+    @Scheduled(cron = "0 30 1 * * *")
+    public void refreshSnapshots() {
+        doRefreshSnapshots(DateUtils.truncate(new Date(), Calendar.DATE));
+    }
+
+    @Transactional
+    public void refreshSnapshots(final Date snapshotDate) {
+        doRefreshSnapshots(snapshotDate);
+    }
+
+    private void doRefreshSnapshots(final Date snapshotDate) {
+        Map<String, Object> params = Maps.newHashMap();
+
+        params.put(L_FOR_DATE, new Timestamp(snapshotDate.getTime()));
+
+        jdbcTemplate.update("DELETE FROM materialflow_stockbalancesnapshot WHERE snapshotdate >= :forDate", params);
+
+        // new balances are built on top of the previous snapshots, so only transfers made since then are summed
+        jdbcTemplate.update("INSERT INTO materialflow_stockbalancesnapshot "
+                + "(location_id, product_id, stockcorrection_id, snapshotdate, quantity) "
+                + "SELECT balance.location_id, balance.product_id, balance.stockcorrection_id, :forDate, balance.quantity FROM ("
+                + StockBalanceQueries.balances(false, false, true) + ") balance "
+                + "WHERE balance.since IS NULL OR balance.since <= :forDate", params);
+
+        jdbcTemplate.update("DELETE FROM materialflow_stockbalancesnapshot WHERE snapshotdate < :forDate", params);
+    }
+
+    /**
+     * Drops snapshots of the product taken at or after the given date, they don't include a change made back then.
+     * 
+     * @param productId
+     *            product id
+     * @param since
+     *            date of the transfer or stock correction
+     */
+    public void invalidateSnapshots(final Long productId, final Date since) {
+        if ((productId == null) || (since == null)) {
+            return;
+        }
+
+        Map<String, Object> params = Maps.newHashMap();
+
+        params.put(L_PRODUCT_ID, productId);
+        params.put(L_SINCE, new Timestamp(since.getTime()));
+
+        jdbcTemplate.update("DELETE FROM materialflow_stockbalancesnapshot WHERE product_id = :productId "
+                + "AND snapshotdate >= :since", params);
+    }
+
+}
@@ -37,6 +37,8 @@ public interface MaterialFlowConstants {
 
     String MODEL_STOCK_CORRECTION = "stockCorrection";
 
+    String MODEL_STOCK_BALANCE_SNAPSHOT = "stockBalanceSnapshot";
+
     String MODEL_TRANSFER = "transfer";
 
     String MODEL_TRANSFORMATIONS = "transformations";
@@ -25,6 +25,7 @@ package com.qcadoo.mes.materialFlow.hooks;
 
 import static com.qcadoo.mes.materialFlow.constants.TransferFields.LOCATION_FROM;
 import static com.qcadoo.mes.materialFlow.constants.TransferFields.LOCATION_TO;
+import static com.qcadoo.mes.materialFlow.constants.TransferFields.PRODUCT;
 import static com.qcadoo.mes.materialFlow.constants.TransferFields.STAFF;
 import static com.qcadoo.mes.materialFlow.constants.TransferFields.TIME;
 import static com.qcadoo.mes.materialFlow.constants.TransferFields.TRANSFORMATIONS_CONSUMPTION;
@@ -33,14 +34,21 @@ import static com.qcadoo.mes.materialFlow.constants.TransferFields.TYPE;
 import static com.qcadoo.mes.materialFlow.constants.TransferType.CONSUMPTION;
 import static com.qcadoo.mes.materialFlow.constants.TransferType.PRODUCTION;
 
+import java.util.Date;
+
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.qcadoo.mes.materialFlow.StockBalanceSnapshotService;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.Entity;
 
 @Service
 public class TransferModelHooks {
 
+    @Autowired
+    private StockBalanceSnapshotService stockBalanceSnapshotService;
+
     public void copyProductionOrConsumptionDataFromBelongingTransformation(final DataDefinition dd, final Entity transfer) {
         Entity transformations = transfer.getBelongsToField(TRANSFORMATIONS_PRODUCTION);
 
@@ -63,4 +71,26 @@ public class TransferModelHooks {
         transfer.setField(STAFF, transformations.getBelongsToField(STAFF));
     }
 
+    public void invalidateStockBalanceSnapshots(final DataDefinition transferDD, final Entity transfer) {
+        if (transfer.getId() != null) {
+            invalidateStockBalanceSnapshotsFor(transferDD.get(transfer.getId()));
+        }
+
+        invalidateStockBalanceSnapshotsFor(transfer);
+    }
+
+    public boolean onDelete(final DataDefinition transferDD, final Entity transfer) {
+        invalidateStockBalanceSnapshotsFor(transfer);
+
+        return true;
+    }
+
+    private void invalidateStockBalanceSnapshotsFor(final Entity transfer) {
+        Entity product = transfer.getBelongsToField(PRODUCT);
+
+        if (product != null) {
+            stockBalanceSnapshotService.invalidateSnapshots(product.getId(), (Date) transfer.getField(TIME));
+        }
+    }
+
 }
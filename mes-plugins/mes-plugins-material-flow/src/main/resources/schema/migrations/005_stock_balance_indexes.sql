@@ -0,0 +1,36 @@
+--
+-- ***************************************************************************
+-- Copyright (c) 2010 Qcadoo Limited
+-- Project: Qcadoo MES
+-- Version: 1.4
+--
+-- This file is part of Qcadoo.
+--
+-- Qcadoo is free software; you can redistribute it and/or modify
+-- it under the terms of the GNU Affero General Public License as published
+-- by the Free Software Foundation; either version 3 of the License,
+-- or (at your option) any later version.
+--
+-- This program is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty
+-- of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+-- See the GNU Affero General Public License for more details.
+--
+-- You should have received a copy of the GNU Affero General Public License
+-- along with this program; if not, write to the Free Software
+-- Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+-- ***************************************************************************
+--
+
+-- Stock balances in locations are calculated from the last stock correction and the snapshot of each (location, product)
+-- pair, adding transfers to and subtracting transfers from the location made since then.
+
+CREATE INDEX IF NOT EXISTS materialflow_transfer_locationto_product_time_idx ON materialflow_transfer (locationto_id, product_id, time);
+
+CREATE INDEX IF NOT EXISTS materialflow_transfer_locationfrom_product_time_idx ON materialflow_transfer (locationfrom_id, product_id, time);
+
+CREATE INDEX IF NOT EXISTS materialflow_stockcorrection_location_product_date_idx ON materialflow_stockcorrection (location_id, product_id, stockcorrectiondate);
+
+CREATE INDEX IF NOT EXISTS materialflow_stockbalancesnapshot_location_product_idx ON materialflow_stockbalancesnapshot (location_id, product_id);
+
+CREATE INDEX IF NOT EXISTS materialflow_stockbalancesnapshot_product_date_idx ON materialflow_stockbalancesnapshot (product_id, snapshotdate);
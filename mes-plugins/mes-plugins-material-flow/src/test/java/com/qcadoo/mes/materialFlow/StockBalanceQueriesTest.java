@@ -0,0 +1,306 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialFlow;
+
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Runs the stock balance queries against PostgreSQL and compares them with the former per-pair calculation (last stock
+ * correction plus transfers to minus transfers from the location, made after it and up to the date, capped at zero). Tables
+ * are created as temporary ones and dropped with the transaction, so any empty database can be used. The test is skipped
+ * unless the database is given:
+ * 
+ * <pre>
+ * mvn -P databaseTests test -Dtest=StockBalanceQueriesTest -DdatabaseTests.url=jdbc:postgresql://localhost:5432/mes_test
+ * </pre>
+ */
+public class StockBalanceQueriesTest {
+
+    private static final String L_URL = "databaseTests.url";
+
+    private static final String L_USER = "databaseTests.user";
+
+    private static final String L_PASSWORD = "databaseTests.password";
+
+    private static final long BASE_DATE = Timestamp.valueOf("2017-01-01 00:00:00").getTime();
+
+    private static final Long L_LOCATION_1 = 1L;
+
+    private static final Long L_LOCATION_2 = 2L;
+
+    private static final Long L_LOCATION_3 = 3L;
+
+    private static final Long L_PRODUCT_1 = 10L;
+
+    private static final Long L_PRODUCT_2 = 11L;
+
+    private static final Long L_PRODUCT_3 = 12L;
+
+    private static final List<Long> LOCATIONS = Lists.newArrayList(L_LOCATION_1, L_LOCATION_2, L_LOCATION_3);
+
+    private static final List<Long> PRODUCTS = Lists.newArrayList(L_PRODUCT_1, L_PRODUCT_2, L_PRODUCT_3);
+
+    private static final int[] DAYS = { 0, 1, 3, 5, 6, 8, 9, 11, 12, 13, 20, 25 };
+
+    private Connection connection;
+
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    private StockBalanceSnapshotService stockBalanceSnapshotService;
+
+    @Before
+    public void init() throws SQLException {
+        String url = System.getProperty(L_URL);
+
+        Assume.assumeTrue(url != null);
+
+        connection = DriverManager.getConnection(url, System.getProperty(L_USER, "postgres"),
+                System.getProperty(L_PASSWORD, "postgres"));
+        connection.setAutoCommit(false);
+
+        jdbcTemplate = new NamedParameterJdbcTemplate(new SingleConnectionDataSource(connection, true));
+
+        stockBalanceSnapshotService = new StockBalanceSnapshotService();
+
+        ReflectionTestUtils.setField(stockBalanceSnapshotService, "jdbcTemplate", jdbcTemplate);
+
+        Map<String, Object> params = Maps.newHashMap();
+
+        jdbcTemplate.update("CREATE TEMPORARY TABLE materialflow_transfer (id bigserial PRIMARY KEY, locationto_id bigint, "
+                + "locationfrom_id bigint, product_id bigint, quantity numeric(12,5), time timestamp) ON COMMIT DROP", params);
+        jdbcTemplate.update("CREATE TEMPORARY TABLE materialflow_stockcorrection (id bigserial PRIMARY KEY, location_id bigint, "
+                + "product_id bigint, found numeric(12,5), stockcorrectiondate timestamp) ON COMMIT DROP", params);
+        jdbcTemplate.update("CREATE TEMPORARY TABLE materialflow_stockbalancesnapshot (id bigserial PRIMARY KEY, "
+                + "location_id bigint, product_id bigint, stockcorrection_id bigint, snapshotdate timestamp, "
+                + "quantity numeric(14,5)) ON COMMIT DROP", params);
+
+        // product 1: corrected in location 1 after a transfer, moved to location 2 and further to location 3
+        transfer(null, L_LOCATION_1, L_PRODUCT_1, "50", 1);
+        correction(L_LOCATION_1, L_PRODUCT_1, "100", 5);
+        transfer(null, L_LOCATION_1, L_PRODUCT_1, "20", 6);
+        transfer(L_LOCATION_1, L_LOCATION_2, L_PRODUCT_1, "30", 8);
+        transfer(L_LOCATION_2, L_LOCATION_3, L_PRODUCT_1, "40", 12);
+        transfer(null, L_LOCATION_1, L_PRODUCT_1, "5.5", 20);
+
+        // product 2: corrected twice in location 1, only received and issued in location 3
+        correction(L_LOCATION_1, L_PRODUCT_2, "7", 3);
+        transfer(L_LOCATION_1, null, L_PRODUCT_2, "2", 4);
+        correction(L_LOCATION_1, L_PRODUCT_2, "12.25", 9);
+        transfer(null, L_LOCATION_3, L_PRODUCT_2, "10", 2);
+        transfer(L_LOCATION_3, null, L_PRODUCT_2, "3", 11);
+        transfer(null, L_LOCATION_3, L_PRODUCT_2, "5", 20);
+
+        // product 3: only issued from location 2, never received nor corrected there
+        transfer(L_LOCATION_2, null, L_PRODUCT_3, "8", 6);
+        correction(L_LOCATION_3, L_PRODUCT_3, "0", 13);
+    }
+
+    @After
+    public void rollback() throws SQLException {
+        if (connection != null) {
+            connection.rollback();
+            connection.close();
+        }
+    }
+
+    private void transfer(final Long locationFromId, final Long locationToId, final Long productId, final String quantity,
+            final int day) {
+        Map<String, Object> params = Maps.newHashMap();
+
+        params.put("locationFromId", locationFromId);
+        params.put("locationToId", locationToId);
+        params.put("productId", productId);
+        params.put("quantity", new BigDecimal(quantity));
+        params.put("time", day(day));
+
+        jdbcTemplate.update("INSERT INTO materialflow_transfer (locationfrom_id, locationto_id, product_id, quantity, time) "
+                + "VALUES (CAST(:locationFromId AS bigint), CAST(:locationToId AS bigint), :productId, :quantity, :time)", params);
+    }
+
+    private void correction(final Long locationId, final Long productId, final String found, final int day) {
+        Map<String, Object> params = Maps.newHashMap();
+
+        params.put("locationId", locationId);
+        params.put("productId", productId);
+        params.put("found", new BigDecimal(found));
+        params.put("date", day(day));
+
+        jdbcTemplate.update("INSERT INTO materialflow_stockcorrection (location_id, product_id, found, stockcorrectiondate) "
+                + "VALUES (:locationId, :productId, :found, :date)", params);
+    }
+
+    private Timestamp day(final int day) {
+        return new Timestamp(BASE_DATE + TimeUnit.DAYS.toMillis(day));
+    }
+
+    private Map<String, BigDecimal> calculateBalances(final boolean restrict, final boolean useSnapshots, final int day) {
+        Map<String, Object> params = Maps.newHashMap();
+
+        params.put("locationIds", LOCATIONS);
+        params.put("productIds", PRODUCTS);
+        params.put("forDate", day(day));
+
+        Map<String, BigDecimal> balances = Maps.newTreeMap();
+
+        for (Map<String, Object> row : jdbcTemplate.queryForList(StockBalanceQueries.balances(restrict, restrict, useSnapshots),
+                params)) {
+            BigDecimal quantity = (BigDecimal) row.get("quantity");
+
+            balances.put(key(row.get("location_id"), row.get("product_id")), quantity.max(BigDecimal.ZERO));
+        }
+
+        return balances;
+    }
+
+    // the former calculation, done separately for every pair transferred to or corrected in a location
+    private Map<String, BigDecimal> calculateBalancesPerPair(final int day) {
+        Map<String, BigDecimal> balances = Maps.newTreeMap();
+
+        for (Long locationId : LOCATIONS) {
+            for (Long productId : PRODUCTS) {
+                Map<String, Object> params = Maps.newHashMap();
+
+                params.put("locationId", locationId);
+                params.put("productId", productId);
+                params.put("forDate", day(day));
+
+                boolean seen = jdbcTemplate.queryForObject("SELECT EXISTS (SELECT 1 FROM materialflow_transfer "
+                        + "WHERE locationto_id = :locationId AND product_id = :productId) OR EXISTS (SELECT 1 FROM "
+                        + "materialflow_stockcorrection WHERE location_id = :locationId AND product_id = :productId)", params,
+                        Boolean.class);
+
+                if (!seen) {
+                    continue;
+                }
+
+                List<Map<String, Object>> corrections = jdbcTemplate.queryForList("SELECT found, stockcorrectiondate "
+                        + "FROM materialflow_stockcorrection WHERE location_id = :locationId AND product_id = :productId "
+                        + "ORDER BY stockcorrectiondate DESC LIMIT 1", params);
+
+                BigDecimal quantity = BigDecimal.ZERO;
+                String sinceCondition = "";
+
+                if (!corrections.isEmpty()) {
+                    quantity = (BigDecimal) corrections.get(0).get("found");
+                    params.put("since", corrections.get(0).get("stockcorrectiondate"));
+                    sinceCondition = " AND time > :since";
+                }
+
+                BigDecimal in = jdbcTemplate.queryForObject("SELECT COALESCE(SUM(quantity), 0) FROM materialflow_transfer "
+                        + "WHERE locationto_id = :locationId AND product_id = :productId AND time <= :forDate" + sinceCondition,
+                        params, BigDecimal.class);
+                BigDecimal out = jdbcTemplate.queryForObject("SELECT COALESCE(SUM(quantity), 0) FROM materialflow_transfer "
+                        + "WHERE locationfrom_id = :locationId AND product_id = :productId AND time <= :forDate" + sinceCondition,
+                        params, BigDecimal.class);
+
+                balances.put(key(locationId, productId), quantity.add(in).subtract(out).max(BigDecimal.ZERO));
+            }
+        }
+
+        return balances;
+    }
+
+    private String key(final Object locationId, final Object productId) {
+        return locationId + ":" + productId;
+    }
+
+    private void assertBalancesMatchPerPairCalculation(final boolean useSnapshots) {
+        for (int day : DAYS) {
+            Map<String, BigDecimal> expected = calculateBalancesPerPair(day);
+
+            assertBalances("restricted, day " + day, expected, calculateBalances(true, useSnapshots, day));
+            assertBalances("all pairs, day " + day, expected, calculateBalances(false, useSnapshots, day));
+        }
+    }
+
+    private void assertBalances(final String message, final Map<String, BigDecimal> expected, final Map<String, BigDecimal> actual) {
+        assertEquals(message, expected.keySet(), actual.keySet());
+
+        for (Map.Entry<String, BigDecimal> balance : expected.entrySet()) {
+            assertEquals(message + ", pair " + balance.getKey(), 0, balance.getValue().compareTo(actual.get(balance.getKey())));
+        }
+    }
+
+    @Test
+    public void shouldCalculateBalancesLikePerPairCalculationWithoutSnapshots() {
+        assertBalancesMatchPerPairCalculation(false);
+    }
+
+    @Test
+    public void shouldCalculateBalancesLikePerPairCalculationWhenThereAreNoSnapshots() {
+        assertBalancesMatchPerPairCalculation(true);
+    }
+
+    @Test
+    public void shouldCalculateBalancesLikePerPairCalculationFromSnapshots() {
+        // when
+        stockBalanceSnapshotService.refreshSnapshots(day(7));
+        stockBalanceSnapshotService.refreshSnapshots(day(10));
+
+        // then
+        // every seen pair except the one corrected after the snapshot date
+        assertEquals(Integer.valueOf(5), jdbcTemplate.queryForObject(
+                "SELECT CAST(COUNT(*) AS integer) FROM materialflow_stockbalancesnapshot", Maps.<String, Object> newHashMap(),
+                Integer.class));
+
+        assertBalancesMatchPerPairCalculation(true);
+    }
+
+    @Test
+    public void shouldCalculateBalancesLikePerPairCalculationAfterBackdatedChangeInvalidatedSnapshots() {
+        // given
+        stockBalanceSnapshotService.refreshSnapshots(day(10));
+
+        // when
+        transfer(L_LOCATION_3, L_LOCATION_1, L_PRODUCT_2, "1", 9);
+        correction(L_LOCATION_2, L_PRODUCT_1, "4", 10);
+
+        stockBalanceSnapshotService.invalidateSnapshots(L_PRODUCT_2, day(9));
+        stockBalanceSnapshotService.invalidateSnapshots(L_PRODUCT_1, day(10));
+
+        // then
+        assertBalancesMatchPerPairCalculation(true);
+    }
+
+}
@@ -24,6 +24,7 @@
 package com.qcadoo.mes.materialFlow.hooks;
 
 import static com.qcadoo.mes.materialFlow.constants.TransferFields.LOCATION_TO;
+import static com.qcadoo.mes.materialFlow.constants.TransferFields.PRODUCT;
 import static com.qcadoo.mes.materialFlow.constants.TransferFields.STAFF;
 import static com.qcadoo.mes.materialFlow.constants.TransferFields.TIME;
 import static com.qcadoo.mes.materialFlow.constants.TransferFields.TRANSFORMATIONS_CONSUMPTION;
@@ -37,12 +38,16 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+import java.util.Date;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import com.qcadoo.mes.materialFlow.StockBalanceSnapshotService;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.Entity;
 
@@ -56,14 +61,22 @@ public class TransferModelHooksTest {
     @Mock
     private Entity locationTo, locationFrom, staff;
 
+    @Mock
+    private Entity savedTransfer, product, savedProduct;
+
     @Mock
     private DataDefinition transferDD;
 
+    @Mock
+    private StockBalanceSnapshotService stockBalanceSnapshotService;
+
     @Before
     public void init() {
         MockitoAnnotations.initMocks(this);
 
         materialFlowTransferModelHooks = new TransferModelHooks();
+
+        setField(materialFlowTransferModelHooks, "stockBalanceSnapshotService", stockBalanceSnapshotService);
     }
 
     @Test
@@ -112,4 +125,44 @@ public class TransferModelHooksTest {
         // then
         verify(transfer, never()).setField(anyString(), any());
     }
+
+    @Test
+    public void shouldInvalidateStockBalanceSnapshotsOfNewTransfer() {
+        // given
+        Date time = new Date();
+
+        given(transfer.getBelongsToField(PRODUCT)).willReturn(product);
+        given(transfer.getField(TIME)).willReturn(time);
+        given(product.getId()).willReturn(1L);
+
+        // when
+        materialFlowTransferModelHooks.invalidateStockBalanceSnapshots(transferDD, transfer);
+
+        // then
+        verify(stockBalanceSnapshotService).invalidateSnapshots(1L, time);
+        verify(transferDD, never()).get(any(Long.class));
+    }
+
+    @Test
+    public void shouldInvalidateStockBalanceSnapshotsOfSavedAndModifiedTransfer() {
+        // given
+        Date time = new Date();
+        Date savedTime = new Date(time.getTime() - 1000L);
+
+        given(transfer.getId()).willReturn(10L);
+        given(transfer.getBelongsToField(PRODUCT)).willReturn(product);
+        given(transfer.getField(TIME)).willReturn(time);
+        given(product.getId()).willReturn(1L);
+        given(transferDD.get(10L)).willReturn(savedTransfer);
+        given(savedTransfer.getBelongsToField(PRODUCT)).willReturn(savedProduct);
+        given(savedTransfer.getField(TIME)).willReturn(savedTime);
+        given(savedProduct.getId()).willReturn(2L);
+
+        // when
+        materialFlowTransferModelHooks.invalidateStockBalanceSnapshots(transferDD, transfer);
+
+        // then
+        verify(stockBalanceSnapshotService).invalidateSnapshots(1L, time);
+        verify(stockBalanceSnapshotService).invalidateSnapshots(2L, savedTime);
+    }
 }
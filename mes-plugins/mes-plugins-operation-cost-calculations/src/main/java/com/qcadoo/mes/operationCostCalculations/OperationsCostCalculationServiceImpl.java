@@ -49,6 +49,8 @@ import com.qcadoo.mes.technologies.constants.TechnologiesConstants;
 import com.qcadoo.mes.technologies.constants.TechnologyFields;
 import com.qcadoo.mes.technologies.constants.TechnologyOperationComponentFields;
 import com.qcadoo.mes.technologies.dto.ProductQuantitiesHolder;
+import com.qcadoo.mes.technologies.graph.TechnologyGraphNode;
+import com.qcadoo.mes.technologies.graph.TechnologyGraphService;
 import com.qcadoo.model.api.BigDecimalUtils;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
@@ -133,6 +135,9 @@ public class OperationsCostCalculationServiceImpl implements OperationsCostCalcu
     @Autowired
     private ParameterService parameterService;
 
+    @Autowired
+    private TechnologyGraphService technologyGraphService;
+
     @Override
     public void calculateOperationsCost(final Entity costCalculationOrProductionBalance, boolean hourlyCostFromOperation) {
         checkArgument(costCalculationOrProductionBalance != null, "entity is null");
@@ -424,20 +429,20 @@ public class OperationsCostCalculationServiceImpl implements OperationsCostCalcu
                 workstations.put(operComp.getId(), productionLinesService.getWorkstationTypesCount(operComp, productionLine));
             }
         } else {
-            for (Entity operComp : technology.getHasManyField(TechnologyFields.OPERATION_COMPONENTS)) {
-                workstations.put(operComp.getId(), IntegerUtils.convertNullToZero(operComp
-                        .getIntegerField(TechnologyOperationComponentFields.QUANTITY_OF_WORKSTATIONS)));
-            }
+            workstations.putAll(getWorkstationsFromTechnologyGraph(technology));
         }
         return workstations;
     }
 
     private Map<Long, Integer> getWorkstationsFromOrder(final Entity order) {
+        return getWorkstationsFromTechnologyGraph(order.getBelongsToField(L_TECHNOLOGY));
+    }
+
+    private Map<Long, Integer> getWorkstationsFromTechnologyGraph(final Entity technology) {
         Map<Long, Integer> workstations = Maps.newHashMap();
 
-        for (Entity technologyOperationComponent : order.getBelongsToField(L_TECHNOLOGY).getHasManyField(
-                TechnologyFields.OPERATION_COMPONENTS)) {
-            workstations.put(technologyOperationComponent.getId(), IntegerUtils.convertNullToZero(technologyOperationComponent
+        for (TechnologyGraphNode node : technologyGraphService.getTechnologyGraph(technology).getNodes()) {
+            workstations.put(node.getId(), IntegerUtils.convertNullToZero(node
                     .getIntegerField(TechnologyOperationComponentFields.QUANTITY_OF_WORKSTATIONS)));
         }
 
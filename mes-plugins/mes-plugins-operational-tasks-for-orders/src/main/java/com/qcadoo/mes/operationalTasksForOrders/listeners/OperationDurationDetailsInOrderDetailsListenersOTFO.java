@@ -34,6 +34,7 @@ import com.qcadoo.mes.operationalTasksForOrders.OperationalTasksForOrdersService
 import com.qcadoo.mes.operationalTasksForOrders.constants.OperationalTaskFieldsOTFO;
 import com.qcadoo.mes.operationalTasksForOrders.constants.OperationalTaskTypeTaskOTFO;
 import com.qcadoo.mes.operationalTasksForOrders.constants.TechOperCompOperationalTasksFields;
+import com.qcadoo.mes.orders.TechnologyServiceO;
 import com.qcadoo.mes.orders.constants.OrderFields;
 import com.qcadoo.mes.technologies.constants.OperationFields;
 import com.qcadoo.mes.technologies.constants.TechnologyFields;
@@ -61,6 +62,9 @@ public class OperationDurationDetailsInOrderDetailsListenersOTFO {
     @Autowired
     private NumberGeneratorService numberGeneratorService;
 
+    @Autowired
+    private TechnologyServiceO technologyServiceO;
+
     @Autowired
     private OperationalTasksForOrdersService operationalTasksForOrdersService;
 
@@ -75,7 +79,7 @@ public class OperationDurationDetailsInOrderDetailsListenersOTFO {
 
         Entity order = orderForm.getEntity().getDataDefinition().get(orderId);
 
-        Entity technology = order.getBelongsToField(OrderFields.TECHNOLOGY);
+        Entity technology = technologyServiceO.getTechnologyForModification(order);
 
         if (technology != null) {
             List<Entity> technologyOperationComponents = technology.getHasManyField(TechnologyFields.OPERATION_COMPONENTS);
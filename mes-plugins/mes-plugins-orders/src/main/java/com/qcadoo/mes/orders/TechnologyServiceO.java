@@ -110,16 +110,21 @@ public class TechnologyServiceO {
         }
     }
 
+    /**
+     * Creates copy of technology before technology of order is edited - always without pkt, with pkt only when order still
+     * shares pattern technology (see {@link #isTechnologyShared(Entity)}).
+     */
     @Transactional
-    public Entity createTechnologyIfPktDisabled(final DataDefinition orderDD, Entity order) {
+    public Entity createTechnologyIfNotCopied(final DataDefinition orderDD, Entity order) {
         OrderType orderType = OrderType.of(order);
         Entity technologyPrototype = order.getBelongsToField(OrderFields.TECHNOLOGY_PROTOTYPE);
+        boolean pktEnabled = orderService.isPktEnabled();
 
-        if (!orderService.isPktEnabled() && !isTechnologyCopied(order)) {
+        if (!isTechnologyCopied(order) && (!pktEnabled || isTechnologyShared(order))) {
             if (orderType == OrderType.WITH_PATTERN_TECHNOLOGY) {
-                order = createTechnologyForWithPatternTechnology(order, technologyPrototype, false);
+                order = createTechnologyForWithPatternTechnology(order, technologyPrototype, pktEnabled);
                 order = order.getDataDefinition().save(order);
-            } else {
+            } else if (!pktEnabled) {
                 throw new IllegalStateException("Without pkt orderType must be set to WITH_PATTERN_TECHNOLOGY");
             }
         }
@@ -127,6 +132,38 @@ public class TechnologyServiceO {
         return order;
     }
 
+    /**
+     * Returns technology of order, which can be modified or extended with data of order (e.g. time calculations, progress per
+     * shift). With pkt, shared pattern technology is replaced by its copy first.
+     */
+    @Transactional
+    public Entity getTechnologyForModification(final Entity order) {
+        if (orderService.isPktEnabled() && isTechnologyShared(order)) {
+            Entity technologyPrototype = order.getBelongsToField(OrderFields.TECHNOLOGY_PROTOTYPE);
+
+            order.setField(OrderFields.TECHNOLOGY, copyTechnology(order, technologyPrototype, true));
+
+            return order.getDataDefinition().save(order).getBelongsToField(OrderFields.TECHNOLOGY);
+        }
+
+        return order.getBelongsToField(OrderFields.TECHNOLOGY);
+    }
+
+    /**
+     * Order with pattern technology references accepted pattern technology itself, until its technology is modified.
+     *
+     * Technology type marks technologies created for orders - {@link #copyTechnology(Entity, Entity, boolean)} and
+     * {@link #createTechnology(Entity)} always set it and it is never cleared, while pattern technologies never have it. So the
+     * technology of order is shared when it has no technology type. Sharing doesn't depend on the state of pattern technology
+     * later on - order keeps sharing pattern technology which got outdated, until its technology is modified or the pattern
+     * technology of order is changed.
+     */
+    public boolean isTechnologyShared(final Entity order) {
+        Entity technology = order.getBelongsToField(OrderFields.TECHNOLOGY);
+
+        return (technology != null) && (technology.getStringField(TechnologyFields.TECHNOLOGY_TYPE) == null);
+    }
+
     private void removeTechnologyFromOrder(final Entity order) {
         Entity orderTechnology = order.getBelongsToField(OrderFields.TECHNOLOGY);
         deleteTechnology(orderTechnology);
@@ -148,7 +185,8 @@ public class TechnologyServiceO {
 
                 deleteTechnology(technology);
 
-                order.setField(OrderFields.TECHNOLOGY, copyTechnology(order, technologyPrototype, changeTechnologyStateToChecked));
+                order.setField(OrderFields.TECHNOLOGY,
+                        shareOrCopyTechnology(order, technologyPrototype, changeTechnologyStateToChecked));
                 barcodeOperationComponentService.removeBarcode(order);
 
             } else if (technologyWasChanged(order)) {
@@ -157,7 +195,8 @@ public class TechnologyServiceO {
                 deleteTechnology(technology);
 
                 if (orderService.isPktEnabled()) {
-                    order.setField(OrderFields.TECHNOLOGY, copyTechnology(order, technologyPrototype, changeTechnologyStateToChecked));
+                    order.setField(OrderFields.TECHNOLOGY,
+                            shareOrCopyTechnology(order, technologyPrototype, changeTechnologyStateToChecked));
                 } else {
                     order.setField(OrderFields.TECHNOLOGY, technologyPrototype);
                 }
@@ -165,8 +204,8 @@ public class TechnologyServiceO {
             }
         } else {
                 if (orderService.isPktEnabled()) {
-                    order.setField(OrderFields.TECHNOLOGY, copyTechnology(order, technologyPrototype,
-                            changeTechnologyStateToChecked));
+                    order.setField(OrderFields.TECHNOLOGY,
+                            shareOrCopyTechnology(order, technologyPrototype, changeTechnologyStateToChecked));
                 } else {
                     order.setField(OrderFields.TECHNOLOGY, technologyPrototype);
                 }
@@ -192,13 +231,8 @@ public class TechnologyServiceO {
                 order.getGlobalErrors();
             }
         } else {
-            if (existingOrder == null) {
-                order.setField(OrderFields.TECHNOLOGY, createTechnology(order));
-
-                if (technologyPrototype != null) {
-                    order.setField(OrderFields.TECHNOLOGY_PROTOTYPE, null);
-                }
-            } else if (existingOrder.getBelongsToField(OrderFields.TECHNOLOGY) == null) {
+            if ((existingOrder == null) || (existingOrder.getBelongsToField(OrderFields.TECHNOLOGY) == null)
+                    || isTechnologyShared(existingOrder)) {
                 order.setField(OrderFields.TECHNOLOGY, createTechnology(order));
 
                 if (technologyPrototype != null) {
@@ -220,11 +254,11 @@ public class TechnologyServiceO {
         Entity technology = order.getBelongsToField(OrderFields.TECHNOLOGY);
         Entity technologyPrototype = order.getBelongsToField(OrderFields.TECHNOLOGY_PROTOTYPE);
 
-        if (technology == null) {
+        if ((technology == null) || isTechnologyShared(order)) {
             return false;
         }
 
-        if (Objects.equals(technology.getId(), technologyPrototype.getId())) {
+        if ((technologyPrototype != null) && Objects.equals(technology.getId(), technologyPrototype.getId())) {
             return false;
         }
 
@@ -331,6 +365,23 @@ public class TechnologyServiceO {
         return copyOfTechnology;
     }
 
+    private Entity shareOrCopyTechnology(final Entity order, final Entity technologyPrototype,
+            boolean changeTechnologyStateToChecked) {
+        if (TechnologyStateStringValues.ACCEPTED.equals(technologyPrototype.getStringField(TechnologyFields.STATE))
+                || isTechnologySharedAlready(order, technologyPrototype)) {
+            return technologyPrototype;
+        }
+
+        return copyTechnology(order, technologyPrototype, changeTechnologyStateToChecked);
+    }
+
+    private boolean isTechnologySharedAlready(final Entity order, final Entity technologyPrototype) {
+        Entity existingOrder = getExistingOrder(order);
+
+        return (existingOrder != null) && isTechnologyShared(existingOrder)
+                && Objects.equals(existingOrder.getBelongsToField(OrderFields.TECHNOLOGY).getId(), technologyPrototype.getId());
+    }
+
     private void updateTechnology(final Entity technology) {
         String number = technology.getStringField(TechnologyFields.NUMBER);
         Entity product = technology.getBelongsToField(TechnologyFields.PRODUCT);
@@ -454,7 +505,7 @@ public class TechnologyServiceO {
     public void setTechnologyNumber(final DataDefinition orderDD, final Entity order) {
         String orderType = order.getStringField(OrderFields.ORDER_TYPE);
         Entity technology = order.getBelongsToField(OrderFields.TECHNOLOGY);
-        if (technology == null) {
+        if (technology == null || isTechnologyShared(order)) {
             return;
         }
         String number = "";
@@ -129,6 +129,8 @@ public final class OrderFields {
 
     public static final String WORKER_TO_CHANGE = "workerToChange";
 
+    public static final String DATES_VERSION = "datesVersion";
+
     public static final String ORDER_CATEGORY = "orderCategory";
 
     public static final String FINAL_PRODUCTION_TRACKING = "finalProductionTracking";
@@ -71,6 +71,9 @@ public class OrderHooks {
     public static final List<String> sourceDateFields = Lists.newArrayList("sourceCorrectedDateFrom", "sourceCorrectedDateTo",
             "sourceStartDate", "sourceFinishDate");
 
+    private static final List<String> calculatedDateFields = Lists.newArrayList(OrderFields.DATE_TO, OrderFields.FINISH_DATE,
+            OrderFields.CORRECTED_DATE_TO);
+
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
@@ -126,6 +129,7 @@ public class OrderHooks {
     }
 
     public void onSave(final DataDefinition orderDD, final Entity order) {
+        keepDatesCalculatedMeanwhile(order);
         copyStartDate(orderDD, order);
         copyEndDate(orderDD, order);
         copyProductQuantity(orderDD, order);
@@ -170,6 +174,50 @@ public class OrderHooks {
         return true;
     }
 
+    /**
+     * End dates may be calculated after the order has been loaded into a form, e.g. by production per shift regeneration done
+     * in the background, which increases datesVersion of the order. Saving a form with an older version keeps the calculated
+     * dates instead of writing back the ones shown in the form.
+     */
+    void keepDatesCalculatedMeanwhile(final Entity order) {
+        if (order.getId() == null) {
+            return;
+        }
+
+        Entity orderFromDB = orderService.getOrder(order.getId());
+        int datesVersionDB = getDatesVersion(orderFromDB);
+
+        if (getDatesVersion(order) >= datesVersionDB) {
+            return;
+        }
+
+        for (String dateFieldName : calculatedDateFields) {
+            order.setField(dateFieldName, orderFromDB.getField(dateFieldName));
+        }
+
+        order.setField(OrderFields.DATES_VERSION, datesVersionDB);
+
+        if (!isDateChanged(order, orderFromDB, OrderFields.START_DATE)
+                && !isDateChanged(order, orderFromDB, OrderFields.CORRECTED_DATE_FROM)) {
+            order.setField(OrderFields.DATES_CHANGED, false);
+        }
+
+        order.addGlobalMessage("orders.order.info.datesCalculatedMeanwhile", false, false);
+    }
+
+    private int getDatesVersion(final Entity order) {
+        Integer datesVersion = order.getIntegerField(OrderFields.DATES_VERSION);
+
+        return datesVersion == null ? 0 : datesVersion;
+    }
+
+    private boolean isDateChanged(final Entity order, final Entity orderFromDB, final String dateFieldName) {
+        Date date = order.getDateField(dateFieldName);
+        Date dateDB = orderFromDB.getDateField(dateFieldName);
+
+        return date == null ? dateDB != null : !date.equals(dateDB);
+    }
+
     private void auditDatesChanges(final Entity order) {
         boolean datesChanged = order.getBooleanField(OrderFields.DATES_CHANGED);
         OrderState orderState = OrderState.of(order);
@@ -198,8 +246,11 @@ public class OrderHooks {
             orderStateChange.setField(OrderStateChangeFields.TARGET_STATE, order.getField(OrderFields.STATE));
             String workerToChange = order.getStringField(OrderFields.WORKER_TO_CHANGE);
             if (StringUtils.isEmpty(workerToChange)) {
-                orderStateChange.setField(OrderStateChangeFields.WORKER,
-                        userService.getCurrentUserEntity().getField(UserFields.USER_NAME));
+                Entity currentUser = userService.getCurrentUserEntity();
+
+                if (currentUser != null) {
+                    orderStateChange.setField(OrderStateChangeFields.WORKER, currentUser.getField(UserFields.USER_NAME));
+                }
             } else {
                 orderStateChange.setField(OrderStateChangeFields.WORKER, workerToChange);
                 order.setField(OrderFields.WORKER_TO_CHANGE, null);
@@ -227,7 +278,7 @@ public class OrderHooks {
 
     private void backupTechnology(final Entity order) {
         Entity technology = order.getBelongsToField(OrderFields.TECHNOLOGY);
-        if (technology != null && orderService.isPktEnabled()) {
+        if (technology != null && orderService.isPktEnabled() && !technologyServiceO.isTechnologyShared(order)) {
             String bNumber = BACKUP_TECHNOLOGY_PREFIX + new Date().getTime() + "_"
                     + technology.getStringField(TechnologyFields.NUMBER);
             bNumber = bNumber.substring(0, Math.min(bNumber.length(), 255));
@@ -596,7 +647,7 @@ public class OrderHooks {
     }
 
     void setCopyOfTechnology(final Entity order) {
-        if (orderService.isPktEnabled()) {
+        if (orderService.isPktEnabled() && !technologyServiceO.isTechnologyShared(order)) {
             order.setField(OrderFields.TECHNOLOGY, copyTechnology(order).orNull());
         } else {
             Entity prototypeTechnology = order.getBelongsToField(OrderFields.TECHNOLOGY_PROTOTYPE);
@@ -112,7 +112,7 @@ public class CopyOfTechnologyDetailsListeners {
             Entity technology1 = technologyServiceO.getTechnologyDD().get(technologyId);
             Entity order = getOrderWithTechnology(view);
 
-            order = technologyServiceO.createTechnologyIfPktDisabled(order.getDataDefinition(), order);
+            order = technologyServiceO.createTechnologyIfNotCopied(order.getDataDefinition(), order);
 
             Entity technology2 = order.getBelongsToField(OrderFields.TECHNOLOGY);
 
@@ -245,6 +245,11 @@ public class CopyOfTechnologyDetailsListeners {
     }
 
     private EntityOpResult deleteTechnology(final Entity technology) {
+        // shared pattern technology stays, only copies and own technologies of order are deleted
+        if (technology.getStringField(TechnologyFields.TECHNOLOGY_TYPE) == null) {
+            return EntityOpResult.successfull();
+        }
+
         return technology.getDataDefinition().delete(technology.getId());
     }
 
@@ -0,0 +1,290 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.orders;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Answers;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.basic.ShiftsService;
+import com.qcadoo.mes.orders.constants.OrderFields;
+import com.qcadoo.mes.orders.constants.OrderType;
+import com.qcadoo.mes.states.service.StateChangeContextBuilder;
+import com.qcadoo.mes.technologies.BarcodeOperationComponentService;
+import com.qcadoo.mes.technologies.constants.TechnologiesConstants;
+import com.qcadoo.mes.technologies.constants.TechnologyFields;
+import com.qcadoo.mes.technologies.constants.TechnologyType;
+import com.qcadoo.mes.technologies.states.aop.TechnologyStateChangeAspect;
+import com.qcadoo.mes.technologies.states.constants.TechnologyStateStringValues;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.security.api.SecurityService;
+import com.qcadoo.view.api.utils.NumberGeneratorService;
+
+public class TechnologyServiceOTest {
+
+    private static final Long L_ORDER_ID = 1L;
+
+    private static final Long L_TECHNOLOGY_PROTOTYPE_ID = 11L;
+
+    private static final Long L_OTHER_TECHNOLOGY_PROTOTYPE_ID = 12L;
+
+    private static final Long L_COPY_OF_TECHNOLOGY_ID = 21L;
+
+    private TechnologyServiceO technologyServiceO;
+
+    @Mock
+    private DataDefinitionService dataDefinitionService;
+
+    @Mock
+    private NumberGeneratorService numberGeneratorService;
+
+    @Mock(answer = Answers.RETURNS_DEEP_STUBS)
+    private TechnologyStateChangeAspect technologyStateChangeAspect;
+
+    @Mock
+    private StateChangeContextBuilder stateChangeContextBuilder;
+
+    @Mock
+    private ShiftsService shiftsService;
+
+    @Mock
+    private SecurityService securityService;
+
+    @Mock
+    private OrderService orderService;
+
+    @Mock
+    private BarcodeOperationComponentService barcodeOperationComponentService;
+
+    @Mock
+    private DataDefinition orderDD, technologyDD, technologyStateChangeDD;
+
+    @Mock
+    private Entity order, savedOrder, existingOrder, technologyPrototype, otherTechnologyPrototype, copyOfTechnology,
+            technologyStateChange;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        technologyServiceO = new TechnologyServiceO();
+
+        setField(technologyServiceO, "dataDefinitionService", dataDefinitionService);
+        setField(technologyServiceO, "numberGeneratorService", numberGeneratorService);
+        setField(technologyServiceO, "technologyStateChangeAspect", technologyStateChangeAspect);
+        setField(technologyServiceO, "stateChangeContextBuilder", stateChangeContextBuilder);
+        setField(technologyServiceO, "shiftsService", shiftsService);
+        setField(technologyServiceO, "securityService", securityService);
+        setField(technologyServiceO, "orderService", orderService);
+        setField(technologyServiceO, "barcodeOperationComponentService", barcodeOperationComponentService);
+
+        given(dataDefinitionService.get(TechnologiesConstants.PLUGIN_IDENTIFIER, TechnologiesConstants.MODEL_TECHNOLOGY))
+                .willReturn(technologyDD);
+        given(dataDefinitionService.get(TechnologiesConstants.PLUGIN_IDENTIFIER,
+                TechnologiesConstants.MODEL_TECHNOLOGY_STATE_CHANGE)).willReturn(technologyStateChangeDD);
+
+        given(order.getDataDefinition()).willReturn(orderDD);
+        given(order.getStringField(OrderFields.ORDER_TYPE)).willReturn(OrderType.WITH_PATTERN_TECHNOLOGY.getStringValue());
+        given(orderDD.save(order)).willReturn(savedOrder);
+        given(orderDD.get(L_ORDER_ID)).willReturn(existingOrder);
+        given(existingOrder.getStringField(OrderFields.ORDER_TYPE)).willReturn(
+                OrderType.WITH_PATTERN_TECHNOLOGY.getStringValue());
+
+        given(technologyPrototype.getId()).willReturn(L_TECHNOLOGY_PROTOTYPE_ID);
+        given(otherTechnologyPrototype.getId()).willReturn(L_OTHER_TECHNOLOGY_PROTOTYPE_ID);
+
+        given(technologyDD.create()).willReturn(copyOfTechnology);
+        given(technologyDD.copy(anyLong())).willReturn(Lists.newArrayList(copyOfTechnology));
+        given(technologyDD.save(copyOfTechnology)).willReturn(copyOfTechnology);
+        given(technologyDD.fastSave(copyOfTechnology)).willReturn(copyOfTechnology);
+        given(copyOfTechnology.getDataDefinition()).willReturn(technologyDD);
+        given(copyOfTechnology.getId()).willReturn(L_COPY_OF_TECHNOLOGY_ID);
+        given(copyOfTechnology.getStringField(TechnologyFields.TECHNOLOGY_TYPE)).willReturn(
+                TechnologyType.WITH_PATTERN_TECHNOLOGY.getStringValue());
+        given(technologyStateChangeDD.create()).willReturn(technologyStateChange);
+
+        given(orderService.isPktEnabled()).willReturn(true);
+    }
+
+    private void stubState(final Entity technology, final String state) {
+        given(technology.getStringField(TechnologyFields.STATE)).willReturn(state);
+    }
+
+    private void stubTechnologies(final Entity order, final Entity technology, final Entity technologyPrototype) {
+        given(order.getBelongsToField(OrderFields.TECHNOLOGY)).willReturn(technology);
+        given(order.getBelongsToField(OrderFields.TECHNOLOGY_PROTOTYPE)).willReturn(technologyPrototype);
+    }
+
+    private void stubExistingOrder(final Entity technology, final Entity technologyPrototype) {
+        given(order.getId()).willReturn(L_ORDER_ID);
+
+        stubTechnologies(existingOrder, technology, technologyPrototype);
+    }
+
+    @Test
+    public final void shouldShareAcceptedTechnologyPrototype() {
+        // given
+        stubState(technologyPrototype, TechnologyStateStringValues.ACCEPTED);
+        stubTechnologies(order, null, technologyPrototype);
+
+        // when
+        technologyServiceO.createOrUpdateTechnology(orderDD, order);
+
+        // then
+        verify(order).setField(OrderFields.TECHNOLOGY, technologyPrototype);
+        verify(technologyDD, never()).copy(anyLong());
+    }
+
+    @Test
+    public final void shouldCopyTechnologyPrototypeWhichIsNotAccepted() {
+        // given
+        stubState(technologyPrototype, TechnologyStateStringValues.CHECKED);
+        stubTechnologies(order, null, technologyPrototype);
+
+        // when
+        technologyServiceO.createOrUpdateTechnology(orderDD, order);
+
+        // then
+        verify(order).setField(OrderFields.TECHNOLOGY, copyOfTechnology);
+        verify(technologyDD).copy(L_TECHNOLOGY_PROTOTYPE_ID);
+        verify(copyOfTechnology).setField(TechnologyFields.TECHNOLOGY_TYPE,
+                TechnologyType.WITH_PATTERN_TECHNOLOGY.getStringValue());
+    }
+
+    @Test
+    public final void shouldKeepSharingTechnologyPrototypeWhichGotOutdated() {
+        // given
+        stubState(technologyPrototype, TechnologyStateStringValues.OUTDATED);
+        stubTechnologies(order, technologyPrototype, technologyPrototype);
+        stubExistingOrder(technologyPrototype, technologyPrototype);
+
+        // when
+        technologyServiceO.createOrUpdateTechnology(orderDD, order);
+
+        // then
+        verify(order).setField(OrderFields.TECHNOLOGY, technologyPrototype);
+        verify(technologyDD, never()).copy(anyLong());
+    }
+
+    @Test
+    public final void shouldShareAcceptedTechnologyPrototypeWhenPrototypeIsChanged() {
+        // given
+        stubState(technologyPrototype, TechnologyStateStringValues.ACCEPTED);
+        stubState(otherTechnologyPrototype, TechnologyStateStringValues.ACCEPTED);
+        stubTechnologies(order, technologyPrototype, otherTechnologyPrototype);
+        stubExistingOrder(technologyPrototype, technologyPrototype);
+
+        // when
+        technologyServiceO.createOrUpdateTechnology(orderDD, order);
+
+        // then
+        verify(order).setField(OrderFields.TECHNOLOGY, otherTechnologyPrototype);
+        verify(technologyDD, never()).copy(anyLong());
+    }
+
+    @Test
+    public final void shouldCopyTechnologyPrototypeWhenPrototypeIsChangedToNotAcceptedOne() {
+        // given
+        stubState(technologyPrototype, TechnologyStateStringValues.ACCEPTED);
+        stubState(otherTechnologyPrototype, TechnologyStateStringValues.CHECKED);
+        stubTechnologies(order, technologyPrototype, otherTechnologyPrototype);
+        stubExistingOrder(technologyPrototype, technologyPrototype);
+
+        // when
+        technologyServiceO.createOrUpdateTechnology(orderDD, order);
+
+        // then
+        verify(order).setField(OrderFields.TECHNOLOGY, copyOfTechnology);
+        verify(technologyDD).copy(L_OTHER_TECHNOLOGY_PROTOTYPE_ID);
+    }
+
+    @Test
+    public final void shouldCopySharedTechnologyForModification() {
+        // given
+        stubState(technologyPrototype, TechnologyStateStringValues.ACCEPTED);
+        stubTechnologies(order, technologyPrototype, technologyPrototype);
+        given(savedOrder.getBelongsToField(OrderFields.TECHNOLOGY)).willReturn(copyOfTechnology);
+
+        assertTrue(technologyServiceO.isTechnologyShared(order));
+
+        // when
+        Entity technology = technologyServiceO.getTechnologyForModification(order);
+
+        // then
+        assertEquals(copyOfTechnology, technology);
+        verify(order).setField(OrderFields.TECHNOLOGY, copyOfTechnology);
+        verify(technologyDD).copy(L_TECHNOLOGY_PROTOTYPE_ID);
+        verify(orderDD).save(order);
+    }
+
+    @Test
+    public final void shouldNotCopyTechnologyForModificationWhenItIsCopiedAlready() {
+        // given
+        stubTechnologies(order, copyOfTechnology, technologyPrototype);
+
+        assertFalse(technologyServiceO.isTechnologyShared(order));
+
+        // when
+        Entity technology = technologyServiceO.getTechnologyForModification(order);
+
+        // then
+        assertEquals(copyOfTechnology, technology);
+        verify(technologyDD, never()).copy(anyLong());
+        verify(orderDD, never()).save(order);
+    }
+
+    @Test
+    public final void shouldUseTechnologyPrototypeWithoutCopyingWhenPktIsDisabled() {
+        // given
+        given(orderService.isPktEnabled()).willReturn(false);
+
+        stubState(technologyPrototype, TechnologyStateStringValues.CHECKED);
+        stubTechnologies(order, technologyPrototype, technologyPrototype);
+
+        // when
+        technologyServiceO.createOrUpdateTechnology(orderDD, order);
+        Entity technology = technologyServiceO.getTechnologyForModification(order);
+
+        // then
+        assertEquals(technologyPrototype, technology);
+        verify(order).setField(OrderFields.TECHNOLOGY, technologyPrototype);
+        verify(technologyDD, never()).copy(anyLong());
+        verify(orderDD, never()).save(order);
+    }
+
+}
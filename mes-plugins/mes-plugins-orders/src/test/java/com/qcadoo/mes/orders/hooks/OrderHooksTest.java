@@ -58,6 +58,7 @@ import com.qcadoo.mes.orders.constants.OrderType;
 import com.qcadoo.mes.orders.states.constants.OrderState;
 import com.qcadoo.mes.orders.util.OrderDatesService;
 import com.qcadoo.mes.technologies.constants.TechnologyFields;
+import com.qcadoo.mes.technologies.states.constants.TechnologyStateStringValues;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.FieldDefinition;
@@ -291,4 +292,71 @@ public class OrderHooksTest {
         verify(order, never()).setField(OrderFields.TECHNOLOGY, technology);
         verify(technologyCopy).setField(TechnologyFields.NUMBER, generatedNumber);
     }
+
+    @Test
+    public final void shouldKeepSharedPatternTechnologyOnCopy() {
+        // given
+        given(orderService.isPktEnabled()).willReturn(true);
+        given(technologyServiceO.isTechnologyShared(order)).willReturn(true);
+
+        DataDefinition technologyDD = mock(DataDefinition.class);
+        Entity technologyPrototype = mockEntity(technologyDD);
+        stubStringField(technologyPrototype, TechnologyFields.STATE, TechnologyStateStringValues.ACCEPTED);
+
+        stubBelongsToField(order, OrderFields.TECHNOLOGY, technologyPrototype);
+        stubBelongsToField(order, OrderFields.TECHNOLOGY_PROTOTYPE, technologyPrototype);
+
+        // when
+        orderHooks.setCopyOfTechnology(order);
+
+        // then
+        verify(order).setField(OrderFields.TECHNOLOGY, technologyPrototype);
+        verify(technologyDD, never()).copy(any(Long[].class));
+    }
+
+    @Test
+    public final void shouldKeepDatesCalculatedAfterFormWasLoaded() {
+        // given
+        Date startDate = new Date(1000L);
+        Date finishDateFromForm = new Date(2000L);
+        Date calculatedFinishDate = new Date(3000L);
+
+        Entity orderFromDB = mock(Entity.class);
+
+        given(order.getId()).willReturn(1L);
+        given(orderService.getOrder(1L)).willReturn(orderFromDB);
+        given(order.getIntegerField(OrderFields.DATES_VERSION)).willReturn(1);
+        given(orderFromDB.getIntegerField(OrderFields.DATES_VERSION)).willReturn(2);
+        given(order.getDateField(OrderFields.START_DATE)).willReturn(startDate);
+        given(orderFromDB.getDateField(OrderFields.START_DATE)).willReturn(startDate);
+        given(order.getField(OrderFields.FINISH_DATE)).willReturn(finishDateFromForm);
+        given(orderFromDB.getField(OrderFields.FINISH_DATE)).willReturn(calculatedFinishDate);
+        given(orderFromDB.getField(OrderFields.CORRECTED_DATE_TO)).willReturn(calculatedFinishDate);
+
+        // when
+        orderHooks.keepDatesCalculatedMeanwhile(order);
+
+        // then
+        verify(order).setField(OrderFields.FINISH_DATE, calculatedFinishDate);
+        verify(order).setField(OrderFields.CORRECTED_DATE_TO, calculatedFinishDate);
+        verify(order).setField(OrderFields.DATES_VERSION, 2);
+        verify(order).setField(OrderFields.DATES_CHANGED, false);
+    }
+
+    @Test
+    public final void shouldNotChangeDatesOfCurrentForm() {
+        // given
+        Entity orderFromDB = mock(Entity.class);
+
+        given(order.getId()).willReturn(1L);
+        given(orderService.getOrder(1L)).willReturn(orderFromDB);
+        given(order.getIntegerField(OrderFields.DATES_VERSION)).willReturn(2);
+        given(orderFromDB.getIntegerField(OrderFields.DATES_VERSION)).willReturn(2);
+
+        // when
+        orderHooks.keepDatesCalculatedMeanwhile(order);
+
+        // then
+        verify(order, never()).setField(any(String.class), any());
+    }
 }
@@ -0,0 +1,50 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productionCounting.states.listener;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.qcadoo.mes.basic.jobs.AsyncJobHandler;
+import com.qcadoo.model.api.Entity;
+
+@Service
+public class CloseOrderJobHandler implements AsyncJobHandler {
+
+    @Autowired
+    private ProductionTrackingListenerService productionTrackingListenerService;
+
+    @Override
+    public String getType() {
+        return ProductionTrackingListenerService.CLOSE_ORDER_JOB_TYPE;
+    }
+
+    @Override
+    @Transactional
+    public Entity execute(final Long productionTrackingId) {
+        return productionTrackingListenerService.closeOrderForProductionTracking(productionTrackingId);
+    }
+
+}
@@ -30,22 +30,27 @@ import static com.qcadoo.mes.orders.states.constants.OrderState.COMPLETED;
 import java.math.BigDecimal;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.qcadoo.localization.api.TranslationService;
 import com.qcadoo.mes.basic.ParameterService;
+import com.qcadoo.mes.basic.jobs.AsyncJobService;
 import com.qcadoo.mes.basicProductionCounting.BasicProductionCountingService;
 import com.qcadoo.mes.basicProductionCounting.constants.BasicProductionCountingFields;
-import com.qcadoo.mes.basicProductionCounting.constants.OrderFieldsBPC;
 import com.qcadoo.mes.orders.constants.OrderFields;
+import com.qcadoo.mes.orders.constants.OrdersConstants;
 import com.qcadoo.mes.orders.states.aop.OrderStateChangeAspect;
 import com.qcadoo.mes.orders.states.constants.OrderState;
 import com.qcadoo.mes.productionCounting.ProductionCountingService;
 import com.qcadoo.mes.productionCounting.constants.OrderFieldsPC;
 import com.qcadoo.mes.productionCounting.constants.ParameterFieldsPC;
+import com.qcadoo.mes.productionCounting.constants.ProductionCountingConstants;
 import com.qcadoo.mes.productionCounting.constants.ProductionTrackingFields;
 import com.qcadoo.mes.productionCounting.constants.TrackingOperationProductInComponentFields;
 import com.qcadoo.mes.productionCounting.constants.TrackingOperationProductOutComponentFields;
@@ -54,6 +59,7 @@ import com.qcadoo.mes.productionCounting.utils.OrderClosingHelper;
 import com.qcadoo.mes.states.StateChangeContext;
 import com.qcadoo.mes.states.constants.StateChangeStatus;
 import com.qcadoo.mes.states.service.StateChangeContextBuilder;
+import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.NumberService;
 import com.qcadoo.model.api.search.SearchCriteriaBuilder;
@@ -63,6 +69,21 @@ import com.qcadoo.model.api.validators.ErrorMessage;
 @Service
 public final class ProductionTrackingListenerService {
 
+    public static final String CLOSE_ORDER_JOB_TYPE = "productionCounting.closeOrder";
+
+    // counters are changed in place, so concurrent acceptances for the same order don't overwrite each other; the quantity is
+    // left unchanged when it would become negative or exceed 9 integer digits, as basicProductionCounting validation did
+    private static final String UPDATE_BASIC_PRODUCTION_COUNTING_QUANTITY_QUERY = "UPDATE basicproductioncounting_basicproductioncounting "
+            + "SET %1$s = COALESCE(%1$s, 0) + :quantity WHERE id = (SELECT MIN(bpc.id) FROM basicproductioncounting_basicproductioncounting bpc "
+            + "WHERE bpc.order_id = :orderId AND bpc.product_id = :productId) AND COALESCE(%1$s, 0) + :quantity >= 0 "
+            + "AND COALESCE(%1$s, 0) + :quantity < :maxQuantity";
+
+    private static final int L_QUANTITY_MAX_UNSCALED_DIGITS = 9;
+
+    private static final int L_QUANTITY_MAX_SCALE = 5;
+
+    private static final BigDecimal L_MAX_QUANTITY = BigDecimal.TEN.pow(L_QUANTITY_MAX_UNSCALED_DIGITS);
+
     private static final String L_PRODUCT = "product";
 
     @Autowired
@@ -89,6 +110,15 @@ public final class ProductionTrackingListenerService {
     @Autowired
     private ParameterService parameterService;
 
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    @Autowired
+    private AsyncJobService asyncJobService;
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
     public void onChangeFromDraftToAny(final Entity productionTracking) {
         productionTracking.setField(ProductionTrackingFields.LAST_STATE_CHANGE_FAILS, false);
         productionTracking.setField(ProductionTrackingFields.LAST_STATE_CHANGE_FAIL_CAUSE, null);
@@ -165,10 +195,13 @@ public final class ProductionTrackingListenerService {
         }
     }
 
-    // @Transactional(propagation = Propagation.REQUIRES_NEW)
+    /**
+     * Submits closing of the order as a background job. The production tracking is accepted regardless of the result - an order
+     * which can't be closed stays in its state, errors are kept on the job, which can be retried (see AsyncJobService#retry)
+     * or the order can be completed manually.
+     */
     public void closeOrder(final Entity productionTracking) {
         final Entity order = productionTracking.getBelongsToField(ORDER);
-        Entity orderFromDB = order.getDataDefinition().get(order.getId());
         if (!orderClosingHelper.orderShouldBeClosed(productionTracking)) {
             return;
         }
@@ -176,6 +209,26 @@ public final class ProductionTrackingListenerService {
             productionTracking.addGlobalMessage("productionCounting.order.orderIsAlreadyClosed", false, false);
             return;
         }
+
+        Entity job = asyncJobService.submit(CLOSE_ORDER_JOB_TYPE, productionTracking.getId(), OrdersConstants.MODEL_ORDER + ":"
+                + order.getId(), CLOSE_ORDER_JOB_TYPE + ":" + productionTracking.getId());
+
+        productionTracking.addGlobalMessage("basic.asyncJob.submitted", false, false, job.getId().toString());
+    }
+
+    public Entity closeOrderForProductionTracking(final Long productionTrackingId) {
+        Entity productionTracking = dataDefinitionService.get(ProductionCountingConstants.PLUGIN_IDENTIFIER,
+                ProductionCountingConstants.MODEL_PRODUCTION_TRACKING).get(productionTrackingId);
+
+        final Entity order = productionTracking.getBelongsToField(ORDER);
+        Entity orderFromDB = order.getDataDefinition().get(order.getId());
+        if (!orderClosingHelper.orderShouldBeClosed(productionTracking)) {
+            return productionTracking;
+        }
+        if (orderFromDB.getStringField(STATE).equals(COMPLETED.getStringValue())) {
+            productionTracking.addGlobalMessage("productionCounting.order.orderIsAlreadyClosed", false, false);
+            return productionTracking;
+        }
         final StateChangeContext orderStateChangeContext = stateChangeContextBuilder.build(
                 orderStateChangeAspect.getChangeEntityDescriber(), orderFromDB, OrderState.COMPLETED.getStringValue());
         orderStateChangeAspect.changeState(orderStateChangeContext);
@@ -211,6 +264,8 @@ public final class ProductionTrackingListenerService {
                 productionTracking.addGlobalError("orders.order.orderStates.error", errorMessages.toString());
             }
         }
+
+        return productionTracking;
     }
 
     private void setOrderDoneAndWastesQuantity(final Entity productionTracking, final Operation operation) {
@@ -253,49 +308,70 @@ public final class ProductionTrackingListenerService {
     private void updateBasicProductionCounting(final Entity productionTracking, final Operation operation) {
         final Entity order = productionTracking.getBelongsToField(ProductionTrackingFields.ORDER);
 
-        final List<Entity> basicProductionCountings = order.getHasManyField(OrderFieldsBPC.BASIC_PRODUCTION_COUNTINGS);
-
         final List<Entity> trackingOperationProductInComponents = productionTracking
                 .getHasManyField(ProductionTrackingFields.TRACKING_OPERATION_PRODUCT_IN_COMPONENTS);
         final List<Entity> trackingOperationProductOutComponents = productionTracking
                 .getHasManyField(ProductionTrackingFields.TRACKING_OPERATION_PRODUCT_OUT_COMPONENTS);
 
-        for (Entity trackingOperationProductInComponent : trackingOperationProductInComponents) {
-            Entity basicProductionCounting;
+        updateBasicProductionCountingQuantities(order, BasicProductionCountingFields.USED_QUANTITY,
+                sumQuantitiesByProduct(trackingOperationProductInComponents,
+                        TrackingOperationProductInComponentFields.USED_QUANTITY, operation));
+        updateBasicProductionCountingQuantities(order, BasicProductionCountingFields.PRODUCED_QUANTITY,
+                sumQuantitiesByProduct(trackingOperationProductOutComponents,
+                        TrackingOperationProductOutComponentFields.USED_QUANTITY, operation));
+    }
+
+    private Map<Long, BigDecimal> sumQuantitiesByProduct(final List<Entity> trackingOperationProductComponents,
+            final String quantityFieldName, final Operation operation) {
+        // sorted by product, so concurrent acceptances for the same order lock rows in the same order
+        Map<Long, BigDecimal> quantities = Maps.newTreeMap();
 
-            try {
-                basicProductionCounting = getBasicProductionCounting(trackingOperationProductInComponent,
-                        basicProductionCountings);
-            } catch (IllegalStateException e) {
-                continue;
-            }
+        for (Entity trackingOperationProductComponent : trackingOperationProductComponents) {
+            Long productId = trackingOperationProductComponent.getBelongsToField(L_PRODUCT).getId();
+            BigDecimal quantity = operation.perform(BigDecimal.ZERO,
+                    trackingOperationProductComponent.getDecimalField(quantityFieldName));
 
-            final BigDecimal usedQuantity = basicProductionCounting.getDecimalField(BasicProductionCountingFields.USED_QUANTITY);
-            final BigDecimal productQuantity = trackingOperationProductInComponent
-                    .getDecimalField(TrackingOperationProductInComponentFields.USED_QUANTITY);
-            final BigDecimal result = operation.perform(usedQuantity, productQuantity);
+            quantities.merge(productId, quantity, (value, add) -> value.add(add, numberService.getMathContext()));
+        }
+
+        return quantities;
+    }
 
-            basicProductionCounting.setField(BasicProductionCountingFields.USED_QUANTITY, result);
-            basicProductionCounting = basicProductionCounting.getDataDefinition().save(basicProductionCounting);
+    private void updateBasicProductionCountingQuantities(final Entity order, final String quantityFieldName,
+            final Map<Long, BigDecimal> quantities) {
+        if (quantities.isEmpty()) {
+            return;
         }
 
-        for (Entity trackingOperationProductOutComponent : trackingOperationProductOutComponents) {
-            Entity productionCounting;
+        List<Map<String, Object>> batchParams = Lists.newArrayList();
 
-            try {
-                productionCounting = getBasicProductionCounting(trackingOperationProductOutComponent, basicProductionCountings);
-            } catch (IllegalStateException e) {
+        for (Map.Entry<Long, BigDecimal> quantity : quantities.entrySet()) {
+            if (!isValidQuantity(quantity.getValue())) {
                 continue;
             }
 
-            final BigDecimal usedQuantity = productionCounting.getDecimalField(BasicProductionCountingFields.PRODUCED_QUANTITY);
-            final BigDecimal productQuantity = trackingOperationProductOutComponent
-                    .getDecimalField(TrackingOperationProductOutComponentFields.USED_QUANTITY);
-            final BigDecimal result = operation.perform(usedQuantity, productQuantity);
+            Map<String, Object> params = Maps.newHashMap();
+
+            params.put("orderId", order.getId());
+            params.put("productId", quantity.getKey());
+            params.put("quantity", quantity.getValue());
+            params.put("maxQuantity", L_MAX_QUANTITY);
+
+            batchParams.add(params);
+        }
 
-            productionCounting.setField(BasicProductionCountingFields.PRODUCED_QUANTITY, result);
-            productionCounting = productionCounting.getDataDefinition().save(productionCounting);
+        if (batchParams.isEmpty()) {
+            return;
         }
+
+        String query = String.format(UPDATE_BASIC_PRODUCTION_COUNTING_QUANTITY_QUERY, quantityFieldName.toLowerCase());
+
+        jdbcTemplate.batchUpdate(query, batchParams.toArray(new Map[batchParams.size()]));
+    }
+
+    // the same limits as validatesUnscaledValue and validatesScale of basicProductionCounting quantities
+    private boolean isValidQuantity(final BigDecimal quantity) {
+        return quantity.abs().compareTo(L_MAX_QUANTITY) < 0 && quantity.stripTrailingZeros().scale() <= L_QUANTITY_MAX_SCALE;
     }
 
     public void checkIfTimesIsSet(final Entity productionTracking) {
@@ -317,19 +393,6 @@ public final class ProductionTrackingListenerService {
 
     }
 
-    private Entity getBasicProductionCounting(final Entity trackingOperationProductComponent,
-            final List<Entity> basicProductionCountings) {
-        Entity product = trackingOperationProductComponent.getBelongsToField(L_PRODUCT);
-
-        for (Entity basicProductionCounting : basicProductionCountings) {
-            if (basicProductionCounting.getBelongsToField(BasicProductionCountingFields.PRODUCT).getId().equals(product.getId())) {
-                return basicProductionCounting;
-            }
-        }
-
-        throw new IllegalStateException("No basic production counting found for product");
-    }
-
     public void onCorrected(final Entity productionTracking) {
         updateBasicProductionCounting(productionTracking, new Substraction());
         setOrderDoneAndWastesQuantity(productionTracking, new Substraction());
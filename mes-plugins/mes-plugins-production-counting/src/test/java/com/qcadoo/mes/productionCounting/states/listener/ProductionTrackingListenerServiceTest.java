@@ -0,0 +1,240 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productionCounting.states.listener;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.orders.constants.OrderFields;
+import com.qcadoo.mes.productionCounting.constants.ProductionTrackingFields;
+import com.qcadoo.mes.productionCounting.constants.TrackingOperationProductInComponentFields;
+import com.qcadoo.mes.productionCounting.constants.TrackingOperationProductOutComponentFields;
+import com.qcadoo.mes.productionCounting.utils.OrderClosingHelper;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.EntityList;
+import com.qcadoo.model.api.NumberService;
+import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.model.api.search.SearchCriterion;
+
+public class ProductionTrackingListenerServiceTest {
+
+    private static final Long L_ORDER_ID = 11L;
+
+    private static final String L_UPDATE_USED_QUANTITY = "UPDATE basicproductioncounting_basicproductioncounting SET usedquantity";
+
+    private static final String L_UPDATE_PRODUCED_QUANTITY = "UPDATE basicproductioncounting_basicproductioncounting SET producedquantity";
+
+    private ProductionTrackingListenerService productionTrackingListenerService;
+
+    @Mock
+    private NumberService numberService;
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Mock
+    private OrderClosingHelper orderClosingHelper;
+
+    @Mock
+    private Entity productionTracking, order, mainProduct;
+
+    @Mock
+    private DataDefinition orderDD;
+
+    @Mock
+    private SearchCriteriaBuilder searchCriteriaBuilder;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        productionTrackingListenerService = new ProductionTrackingListenerService();
+
+        ReflectionTestUtils.setField(productionTrackingListenerService, "numberService", numberService);
+        ReflectionTestUtils.setField(productionTrackingListenerService, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(productionTrackingListenerService, "orderClosingHelper", orderClosingHelper);
+
+        given(numberService.getMathContext()).willReturn(MathContext.DECIMAL64);
+
+        given(productionTracking.getBelongsToField(ProductionTrackingFields.ORDER)).willReturn(order);
+        given(order.getId()).willReturn(L_ORDER_ID);
+        given(order.getDataDefinition()).willReturn(orderDD);
+        given(orderDD.get(L_ORDER_ID)).willReturn(order);
+        given(order.getBelongsToField(OrderFields.PRODUCT)).willReturn(mainProduct);
+
+        given(searchCriteriaBuilder.add(any(SearchCriterion.class))).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.setMaxResults(anyInt())).willReturn(searchCriteriaBuilder);
+    }
+
+    private EntityList mockEntityList(final List<Entity> entities) {
+        EntityList entityList = mock(EntityList.class);
+
+        given(entityList.iterator()).willReturn(entities.iterator());
+        given(entityList.find()).willReturn(searchCriteriaBuilder);
+
+        return entityList;
+    }
+
+    private Entity mockComponent(final Long productId, final String quantityFieldName, final String quantity) {
+        Entity product = mock(Entity.class);
+        Entity component = mock(Entity.class);
+
+        given(product.getId()).willReturn(productId);
+        given(component.getBelongsToField("product")).willReturn(product);
+        given(component.getDecimalField(quantityFieldName)).willReturn(quantity == null ? null : new BigDecimal(quantity));
+
+        return component;
+    }
+
+    private void stubComponents(final List<Entity> inComponents, final List<Entity> outComponents) {
+        EntityList inComponentsList = mockEntityList(inComponents);
+        EntityList outComponentsList = mockEntityList(outComponents);
+
+        given(productionTracking.getHasManyField(ProductionTrackingFields.TRACKING_OPERATION_PRODUCT_IN_COMPONENTS)).willReturn(
+                inComponentsList);
+        given(productionTracking.getHasManyField(ProductionTrackingFields.TRACKING_OPERATION_PRODUCT_OUT_COMPONENTS)).willReturn(
+                outComponentsList);
+    }
+
+    private Entity inComponent(final Long productId, final String quantity) {
+        return mockComponent(productId, TrackingOperationProductInComponentFields.USED_QUANTITY, quantity);
+    }
+
+    private Entity outComponent(final Long productId, final String quantity) {
+        return mockComponent(productId, TrackingOperationProductOutComponentFields.USED_QUANTITY, quantity);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object>[] captureBatch(final String queryPrefix) {
+        ArgumentCaptor<Map[]> batchCaptor = ArgumentCaptor.forClass(Map[].class);
+
+        verify(jdbcTemplate).batchUpdate(startsWith(queryPrefix), batchCaptor.capture());
+
+        return batchCaptor.getValue();
+    }
+
+    private void assertDelta(final Map<String, Object> params, final Long productId, final String quantity) {
+        assertEquals(L_ORDER_ID, params.get("orderId"));
+        assertEquals(productId, params.get("productId"));
+        assertEquals(0, new BigDecimal(quantity).compareTo((BigDecimal) params.get("quantity")));
+    }
+
+    @Test
+    public void shouldUpdateBasicProductionCountingsWithQuantitiesSummedByProduct() {
+        // given
+        stubComponents(Lists.newArrayList(inComponent(2L, "1.5"), inComponent(1L, "3"), inComponent(2L, "2.25"),
+                inComponent(3L, null)), Lists.newArrayList(outComponent(5L, "10"), outComponent(5L, "0.00001")));
+
+        // when
+        productionTrackingListenerService.onAccept(productionTracking);
+
+        // then
+        Map<String, Object>[] usedQuantities = captureBatch(L_UPDATE_USED_QUANTITY);
+
+        assertEquals(3, usedQuantities.length);
+        assertDelta(usedQuantities[0], 1L, "3");
+        assertDelta(usedQuantities[1], 2L, "3.75");
+        assertDelta(usedQuantities[2], 3L, "0");
+
+        Map<String, Object>[] producedQuantities = captureBatch(L_UPDATE_PRODUCED_QUANTITY);
+
+        assertEquals(1, producedQuantities.length);
+        assertDelta(producedQuantities[0], 5L, "10.00001");
+    }
+
+    @Test
+    public void shouldSubtractQuantitiesSummedByProductWhenTrackingIsDeclined() {
+        // given
+        stubComponents(Lists.newArrayList(inComponent(1L, "4"), inComponent(1L, "6")),
+                Lists.newArrayList(outComponent(5L, "7.5")));
+
+        // when
+        productionTrackingListenerService.onChangeFromAcceptedToDeclined(productionTracking);
+
+        // then
+        Map<String, Object>[] usedQuantities = captureBatch(L_UPDATE_USED_QUANTITY);
+
+        assertEquals(1, usedQuantities.length);
+        assertDelta(usedQuantities[0], 1L, "-10");
+
+        Map<String, Object>[] producedQuantities = captureBatch(L_UPDATE_PRODUCED_QUANTITY);
+
+        assertEquals(1, producedQuantities.length);
+        assertDelta(producedQuantities[0], 5L, "-7.5");
+    }
+
+    @Test
+    public void shouldSkipQuantitiesWhichDontFitBasicProductionCountingValidation() {
+        // given
+        stubComponents(Lists.newArrayList(inComponent(1L, "999999999"), inComponent(1L, "1"), inComponent(2L, "5")),
+                Lists.newArrayList(outComponent(5L, "0.000001")));
+
+        // when
+        productionTrackingListenerService.onAccept(productionTracking);
+
+        // then
+        Map<String, Object>[] usedQuantities = captureBatch(L_UPDATE_USED_QUANTITY);
+
+        assertEquals(1, usedQuantities.length);
+        assertDelta(usedQuantities[0], 2L, "5");
+        assertEquals(new BigDecimal("1000000000"), usedQuantities[0].get("maxQuantity"));
+
+        verify(jdbcTemplate, never()).batchUpdate(startsWith(L_UPDATE_PRODUCED_QUANTITY), any(Map[].class));
+    }
+
+    @Test
+    public void shouldNotUpdateBasicProductionCountingsWhenThereAreNoComponents() {
+        // given
+        stubComponents(Lists.<Entity> newArrayList(), Lists.<Entity> newArrayList());
+
+        // when
+        productionTrackingListenerService.onChangeFromAcceptedToDeclined(productionTracking);
+
+        // then
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), any(Map[].class));
+    }
+
+}
@@ -26,6 +26,8 @@ package com.qcadoo.mes.productionPerShift;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.qcadoo.mes.orders.TechnologyServiceO;
+import com.qcadoo.mes.orders.constants.OrdersConstants;
 import com.qcadoo.mes.productionPerShift.constants.DailyProgressFields;
 import com.qcadoo.mes.productionPerShift.constants.ProductionPerShiftConstants;
 import com.qcadoo.mes.productionPerShift.constants.ProductionPerShiftFields;
@@ -40,6 +42,9 @@ public class PPSHelper {
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
+    @Autowired
+    private TechnologyServiceO technologyServiceO;
+
     public Long getPpsIdForOrder(final Long orderId) {
         DataDefinition ppsDateDef = getProductionPerShiftDD();
         String query = "select id as ppsId from #productionPerShift_productionPerShift where order.id = :orderId";
@@ -53,6 +58,9 @@ public class PPSHelper {
     }
 
     public Long createPpsForOrderAndReturnId(final Long orderId) {
+        // progress for days is kept in operations of order's technology, so it can't be shared pattern technology
+        technologyServiceO.getTechnologyForModification(getOrderDD().get(orderId));
+
         DataDefinition productionPerShiftDD = getProductionPerShiftDD();
 
         Entity productionPerShift = productionPerShiftDD.create();
@@ -73,6 +81,10 @@ public class PPSHelper {
                 ProductionPerShiftConstants.MODEL_PRODUCTION_PER_SHIFT);
     }
 
+    private DataDefinition getOrderDD() {
+        return dataDefinitionService.get(OrdersConstants.PLUGIN_IDENTIFIER, OrdersConstants.MODEL_ORDER);
+    }
+
     private DataDefinition getDailyProgressDD() {
         return dataDefinitionService.get(ProductionPerShiftConstants.PLUGIN_IDENTIFIER,
                 ProductionPerShiftConstants.MODEL_DAILY_PROGRESS);
@@ -80,7 +80,12 @@ public class PpsTimeHelper {
     }
 
     public List<DateTimeRange> manageExceptions(List<DateTimeRange> shiftWorkDateTime, Entity shiftEntity, Date dateOfDay) {
-        List<Entity> exceptions = Lists.newArrayList(shiftEntity.getHasManyField(ShiftFields.TIMETABLE_EXCEPTIONS));
+        return manageExceptions(shiftWorkDateTime, shiftEntity.getHasManyField(ShiftFields.TIMETABLE_EXCEPTIONS), dateOfDay);
+    }
+
+    public List<DateTimeRange> manageExceptions(List<DateTimeRange> shiftWorkDateTime, final List<Entity> timetableExceptions,
+            Date dateOfDay) {
+        List<Entity> exceptions = Lists.newArrayList(timetableExceptions);
         if (!exceptions.isEmpty()) {
             trimWorkExceptions(exceptions, dateOfDay);
 
@@ -25,8 +25,10 @@ package com.qcadoo.mes.productionPerShift.hooks;
 
 import com.google.common.collect.Sets;
 import com.qcadoo.mes.basic.ParameterService;
+import com.qcadoo.mes.basic.jobs.AsyncJobService;
 import com.qcadoo.mes.basicProductionCounting.BasicProductionCountingService;
 import com.qcadoo.mes.orders.constants.OrderFields;
+import com.qcadoo.mes.orders.constants.OrdersConstants;
 import com.qcadoo.mes.orders.states.constants.OrderState;
 import com.qcadoo.mes.productionPerShift.constants.ProductionPerShiftConstants;
 import com.qcadoo.mes.productionPerShift.constants.ProductionPerShiftFields;
@@ -59,6 +61,12 @@ import static com.qcadoo.model.api.search.SearchRestrictions.idEq;
 @Service
 public class OrderHooksPPS {
 
+    public static final String REGENERATE_PPS_JOB_TYPE = "regenerateProductionPerShift";
+
+    private static final String L_REGENERATION_PENDING = "productionPerShift.info.regenerationPending";
+
+    private static final String L_GENERATE_PPS = "generatePPS";
+
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
@@ -77,6 +85,9 @@ public class OrderHooksPPS {
     @Autowired
     private AutomaticPpsParametersService automaticPpsParametersService;
 
+    @Autowired
+    private AsyncJobService asyncJobService;
+
     public void onUpdate(final DataDefinition orderDD, final Entity order) {
         setUpPpsDaysAndDatesFor(order);
         regenerateProductionPerShift(orderDD, order);
@@ -99,6 +110,13 @@ public class OrderHooksPPS {
         return scb.setMaxResults(1).uniqueResult() == null;
     }
 
+    /**
+     * Production per shift isn't regenerated in the request thread - it is queued as a job performed after commit. Jobs are
+     * coalesced per order, so many saves in a row end with one regeneration done with the latest order data, see
+     * {@link ProductionPerShiftRegenerationJobHandler}. Until it finishes, production per shift is marked as pending.
+     * 
+     * Generation requested with generatePPS flag is still done immediately, because the flag isn't persistent.
+     */
     public void regenerateProductionPerShift(final DataDefinition orderDD, final Entity order) {
         if (order.getId() == null) {
             return;
@@ -106,70 +124,137 @@ public class OrderHooksPPS {
         Entity orderFromDB = orderDD.get(order.getId());
 
         if (isOrderFieldsChanged(order, orderFromDB)) {
-            Entity productionPerShift = dataDefinitionService
-                    .get(ProductionPerShiftConstants.PLUGIN_IDENTIFIER, ProductionPerShiftConstants.MODEL_PRODUCTION_PER_SHIFT)
-                    .find().add(SearchRestrictions.belongsTo(ProductionPerShiftFields.ORDER, order)).setMaxResults(1)
-                    .uniqueResult();
+            Entity productionPerShift = getProductionPerShift(order);
 
             if (productionPerShift != null && automaticPpsParametersService.isAutomaticPlanForShiftOn()) {
-                boolean shouldBeCorrected = OrderState.of(order).compareTo(OrderState.PENDING) != 0;
-                List<Entity> operationComponents = order.getBelongsToField(OrderFields.TECHNOLOGY)
-                        .getHasManyField(TechnologyFields.OPERATION_COMPONENTS).stream()
-                        .filter(toc -> !toc.getHasManyField(TechnologyOperationComponentFieldsPPS.PROGRESS_FOR_DAYS).isEmpty())
-                        .collect(Collectors.toList());
-                if (operationComponents.isEmpty() && order.getBooleanField("generatePPS")) {
-                    fillWithRootOperation(operationComponents, orderFromDB);
+                if (order.getBooleanField(L_GENERATE_PPS)) {
+                    generateProgressForDays(order, orderFromDB, productionPerShift);
+                } else {
+                    asyncJobService.submitCoalesced(REGENERATE_PPS_JOB_TYPE, order.getId(),
+                            getRegenerationJobEntityKey(order.getId()));
+
+                    order.addGlobalMessage(L_REGENERATION_PENDING, false, false);
                 }
-                for (Entity toc : operationComponents) {
-
-                    BigDecimal plannedQuantity = order.getDecimalField(OrderFields.PLANNED_QUANTITY);
-                    if (order.getBooleanField(OrderFields.FINAL_PRODUCTION_TRACKING)) {
-                        plannedQuantity = basicProductionCountingService.getProducedQuantityFromBasicProductionCountings(order);
-                    }
-                    ProgressForDaysContainer progressForDaysContainer = new ProgressForDaysContainer();
-                    progressForDaysContainer.setShouldBeCorrected(shouldBeCorrected);
-                    progressForDaysContainer.setOperationComponent(toc);
-                    progressForDaysContainer.setOrder(order);
-                    try {
-                        automaticPpsExecutorService.generateProgressForDays(progressForDaysContainer, productionPerShift);
-                    } catch (Exception ex) {
-                        for (ErrorMessage errorMessage : progressForDaysContainer.getErrors()) {
-                            order.addGlobalError(errorMessage.getMessage(), false, errorMessage.getVars());
-                        }
-                        return;
-                    }
-                    List<Entity> progressForDays = progressForDaysContainer.getProgressForDays();
-                    if (progressForDaysContainer.isCalculationError()) {
-                        productionPerShift.getGlobalErrors().forEach(
-                                error -> order.addGlobalError(error.getMessage(), false, error.getVars()));
-                        return;
-                    }
-
-                    if (!progressForDaysContainer.isPartCalculation()) {
-                        Date finishDate = automaticPpsExecutorService.calculateOrderFinishDate(order, progressForDays);
-
-                        order.setField(OrderFields.FINISH_DATE, finishDate);
-
-                        if (shouldBeCorrected) {
-                            order.setField(OrderFields.CORRECTED_DATE_TO, finishDate);
-                        } else {
-                            order.setField(OrderFields.DATE_TO, finishDate);
-                        }
-                    }
-
-                    if (shouldBeCorrected) {
-                        progressForDays.addAll(toc.getHasManyField(TechnologyOperationComponentFieldsPPS.PROGRESS_FOR_DAYS)
-                                .stream()
-                                .filter(progressForDay -> !progressForDay.getBooleanField(ProgressForDayFields.CORRECTED))
-                                .collect(Collectors.toList()));
-                    }
-                    toc.setField(TechnologyOperationComponentFieldsPPS.PROGRESS_FOR_DAYS, progressForDays);
-                    toc.getDataDefinition().save(toc);
+            }
+        }
+        updateOrderData(order);
+    }
+
+    public boolean isRegenerationPending(final Entity order) {
+        return asyncJobService.hasUnfinishedJob(REGENERATE_PPS_JOB_TYPE, getRegenerationJobEntityKey(order.getId()));
+    }
+
+    /**
+     * Regenerates production per shift of given order with its current data and saves the order with calculated finish date.
+     * Errors of calculation are added to the returned order, which is then not saved. Nothing is done when the order has been
+     * deleted in the meantime.
+     * 
+     * The order is saved with increased dates version, so forms loaded before don't write back old dates. Changes of dates of
+     * orders which aren't pending are audited as made by given worker.
+     */
+    public Entity regenerateProductionPerShift(final Long orderId, final String worker) {
+        DataDefinition orderDD = dataDefinitionService.get(OrdersConstants.PLUGIN_IDENTIFIER, OrdersConstants.MODEL_ORDER);
+        Entity order = orderDD.get(orderId);
+
+        if (order == null) {
+            return orderDD.create();
+        }
+
+        Date finishDate = order.getDateField(OrderFields.FINISH_DATE);
+        Date correctedDateTo = order.getDateField(OrderFields.CORRECTED_DATE_TO);
+        Entity productionPerShift = getProductionPerShift(order);
+
+        if (productionPerShift != null && automaticPpsParametersService.isAutomaticPlanForShiftOn()) {
+            generateProgressForDays(order, order, productionPerShift);
+        }
+        updateOrderData(order);
+
+        if (!order.isValid()) {
+            return order;
+        }
+
+        Integer datesVersion = order.getIntegerField(OrderFields.DATES_VERSION);
+
+        order.setField(OrderFields.DATES_VERSION, datesVersion == null ? 1 : datesVersion + 1);
+
+        if (OrderState.of(order).compareTo(OrderState.PENDING) != 0
+                && (isDateChanged(finishDate, order.getDateField(OrderFields.FINISH_DATE)) || isDateChanged(correctedDateTo,
+                        order.getDateField(OrderFields.CORRECTED_DATE_TO)))) {
+            order.setField(OrderFields.WORKER_TO_CHANGE, worker);
+        }
+
+        return orderDD.save(order);
+    }
+
+    private boolean isDateChanged(final Date oldDate, final Date newDate) {
+        return oldDate != null && newDate != null && !oldDate.equals(newDate);
+    }
+
+    void generateProgressForDays(final Entity order, final Entity orderFromDB, final Entity productionPerShift) {
+        boolean shouldBeCorrected = OrderState.of(order).compareTo(OrderState.PENDING) != 0;
+        List<Entity> operationComponents = order.getBelongsToField(OrderFields.TECHNOLOGY)
+                .getHasManyField(TechnologyFields.OPERATION_COMPONENTS).stream()
+                .filter(toc -> !toc.getHasManyField(TechnologyOperationComponentFieldsPPS.PROGRESS_FOR_DAYS).isEmpty())
+                .collect(Collectors.toList());
+        if (operationComponents.isEmpty() && order.getBooleanField(L_GENERATE_PPS)) {
+            fillWithRootOperation(operationComponents, orderFromDB);
+        }
+        for (Entity toc : operationComponents) {
+
+            BigDecimal plannedQuantity = order.getDecimalField(OrderFields.PLANNED_QUANTITY);
+            if (order.getBooleanField(OrderFields.FINAL_PRODUCTION_TRACKING)) {
+                plannedQuantity = basicProductionCountingService.getProducedQuantityFromBasicProductionCountings(order);
+            }
+            ProgressForDaysContainer progressForDaysContainer = new ProgressForDaysContainer();
+            progressForDaysContainer.setShouldBeCorrected(shouldBeCorrected);
+            progressForDaysContainer.setOperationComponent(toc);
+            progressForDaysContainer.setOrder(order);
+            try {
+                automaticPpsExecutorService.generateProgressForDays(progressForDaysContainer, productionPerShift);
+            } catch (Exception ex) {
+                for (ErrorMessage errorMessage : progressForDaysContainer.getErrors()) {
+                    order.addGlobalError(errorMessage.getMessage(), false, errorMessage.getVars());
                 }
+                return;
+            }
+            List<Entity> progressForDays = progressForDaysContainer.getProgressForDays();
+            if (progressForDaysContainer.isCalculationError()) {
+                productionPerShift.getGlobalErrors().forEach(
+                        error -> order.addGlobalError(error.getMessage(), false, error.getVars()));
+                return;
+            }
+
+            if (!progressForDaysContainer.isPartCalculation()) {
+                Date finishDate = automaticPpsExecutorService.calculateOrderFinishDate(order, progressForDays);
+
+                order.setField(OrderFields.FINISH_DATE, finishDate);
+
+                if (shouldBeCorrected) {
+                    order.setField(OrderFields.CORRECTED_DATE_TO, finishDate);
+                } else {
+                    order.setField(OrderFields.DATE_TO, finishDate);
+                }
+            }
 
+            if (shouldBeCorrected) {
+                progressForDays.addAll(toc.getHasManyField(TechnologyOperationComponentFieldsPPS.PROGRESS_FOR_DAYS)
+                        .stream()
+                        .filter(progressForDay -> !progressForDay.getBooleanField(ProgressForDayFields.CORRECTED))
+                        .collect(Collectors.toList()));
             }
+            toc.setField(TechnologyOperationComponentFieldsPPS.PROGRESS_FOR_DAYS, progressForDays);
+            toc.getDataDefinition().save(toc);
         }
-        updateOrderData(order);
+    }
+
+    private Entity getProductionPerShift(final Entity order) {
+        return dataDefinitionService
+                .get(ProductionPerShiftConstants.PLUGIN_IDENTIFIER, ProductionPerShiftConstants.MODEL_PRODUCTION_PER_SHIFT).find()
+                .add(SearchRestrictions.belongsTo(ProductionPerShiftFields.ORDER, order)).setMaxResults(1).uniqueResult();
+    }
+
+    private String getRegenerationJobEntityKey(final Long orderId) {
+        return OrdersConstants.MODEL_ORDER + ":" + orderId;
     }
 
     private void fillWithRootOperation(List<Entity> operationComponents, Entity orderFromDB) {
@@ -143,6 +143,9 @@ public class ProductionPerShiftDetailsHooks {
     @Autowired
     private MainTocOutputProductProvider mainTocOutputProductProvider;
 
+    @Autowired
+    private OrderHooksPPS orderHooksPPS;
+
     public void onBeforeRender(final ViewDefinitionState view) {
         Entity order = getEntityFromLookup(view, ORDER_LOOKUP_REF).get();
         OrderState orderState = OrderState.of(order);
@@ -165,10 +168,17 @@ public class ProductionPerShiftDetailsHooks {
         updateAutoFillButtonState(view);
         setupHasBeenCorrectedCheckbox(view, technology);
         checkOrderDates(view, order);
+        notifyAboutPendingRegeneration(view, order);
         markViewAsInitialized(view);
         deviationNotify(view);
     }
 
+    private void notifyAboutPendingRegeneration(final ViewDefinitionState view, final Entity order) {
+        if (orderHooksPPS.isRegenerationPending(order)) {
+            view.addMessage("productionPerShift.info.regenerationPending", MessageType.INFO, false);
+        }
+    }
+
     private void updateAutoFillButtonState(ViewDefinitionState view) {
         WindowComponent window = (WindowComponent) view.getComponentByReference("window");
         RibbonActionItem button = window.getRibbon().getGroupByName("autoFill").getItemByName("planProgressForDays");
@@ -0,0 +1,107 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productionPerShift.report;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+import java.util.Set;
+
+import org.joda.time.LocalDate;
+
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.collect.Table;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Daily progress quantities of all production per shifts of PPS report, loaded at once by
+ * {@link PPSReportXlsHelper#getDailyProgresses(java.util.List, java.util.List)}.
+ * 
+ * For every operation component the same progress for day is chosen as before: corrected one if operation component has any
+ * corrected progress, otherwise not corrected one, and the first one (by id) if there are more for a day. Progress for days have
+ * to be added in order of ids, after all operation components and corrected operation components are known.
+ */
+public class PPSReportDailyProgresses {
+
+    private final Map<Long, Long> productionPerShiftIdToOperationComponentId = Maps.newHashMap();
+
+    private final Set<Long> correctedOperationComponentIds = Sets.newHashSet();
+
+    private final Table<Long, LocalDate, Long> operationComponentIdAndDayToProgressForDayId = HashBasedTable.create();
+
+    private final Table<Long, Long, BigDecimal> progressForDayIdAndShiftIdToQuantity = HashBasedTable.create();
+
+    void addOperationComponent(final Long productionPerShiftId, final Long operationComponentId) {
+        productionPerShiftIdToOperationComponentId.put(productionPerShiftId, operationComponentId);
+    }
+
+    void addCorrectedOperationComponent(final Long operationComponentId) {
+        correctedOperationComponentIds.add(operationComponentId);
+    }
+
+    void addProgressForDay(final Long progressForDayId, final Long operationComponentId, final Boolean corrected,
+            final LocalDate day) {
+        if ((corrected == null) || (corrected != correctedOperationComponentIds.contains(operationComponentId))) {
+            return;
+        }
+
+        if (!operationComponentIdAndDayToProgressForDayId.contains(operationComponentId, day)) {
+            operationComponentIdAndDayToProgressForDayId.put(operationComponentId, day, progressForDayId);
+        }
+    }
+
+    void addDailyProgress(final Long progressForDayId, final Long shiftId, final BigDecimal quantity) {
+        if (!progressForDayIdAndShiftIdToQuantity.contains(progressForDayId, shiftId)) {
+            progressForDayIdAndShiftIdToQuantity.put(progressForDayId, shiftId, quantity);
+        }
+    }
+
+    Collection<Long> getOperationComponentIds() {
+        return productionPerShiftIdToOperationComponentId.values();
+    }
+
+    Collection<Long> getProgressForDayIds() {
+        return operationComponentIdAndDayToProgressForDayId.values();
+    }
+
+    public BigDecimal getQuantity(final Entity productionPerShift, final Date day, final Entity shift) {
+        Long operationComponentId = productionPerShiftIdToOperationComponentId.get(productionPerShift.getId());
+
+        if (operationComponentId == null) {
+            return null;
+        }
+
+        Long progressForDayId = operationComponentIdAndDayToProgressForDayId.get(operationComponentId, new LocalDate(day));
+
+        if (progressForDayId == null) {
+            return null;
+        }
+
+        return progressForDayIdAndShiftIdToQuantity.get(progressForDayId, shift.getId());
+    }
+
+}
@@ -31,14 +31,21 @@ import java.util.Arrays;
 import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import org.joda.time.DateTime;
 import org.joda.time.Days;
+import org.joda.time.LocalDate;
 import org.joda.time.LocalTime;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Sets;
 import com.qcadoo.commons.dateTime.DateRange;
 import com.qcadoo.commons.dateTime.TimeRange;
 import com.qcadoo.mes.basic.ShiftsService;
@@ -79,6 +86,39 @@ public class PPSReportXlsHelper {
 
     private static final Integer ONE = 1;
 
+    private static final int L_IDS_PER_QUERY = 1000;
+
+    private static final String L_IDS = "ids";
+
+    private static final String L_DATE_FROM = "dateFrom";
+
+    private static final String L_DATE_TO = "dateTo";
+
+    private static final String L_TECHNOLOGY_ID = "technologyId";
+
+    private static final String L_OPERATION_COMPONENT_ID = "operationComponentId";
+
+    private static final String L_PROGRESS_FOR_DAY_ID = "progressForDayId";
+
+    private static final String L_SHIFT_ID = "shiftId";
+
+    private static final String L_ROOT_OPERATION_COMPONENTS_QUERY = "select toc.id as operationComponentId, "
+            + "technology.id as technologyId from #technologies_technologyOperationComponent toc "
+            + "join toc.technology technology where toc.parent is null and technology.id in (:ids)";
+
+    private static final String L_CORRECTED_OPERATION_COMPONENTS_QUERY = "select distinct toc.id as operationComponentId "
+            + "from #productionPerShift_progressForDay pfd join pfd.technologyOperationComponent toc "
+            + "where pfd.corrected = true and toc.id in (:ids)";
+
+    private static final String L_PROGRESS_FOR_DAYS_QUERY = "select pfd.id as progressForDayId, "
+            + "toc.id as operationComponentId, pfd.corrected as corrected, pfd.actualDateOfDay as actualDateOfDay "
+            + "from #productionPerShift_progressForDay pfd join pfd.technologyOperationComponent toc "
+            + "where toc.id in (:ids) and pfd.actualDateOfDay >= :dateFrom and pfd.actualDateOfDay <= :dateTo order by pfd.id";
+
+    private static final String L_DAILY_PROGRESS_QUANTITIES_QUERY = "select pfd.id as progressForDayId, shift.id as shiftId, "
+            + "dp.quantity as quantity from #productionPerShift_dailyProgress dp join dp.progressForDay pfd "
+            + "join dp.shift shift where pfd.id in (:ids) order by dp.id";
+
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
@@ -192,7 +232,86 @@ public class PPSReportXlsHelper {
         return Days.daysBetween(dateFrom.toDateMidnight(), dateTo.toDateMidnight()).getDays();
     }
 
-    public Entity getDailyProgress(final Entity productionPerShift, final Date day, final Entity shift) {
+    /**
+     * Loads daily progress quantities of given production per shifts for given days with a few queries, instead of querying
+     * progress for day and daily progress for every cell of the report.
+     */
+    public PPSReportDailyProgresses getDailyProgresses(final List<Entity> productionPerShifts, final List<DateTime> days) {
+        PPSReportDailyProgresses dailyProgresses = new PPSReportDailyProgresses();
+        Multimap<Long, Long> technologyIdToProductionPerShiftIds = ArrayListMultimap.create();
+
+        for (Entity productionPerShift : productionPerShifts) {
+            Entity technology = getOrder(productionPerShift).getBelongsToField(OrderFields.TECHNOLOGY);
+
+            if (technology != null) {
+                technologyIdToProductionPerShiftIds.put(technology.getId(), productionPerShift.getId());
+            }
+        }
+
+        DataDefinition operationComponentDD = dataDefinitionService.get(TechnologiesConstants.PLUGIN_IDENTIFIER,
+                TechnologiesConstants.MODEL_TECHNOLOGY_OPERATION_COMPONENT);
+
+        for (List<Long> technologyIds : Iterables.partition(technologyIdToProductionPerShiftIds.keySet(), L_IDS_PER_QUERY)) {
+            List<Entity> rootOperationComponents = operationComponentDD.find(L_ROOT_OPERATION_COMPONENTS_QUERY)
+                    .setParameterList(L_IDS, technologyIds).list().getEntities();
+
+            for (Entity rootOperationComponent : rootOperationComponents) {
+                for (Long productionPerShiftId : technologyIdToProductionPerShiftIds.get((Long) rootOperationComponent
+                        .getField(L_TECHNOLOGY_ID))) {
+                    dailyProgresses.addOperationComponent(productionPerShiftId,
+                            (Long) rootOperationComponent.getField(L_OPERATION_COMPONENT_ID));
+                }
+            }
+        }
+
+        DataDefinition progressForDayDD = dataDefinitionService.get(ProductionPerShiftConstants.PLUGIN_IDENTIFIER,
+                ProductionPerShiftConstants.MODEL_PROGRESS_FOR_DAY);
+        Set<Long> operationComponentIds = Sets.newHashSet(dailyProgresses.getOperationComponentIds());
+
+        for (List<Long> ids : Iterables.partition(operationComponentIds, L_IDS_PER_QUERY)) {
+            List<Entity> correctedOperationComponents = progressForDayDD.find(L_CORRECTED_OPERATION_COMPONENTS_QUERY)
+                    .setParameterList(L_IDS, ids).list().getEntities();
+
+            for (Entity correctedOperationComponent : correctedOperationComponents) {
+                dailyProgresses.addCorrectedOperationComponent((Long) correctedOperationComponent
+                        .getField(L_OPERATION_COMPONENT_ID));
+            }
+        }
+
+        for (List<Long> ids : Iterables.partition(operationComponentIds, L_IDS_PER_QUERY)) {
+            List<Entity> progressForDays = progressForDayDD.find(L_PROGRESS_FOR_DAYS_QUERY).setParameterList(L_IDS, ids)
+                    .setTimestamp(L_DATE_FROM, days.get(0).toDate()).setTimestamp(L_DATE_TO, days.get(days.size() - 1).toDate())
+                    .list().getEntities();
+
+            for (Entity progressForDay : progressForDays) {
+                dailyProgresses.addProgressForDay((Long) progressForDay.getField(L_PROGRESS_FOR_DAY_ID),
+                        (Long) progressForDay.getField(L_OPERATION_COMPONENT_ID),
+                        (Boolean) progressForDay.getField(ProgressForDayFields.CORRECTED),
+                        new LocalDate(progressForDay.getDateField(ProgressForDayFields.ACTUAL_DATE_OF_DAY)));
+            }
+        }
+
+        DataDefinition dailyProgressDD = dataDefinitionService.get(ProductionPerShiftConstants.PLUGIN_IDENTIFIER,
+                ProductionPerShiftConstants.MODEL_DAILY_PROGRESS);
+
+        for (List<Long> ids : Iterables.partition(Lists.newArrayList(dailyProgresses.getProgressForDayIds()), L_IDS_PER_QUERY)) {
+            List<Entity> quantities = dailyProgressDD.find(L_DAILY_PROGRESS_QUANTITIES_QUERY).setParameterList(L_IDS, ids).list()
+                    .getEntities();
+
+            for (Entity quantity : quantities) {
+                dailyProgresses.addDailyProgress((Long) quantity.getField(L_PROGRESS_FOR_DAY_ID),
+                        (Long) quantity.getField(L_SHIFT_ID), quantity.getDecimalField(DailyProgressFields.QUANTITY));
+            }
+        }
+
+        return dailyProgresses;
+    }
+
+    /**
+     * Per cell lookup used by the report before {@link #getDailyProgresses(List, List)}, kept as a reference for the
+     * set-based queries.
+     */
+    Entity getDailyProgress(final Entity productionPerShift, final Date day, final Entity shift) {
         Entity order = getOrder(productionPerShift);
         Entity technology = order.getBelongsToField(OrderFields.TECHNOLOGY);
         Entity toc = technology.getTreeField(TechnologyFields.OPERATION_COMPONENTS).getRoot();
@@ -23,6 +23,7 @@
  */
 package com.qcadoo.mes.productionPerShift.report.print;
 
+import java.math.BigDecimal;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Collections;
@@ -55,9 +56,9 @@ import com.qcadoo.mes.basic.shift.Shift;
 import com.qcadoo.mes.lineChangeoverNorms.constants.LineChangeoverNormsFields;
 import com.qcadoo.mes.orders.constants.OrderFields;
 import com.qcadoo.mes.productionLines.constants.ProductionLineFields;
-import com.qcadoo.mes.productionPerShift.constants.DailyProgressFields;
 import com.qcadoo.mes.productionPerShift.constants.PPSReportConstants;
 import com.qcadoo.mes.productionPerShift.constants.PPSReportFields;
+import com.qcadoo.mes.productionPerShift.report.PPSReportDailyProgresses;
 import com.qcadoo.mes.productionPerShift.report.PPSReportXlsHelper;
 import com.qcadoo.mes.productionPerShift.report.columns.ReportColumn;
 import com.qcadoo.mes.productionPerShift.report.print.utils.DayShiftHolder;
@@ -236,6 +237,7 @@ public class PPSReportXlsService extends XlsDocumentService {
 
         List<Entity> productionPerShifts = ppsReportXlsHelper.getProductionPerShiftForReport(report);
         List<Entity> shifts = ppsReportXlsHelper.getShifts();
+        List<DateTime> days = ppsReportXlsHelper.getDaysBetweenGivenDates(report);
         Shift shiftFirst = new Shift(shifts.get(0));
         List<TimeRange> ranges = shiftFirst.findWorkTimeAt(new LocalDate(report.getDateField(PPSReportFields.DATE_FROM)));
         LocalTime startTime = ranges.get(0).getFrom();
@@ -246,6 +248,8 @@ public class PPSReportXlsService extends XlsDocumentService {
 
         Collections.sort(productionPerShifts, new EntityProductionPerShiftsComparator());
 
+        PPSReportDailyProgresses dailyProgresses = ppsReportXlsHelper.getDailyProgresses(productionPerShifts, days);
+
         String oldProductionLineNumber = "";
         String newProductionLineNumber;
 
@@ -278,7 +282,7 @@ public class PPSReportXlsService extends XlsDocumentService {
                     colIndex++;
                 }
                 isFirstRow = false;
-                addSeriesForChangeOver(sheet, report, row, changeover, order, styleContainer, columns);
+                addSeriesForChangeOver(sheet, shifts, days, row, changeover, order, styleContainer, columns);
             }
             HSSFRow row = sheet.createRow(rowNum++);
             int colIndex = 0;
@@ -307,7 +311,8 @@ public class PPSReportXlsService extends XlsDocumentService {
                 colIndex++;
             }
 
-            addSeriesOfDailyProgress(sheet, report, row, productionPerShift, greyBg, styleContainer, columns);
+            addSeriesOfDailyProgress(sheet, shifts, days, dailyProgresses, row, productionPerShift, greyBg, styleContainer,
+                    columns);
 
             oldProductionLineNumber = newProductionLineNumber;
         }
@@ -322,25 +327,20 @@ public class PPSReportXlsService extends XlsDocumentService {
         return startOrderDate.after(date.toDate());
     }
 
-    private void addSeriesOfDailyProgress(final HSSFSheet sheet, final Entity entity, final HSSFRow row,
-            final Entity productionPerShift, final boolean rowNumberIsEven, PPSReportXlsStyleContainer styleContainer,
-            List<ReportColumn> columns) {
-
-        List<Entity> shifts = ppsReportXlsHelper.getShifts();
-        List<DateTime> days = ppsReportXlsHelper.getDaysBetweenGivenDates(entity);
-
+    private void addSeriesOfDailyProgress(final HSSFSheet sheet, final List<Entity> shifts, final List<DateTime> days,
+            final PPSReportDailyProgresses dailyProgresses, final HSSFRow row, final Entity productionPerShift,
+            final boolean rowNumberIsEven, PPSReportXlsStyleContainer styleContainer, List<ReportColumn> columns) {
         int columnNumber = columns.size();
 
         for (DateTime day : days) {
             for (Entity shift : shifts) {
                 HSSFCell cellDailyProgress = row.createCell(columnNumber);
-                Entity dailyProgress = ppsReportXlsHelper.getDailyProgress(productionPerShift, day.toDate(), shift);
+                BigDecimal quantity = dailyProgresses.getQuantity(productionPerShift, day.toDate(), shift);
 
-                if (dailyProgress == null) {
+                if (quantity == null) {
                     cellDailyProgress.setCellValue("");
                 } else {
-                    cellDailyProgress.setCellValue(numberService
-                            .formatWithMinimumFractionDigits(dailyProgress.getDecimalField(DailyProgressFields.QUANTITY), 0));
+                    cellDailyProgress.setCellValue(numberService.formatWithMinimumFractionDigits(quantity, 0));
                 }
 
                 if (rowNumberIsEven) {
@@ -356,11 +356,10 @@ public class PPSReportXlsService extends XlsDocumentService {
         }
     }
 
-    private void addSeriesForChangeOver(final HSSFSheet sheet, final Entity entity, final HSSFRow row, final Entity changeover,
-            final Entity order, PPSReportXlsStyleContainer styleContainer, List<ReportColumn> columns) {
+    private void addSeriesForChangeOver(final HSSFSheet sheet, final List<Entity> shifts, final List<DateTime> days,
+            final HSSFRow row, final Entity changeover, final Entity order, PPSReportXlsStyleContainer styleContainer,
+            List<ReportColumn> columns) {
         Map<Integer, DayShiftHolder> mapCells = Maps.newHashMap();
-        List<Entity> shifts = ppsReportXlsHelper.getShifts();
-        List<DateTime> days = ppsReportXlsHelper.getDaysBetweenGivenDates(entity);
         Date startDateOrder = order.getDateField(OrderFields.START_DATE);
         Shift shiftFirst = new Shift(shifts.get(0));
         List<TimeRange> ranges = shiftFirst.findWorkTimeAt(days.get(0).toLocalDate());
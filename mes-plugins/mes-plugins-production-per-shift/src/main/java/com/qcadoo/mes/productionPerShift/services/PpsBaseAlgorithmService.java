@@ -3,8 +3,13 @@ package com.qcadoo.mes.productionPerShift.services;
 import com.google.common.base.Function;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.qcadoo.commons.dateTime.TimeRange;
 import com.qcadoo.localization.api.utils.DateUtils;
+import com.qcadoo.mes.basic.constants.ShiftFields;
+import com.qcadoo.mes.basic.constants.ShiftTimetableExceptionFields;
+import com.qcadoo.mes.basic.constants.TimetableExceptionType;
 import com.qcadoo.mes.basic.shift.Shift;
 import com.qcadoo.mes.basicProductionCounting.BasicProductionCountingService;
 import com.qcadoo.mes.orders.constants.OrderFields;
@@ -25,6 +30,8 @@ import com.qcadoo.model.api.NumberService;
 import com.qcadoo.model.api.validators.ErrorMessage;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
+import org.joda.time.Days;
+import org.joda.time.LocalDate;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import java.math.BigDecimal;
@@ -32,6 +39,8 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
 
 public abstract class PpsBaseAlgorithmService {
 
@@ -86,6 +95,10 @@ public abstract class PpsBaseAlgorithmService {
         }
         calculateRegisteredQuantity(progressForDaysContainer, order, operationComponent, plannedQuantity);
 
+        Map<Long, List<Entity>> timetableExceptions = getTimetableExceptions(shifts);
+        Set<Integer> workingDaysOfWeek = getWorkingDaysOfWeek(shifts);
+        NavigableSet<LocalDate> additionalDaysToPlan = getAdditionalDaysToPlan(timetableExceptions);
+
         BigDecimal alreadyPlannedQuantity = BigDecimal.ZERO;
         List<Entity> progressForDays = Lists.newLinkedList();
 
@@ -97,9 +110,20 @@ public abstract class PpsBaseAlgorithmService {
         while (progressForDaysContainer.getPlannedQuantity().compareTo(BigDecimal.ZERO) > 0
                 || progressForDaysContainer.getAlreadyRegisteredQuantity().compareTo(BigDecimal.ZERO) > 0) {
 
+            LocalDate nextDayToPlan = findNextDayToPlan(currentDate.toLocalDate(), workingDaysOfWeek, additionalDaysToPlan);
+            if (nextDayToPlan == null) {
+                progressForDaysContainer.addError(new ErrorMessage(
+                        "productionPerShift.automaticAlgorithm.productionLine.shiftsWithoutWorkTime", false, productionLine
+                                .getStringField(ProductionLineFields.NUMBER)));
+                throw new IllegalStateException("No work time in shifts assigned to production line");
+            }
+            int skippedDays = Days.daysBetween(currentDate.toLocalDate(), nextDayToPlan).getDays();
+            currentDate = currentDate.plusDays(skippedDays);
+            realizationDayNumber += skippedDays;
+
             DailyProgressContainer dailyProgressContainer = fillDailyProgressWithShifts(progressForDaysContainer,
-                    productionPerShift, order, shifts, currentDate, orderStartDate, shouldBeCorrected, progressForDays.size(),
-                    alreadyPlannedQuantity);
+                    productionPerShift, order, shifts, timetableExceptions, currentDate, orderStartDate, shouldBeCorrected,
+                    progressForDays.size(), alreadyPlannedQuantity);
             if (dailyProgressContainer.isCalculationError()) {
                 progressForDaysContainer.setCalculationError(true);
                 return;
@@ -118,8 +142,9 @@ public abstract class PpsBaseAlgorithmService {
     }
 
     private DailyProgressContainer fillDailyProgressWithShifts(ProgressForDaysContainer progressForDaysContainer,
-            Entity productionPerShift, Entity order, List<Shift> shifts, DateTime dateOfDay, Date orderStartDate,
-            boolean shouldBeCorrected, int progressForDayQuantity, BigDecimal alreadyPlannedQuantity) {
+            Entity productionPerShift, Entity order, List<Shift> shifts, Map<Long, List<Entity>> timetableExceptions,
+            DateTime dateOfDay, Date orderStartDate, boolean shouldBeCorrected, int progressForDayQuantity,
+            BigDecimal alreadyPlannedQuantity) {
         DailyProgressContainer dailyProgressContainer = new DailyProgressContainer();
         List<Entity> dailyProgressWithShifts = Lists.newLinkedList();
 
@@ -147,7 +172,7 @@ public abstract class PpsBaseAlgorithmService {
                 DateTime orderStartDateDT = new DateTime(orderStartDate, DateTimeZone.getDefault());
                 BigDecimal shiftEfficiency = BigDecimal.ZERO;
                 int time = 0;
-                for (DateTimeRange range : getShiftWorkDateTimes(shift, dateOfDay, orderStartDate)) {
+                for (DateTimeRange range : getShiftWorkDateTimes(shift, timetableExceptions.get(shift.getId()), dateOfDay)) {
                     if (orderStartDate.after(dateOfDay.toDate())) {
                         range = range.trimBefore(orderStartDateDT);
                     }
@@ -182,7 +207,8 @@ public abstract class PpsBaseAlgorithmService {
         return dailyProgressContainer;
     }
 
-    private List<DateTimeRange> getShiftWorkDateTimes(final Shift shift, DateTime dateOfDay, final Date orderStartDate) {
+    private List<DateTimeRange> getShiftWorkDateTimes(final Shift shift, final List<Entity> timetableExceptions,
+            DateTime dateOfDay) {
         DateTime dateOfDayDT = dateOfDay;
         List<TimeRange> shiftWorkTime = Lists.newArrayList();
         List<DateTimeRange> shiftWorkDateTime = Lists.newArrayList();
@@ -193,11 +219,74 @@ public abstract class PpsBaseAlgorithmService {
             shiftWorkDateTime.add(new DateTimeRange(dateOfDayDT, range));
         }
 
-        shiftWorkDateTime = ppsTimeHelper.manageExceptions(shiftWorkDateTime, shift.getEntity(), dateOfDay.toDate());
+        shiftWorkDateTime = ppsTimeHelper.manageExceptions(shiftWorkDateTime, timetableExceptions, dateOfDay.toDate());
 
         return shiftWorkDateTime;
     }
 
+    private Map<Long, List<Entity>> getTimetableExceptions(final List<Shift> shifts) {
+        Map<Long, List<Entity>> timetableExceptions = Maps.newHashMap();
+        for (Shift shift : shifts) {
+            timetableExceptions.put(shift.getId(),
+                    Lists.newArrayList(shift.getEntity().getHasManyField(ShiftFields.TIMETABLE_EXCEPTIONS)));
+        }
+        return timetableExceptions;
+    }
+
+    private Set<Integer> getWorkingDaysOfWeek(final List<Shift> shifts) {
+        Set<Integer> workingDaysOfWeek = Sets.newHashSet();
+        for (int dayOfWeek = 1; dayOfWeek <= 7; dayOfWeek++) {
+            for (Shift shift : shifts) {
+                if (shift.worksAt(dayOfWeek)) {
+                    workingDaysOfWeek.add(dayOfWeek);
+                    break;
+                }
+            }
+        }
+        return workingDaysOfWeek;
+    }
+
+    /**
+     * Days outside of the shifts' working week that may still get a daily progress: days with a work time exception and days
+     * with already registered production tracking.
+     */
+    private NavigableSet<LocalDate> getAdditionalDaysToPlan(final Map<Long, List<Entity>> timetableExceptions) {
+        NavigableSet<LocalDate> additionalDays = Sets.newTreeSet();
+        for (List<Entity> exceptions : timetableExceptions.values()) {
+            for (Entity exception : exceptions) {
+                if (TimetableExceptionType.WORK_TIME.getStringValue().equals(
+                        exception.getStringField(ShiftTimetableExceptionFields.TYPE))) {
+                    LocalDate day = LocalDate.fromDateFields(exception.getDateField(ShiftTimetableExceptionFields.FROM_DATE));
+                    if (exception.getBooleanField(ShiftTimetableExceptionFields.RELATES_TO_PREV_DAY)) {
+                        day = day.minusDays(1);
+                    }
+                    additionalDays.add(day);
+                }
+            }
+        }
+        if (dailyProgressesWithTrackingRecords != null) {
+            for (DailyProgressKey key : dailyProgressesWithTrackingRecords.keySet()) {
+                additionalDays.add(key.getDateOfDay().toLocalDate());
+            }
+        }
+        return additionalDays;
+    }
+
+    private LocalDate findNextDayToPlan(final LocalDate fromDay, final Set<Integer> workingDaysOfWeek,
+            final NavigableSet<LocalDate> additionalDays) {
+        LocalDate nextDay = additionalDays.ceiling(fromDay);
+        if (!workingDaysOfWeek.isEmpty()) {
+            LocalDate nextWorkingDay = fromDay;
+            while (!workingDaysOfWeek.contains(nextWorkingDay.getDayOfWeek())) {
+                nextWorkingDay = nextWorkingDay.plusDays(1);
+            }
+            if (nextDay == null || nextWorkingDay.isBefore(nextDay)) {
+                nextDay = nextWorkingDay;
+            }
+        }
+        return nextDay;
+    }
+
     private Entity createComponent(final int dayNumber, Date realizationDate, final List<Entity> dailyProgress,
             boolean shouldBeCorrected) {
         Entity progressForDay = dataDefinitionService.get(ProductionPerShiftConstants.PLUGIN_IDENTIFIER,
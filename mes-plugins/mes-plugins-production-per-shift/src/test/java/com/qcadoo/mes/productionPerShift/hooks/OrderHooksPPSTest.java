@@ -0,0 +1,270 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productionPerShift.hooks;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.basic.jobs.AsyncJobService;
+import com.qcadoo.mes.orders.constants.OrderFields;
+import com.qcadoo.mes.orders.constants.OrdersConstants;
+import com.qcadoo.mes.orders.states.constants.OrderState;
+import com.qcadoo.mes.productionPerShift.constants.ProductionPerShiftConstants;
+import com.qcadoo.mes.productionPerShift.constants.TechnologyOperationComponentFieldsPPS;
+import com.qcadoo.mes.productionPerShift.domain.ProgressForDaysContainer;
+import com.qcadoo.mes.productionPerShift.services.AutomaticPpsExecutorService;
+import com.qcadoo.mes.productionPerShift.services.AutomaticPpsParametersService;
+import com.qcadoo.mes.technologies.constants.TechnologyFields;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.EntityList;
+import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.model.api.search.SearchCriterion;
+
+public class OrderHooksPPSTest {
+
+    private static final Long L_ORDER_ID = 1L;
+
+    private static final String L_JOB_ENTITY_KEY = "order:1";
+
+    private static final String L_WORKER = "planner";
+
+    private static final DateTime L_START_DATE = new DateTime(2017, 5, 8, 6, 0);
+
+    private OrderHooksPPS orderHooksPPS;
+
+    @Mock
+    private DataDefinitionService dataDefinitionService;
+
+    @Mock
+    private AutomaticPpsExecutorService automaticPpsExecutorService;
+
+    @Mock
+    private AutomaticPpsParametersService automaticPpsParametersService;
+
+    @Mock
+    private AsyncJobService asyncJobService;
+
+    @Mock
+    private DataDefinition orderDD, productionPerShiftDD, operationComponentDD;
+
+    @Mock
+    private SearchCriteriaBuilder productionPerShiftCriteria;
+
+    @Mock
+    private Entity productionPerShift, technology, operationComponent;
+
+    private final Map<String, List<Entity>> generatedProgressForDays = Maps.newHashMap();
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        orderHooksPPS = new OrderHooksPPS();
+        ReflectionTestUtils.setField(orderHooksPPS, "dataDefinitionService", dataDefinitionService);
+        ReflectionTestUtils.setField(orderHooksPPS, "automaticPpsExecutorService", automaticPpsExecutorService);
+        ReflectionTestUtils.setField(orderHooksPPS, "automaticPpsParametersService", automaticPpsParametersService);
+        ReflectionTestUtils.setField(orderHooksPPS, "asyncJobService", asyncJobService);
+
+        given(dataDefinitionService.get(OrdersConstants.PLUGIN_IDENTIFIER, OrdersConstants.MODEL_ORDER)).willReturn(orderDD);
+        given(dataDefinitionService.get(ProductionPerShiftConstants.PLUGIN_IDENTIFIER,
+                ProductionPerShiftConstants.MODEL_PRODUCTION_PER_SHIFT)).willReturn(productionPerShiftDD);
+        given(productionPerShiftDD.find()).willReturn(productionPerShiftCriteria);
+        given(productionPerShiftCriteria.add(any(SearchCriterion.class))).willReturn(productionPerShiftCriteria);
+        given(productionPerShiftCriteria.setMaxResults(1)).willReturn(productionPerShiftCriteria);
+        given(productionPerShiftCriteria.uniqueResult()).willReturn(productionPerShift);
+        given(automaticPpsParametersService.isAutomaticPlanForShiftOn()).willReturn(true);
+
+        EntityList operationComponents = mockEntityList(operationComponent);
+        EntityList progressForDays = mockEntityList(mock(Entity.class));
+        given(technology.getHasManyField(TechnologyFields.OPERATION_COMPONENTS)).willReturn(operationComponents);
+        given(operationComponent.getHasManyField(TechnologyOperationComponentFieldsPPS.PROGRESS_FOR_DAYS)).willReturn(
+                progressForDays);
+        given(operationComponent.getDataDefinition()).willReturn(operationComponentDD);
+
+        // progress depends only on order data, the same data gives the same progress for days
+        given(automaticPpsExecutorService.calculateOrderFinishDate(any(Entity.class), anyListOf(Entity.class))).willAnswer(
+                invocation -> ((Entity) invocation.getArguments()[0]).getDateField(OrderFields.START_DATE));
+        willAnswer(invocation -> {
+            ProgressForDaysContainer container = (ProgressForDaysContainer) invocation.getArguments()[0];
+            Entity order = container.getOrder();
+            String key = order.getDateField(OrderFields.START_DATE) + ";" + order.getDecimalField(OrderFields.PLANNED_QUANTITY);
+
+            if (!generatedProgressForDays.containsKey(key)) {
+                generatedProgressForDays.put(key, Lists.newArrayList(mock(Entity.class), mock(Entity.class)));
+            }
+
+            container.setProgressForDays(Lists.newArrayList(generatedProgressForDays.get(key)));
+
+            return null;
+        }).given(automaticPpsExecutorService).generateProgressForDays(any(ProgressForDaysContainer.class), eq(productionPerShift));
+    }
+
+    @Test
+    public final void shouldQueueRegenerationInsteadOfGeneratingWhenOrderIsSaved() {
+        // given
+        Entity orderFromDB = mockOrder(L_START_DATE, false);
+        given(orderDD.get(L_ORDER_ID)).willReturn(orderFromDB);
+
+        // when
+        for (int i = 1; i <= 10; i++) {
+            orderHooksPPS.regenerateProductionPerShift(orderDD, mockOrder(L_START_DATE.plusHours(i), false));
+        }
+
+        // then
+        verify(asyncJobService, times(10)).submitCoalesced(OrderHooksPPS.REGENERATE_PPS_JOB_TYPE, L_ORDER_ID, L_JOB_ENTITY_KEY);
+        verify(automaticPpsExecutorService, never()).generateProgressForDays(any(ProgressForDaysContainer.class),
+                any(Entity.class));
+        verify(operationComponentDD, never()).save(any(Entity.class));
+    }
+
+    @Test
+    public final void shouldNotQueueRegenerationWhenOrderFieldsDidNotChange() {
+        // given
+        given(orderDD.get(L_ORDER_ID)).willReturn(mockOrder(L_START_DATE, false));
+
+        // when
+        orderHooksPPS.regenerateProductionPerShift(orderDD, mockOrder(L_START_DATE, false));
+
+        // then
+        verify(asyncJobService, never()).submitCoalesced(any(String.class), any(Long.class), any(String.class));
+    }
+
+    @Test
+    public final void shouldRegenerateSameProductionPerShiftAsSynchronousSave() {
+        // given
+        DataDefinition synchronousOrderDD = mock(DataDefinition.class);
+        given(synchronousOrderDD.get(L_ORDER_ID)).willReturn(mockOrder(L_START_DATE, false));
+
+        Entity synchronouslySavedOrder = mockOrder(L_START_DATE.plusHours(10), true);
+        Entity finalOrderFromDB = mockOrder(L_START_DATE.plusHours(10), false);
+        given(orderDD.get(L_ORDER_ID)).willReturn(finalOrderFromDB);
+        given(orderDD.save(finalOrderFromDB)).willReturn(finalOrderFromDB);
+
+        // when
+        orderHooksPPS.regenerateProductionPerShift(synchronousOrderDD, synchronouslySavedOrder);
+        Entity regeneratedOrder = orderHooksPPS.regenerateProductionPerShift(L_ORDER_ID, L_WORKER);
+
+        // then
+        assertEquals(finalOrderFromDB, regeneratedOrder);
+        verify(orderDD).save(finalOrderFromDB);
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Entity>> progressForDaysCaptor = (ArgumentCaptor<List<Entity>>) (ArgumentCaptor<?>) ArgumentCaptor
+                .forClass(List.class);
+        verify(operationComponent, times(2)).setField(eq(TechnologyOperationComponentFieldsPPS.PROGRESS_FOR_DAYS),
+                progressForDaysCaptor.capture());
+        verify(operationComponentDD, times(2)).save(operationComponent);
+        assertEquals(progressForDaysCaptor.getAllValues().get(0), progressForDaysCaptor.getAllValues().get(1));
+
+        assertEquals(getFinishDate(synchronouslySavedOrder), getFinishDate(finalOrderFromDB));
+        assertEquals(L_START_DATE.plusHours(10).toDate(), getFinishDate(finalOrderFromDB));
+
+        verify(finalOrderFromDB).setField(OrderFields.DATES_VERSION, 1);
+        verify(finalOrderFromDB, never()).setField(eq(OrderFields.WORKER_TO_CHANGE), any());
+    }
+
+    @Test
+    public final void shouldRegenerateOrderWhichIsNotPendingAsWorkerWhoSubmittedJob() {
+        // given
+        Date finishDate = L_START_DATE.toDate();
+        Date calculatedFinishDate = L_START_DATE.plusHours(10).toDate();
+
+        Entity order = mockOrder(L_START_DATE.plusHours(10), false);
+        given(order.getStringField(OrderFields.STATE)).willReturn(OrderState.IN_PROGRESS.getStringValue());
+        given(order.getDateField(OrderFields.FINISH_DATE)).willReturn(finishDate, calculatedFinishDate);
+        given(order.getIntegerField(OrderFields.DATES_VERSION)).willReturn(2);
+        given(orderDD.get(L_ORDER_ID)).willReturn(order);
+        given(orderDD.save(order)).willReturn(order);
+
+        // when
+        Entity regeneratedOrder = orderHooksPPS.regenerateProductionPerShift(L_ORDER_ID, L_WORKER);
+
+        // then
+        assertEquals(order, regeneratedOrder);
+
+        verify(order).setField(OrderFields.FINISH_DATE, calculatedFinishDate);
+        verify(order).setField(OrderFields.CORRECTED_DATE_TO, calculatedFinishDate);
+        verify(order, never()).setField(eq(OrderFields.DATE_TO), any());
+        verify(order).setField(OrderFields.DATES_VERSION, 3);
+        verify(order).setField(OrderFields.WORKER_TO_CHANGE, L_WORKER);
+        verify(orderDD).save(order);
+    }
+
+    private Date getFinishDate(final Entity order) {
+        ArgumentCaptor<Date> finishDateCaptor = ArgumentCaptor.forClass(Date.class);
+        verify(order).setField(eq(OrderFields.FINISH_DATE), finishDateCaptor.capture());
+        verify(order).setField(OrderFields.DATE_TO, finishDateCaptor.getValue());
+
+        return finishDateCaptor.getValue();
+    }
+
+    private Entity mockOrder(final DateTime startDate, final boolean generatePPS) {
+        Entity order = mock(Entity.class);
+
+        given(order.getId()).willReturn(L_ORDER_ID);
+        given(order.getDateField(OrderFields.START_DATE)).willReturn(startDate.toDate());
+        given(order.getDecimalField(OrderFields.PLANNED_QUANTITY)).willReturn(BigDecimal.TEN);
+        given(order.getStringField(OrderFields.STATE)).willReturn(OrderState.PENDING.getStringValue());
+        given(order.getBelongsToField(OrderFields.TECHNOLOGY)).willReturn(technology);
+        given(order.getBooleanField("generatePPS")).willReturn(generatePPS);
+        given(order.isValid()).willReturn(true);
+
+        return order;
+    }
+
+    private EntityList mockEntityList(final Entity... entities) {
+        EntityList entityList = mock(EntityList.class);
+
+        given(entityList.isEmpty()).willReturn(entities.length == 0);
+        given(entityList.stream()).willAnswer(invocation -> Lists.newArrayList(entities).stream());
+
+        return entityList;
+    }
+
+}
@@ -0,0 +1,449 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productionPerShift.report;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollection;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.contains;
+import static org.mockito.Matchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.orders.constants.OrderFields;
+import com.qcadoo.mes.productionPerShift.constants.DailyProgressFields;
+import com.qcadoo.mes.productionPerShift.constants.ProductionPerShiftConstants;
+import com.qcadoo.mes.productionPerShift.constants.ProductionPerShiftFields;
+import com.qcadoo.mes.productionPerShift.constants.ProgressForDayFields;
+import com.qcadoo.mes.technologies.constants.TechnologiesConstants;
+import com.qcadoo.mes.technologies.constants.TechnologyFields;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.EntityList;
+import com.qcadoo.model.api.EntityTree;
+import com.qcadoo.model.api.EntityTreeNode;
+import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.model.api.search.SearchCriterion;
+import com.qcadoo.model.api.search.SearchQueryBuilder;
+import com.qcadoo.model.api.search.SearchRestrictions;
+import com.qcadoo.model.api.search.SearchResult;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(SearchRestrictions.class)
+public class PPSReportDailyProgressesTest {
+
+    private static final int TECHNOLOGIES = 20;
+
+    private static final int PRODUCTION_PER_SHIFTS = 60;
+
+    private static final int SHIFTS = 3;
+
+    private static final int DAYS = 31;
+
+    private static final DateTime DATE_FROM = new DateTime(2016, 3, 1, 0, 0);
+
+    private PPSReportXlsHelper ppsReportXlsHelper;
+
+    @Mock
+    private DataDefinitionService dataDefinitionService;
+
+    @Mock
+    private DataDefinition operationComponentDD, progressForDayDD, dailyProgressDD;
+
+    private final Random random = new Random(42);
+
+    private final Map<Long, Long> technologyIdToRootId = Maps.newHashMap();
+
+    private final Map<SearchCriterion, Map.Entry<String, Object>> restrictions = Maps.newHashMap();
+
+    private final List<ProgressForDayRow> progressForDayRows = Lists.newArrayList();
+
+    private final List<DailyProgressRow> dailyProgressRows = Lists.newArrayList();
+
+    private final List<Entity> productionPerShifts = Lists.newArrayList();
+
+    private final List<Entity> shifts = Lists.newArrayList();
+
+    private final List<DateTime> days = Lists.newArrayList();
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        ppsReportXlsHelper = new PPSReportXlsHelper();
+        ReflectionTestUtils.setField(ppsReportXlsHelper, "dataDefinitionService", dataDefinitionService);
+
+        given(dataDefinitionService.get(TechnologiesConstants.PLUGIN_IDENTIFIER,
+                TechnologiesConstants.MODEL_TECHNOLOGY_OPERATION_COMPONENT)).willReturn(operationComponentDD);
+        given(dataDefinitionService.get(ProductionPerShiftConstants.PLUGIN_IDENTIFIER,
+                ProductionPerShiftConstants.MODEL_PROGRESS_FOR_DAY)).willReturn(progressForDayDD);
+        given(dataDefinitionService.get(ProductionPerShiftConstants.PLUGIN_IDENTIFIER,
+                ProductionPerShiftConstants.MODEL_DAILY_PROGRESS)).willReturn(dailyProgressDD);
+
+        generateDataset();
+
+        stubQuery(operationComponentDD, anyString(), parameters -> technologyIdToRootId.entrySet().stream()
+                .filter(e -> getIds(parameters).contains(e.getKey()))
+                .map(e -> row("operationComponentId", e.getValue(), "technologyId", e.getKey())).collect(Collectors.toList()));
+        stubQuery(progressForDayDD, startsWith("select distinct"), parameters -> progressForDayRows.stream()
+                .filter(r -> Boolean.TRUE.equals(r.corrected) && getIds(parameters).contains(r.operationComponentId))
+                .map(r -> r.operationComponentId).distinct().map(id -> row("operationComponentId", id))
+                .collect(Collectors.toList()));
+        stubQuery(progressForDayDD, contains("pfd.actualDateOfDay >= :dateFrom"), parameters -> progressForDayRows.stream()
+                .filter(r -> getIds(parameters).contains(r.operationComponentId))
+                .filter(r -> !r.day.toDate().before((Date) parameters.get("dateFrom"))
+                        && !r.day.toDate().after((Date) parameters.get("dateTo")))
+                .map(ProgressForDayRow::toEntity).collect(Collectors.toList()));
+        stubQuery(dailyProgressDD, anyString(), parameters -> dailyProgressRows.stream()
+                .filter(r -> getIds(parameters).contains(r.progressForDayId)).map(DailyProgressRow::toEntity)
+                .collect(Collectors.toList()));
+
+        PowerMockito.mockStatic(SearchRestrictions.class);
+
+        given(SearchRestrictions.belongsTo(anyString(), any(Entity.class))).willAnswer(
+                invocation -> restriction((String) invocation.getArguments()[0], invocation.getArguments()[1]));
+        given(SearchRestrictions.eq(anyString(), any())).willAnswer(
+                invocation -> restriction((String) invocation.getArguments()[0], invocation.getArguments()[1]));
+
+        given(progressForDayDD.find()).willAnswer(invocation -> stubCriteria(restrictions -> progressForDayRows.stream()
+                .filter(r -> r.matches(restrictions)).map(ProgressForDayRow::toProgressForDay).collect(Collectors.toList())));
+    }
+
+    @Test
+    public final void shouldReturnSameQuantitiesAsQueryingEveryCell() {
+        // given
+        int missingCells = 0;
+        int filledCells = 0;
+
+        // when
+        PPSReportDailyProgresses dailyProgresses = ppsReportXlsHelper.getDailyProgresses(productionPerShifts, days);
+
+        // then
+        verify(operationComponentDD, times(1)).find(anyString());
+        verify(progressForDayDD, times(2)).find(anyString());
+        verify(dailyProgressDD, times(1)).find(anyString());
+
+        for (Entity productionPerShift : productionPerShifts) {
+            for (DateTime day : days) {
+                for (Entity shift : shifts) {
+                    Entity dailyProgress = ppsReportXlsHelper.getDailyProgress(productionPerShift, day.toDate(), shift);
+                    BigDecimal expectedQuantity = (dailyProgress == null) ? null : dailyProgress
+                            .getDecimalField(DailyProgressFields.QUANTITY);
+
+                    assertEquals("pps " + productionPerShift.getId() + ", " + day.toLocalDate() + ", shift " + shift.getId(),
+                            expectedQuantity, dailyProgresses.getQuantity(productionPerShift, day.toDate(), shift));
+
+                    if (expectedQuantity == null) {
+                        missingCells++;
+                    } else {
+                        filledCells++;
+                    }
+                }
+            }
+        }
+
+        assertTrue(missingCells > 0);
+        assertTrue(filledCells > 0);
+    }
+
+    @Test
+    public final void shouldGenerateDatasetWithMissingDaysCorrectionsAndSeveralShifts() {
+        // then
+        assertTrue(shifts.size() > 1);
+        assertTrue(technologyIdToRootId.values().stream().anyMatch(
+                rootId -> days.stream().anyMatch(
+                        day -> progressForDayRows.stream().noneMatch(
+                                r -> r.operationComponentId.equals(rootId) && r.day.equals(day.toLocalDate())))));
+        assertTrue(progressForDayRows.stream().anyMatch(r -> Boolean.TRUE.equals(r.corrected)));
+        assertTrue(progressForDayRows.stream().anyMatch(r -> r.corrected == null));
+        assertTrue(dailyProgressRows.stream().map(r -> r.shiftId).distinct().count() == SHIFTS);
+    }
+
+    private void generateDataset() {
+        for (long shiftId = 1; shiftId <= SHIFTS; shiftId++) {
+            shifts.add(entity(shiftId));
+        }
+
+        for (int i = 0; i < DAYS; i++) {
+            days.add(DATE_FROM.plusDays(i));
+        }
+
+        for (long technologyId = 1; technologyId <= TECHNOLOGIES; technologyId++) {
+            technologyIdToRootId.put(technologyId, 1000 + technologyId);
+        }
+
+        // one technology without root operation component
+        technologyIdToRootId.remove((long) TECHNOLOGIES);
+
+        for (long ppsId = 1; ppsId <= PRODUCTION_PER_SHIFTS; ppsId++) {
+            Entity technology = technology(1 + random.nextInt(TECHNOLOGIES));
+            Entity order = entity(100 + ppsId);
+            given(order.getBelongsToField(OrderFields.TECHNOLOGY)).willReturn(technology);
+
+            Entity productionPerShift = entity(ppsId);
+            given(productionPerShift.getBelongsToField(ProductionPerShiftFields.ORDER)).willReturn(order);
+
+            productionPerShifts.add(productionPerShift);
+        }
+
+        long progressForDayId = 1;
+        long dailyProgressId = 1;
+
+        for (Long rootId : technologyIdToRootId.values()) {
+            boolean withCorrections = random.nextBoolean();
+
+            // days before and after the report are generated as well
+            for (int day = -3; day < DAYS + 3; day++) {
+                int progressesForDay = random.nextInt(4);
+
+                for (int i = 0; i < progressesForDay; i++) {
+                    Boolean corrected = withCorrections ? random.nextBoolean() : (random.nextInt(10) == 0 ? null : false);
+                    ProgressForDayRow progressForDay = new ProgressForDayRow(progressForDayId++, rootId, corrected, DATE_FROM
+                            .plusDays(day).toLocalDate());
+                    progressForDayRows.add(progressForDay);
+
+                    for (long shiftId = 1; shiftId <= SHIFTS; shiftId++) {
+                        if (random.nextInt(3) > 0) {
+                            dailyProgressRows.add(new DailyProgressRow(dailyProgressId++, progressForDay.id, shiftId, BigDecimal
+                                    .valueOf(random.nextInt(500))));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private void stubQuery(final DataDefinition dataDefinition, final String query,
+            final Function<Map<String, Object>, List<Entity>> results) {
+        given(dataDefinition.find(query)).willAnswer(invocation -> {
+            Map<String, Object> parameters = Maps.newHashMap();
+            SearchQueryBuilder searchQueryBuilder = mock(SearchQueryBuilder.class);
+            SearchResult searchResult = mock(SearchResult.class);
+
+            given(searchQueryBuilder.setParameterList(anyString(), anyCollection())).willAnswer(parameter -> {
+                parameters.put((String) parameter.getArguments()[0], parameter.getArguments()[1]);
+
+                return searchQueryBuilder;
+            });
+            given(searchQueryBuilder.setTimestamp(anyString(), any(Date.class))).willAnswer(parameter -> {
+                parameters.put((String) parameter.getArguments()[0], parameter.getArguments()[1]);
+
+                return searchQueryBuilder;
+            });
+            given(searchQueryBuilder.list()).willReturn(searchResult);
+            given(searchResult.getEntities()).willAnswer(list -> results.apply(parameters));
+
+            return searchQueryBuilder;
+        });
+    }
+
+    private SearchCriterion restriction(final String field, final Object value) {
+        SearchCriterion criterion = mock(SearchCriterion.class);
+        restrictions.put(criterion, Maps.immutableEntry(field, value));
+
+        return criterion;
+    }
+
+    private SearchCriteriaBuilder stubCriteria(final Function<Map<String, Object>, List<Entity>> results) {
+        Map<String, Object> fieldToValue = Maps.newHashMap();
+        SearchCriteriaBuilder searchCriteriaBuilder = mock(SearchCriteriaBuilder.class);
+        SearchResult searchResult = mock(SearchResult.class);
+
+        given(searchCriteriaBuilder.add(any(SearchCriterion.class))).willAnswer(invocation -> {
+            Map.Entry<String, Object> restriction = restrictions.get(invocation.getArguments()[0]);
+            fieldToValue.put(restriction.getKey(), restriction.getValue());
+
+            return searchCriteriaBuilder;
+        });
+        given(searchCriteriaBuilder.setMaxResults(1)).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.list()).willReturn(searchResult);
+        given(searchResult.getEntities()).willAnswer(list -> results.apply(fieldToValue));
+        given(searchCriteriaBuilder.uniqueResult()).willAnswer(
+                uniqueResult -> results.apply(fieldToValue).stream().findFirst().orElse(null));
+
+        return searchCriteriaBuilder;
+    }
+
+    private Entity technology(final long id) {
+        Entity technology = entity(id);
+        EntityTree operationComponents = mock(EntityTree.class);
+        Long rootId = technologyIdToRootId.get(id);
+
+        if (rootId != null) {
+            EntityTreeNode root = mock(EntityTreeNode.class);
+            given(root.getId()).willReturn(rootId);
+            given(operationComponents.getRoot()).willReturn(root);
+        }
+
+        given(technology.getTreeField(TechnologyFields.OPERATION_COMPONENTS)).willReturn(operationComponents);
+
+        return technology;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Collection<Long> getIds(final Map<String, Object> parameters) {
+        return (Collection<Long>) parameters.get("ids");
+    }
+
+    private Entity entity(final long id) {
+        Entity entity = mock(Entity.class);
+        given(entity.getId()).willReturn(id);
+
+        return entity;
+    }
+
+    private Entity row(final Object... fieldsAndValues) {
+        Entity row = mock(Entity.class);
+
+        for (int i = 0; i < fieldsAndValues.length; i += 2) {
+            given(row.getField((String) fieldsAndValues[i])).willReturn(fieldsAndValues[i + 1]);
+        }
+
+        return row;
+    }
+
+    private class ProgressForDayRow {
+
+        private final Long id;
+
+        private final Long operationComponentId;
+
+        private final Boolean corrected;
+
+        private final LocalDate day;
+
+        private Entity progressForDay;
+
+        ProgressForDayRow(final Long id, final Long operationComponentId, final Boolean corrected, final LocalDate day) {
+            this.id = id;
+            this.operationComponentId = operationComponentId;
+            this.corrected = corrected;
+            this.day = day;
+        }
+
+        Entity toEntity() {
+            Entity entity = row("progressForDayId", id, "operationComponentId", operationComponentId,
+                    ProgressForDayFields.CORRECTED, corrected);
+            given(entity.getDateField(ProgressForDayFields.ACTUAL_DATE_OF_DAY)).willReturn(day.toDate());
+
+            return entity;
+        }
+
+        boolean matches(final Map<String, Object> fieldToValue) {
+            Entity operationComponent = (Entity) fieldToValue.get(ProgressForDayFields.TECHNOLOGY_OPERATION_COMPONENT);
+            Date actualDateOfDay = (Date) fieldToValue.get(ProgressForDayFields.ACTUAL_DATE_OF_DAY);
+
+            return (operationComponent != null) && operationComponentId.equals(operationComponent.getId())
+                    && Objects.equals(corrected, fieldToValue.get(ProgressForDayFields.CORRECTED))
+                    && ((actualDateOfDay == null) || day.equals(new LocalDate(actualDateOfDay)));
+        }
+
+        Entity toProgressForDay() {
+            if (progressForDay != null) {
+                return progressForDay;
+            }
+
+            progressForDay = entity(id);
+            EntityList dailyProgresses = mock(EntityList.class);
+
+            given(dailyProgresses.find()).willAnswer(invocation -> stubCriteria(fieldToValue -> dailyProgressRows.stream()
+                    .filter(r -> r.progressForDayId.equals(id))
+                    .filter(r -> r.shiftId.equals(((Entity) fieldToValue.get(DailyProgressFields.SHIFT)).getId()))
+                    .map(DailyProgressRow::toDailyProgress).collect(Collectors.toList())));
+            given(progressForDay.getHasManyField(ProgressForDayFields.DAILY_PROGRESS)).willReturn(dailyProgresses);
+
+            return progressForDay;
+        }
+
+    }
+
+    private class DailyProgressRow {
+
+        private final Long id;
+
+        private final Long progressForDayId;
+
+        private final Long shiftId;
+
+        private final BigDecimal quantity;
+
+        private Entity dailyProgress;
+
+        DailyProgressRow(final Long id, final Long progressForDayId, final Long shiftId, final BigDecimal quantity) {
+            this.id = id;
+            this.progressForDayId = progressForDayId;
+            this.shiftId = shiftId;
+            this.quantity = quantity;
+        }
+
+        Entity toEntity() {
+            Entity entity = row("progressForDayId", progressForDayId, "shiftId", shiftId);
+            given(entity.getDecimalField(DailyProgressFields.QUANTITY)).willReturn(quantity);
+
+            return entity;
+        }
+
+        Entity toDailyProgress() {
+            if (dailyProgress != null) {
+                return dailyProgress;
+            }
+
+            dailyProgress = entity(id);
+            given(dailyProgress.getDecimalField(DailyProgressFields.QUANTITY)).willReturn(quantity);
+
+            return dailyProgress;
+        }
+
+    }
+
+}
@@ -0,0 +1,253 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productionPerShift.services;
+
+import static com.qcadoo.testing.model.EntityTestUtils.mockEntity;
+import static com.qcadoo.testing.model.EntityTestUtils.stubBelongsToField;
+import static com.qcadoo.testing.model.EntityTestUtils.stubBooleanField;
+import static com.qcadoo.testing.model.EntityTestUtils.stubDateField;
+import static com.qcadoo.testing.model.EntityTestUtils.stubDecimalField;
+import static com.qcadoo.testing.model.EntityTestUtils.stubHasManyField;
+import static com.qcadoo.testing.model.EntityTestUtils.stubStringField;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.atMost;
+import static org.mockito.Mockito.verify;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.joda.time.DateTimeConstants;
+import org.joda.time.LocalDate;
+import org.joda.time.LocalTime;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.basic.constants.ShiftFields;
+import com.qcadoo.mes.basic.constants.ShiftTimetableExceptionFields;
+import com.qcadoo.mes.basic.constants.TimetableExceptionType;
+import com.qcadoo.mes.basic.shift.Shift;
+import com.qcadoo.mes.orders.constants.OrderFields;
+import com.qcadoo.mes.productionLines.constants.ProductionLineFields;
+import com.qcadoo.mes.productionPerShift.DateTimeRange;
+import com.qcadoo.mes.productionPerShift.PpsTimeHelper;
+import com.qcadoo.mes.productionPerShift.constants.ProductionPerShiftConstants;
+import com.qcadoo.mes.productionPerShift.constants.ProductionPerShiftFields;
+import com.qcadoo.mes.productionPerShift.constants.ProgressForDayFields;
+import com.qcadoo.mes.productionPerShift.domain.ProgressForDaysContainer;
+import com.qcadoo.mes.productionPerShift.domain.ShiftEfficiencyCalculationHolder;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.NumberService;
+import com.qcadoo.testing.model.EntityListMock;
+
+public class PpsBaseAlgorithmServiceTest {
+
+    private static final int SHIFT_MINUTES = 480;
+
+    private MinutesAlgorithmService ppsAlgorithmService;
+
+    @Mock
+    private DataDefinitionService dataDefinitionService;
+
+    @Mock
+    private DataDefinition dailyProgressDD, progressForDayDD;
+
+    @Mock
+    private NumberService numberService;
+
+    private Entity productionPerShift, order, productionLine, shift;
+
+    @Before
+    public final void init() {
+        MockitoAnnotations.initMocks(this);
+
+        ppsAlgorithmService = new MinutesAlgorithmService();
+        ReflectionTestUtils.setField(ppsAlgorithmService, "dataDefinitionService", dataDefinitionService);
+        ReflectionTestUtils.setField(ppsAlgorithmService, "numberService", numberService);
+        ReflectionTestUtils.setField(ppsAlgorithmService, "ppsTimeHelper", new PpsTimeHelper());
+
+        given(dataDefinitionService.get(ProductionPerShiftConstants.PLUGIN_IDENTIFIER,
+                ProductionPerShiftConstants.MODEL_DAILY_PROGRESS)).willReturn(dailyProgressDD);
+        given(dataDefinitionService.get(ProductionPerShiftConstants.PLUGIN_IDENTIFIER,
+                ProductionPerShiftConstants.MODEL_PROGRESS_FOR_DAY)).willReturn(progressForDayDD);
+        given(dailyProgressDD.create()).willAnswer(new CreateEntityAnswer());
+        given(progressForDayDD.create()).willAnswer(new CreateEntityAnswer());
+
+        given(numberService.getMathContext()).willReturn(MathContext.DECIMAL64);
+        given(numberService.setScale(any(BigDecimal.class))).willAnswer(new Answer<BigDecimal>() {
+
+            @Override
+            public BigDecimal answer(final InvocationOnMock invocation) throws Throwable {
+                return (BigDecimal) invocation.getArguments()[0];
+            }
+        });
+
+        shift = mockEntity(1L);
+        given(shift.copy()).willReturn(shift);
+
+        productionLine = mockEntity();
+        stubStringField(productionLine, ProductionLineFields.NUMBER, "L1");
+        given(productionLine.getManyToManyField(ProductionLineFields.SHIFTS)).willReturn(Lists.newArrayList(shift));
+
+        order = mockEntity();
+        stubBelongsToField(order, OrderFields.PRODUCTION_LINE, productionLine);
+        stubBooleanField(order, OrderFields.FINAL_PRODUCTION_TRACKING, false);
+
+        productionPerShift = mockEntity();
+        stubBelongsToField(productionPerShift, ProductionPerShiftFields.ORDER, order);
+    }
+
+    @Test
+    public final void shouldVisitOnlyWorkingDaysOfTwoYearOrderWithOneShiftPerWeek() {
+        // given
+        stubWorkingWeekDays(ImmutableSet.of(DateTimeConstants.MONDAY), "06:00-14:00");
+        stubHasManyField(shift, ShiftFields.TIMETABLE_EXCEPTIONS, EntityListMock.create());
+        LocalDate firstMonday = new LocalDate(2015, 1, 5);
+        stubDateField(order, OrderFields.START_DATE, firstMonday.toDateTime(new LocalTime(8, 0)).toDate());
+        int mondays = 104;
+        stubDecimalField(order, OrderFields.PLANNED_QUANTITY, BigDecimal.valueOf(360 + (mondays - 1) * SHIFT_MINUTES));
+
+        // when
+        List<Entity> progressForDays = generate();
+
+        // then
+        assertEquals(mondays, progressForDays.size());
+        assertEquals(mondays, ppsAlgorithmService.calculatedRanges);
+        verify(progressForDays.get(0)).setField(ProgressForDayFields.DAY, 1);
+        verify(progressForDays.get(mondays - 1)).setField(ProgressForDayFields.DAY, 1 + (mondays - 1) * 7);
+        verify(shift, atMost(2)).getHasManyField(ShiftFields.TIMETABLE_EXCEPTIONS);
+    }
+
+    @Test
+    public final void shouldPlanWorkTimeExceptionOutsideOfWorkingWeek() {
+        // given
+        stubWorkingWeekDays(ImmutableSet.of(DateTimeConstants.MONDAY), "06:00-14:00");
+        LocalDate saturday = new LocalDate(2015, 1, 10);
+        Entity workTimeException = mockEntity();
+        stubStringField(workTimeException, ShiftTimetableExceptionFields.TYPE, TimetableExceptionType.WORK_TIME.getStringValue());
+        stubDateField(workTimeException, ShiftTimetableExceptionFields.FROM_DATE, saturday.toDateTime(new LocalTime(6, 0))
+                .toDate());
+        stubDateField(workTimeException, ShiftTimetableExceptionFields.TO_DATE, saturday.toDateTime(new LocalTime(14, 0))
+                .toDate());
+        stubBooleanField(workTimeException, ShiftTimetableExceptionFields.RELATES_TO_PREV_DAY, false);
+        stubHasManyField(shift, ShiftFields.TIMETABLE_EXCEPTIONS, EntityListMock.create(Lists.newArrayList(workTimeException)));
+        stubDateField(order, OrderFields.START_DATE, new LocalDate(2015, 1, 5).toDateTime(new LocalTime(6, 0)).toDate());
+        stubDecimalField(order, OrderFields.PLANNED_QUANTITY, BigDecimal.valueOf(3 * SHIFT_MINUTES));
+
+        // when
+        List<Entity> progressForDays = generate();
+
+        // then
+        assertEquals(3, progressForDays.size());
+        verify(progressForDays.get(0)).setField(ProgressForDayFields.DAY, 1);
+        verify(progressForDays.get(1)).setField(ProgressForDayFields.DAY, 6);
+        verify(progressForDays.get(2)).setField(ProgressForDayFields.DAY, 8);
+    }
+
+    @Test
+    public final void shouldFailWhenShiftsHaveNoWorkTime() {
+        // given
+        stubWorkingWeekDays(Collections.<Integer> emptySet(), "06:00-14:00");
+        stubHasManyField(shift, ShiftFields.TIMETABLE_EXCEPTIONS, EntityListMock.create());
+        stubDateField(order, OrderFields.START_DATE, new LocalDate(2015, 1, 5).toDate());
+        stubDecimalField(order, OrderFields.PLANNED_QUANTITY, BigDecimal.TEN);
+        ProgressForDaysContainer progressForDaysContainer = new ProgressForDaysContainer();
+        progressForDaysContainer.setOrder(order);
+
+        // when
+        try {
+            ppsAlgorithmService.generateProgressForDays(progressForDaysContainer, productionPerShift);
+            fail();
+        } catch (IllegalStateException e) {
+            // then
+            assertEquals(1, progressForDaysContainer.getErrors().size());
+            assertTrue(progressForDaysContainer.getProgressForDays().isEmpty());
+        }
+    }
+
+    private List<Entity> generate() {
+        ProgressForDaysContainer progressForDaysContainer = new ProgressForDaysContainer();
+        progressForDaysContainer.setOrder(order);
+        ppsAlgorithmService.generateProgressForDays(progressForDaysContainer, productionPerShift);
+        return progressForDaysContainer.getProgressForDays();
+    }
+
+    private void stubWorkingWeekDays(final Set<Integer> workingWeekDays, final String hours) {
+        stubBooleanField(shift, ShiftFields.MONDAY_WORKING, workingWeekDays.contains(DateTimeConstants.MONDAY));
+        stubBooleanField(shift, ShiftFields.TUESDAY_WORKING, workingWeekDays.contains(DateTimeConstants.TUESDAY));
+        stubBooleanField(shift, ShiftFields.WENSDAY_WORKING, workingWeekDays.contains(DateTimeConstants.WEDNESDAY));
+        stubBooleanField(shift, ShiftFields.THURSDAY_WORKING, workingWeekDays.contains(DateTimeConstants.THURSDAY));
+        stubBooleanField(shift, ShiftFields.FRIDAY_WORKING, workingWeekDays.contains(DateTimeConstants.FRIDAY));
+        stubBooleanField(shift, ShiftFields.SATURDAY_WORKING, workingWeekDays.contains(DateTimeConstants.SATURDAY));
+        stubBooleanField(shift, ShiftFields.SUNDAY_WORKING, workingWeekDays.contains(DateTimeConstants.SUNDAY));
+
+        stubStringField(shift, ShiftFields.MONDAY_HOURS, hours);
+        stubStringField(shift, ShiftFields.TUESDAY_HOURS, hours);
+        stubStringField(shift, ShiftFields.WENSDAY_HOURS, hours);
+        stubStringField(shift, ShiftFields.THURSDAY_HOURS, hours);
+        stubStringField(shift, ShiftFields.FRIDAY_HOURS, hours);
+        stubStringField(shift, ShiftFields.SATURDAY_HOURS, hours);
+        stubStringField(shift, ShiftFields.SUNDAY_HOURS, hours);
+    }
+
+    private static final class CreateEntityAnswer implements Answer<Entity> {
+
+        @Override
+        public Entity answer(final InvocationOnMock invocation) throws Throwable {
+            return mockEntity();
+        }
+    }
+
+    private static final class MinutesAlgorithmService extends PpsBaseAlgorithmService {
+
+        private int calculatedRanges;
+
+        @Override
+        protected ShiftEfficiencyCalculationHolder calculateShiftEfficiency(ProgressForDaysContainer progressForDaysContainer,
+                Entity productionPerShift, Shift shift, Entity order, DateTimeRange range, BigDecimal shiftEfficiency,
+                int progressForDayQuantity) {
+            ++calculatedRanges;
+            ShiftEfficiencyCalculationHolder calculationHolder = new ShiftEfficiencyCalculationHolder();
+            calculationHolder.setShiftEfficiency(shiftEfficiency.add(BigDecimal.valueOf(range.durationInMins())));
+            calculationHolder.setEfficiencyTime((int) range.durationInMins());
+            return calculationHolder;
+        }
+    }
+
+}
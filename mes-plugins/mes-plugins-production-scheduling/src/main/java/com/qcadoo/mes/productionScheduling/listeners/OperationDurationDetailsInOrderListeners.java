@@ -28,6 +28,7 @@ import com.qcadoo.mes.basic.ShiftsServiceImpl;
 import com.qcadoo.mes.operationTimeCalculations.OperationWorkTime;
 import com.qcadoo.mes.operationTimeCalculations.OperationWorkTimeService;
 import com.qcadoo.mes.operationTimeCalculations.OrderRealizationTimeService;
+import com.qcadoo.mes.orders.TechnologyServiceO;
 import com.qcadoo.mes.orders.constants.OrderFields;
 import com.qcadoo.mes.orders.constants.OrderType;
 import com.qcadoo.mes.orders.constants.OrdersConstants;
@@ -86,6 +87,9 @@ public class OperationDurationDetailsInOrderListeners {
     @Autowired
     private OperationWorkTimeService operationWorkTimeService;
 
+    @Autowired
+    private TechnologyServiceO technologyServiceO;
+
     public void showCopyOfTechnology(final ViewDefinitionState view, final ComponentState state, final String[] args) {
         Long orderId = (Long) state.getFieldValue();
 
@@ -142,8 +146,8 @@ public class OperationDurationDetailsInOrderListeners {
         Entity order = dataDefinitionService.get(OrdersConstants.PLUGIN_IDENTIFIER, OrdersConstants.MODEL_ORDER).get(
                 orderForm.getEntity().getId());
 
-        // copy of technology from order
-        Entity technology = order.getBelongsToField(OrderFields.TECHNOLOGY);
+        // copy of technology from order, time calculations are saved in its operations
+        Entity technology = technologyServiceO.getTechnologyForModification(order);
         Validate.notNull(technology, "technology is null");
         BigDecimal quantity = orderRealizationTimeService.getBigDecimalFromField(plannedQuantityField.getFieldValue(),
                 viewDefinitionState.getLocale());
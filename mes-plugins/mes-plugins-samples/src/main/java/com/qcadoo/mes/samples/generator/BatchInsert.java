@@ -0,0 +1,90 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.samples.generator;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Collects rows of a single table into a JDBC batch and flushes it every batchSize rows. Rows are committed by the caller.
+ */
+final class BatchInsert implements AutoCloseable {
+
+    private final PreparedStatement statement;
+
+    private final int batchSize;
+
+    private int pending;
+
+    BatchInsert(final Connection connection, final int batchSize, final String table, final String... columns)
+            throws SQLException {
+        StringBuilder columnList = new StringBuilder();
+        StringBuilder valueList = new StringBuilder();
+
+        for (String column : columns) {
+            if (columnList.length() > 0) {
+                columnList.append(", ");
+                valueList.append(", ");
+            }
+
+            columnList.append('"').append(column).append('"');
+            valueList.append('?');
+        }
+
+        this.statement = connection.prepareStatement("INSERT INTO " + table + " (" + columnList + ") VALUES (" + valueList
+                + ")");
+        this.batchSize = batchSize;
+    }
+
+    void add(final Object... values) throws SQLException {
+        for (int index = 0; index < values.length; index++) {
+            statement.setObject(index + 1, values[index]);
+        }
+
+        statement.addBatch();
+
+        if (++pending >= batchSize) {
+            flush();
+        }
+    }
+
+    private void flush() throws SQLException {
+        if (pending > 0) {
+            statement.executeBatch();
+
+            pending = 0;
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        try {
+            flush();
+        } finally {
+            statement.close();
+        }
+    }
+
+}
@@ -0,0 +1,495 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.samples.generator;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Generates production-scale volumes of products, technologies, orders, production trackings and resources for performance
+ * work. Unlike {@link com.qcadoo.mes.samples.loader.GeneratedSamplesLoader} it bypasses the model layer and writes straight to
+ * the tables with batched JDBC inserts, so hooks and validators are not run - the rows are built to be consistent with them
+ * instead (foreign keys, states, basic production counting matching the accepted trackings).
+ * 
+ * The same seed and parameters always produce the same data. Ids are reserved from the table sequences, so the generator can
+ * be run against a database already initialized by the application. The whole dataset is written in one transaction - a run
+ * which fails leaves no rows behind (only the reserved ids are skipped), so it can simply be started again. It is meant to be
+ * run headless, e.g.
+ * 
+ * <pre>
+ * mvn -P largePlantDataset compile exec:java -DlargePlant.url=jdbc:postgresql://localhost:5432/mes -DlargePlant.scale=0.1
+ * </pre>
+ * 
+ * See {@link LargePlantDatasetParameters} for the volumes that can be set.
+ */
+public class LargePlantDatasetGenerator {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LargePlantDatasetGenerator.class);
+
+    private static final String L_URL = LargePlantDatasetParameters.PREFIX + "url";
+
+    private static final String L_USER = LargePlantDatasetParameters.PREFIX + "user";
+
+    private static final String L_PASSWORD = LargePlantDatasetParameters.PREFIX + "password";
+
+    private static final String L_GENERATOR_USER = "largePlantGenerator";
+
+    private static final String L_UNIT = "szt.";
+
+    private static final String L_STATE_ACCEPTED = "02accepted";
+
+    private static final String L_STATE_DRAFT = "01draft";
+
+    private static final String L_TYPE_OF_PRODUCTION_RECORDING_CUMULATED = "02cumulated";
+
+    private static final String L_ORDER_STATE_IN_PROGRESS = "03inProgress";
+
+    private static final String L_ORDER_STATE_COMPLETED = "04completed";
+
+    private static final String[] ORDER_STATES = { "01pending", "02accepted", L_ORDER_STATE_IN_PROGRESS,
+            L_ORDER_STATE_COMPLETED };
+
+    private static final int[] ORDER_STATE_WEIGHTS = { 20, 15, 40, 25 };
+
+    private static final long BASE_DATE = Timestamp.valueOf("2017-01-01 00:00:00").getTime();
+
+    private static final int DATE_RANGE_DAYS = 730;
+
+    private final Connection connection;
+
+    private final LargePlantDatasetParameters parameters;
+
+    private final Random random;
+
+    private final Timestamp now = new Timestamp(System.currentTimeMillis());
+
+    private long firstProductId;
+
+    private long firstOperationId;
+
+    private long firstTechnologyId;
+
+    private long firstLocationId;
+
+    private long firstOrderId;
+
+    private int[][] technologyComponents;
+
+    private int[] orderTechnologies;
+
+    private int[] trackedOrders;
+
+    private long[][] orderUsedQuantities;
+
+    private long[] orderProducedQuantities;
+
+    public LargePlantDatasetGenerator(final Connection connection, final LargePlantDatasetParameters parameters) {
+        this.connection = connection;
+        this.parameters = parameters;
+        this.random = new Random(parameters.getSeed());
+    }
+
+    public static void main(final String[] args) throws SQLException {
+        Properties properties = System.getProperties();
+
+        LargePlantDatasetParameters parameters = LargePlantDatasetParameters.fromProperties(properties);
+
+        try (Connection connection = DriverManager.getConnection(
+                properties.getProperty(L_URL, "jdbc:postgresql://localhost:5432/mes"), properties.getProperty(L_USER, "postgres"),
+                properties.getProperty(L_PASSWORD, "postgres"))) {
+            new LargePlantDatasetGenerator(connection, parameters).generate();
+        }
+    }
+
+    public void generate() throws SQLException {
+        LOG.info("Generating large plant dataset: " + parameters);
+
+        boolean autoCommit = connection.getAutoCommit();
+
+        connection.setAutoCommit(false);
+
+        try {
+            generateProducts();
+            generateOperations();
+            generateTechnologies();
+            generateLocations();
+            generateOrders();
+            generateProductionTrackings();
+            generateBasicProductionCountings();
+            updateOrdersDoneQuantities();
+            generateResources();
+
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+
+        LOG.info("Large plant dataset generated");
+    }
+
+    private void generateProducts() throws SQLException {
+        int products = parameters.getProducts();
+
+        firstProductId = reserveIds("basic_product", products);
+
+        try (BatchInsert insert = new BatchInsert(connection, parameters.getBatchSize(), "basic_product", "id", "number", "name",
+                "globaltypeofmaterial", "unit", "entitytype", "active", "entityversion", "createdate", "updatedate", "createuser",
+                "updateuser")) {
+            for (int index = 0; index < products; index++) {
+                long id = firstProductId + index;
+                boolean finalProduct = index < parameters.getTechnologies();
+
+                insert.add(id, "LP-P-" + id, (finalProduct ? "Final product " : "Component ") + id,
+                        finalProduct ? "03finalProduct" : "01component", L_UNIT, "01particularProduct", true, 0L, now, now,
+                        L_GENERATOR_USER, L_GENERATOR_USER);
+            }
+        }
+
+        LOG.info("Generated " + products + " products");
+    }
+
+    private void generateOperations() throws SQLException {
+        int operations = parameters.getOperations();
+
+        firstOperationId = reserveIds("technologies_operation", operations);
+
+        try (BatchInsert insert = new BatchInsert(connection, parameters.getBatchSize(), "technologies_operation", "id", "number",
+                "name", "assignedtooperation", "quantityofworkstations", "areproductquantitiesdivisible", "istjdivisible",
+                "active")) {
+            for (int index = 0; index < operations; index++) {
+                long id = firstOperationId + index;
+
+                insert.add(id, "LP-O-" + id, "Operation " + id, "01workstations", 1, false, false, true);
+            }
+        }
+
+        LOG.info("Generated " + operations + " operations");
+    }
+
+    private void generateTechnologies() throws SQLException {
+        int technologies = parameters.getTechnologies();
+        int componentsPerTechnology = parameters.getComponentsPerTechnology();
+
+        firstTechnologyId = reserveIds("technologies_technology", technologies);
+
+        long firstOperationComponentId = reserveIds("technologies_technologyoperationcomponent", technologies);
+        long firstProductInComponentId = reserveIds("technologies_operationproductincomponent",
+                (long) technologies * componentsPerTechnology);
+        long firstProductOutComponentId = reserveIds("technologies_operationproductoutcomponent", technologies);
+
+        technologyComponents = new int[technologies][componentsPerTechnology];
+
+        try (BatchInsert technologyInsert = new BatchInsert(connection, parameters.getBatchSize(), "technologies_technology", "id",
+                "number", "name", "product_id", "state", "technologytype", "master", "externalsynchronized", "template",
+                "additionalactions", "typeofproductionrecording", "active")) {
+            for (int index = 0; index < technologies; index++) {
+                long id = firstTechnologyId + index;
+
+                technologyInsert.add(id, "LP-T-" + id, "Technology " + id, firstProductId + index, L_STATE_ACCEPTED, null,
+                        true, true, false, false, L_TYPE_OF_PRODUCTION_RECORDING_CUMULATED, true);
+            }
+        }
+
+        try (BatchInsert operationComponentInsert = new BatchInsert(connection, parameters.getBatchSize(),
+                "technologies_technologyoperationcomponent", "id", "technology_id", "operation_id", "entitytype", "nodenumber",
+                "priority", "assignedtooperation", "quantityofworkstations", "areproductquantitiesdivisible", "istjdivisible",
+                "createdate", "updatedate", "createuser", "updateuser");
+                BatchInsert productInInsert = new BatchInsert(connection, parameters.getBatchSize(),
+                        "technologies_operationproductincomponent", "id", "operationcomponent_id", "product_id", "quantity",
+                        "priority");
+                BatchInsert productOutInsert = new BatchInsert(connection, parameters.getBatchSize(),
+                        "technologies_operationproductoutcomponent", "id", "operationcomponent_id", "product_id", "quantity",
+                        "set")) {
+            for (int index = 0; index < technologies; index++) {
+                long operationComponentId = firstOperationComponentId + index;
+
+                operationComponentInsert.add(operationComponentId, firstTechnologyId + index,
+                        firstOperationId + random.nextInt(parameters.getOperations()), "operation", "1.", 1, "01workstations", 1,
+                        false, false, now, now, L_GENERATOR_USER, L_GENERATOR_USER);
+
+                for (int component = 0; component < componentsPerTechnology; component++) {
+                    int productIndex = randomComponentProduct();
+
+                    technologyComponents[index][component] = productIndex;
+
+                    productInInsert.add(firstProductInComponentId + (long) index * componentsPerTechnology + component,
+                            operationComponentId, firstProductId + productIndex, BigDecimal.valueOf(1 + random.nextInt(10)),
+                            component + 1);
+                }
+
+                productOutInsert.add(firstProductOutComponentId + index, operationComponentId, firstProductId + index,
+                        BigDecimal.ONE, false);
+            }
+        }
+
+        LOG.info("Generated " + technologies + " technologies");
+    }
+
+    private void generateLocations() throws SQLException {
+        int locations = parameters.getLocations();
+
+        firstLocationId = reserveIds("materialflow_location", locations);
+
+        try (BatchInsert insert = new BatchInsert(connection, parameters.getBatchSize(), "materialflow_location", "id", "number",
+                "name", "type")) {
+            for (int index = 0; index < locations; index++) {
+                long id = firstLocationId + index;
+
+                insert.add(id, "LP-L-" + id, "Warehouse " + id, "02warehouse");
+            }
+        }
+
+        LOG.info("Generated " + locations + " locations");
+    }
+
+    private void generateOrders() throws SQLException {
+        int orders = parameters.getOrders();
+
+        firstOrderId = reserveIds("orders_order", orders);
+
+        orderTechnologies = new int[orders];
+        orderUsedQuantities = new long[orders][parameters.getComponentsPerTechnology()];
+        orderProducedQuantities = new long[orders];
+
+        int[] startedOrders = new int[orders];
+        int startedOrdersCount = 0;
+
+        try (BatchInsert insert = new BatchInsert(connection, parameters.getBatchSize(), "orders_order", "id", "number", "name",
+                "state", "ordertype", "product_id", "technology_id", "technologyprototype_id", "plannedquantity", "datefrom",
+                "dateto", "externalsynchronized", "dateschanged", "finalproductiontracking", "typeofproductionrecording",
+                "active", "entityversion")) {
+            for (int index = 0; index < orders; index++) {
+                long id = firstOrderId + index;
+                int technology = random.nextInt(parameters.getTechnologies());
+                long technologyId = firstTechnologyId + technology;
+                Timestamp dateFrom = randomDate();
+                Timestamp dateTo = new Timestamp(dateFrom.getTime() + TimeUnit.DAYS.toMillis(1 + random.nextInt(14)));
+                String state = randomOrderState();
+
+                orderTechnologies[index] = technology;
+
+                if (isStarted(state)) {
+                    startedOrders[startedOrdersCount++] = index;
+                }
+
+                insert.add(id, "LP-Z-" + id, "Order " + id, state, "01withPatternTechnology",
+                        firstProductId + technology, technologyId, technologyId, BigDecimal.valueOf(100 + random.nextInt(900)),
+                        dateFrom, dateTo, true, false, false, L_TYPE_OF_PRODUCTION_RECORDING_CUMULATED, true, 0L);
+            }
+        }
+
+        trackedOrders = Arrays.copyOf(startedOrders, startedOrdersCount);
+
+        LOG.info("Generated " + orders + " orders");
+    }
+
+    private void generateProductionTrackings() throws SQLException {
+        int productionTrackings = trackedOrders.length == 0 ? 0 : parameters.getProductionTrackings();
+        int componentsPerTechnology = parameters.getComponentsPerTechnology();
+
+        long firstProductionTrackingId = reserveIds("productioncounting_productiontracking", productionTrackings);
+        long firstProductInComponentId = reserveIds("productioncounting_trackingoperationproductincomponent",
+                (long) productionTrackings * componentsPerTechnology);
+        long firstProductOutComponentId = reserveIds("productioncounting_trackingoperationproductoutcomponent",
+                productionTrackings);
+
+        try (BatchInsert trackingInsert = new BatchInsert(connection, parameters.getBatchSize(),
+                "productioncounting_productiontracking", "id", "number", "state", "order_id", "laststatechangefails",
+                "isexternalsynchronized", "iscorrection", "lasttracking", "active", "createdate", "updatedate", "createuser",
+                "updateuser");
+                BatchInsert productInInsert = new BatchInsert(connection, parameters.getBatchSize(),
+                        "productioncounting_trackingoperationproductincomponent", "id", "productiontracking_id", "product_id",
+                        "usedquantity", "typeofmaterial");
+                BatchInsert productOutInsert = new BatchInsert(connection, parameters.getBatchSize(),
+                        "productioncounting_trackingoperationproductoutcomponent", "id", "productiontracking_id", "product_id",
+                        "usedquantity", "typeofmaterial")) {
+            for (int index = 0; index < productionTrackings; index++) {
+                long id = firstProductionTrackingId + index;
+                int order = trackedOrders[random.nextInt(trackedOrders.length)];
+                int technology = orderTechnologies[order];
+                boolean accepted = random.nextInt(10) > 0;
+
+                trackingInsert.add(id, "LP-PT-" + id, accepted ? L_STATE_ACCEPTED : L_STATE_DRAFT, firstOrderId + order, false,
+                        true, false, false, true, now, now, L_GENERATOR_USER, L_GENERATOR_USER);
+
+                for (int component = 0; component < componentsPerTechnology; component++) {
+                    long usedQuantity = 1 + random.nextInt(20);
+
+                    if (accepted) {
+                        orderUsedQuantities[order][component] += usedQuantity;
+                    }
+
+                    productInInsert.add(firstProductInComponentId + (long) index * componentsPerTechnology + component, id,
+                            firstProductId + technologyComponents[technology][component], BigDecimal.valueOf(usedQuantity),
+                            "01component");
+                }
+
+                long producedQuantity = 1 + random.nextInt(10);
+
+                if (accepted) {
+                    orderProducedQuantities[order] += producedQuantity;
+                }
+
+                productOutInsert.add(firstProductOutComponentId + index, id, firstProductId + technology,
+                        BigDecimal.valueOf(producedQuantity), "03finalProduct");
+            }
+        }
+
+        LOG.info("Generated " + productionTrackings + " production trackings");
+    }
+
+    private void generateBasicProductionCountings() throws SQLException {
+        int orders = parameters.getOrders();
+        int componentsPerTechnology = parameters.getComponentsPerTechnology();
+        int countingsPerOrder = componentsPerTechnology + 1;
+
+        long firstBasicProductionCountingId = reserveIds("basicproductioncounting_basicproductioncounting",
+                (long) orders * countingsPerOrder);
+
+        try (BatchInsert insert = new BatchInsert(connection, parameters.getBatchSize(),
+                "basicproductioncounting_basicproductioncounting", "id", "order_id", "product_id", "usedquantity",
+                "producedquantity")) {
+            for (int index = 0; index < orders; index++) {
+                long id = firstBasicProductionCountingId + (long) index * countingsPerOrder;
+                int technology = orderTechnologies[index];
+
+                for (int component = 0; component < componentsPerTechnology; component++) {
+                    insert.add(id + component, firstOrderId + index, firstProductId + technologyComponents[technology][component],
+                            BigDecimal.valueOf(orderUsedQuantities[index][component]), BigDecimal.ZERO);
+                }
+
+                insert.add(id + componentsPerTechnology, firstOrderId + index, firstProductId + technology, BigDecimal.ZERO,
+                        BigDecimal.valueOf(orderProducedQuantities[index]));
+            }
+        }
+
+        LOG.info("Generated basic production countings for " + orders + " orders");
+    }
+
+    private void updateOrdersDoneQuantities() throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("UPDATE orders_order o SET donequantity = "
+                + "bpc.producedquantity FROM basicproductioncounting_basicproductioncounting bpc WHERE bpc.order_id = o.id "
+                + "AND bpc.product_id = o.product_id AND o.state IN (?, ?) AND o.id BETWEEN ? AND ?")) {
+            statement.setString(1, L_ORDER_STATE_IN_PROGRESS);
+            statement.setString(2, L_ORDER_STATE_COMPLETED);
+            statement.setLong(3, firstOrderId);
+            statement.setLong(4, firstOrderId + parameters.getOrders() - 1);
+            statement.executeUpdate();
+        }
+    }
+
+    private void generateResources() throws SQLException {
+        int resources = parameters.getResources();
+
+        long firstResourceId = reserveIds("materialflowresources_resource", resources);
+
+        try (BatchInsert insert = new BatchInsert(connection, parameters.getBatchSize(), "materialflowresources_resource", "id",
+                "number", "location_id", "product_id", "quantity", "availablequantity", "reservedquantity", "price", "time",
+                "iscorrected", "conversion", "waste", "username")) {
+            for (int index = 0; index < resources; index++) {
+                long id = firstResourceId + index;
+                BigDecimal quantity = BigDecimal.valueOf(1 + random.nextInt(1000));
+
+                insert.add(id, "LP-R-" + id, firstLocationId + random.nextInt(parameters.getLocations()),
+                        firstProductId + randomComponentProduct(), quantity, quantity, BigDecimal.ZERO,
+                        BigDecimal.valueOf(1 + random.nextInt(10000), 2), randomDate(), false, BigDecimal.ONE, false,
+                        L_GENERATOR_USER);
+            }
+        }
+
+        LOG.info("Generated " + resources + " resources");
+    }
+
+    /**
+     * Moves the id sequence of the table past the given number of rows, the same sequences the application uses, so the
+     * reserved ids can be inserted explicitly.
+     * 
+     * @return first reserved id
+     */
+    private long reserveIds(final String table, final long count) throws SQLException {
+        if (count == 0) {
+            return 0L;
+        }
+
+        String sequence = table + "_id_seq";
+
+        try (PreparedStatement statement = connection.prepareStatement("SELECT setval(?::regclass, nextval(?::regclass) + ? - 1)")) {
+            statement.setString(1, sequence);
+            statement.setString(2, sequence);
+            statement.setLong(3, count);
+
+            try (ResultSet resultSet = statement.executeQuery()) {
+                resultSet.next();
+
+                return resultSet.getLong(1) - count + 1;
+            }
+        }
+    }
+
+    private int randomComponentProduct() {
+        int technologies = parameters.getTechnologies();
+
+        return technologies + random.nextInt(parameters.getProducts() - technologies);
+    }
+
+    private String randomOrderState() {
+        int weight = random.nextInt(100);
+
+        for (int index = 0; index < ORDER_STATES.length; index++) {
+            weight -= ORDER_STATE_WEIGHTS[index];
+
+            if (weight < 0) {
+                return ORDER_STATES[index];
+            }
+        }
+
+        return ORDER_STATES[0];
+    }
+
+    private boolean isStarted(final String orderState) {
+        return L_ORDER_STATE_IN_PROGRESS.equals(orderState) || L_ORDER_STATE_COMPLETED.equals(orderState);
+    }
+
+    private Timestamp randomDate() {
+        return new Timestamp(BASE_DATE + TimeUnit.DAYS.toMillis(random.nextInt(DATE_RANGE_DAYS))
+                + TimeUnit.MINUTES.toMillis(random.nextInt(24 * 60)));
+    }
+
+}
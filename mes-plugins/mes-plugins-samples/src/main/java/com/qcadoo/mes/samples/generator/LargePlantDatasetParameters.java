@@ -0,0 +1,173 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.samples.generator;
+
+import java.util.Properties;
+
+import com.google.common.base.Preconditions;
+
+public class LargePlantDatasetParameters {
+
+    public static final String PREFIX = "largePlant.";
+
+    public static final String L_SEED = PREFIX + "seed";
+
+    public static final String L_SCALE = PREFIX + "scale";
+
+    public static final String L_BATCH_SIZE = PREFIX + "batchSize";
+
+    public static final String L_PRODUCTS = PREFIX + "products";
+
+    public static final String L_OPERATIONS = PREFIX + "operations";
+
+    public static final String L_TECHNOLOGIES = PREFIX + "technologies";
+
+    public static final String L_COMPONENTS_PER_TECHNOLOGY = PREFIX + "componentsPerTechnology";
+
+    public static final String L_LOCATIONS = PREFIX + "locations";
+
+    public static final String L_ORDERS = PREFIX + "orders";
+
+    public static final String L_RESOURCES = PREFIX + "resources";
+
+    public static final String L_PRODUCTION_TRACKINGS = PREFIX + "productionTrackings";
+
+    private long seed = 1L;
+
+    private int batchSize = 5000;
+
+    private int products = 500000;
+
+    private int operations = 2000;
+
+    private int technologies = 20000;
+
+    private int componentsPerTechnology = 3;
+
+    private int locations = 100;
+
+    private int orders = 100000;
+
+    private int resources = 5000000;
+
+    private int productionTrackings = 1000000;
+
+    /**
+     * Reads parameters from properties prefixed with {@link #PREFIX}. Volumes default to a large plant and are multiplied by
+     * largePlant.scale, explicitly given volumes are taken as they are.
+     * 
+     * @param properties
+     *            properties, e.g. system properties
+     * @return validated parameters
+     */
+    public static LargePlantDatasetParameters fromProperties(final Properties properties) {
+        LargePlantDatasetParameters parameters = new LargePlantDatasetParameters();
+
+        double scale = Double.parseDouble(properties.getProperty(L_SCALE, "1"));
+
+        Preconditions.checkArgument(scale > 0, "largePlant.scale must be positive");
+
+        parameters.seed = Long.parseLong(properties.getProperty(L_SEED, String.valueOf(parameters.seed)));
+        parameters.batchSize = getInt(properties, L_BATCH_SIZE, parameters.batchSize, 1);
+        parameters.componentsPerTechnology = getInt(properties, L_COMPONENTS_PER_TECHNOLOGY,
+                parameters.componentsPerTechnology, 1);
+        parameters.products = getInt(properties, L_PRODUCTS, parameters.products, scale);
+        parameters.operations = getInt(properties, L_OPERATIONS, parameters.operations, scale);
+        parameters.technologies = getInt(properties, L_TECHNOLOGIES, parameters.technologies, scale);
+        parameters.locations = getInt(properties, L_LOCATIONS, parameters.locations, scale);
+        parameters.orders = getInt(properties, L_ORDERS, parameters.orders, scale);
+        parameters.resources = getInt(properties, L_RESOURCES, parameters.resources, scale);
+        parameters.productionTrackings = getInt(properties, L_PRODUCTION_TRACKINGS, parameters.productionTrackings, scale);
+
+        parameters.validate();
+
+        return parameters;
+    }
+
+    private static int getInt(final Properties properties, final String key, final int defaultValue, final double scale) {
+        String value = properties.getProperty(key);
+
+        if (value == null) {
+            return (int) Math.max(1, Math.round(defaultValue * scale));
+        }
+
+        return Integer.parseInt(value);
+    }
+
+    private void validate() {
+        Preconditions.checkArgument(operations > 0, "at least one operation is required");
+        Preconditions.checkArgument(locations > 0, "at least one location is required");
+        Preconditions.checkArgument(technologies > 0, "at least one technology is required");
+        Preconditions.checkArgument(products > technologies,
+                "products have to outnumber technologies, each technology gets its own final product");
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public int getProducts() {
+        return products;
+    }
+
+    public int getOperations() {
+        return operations;
+    }
+
+    public int getTechnologies() {
+        return technologies;
+    }
+
+    public int getComponentsPerTechnology() {
+        return componentsPerTechnology;
+    }
+
+    public int getLocations() {
+        return locations;
+    }
+
+    public int getOrders() {
+        return orders;
+    }
+
+    public int getResources() {
+        return resources;
+    }
+
+    public int getProductionTrackings() {
+        return productionTrackings;
+    }
+
+    @Override
+    public String toString() {
+        return "seed=" + seed + ", products=" + products + ", operations=" + operations + ", technologies=" + technologies
+                + ", locations=" + locations + ", orders=" + orders + ", resources=" + resources + ", productionTrackings="
+                + productionTrackings;
+    }
+
+}
@@ -0,0 +1,83 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.samples.generator;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Properties;
+
+import org.junit.Test;
+
+public class LargePlantDatasetParametersTest {
+
+    @Test
+    public final void shouldScaleDefaultVolumes() {
+        // given
+        Properties properties = new Properties();
+
+        properties.setProperty(LargePlantDatasetParameters.L_SCALE, "0.01");
+
+        // when
+        LargePlantDatasetParameters parameters = LargePlantDatasetParameters.fromProperties(properties);
+
+        // then
+        assertEquals(5000, parameters.getProducts());
+        assertEquals(200, parameters.getTechnologies());
+        assertEquals(1000, parameters.getOrders());
+        assertEquals(50000, parameters.getResources());
+        assertEquals(10000, parameters.getProductionTrackings());
+        assertEquals(1, parameters.getLocations());
+        assertEquals(3, parameters.getComponentsPerTechnology());
+    }
+
+    @Test
+    public final void shouldTakeExplicitVolumesAsTheyAre() {
+        // given
+        Properties properties = new Properties();
+
+        properties.setProperty(LargePlantDatasetParameters.L_SCALE, "0.01");
+        properties.setProperty(LargePlantDatasetParameters.L_ORDERS, "123");
+        properties.setProperty(LargePlantDatasetParameters.L_SEED, "42");
+
+        // when
+        LargePlantDatasetParameters parameters = LargePlantDatasetParameters.fromProperties(properties);
+
+        // then
+        assertEquals(123, parameters.getOrders());
+        assertEquals(42L, parameters.getSeed());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public final void shouldRejectLessProductsThanTechnologies() {
+        // given
+        Properties properties = new Properties();
+
+        properties.setProperty(LargePlantDatasetParameters.L_PRODUCTS, "10");
+        properties.setProperty(LargePlantDatasetParameters.L_TECHNOLOGIES, "10");
+
+        // when
+        LargePlantDatasetParameters.fromProperties(properties);
+    }
+
+}
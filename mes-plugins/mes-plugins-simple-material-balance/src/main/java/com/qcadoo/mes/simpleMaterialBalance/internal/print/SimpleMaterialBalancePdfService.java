@@ -36,6 +36,7 @@ import java.util.Map.Entry;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.lowagie.text.Chunk;
 import com.lowagie.text.Document;
@@ -175,6 +176,15 @@ public final class SimpleMaterialBalancePdfService extends PdfDocumentService {
         List<Entity> simpleMaterialBalanceLocationComponents = simpleMaterialBalance
                 .getHasManyField(L_SIMPLE_MATERIAL_BALANCE_LOCATIONS_COMPONENTS);
 
+        List<Long> locationIds = Lists.newArrayList();
+
+        for (Entity simpleMaterialBalanceLocationComponent : simpleMaterialBalanceLocationComponents) {
+            locationIds.add(simpleMaterialBalanceLocationComponent.getBelongsToField(L_LOCATION).getId());
+        }
+
+        Map<Long, BigDecimal> availableQuantities = materialFlowService.sumShouldBeInLocations(locationIds,
+                neededProductQuantities.keySet(), (Date) simpleMaterialBalance.getField(L_DATE));
+
         for (Entry<Long, BigDecimal> neededProductQuantity : neededProductQuantities.entrySet()) {
             Entity product = productQuantitiesService.getProduct(neededProductQuantity.getKey());
 
@@ -183,9 +193,8 @@ public final class SimpleMaterialBalancePdfService extends PdfDocumentService {
             table.getDefaultCell().setHorizontalAlignment(Element.ALIGN_RIGHT);
             table.addCell(new Phrase(numberService.format(neededProductQuantity.getValue()), FontUtils.getDejavuRegular7Dark()));
             BigDecimal available = BigDecimal.ZERO;
-            for (Entity simpleMaterialBalanceLocationComponent : simpleMaterialBalanceLocationComponents) {
-                available = available.add(materialFlowService.calculateShouldBeInLocation(simpleMaterialBalanceLocationComponent
-                        .getBelongsToField(L_LOCATION).getId(), product.getId(), (Date) simpleMaterialBalance.getField(L_DATE)));
+            if (availableQuantities.containsKey(product.getId())) {
+                available = availableQuantities.get(product.getId());
             }
             table.addCell(new Phrase(numberService.format(available), FontUtils.getDejavuRegular7Dark()));
             table.addCell(new Phrase(numberService.format(available.subtract(neededProductQuantity.getValue(),
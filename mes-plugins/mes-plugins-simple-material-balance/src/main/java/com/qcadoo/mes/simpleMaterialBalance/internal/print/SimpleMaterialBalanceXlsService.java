@@ -36,6 +36,7 @@ import org.apache.poi.hssf.usermodel.HSSFSheet;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.google.common.collect.Lists;
 import com.qcadoo.localization.api.TranslationService;
 import com.qcadoo.mes.materialFlow.MaterialFlowService;
 import com.qcadoo.mes.technologies.ProductQuantitiesService;
@@ -118,6 +119,15 @@ public final class SimpleMaterialBalanceXlsService extends XlsDocumentService {
         List<Entity> simpleMaterialBalanceLocationComponents = simpleMaterialBalance
                 .getHasManyField(L_SIMPLE_MATERIAL_BALANCE_LOCATIONS_COMPONENTS);
 
+        List<Long> locationIds = Lists.newArrayList();
+
+        for (Entity simpleMaterialBalanceLocationComponent : simpleMaterialBalanceLocationComponents) {
+            locationIds.add(simpleMaterialBalanceLocationComponent.getBelongsToField(L_LOCATION).getId());
+        }
+
+        Map<Long, BigDecimal> availableQuantities = materialFlowService.sumShouldBeInLocations(locationIds,
+                neededProductQuantities.keySet(), (Date) simpleMaterialBalance.getField(L_DATE));
+
         for (Entry<Long, BigDecimal> neededProductQuantity : neededProductQuantities.entrySet()) {
             Entity product = productQuantitiesService.getProduct(neededProductQuantity.getKey());
 
@@ -127,10 +137,8 @@ public final class SimpleMaterialBalanceXlsService extends XlsDocumentService {
             row.createCell(2).setCellValue(product.getField(L_UNIT).toString());
             row.createCell(3).setCellValue(numberService.format(neededProductQuantity.getValue()));
             BigDecimal available = BigDecimal.ZERO;
-            for (Entity simpleMaterialBalanceLocationComponent : simpleMaterialBalanceLocationComponents) {
-                available = available.add(materialFlowService.calculateShouldBeInLocation(simpleMaterialBalanceLocationComponent
-                        .getBelongsToField(L_LOCATION).getId(), product.getId(), (Date) simpleMaterialBalance.getField(L_DATE)),
-                        numberService.getMathContext());
+            if (availableQuantities.containsKey(product.getId())) {
+                available = availableQuantities.get(product.getId());
             }
             row.createCell(4).setCellValue(numberService.format(available));
             row.createCell(5)
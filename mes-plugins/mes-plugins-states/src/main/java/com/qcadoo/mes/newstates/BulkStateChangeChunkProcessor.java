@@ -0,0 +1,89 @@
+package com.qcadoo.mes.newstates;
+
+import java.util.Date;
+import java.util.List;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.states.StateChangeEntityDescriber;
+import com.qcadoo.mes.states.constants.StateChangeStatus;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.exception.EntityRuntimeException;
+
+@Service
+public class BulkStateChangeChunkProcessor {
+
+    @Transactional
+    public <M extends StateService> List<Entity> applyChunk(final List<M> services, final StateChangeEntityDescriber describer,
+            final List<Entity> entities, final String targetState, final Entity shift, final String worker) {
+        List<Entity> savedEntities = Lists.newArrayListWithCapacity(entities.size());
+
+        for (Entity entity : entities) {
+            String sourceState = entity.getStringField(describer.getOwnerStateFieldName());
+            Entity stateChangeEntity = buildStateChangeEntity(describer, entity, sourceState, targetState, shift, worker);
+
+            entity.setField(describer.getOwnerStateFieldName(), targetState);
+
+            for (StateService service : services) {
+                entity = service.onBeforeSave(entity, sourceState, targetState, stateChangeEntity, describer);
+            }
+            if (!entity.isValid()) {
+                throw new EntityRuntimeException(entity);
+            }
+
+            entity = entity.getDataDefinition().save(entity);
+            if (!entity.isValid()) {
+                throw new EntityRuntimeException(entity);
+            }
+
+            for (StateService service : services) {
+                entity = service.onAfterSave(entity, sourceState, targetState, stateChangeEntity, describer);
+            }
+            if (!entity.isValid()) {
+                throw new EntityRuntimeException(entity);
+            }
+
+            stateChangeEntity.setField(describer.getStatusFieldName(), StateChangeStatus.SUCCESSFUL.getStringValue());
+            saveStateChangeEntity(stateChangeEntity);
+
+            savedEntities.add(entity);
+        }
+
+        return savedEntities;
+    }
+
+    @Transactional
+    public void saveFailures(final StateChangeEntityDescriber describer, final List<Entity> entities, final String targetState,
+            final Entity shift, final String worker) {
+        for (Entity entity : entities) {
+            Entity stateChangeEntity = buildStateChangeEntity(describer, entity,
+                    entity.getStringField(describer.getOwnerStateFieldName()), targetState, shift, worker);
+            stateChangeEntity.setField(describer.getStatusFieldName(), StateChangeStatus.FAILURE.getStringValue());
+            saveStateChangeEntity(stateChangeEntity);
+        }
+    }
+
+    private Entity buildStateChangeEntity(final StateChangeEntityDescriber describer, final Entity owner,
+            final String sourceState, final String targetState, final Entity shift, final String worker) {
+        final Entity stateChangeEntity = describer.getDataDefinition().create();
+
+        stateChangeEntity.setField(describer.getDateTimeFieldName(), new Date());
+        stateChangeEntity.setField(describer.getSourceStateFieldName(), sourceState);
+        stateChangeEntity.setField(describer.getTargetStateFieldName(), targetState);
+        stateChangeEntity.setField(describer.getShiftFieldName(), shift);
+        stateChangeEntity.setField(describer.getWorkerFieldName(), worker);
+        stateChangeEntity.setField(describer.getPhaseFieldName(), 0);
+        stateChangeEntity.setField(describer.getOwnerFieldName(), owner);
+
+        return stateChangeEntity;
+    }
+
+    private void saveStateChangeEntity(final Entity stateChangeEntity) {
+        Entity saved = stateChangeEntity.getDataDefinition().save(stateChangeEntity);
+        if (!saved.isValid()) {
+            throw new RuntimeException(String.format("Error on save state entity: %s", saved.getErrors()));
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.qcadoo.mes.newstates;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Maps;
+import com.qcadoo.localization.api.TranslationService;
+
+@Controller
+@RequestMapping("/rest/states/bulkChange")
+public class BulkStateChangeController {
+
+    @Autowired
+    private BulkStateChangeService bulkStateChangeService;
+
+    @Autowired
+    private TranslationService translationService;
+
+    @ResponseBody
+    @RequestMapping(method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE, value = "{jobId}")
+    public Map<String, Object> getProgress(@PathVariable String jobId) {
+        Map<String, Object> progress = Maps.newHashMap();
+        Optional<BulkStateChangeJob> maybeJob = bulkStateChangeService.getJob(jobId);
+
+        progress.put("exists", maybeJob.isPresent());
+
+        if (maybeJob.isPresent()) {
+            BulkStateChangeJob job = maybeJob.get();
+            Locale locale = LocaleContextHolder.getLocale();
+
+            progress.put("total", job.getTotal());
+            progress.put("processed", job.getProcessed());
+            progress.put("finished", job.isFinished());
+            progress.put("results", job.getResults().stream().map(result -> toMap(result, locale)).collect(Collectors.toList()));
+        }
+
+        return progress;
+    }
+
+    private Map<String, Object> toMap(final BulkStateChangeJob.Result result, final Locale locale) {
+        Map<String, Object> values = Maps.newHashMap();
+
+        List<String> messages = result.getMessages().stream()
+                .map(message -> translationService.translate(message.getMessage(), locale, message.getVars()))
+                .collect(Collectors.toList());
+
+        values.put("entityId", result.getEntityId());
+        values.put("successful", result.isSuccessful());
+        values.put("messages", messages);
+
+        return values;
+    }
+}
@@ -0,0 +1,97 @@
+package com.qcadoo.mes.newstates;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.qcadoo.model.api.validators.ErrorMessage;
+
+public class BulkStateChangeJob {
+
+    private final String id = UUID.randomUUID().toString();
+
+    private final int total;
+
+    private final AtomicInteger processed = new AtomicInteger();
+
+    private final List<Result> results = Collections.synchronizedList(Lists.newArrayList());
+
+    private volatile Long finishTime;
+
+    public BulkStateChangeJob(final int total) {
+        this.total = total;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public int getProcessed() {
+        return processed.get();
+    }
+
+    public boolean isFinished() {
+        return finishTime != null;
+    }
+
+    public Long getFinishTime() {
+        return finishTime;
+    }
+
+    public List<Result> getResults() {
+        synchronized (results) {
+            return ImmutableList.copyOf(results);
+        }
+    }
+
+    void addSuccess(final Long entityId) {
+        addResult(new Result(entityId, true, Collections.emptyList()));
+    }
+
+    void addFailure(final Long entityId, final List<ErrorMessage> messages) {
+        addResult(new Result(entityId, false, messages));
+    }
+
+    void finish() {
+        finishTime = System.currentTimeMillis();
+    }
+
+    private void addResult(final Result result) {
+        results.add(result);
+        processed.incrementAndGet();
+    }
+
+    public static class Result {
+
+        private final Long entityId;
+
+        private final boolean successful;
+
+        private final List<ErrorMessage> messages;
+
+        Result(final Long entityId, final boolean successful, final List<ErrorMessage> messages) {
+            this.entityId = entityId;
+            this.successful = successful;
+            this.messages = ImmutableList.copyOf(messages);
+        }
+
+        public Long getEntityId() {
+            return entityId;
+        }
+
+        public boolean isSuccessful() {
+            return successful;
+        }
+
+        public List<ErrorMessage> getMessages() {
+            return messages;
+        }
+    }
+}
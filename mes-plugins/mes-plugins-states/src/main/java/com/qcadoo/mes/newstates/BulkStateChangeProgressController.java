@@ -0,0 +1,41 @@
+package com.qcadoo.mes.newstates;
+
+import java.util.Locale;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.servlet.ModelAndView;
+
+import com.qcadoo.localization.api.TranslationService;
+
+/**
+ * Page showing progress of bulk state change. It polls {@link BulkStateChangeController} until the job is finished.
+ */
+@Controller
+public class BulkStateChangeProgressController {
+
+    private static final String L_PROGRESS_PAGE = "/states/bulkChangeProgress.html";
+
+    @Autowired
+    private TranslationService translationService;
+
+    public static String getProgressPageUrl(final String jobId) {
+        return L_PROGRESS_PAGE + "?jobId=" + jobId;
+    }
+
+    @RequestMapping(value = L_PROGRESS_PAGE, method = RequestMethod.GET)
+    public ModelAndView getProgressPage(@RequestParam("jobId") final String jobId, final Locale locale) {
+        ModelAndView mav = new ModelAndView();
+
+        mav.addObject("jobId", jobId);
+        mav.addObject("translationsMap", translationService.getMessagesGroup("bulkStateChange", locale));
+
+        mav.setViewName("states/bulkChangeProgress");
+
+        return mav;
+    }
+
+}
@@ -0,0 +1,266 @@
+package com.qcadoo.mes.newstates;
+
+import static com.qcadoo.mes.states.constants.StateChangeStatus.IN_PROGRESS;
+import static com.qcadoo.mes.states.constants.StateChangeStatus.PAUSED;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.qcadoo.mes.basic.ShiftsService;
+import com.qcadoo.mes.states.StateChangeEntityDescriber;
+import com.qcadoo.mes.states.StateEnum;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.exception.EntityRuntimeException;
+import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.model.api.search.SearchRestrictions;
+import com.qcadoo.model.api.validators.ErrorMessage;
+import com.qcadoo.model.api.validators.GlobalMessage;
+
+/**
+ * Changes state of many entities at once, e.g. selected in a grid. Services are resolved once, all entities are validated
+ * before any of them is changed and the transition is applied in chunks, each in its own transaction. Progress and results of
+ * every entity are available through {@link #getJob(String)}.
+ * 
+ * Jobs are kept in memory of the node which performs them, so their progress can be read only on this node.
+ */
+@Service
+public class BulkStateChangeService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BulkStateChangeService.class);
+
+    private static final int CHUNK_SIZE = 50;
+
+    private static final long FINISHED_JOB_TTL = TimeUnit.MINUTES.toMillis(30);
+
+    private final Map<String, BulkStateChangeJob> jobs = new ConcurrentHashMap<>();
+
+    @Autowired
+    private StateServicesResolver stateServicesResolver;
+
+    @Autowired
+    private BulkStateChangeChunkProcessor chunkProcessor;
+
+    @Autowired
+    private ShiftsService shiftsService;
+
+    public BulkStateChangeJob createJob(final List<Long> entityIds) {
+        evictFinishedJobs();
+
+        BulkStateChangeJob job = new BulkStateChangeJob(entityIds.size());
+        jobs.put(job.getId(), job);
+
+        return job;
+    }
+
+    public Optional<BulkStateChangeJob> getJob(final String jobId) {
+        return Optional.fromNullable(jobs.get(jobId));
+    }
+
+    /**
+     * Changes state as the given worker, so that hooks which read the current user see the same user as in the request thread.
+     */
+    @Async
+    public <M extends StateService> void execute(final BulkStateChangeJob job, final Class<M> serviceMarker,
+            final List<Long> entityIds, final String targetState, final String worker) {
+        SecurityContext previousContext = SecurityContextHolder.getContext();
+        SecurityContext context = SecurityContextHolder.createEmptyContext();
+
+        context.setAuthentication(new UsernamePasswordAuthenticationToken(worker, null, Collections
+                .<GrantedAuthority> emptyList()));
+
+        SecurityContextHolder.setContext(context);
+
+        try {
+            List<M> services = stateServicesResolver.resolve(serviceMarker);
+            StateChangeEntityDescriber describer = services.get(0).getChangeEntityDescriber();
+
+            List<Entity> entities = validate(job, services, describer, entityIds, targetState, worker);
+
+            for (List<Entity> chunk : Lists.partition(entities, CHUNK_SIZE)) {
+                applyChunk(job, services, describer, chunk, targetState, worker);
+            }
+        } catch (Exception exception) {
+            LOG.warn("Can't perform bulk state change", exception);
+        } finally {
+            job.finish();
+
+            SecurityContextHolder.setContext(previousContext);
+        }
+    }
+
+    private <M extends StateService> List<Entity> validate(final BulkStateChangeJob job, final List<M> services,
+            final StateChangeEntityDescriber describer, final List<Long> entityIds, final String targetState,
+            final String worker) {
+        Set<Long> ownersWithUnfinishedChange = findOwnersWithUnfinishedChange(describer, entityIds);
+        StateEnum targetStateEnum = describer.parseStateEnum(targetState);
+
+        List<Entity> validEntities = Lists.newArrayList();
+        List<Entity> invalidEntities = Lists.newArrayList();
+
+        for (Entity entity : findOwners(describer, entityIds)) {
+            String sourceState = entity.getStringField(describer.getOwnerStateFieldName());
+            StateEnum sourceStateEnum = describer.parseStateEnum(sourceState);
+
+            if (sourceStateEnum != null && !sourceStateEnum.canChangeTo(targetStateEnum)) {
+                job.addFailure(entity.getId(),
+                        Lists.newArrayList(new ErrorMessage("states.messages.change.failure.transitionNotAllowed")));
+                invalidEntities.add(entity);
+                continue;
+            }
+            if (ownersWithUnfinishedChange.contains(entity.getId())) {
+                job.addFailure(entity.getId(),
+                        Lists.newArrayList(new ErrorMessage("states.messages.change.failure.anotherChangeInProgress")));
+                invalidEntities.add(entity);
+                continue;
+            }
+
+            entity = runValidateHooks(services, describer, entity, sourceState, targetState);
+
+            if (entity.isValid()) {
+                validEntities.add(entity);
+            } else {
+                job.addFailure(entity.getId(), collectMessages(entity));
+                invalidEntities.add(entity);
+            }
+        }
+
+        if (!invalidEntities.isEmpty()) {
+            chunkProcessor.saveFailures(describer, invalidEntities, targetState,
+                    shiftsService.getShiftFromDateWithTime(new Date()), worker);
+        }
+
+        return validEntities;
+    }
+
+    private <M extends StateService> void applyChunk(final BulkStateChangeJob job, final List<M> services,
+            final StateChangeEntityDescriber describer, final List<Entity> chunk, final String targetState, final String worker) {
+        Entity shift = shiftsService.getShiftFromDateWithTime(new Date());
+
+        try {
+            for (Entity entity : chunkProcessor.applyChunk(services, describer, chunk, targetState, shift, worker)) {
+                job.addSuccess(entity.getId());
+            }
+
+            return;
+        } catch (Exception exception) {
+            LOG.info(String.format("Bulk state change of %d entities rolled back, retrying one by one", chunk.size()));
+        }
+
+        // chunk was rolled back, retry entities separately so that one failure doesn't affect the others. Entities of chunk
+        // were already changed by hooks, so each one is read again, together with changes committed in the meantime.
+        for (Entity entity : chunk) {
+            Entity owner = describer.getOwnerDataDefinition().get(entity.getId());
+
+            if (owner == null) {
+                job.addFailure(entity.getId(),
+                        Lists.newArrayList(new ErrorMessage("states.messages.change.failure.internalServerError")));
+                continue;
+            }
+
+            String sourceState = owner.getStringField(describer.getOwnerStateFieldName());
+            StateEnum sourceStateEnum = describer.parseStateEnum(sourceState);
+
+            if (sourceStateEnum != null && !sourceStateEnum.canChangeTo(describer.parseStateEnum(targetState))) {
+                job.addFailure(owner.getId(),
+                        Lists.newArrayList(new ErrorMessage("states.messages.change.failure.transitionNotAllowed")));
+                continue;
+            }
+
+            owner = runValidateHooks(services, describer, owner, sourceState, targetState);
+
+            if (!owner.isValid()) {
+                chunkProcessor.saveFailures(describer, Collections.singletonList(owner), targetState, shift, worker);
+                job.addFailure(owner.getId(), collectMessages(owner));
+                continue;
+            }
+
+            try {
+                chunkProcessor.applyChunk(services, describer, Collections.singletonList(owner), targetState, shift, worker);
+                job.addSuccess(owner.getId());
+            } catch (EntityRuntimeException entityException) {
+                owner.setField(describer.getOwnerStateFieldName(), sourceState);
+                chunkProcessor.saveFailures(describer, Collections.singletonList(owner), targetState, shift, worker);
+                job.addFailure(owner.getId(), collectMessages(entityException.getEntity()));
+            } catch (Exception exception) {
+                LOG.warn("Can't perform state change", exception);
+                owner.setField(describer.getOwnerStateFieldName(), sourceState);
+                chunkProcessor.saveFailures(describer, Collections.singletonList(owner), targetState, shift, worker);
+                job.addFailure(owner.getId(),
+                        Lists.newArrayList(new ErrorMessage("states.messages.change.failure.internalServerError")));
+            }
+        }
+    }
+
+    private <M extends StateService> Entity runValidateHooks(final List<M> services, final StateChangeEntityDescriber describer,
+            final Entity entity, final String sourceState, final String targetState) {
+        Entity stateChangeEntity = describer.getDataDefinition().create();
+        stateChangeEntity.setField(describer.getSourceStateFieldName(), sourceState);
+        stateChangeEntity.setField(describer.getTargetStateFieldName(), targetState);
+        stateChangeEntity.setField(describer.getOwnerFieldName(), entity);
+
+        Entity validatedEntity = entity;
+
+        for (StateService service : services) {
+            validatedEntity = service.onValidate(validatedEntity, sourceState, targetState, stateChangeEntity, describer);
+        }
+
+        return validatedEntity;
+    }
+
+    private List<Entity> findOwners(final StateChangeEntityDescriber describer, final List<Long> entityIds) {
+        return describer.getOwnerDataDefinition().find().add(SearchRestrictions.in("id", entityIds)).list().getEntities();
+    }
+
+    private Set<Long> findOwnersWithUnfinishedChange(final StateChangeEntityDescriber describer, final List<Long> entityIds) {
+        final String ownerFieldName = describer.getOwnerFieldName();
+
+        SearchCriteriaBuilder searchCriteria = describer.getDataDefinition().find();
+        searchCriteria.createAlias(ownerFieldName, ownerFieldName);
+        searchCriteria.add(SearchRestrictions.in(ownerFieldName + ".id", entityIds));
+        searchCriteria.add(SearchRestrictions.in(describer.getStatusFieldName(),
+                Sets.newHashSet(IN_PROGRESS.getStringValue(), PAUSED.getStringValue())));
+
+        Set<Long> ownerIds = Sets.newHashSet();
+
+        for (Entity stateChangeEntity : searchCriteria.list().getEntities()) {
+            ownerIds.add(stateChangeEntity.getBelongsToField(ownerFieldName).getId());
+        }
+
+        return ownerIds;
+    }
+
+    private List<ErrorMessage> collectMessages(final Entity entity) {
+        List<ErrorMessage> messages = Lists.newArrayList(entity.getGlobalErrors());
+        messages.addAll(entity.getErrors().values());
+
+        for (GlobalMessage globalMessage : entity.getGlobalMessages()) {
+            messages.add(new ErrorMessage(globalMessage.getMessage(), globalMessage.getVars()));
+        }
+
+        return messages;
+    }
+
+    private void evictFinishedJobs() {
+        long now = System.currentTimeMillis();
+
+        jobs.values().removeIf(job -> job.isFinished() && now - job.getFinishTime() > FINISHED_JOB_TTL);
+    }
+}
@@ -3,20 +3,16 @@ package com.qcadoo.mes.newstates;
 import static com.qcadoo.mes.states.constants.StateChangeStatus.IN_PROGRESS;
 import static com.qcadoo.mes.states.constants.StateChangeStatus.PAUSED;
 
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
 import org.apache.log4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Scope;
 import org.springframework.context.annotation.ScopedProxyMode;
-import org.springframework.core.annotation.AnnotationAwareOrderComparator;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -35,8 +31,6 @@ import com.qcadoo.model.api.search.SearchCriteriaBuilder;
 import com.qcadoo.model.api.search.SearchRestrictions;
 import com.qcadoo.model.api.validators.ErrorMessage;
 import com.qcadoo.model.api.validators.GlobalMessage;
-import com.qcadoo.plugin.api.PluginUtils;
-import com.qcadoo.plugin.api.RunIfEnabled;
 import com.qcadoo.security.api.SecurityService;
 import com.qcadoo.view.api.ComponentMessagesHolder;
 import com.qcadoo.view.api.ComponentState;
@@ -50,8 +44,13 @@ public class StateExecutorService {
 
     private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(StateExecutorService.class);
 
+    private static final int BULK_CHANGE_THRESHOLD = 10;
+
+    @Autowired
+    private StateServicesResolver stateServicesResolver;
+
     @Autowired
-    private ApplicationContext applicationContext;
+    private BulkStateChangeService bulkStateChangeService;
 
     @Autowired
     private ShiftsService shiftsService;
@@ -68,9 +67,22 @@ public class StateExecutorService {
 
         Optional<GridComponent> maybeGridComponent = view.tryFindComponentByReference("grid");
         if (maybeGridComponent.isPresent()) {
+            List<Long> selectedIds = Lists.newArrayList(maybeGridComponent.get().getSelectedEntitiesIds());
+
+            if (selectedIds.size() > BULK_CHANGE_THRESHOLD) {
+                BulkStateChangeJob job = bulkStateChangeService.createJob(selectedIds);
+                bulkStateChangeService.execute(job, serviceMarker, selectedIds, args[0], securityService.getCurrentUserName());
+
+                view.addMessage("states.messages.change.bulk.started", ComponentState.MessageType.INFO, false,
+                        String.valueOf(selectedIds.size()));
+                view.redirectTo(BulkStateChangeProgressController.getProgressPageUrl(job.getId()), true, false);
+                return;
+            }
+
+            List<M> services = stateServicesResolver.resolve(serviceMarker);
             maybeGridComponent.get().getSelectedEntities().forEach(entity -> {
                 entity = entity.getDataDefinition().getMasterModelEntity(entity.getId());
-                entity = changeState(serviceMarker, entity, args[0]);
+                entity = changeState(services, entity, args[0]);
 
                 copyMessages(entity);
             });
@@ -89,7 +101,10 @@ public class StateExecutorService {
     }
 
     public <M extends StateService> Entity changeState(Class<M> serviceMarker, Entity entity, String targetState) {
-        List<M> services = lookupChangeStateServices(serviceMarker);
+        return changeState(stateServicesResolver.resolve(serviceMarker), entity, targetState);
+    }
+
+    private <M extends StateService> Entity changeState(List<M> services, Entity entity, String targetState) {
         StateChangeEntityDescriber describer = services.stream().findFirst().get().getChangeEntityDescriber();
         String sourceState = entity.getStringField(describer.getOwnerStateFieldName());
 
@@ -271,24 +286,8 @@ public class StateExecutorService {
         return entity.isValid();
     }
 
-    private <M extends StateService> List<M> lookupChangeStateServices(Class<M> serviceMarker) {
-        Map<String, M> stateServices = applicationContext.getBeansOfType(serviceMarker);
-
-        List<M> services = new ArrayList<>();
-
-        for (M service : stateServices.values()) {
-            if (serviceEnabled(service)) {
-                services.add(service);
-            }
-        }
-
-        AnnotationAwareOrderComparator.sort(services);
-
-        return services;
-    }
-
     public <M extends StateService> void buildInitial(Class<M> serviceMarker, Entity entity, String initialState) {
-        List<M> services = lookupChangeStateServices(serviceMarker);
+        List<M> services = stateServicesResolver.resolve(serviceMarker);
 
         StateChangeEntityDescriber describer = services.get(0).getChangeEntityDescriber();
         Entity stateChangeEntity = buildStateChangeEntity(describer, entity, null, initialState);
@@ -299,20 +298,6 @@ public class StateExecutorService {
 
     }
 
-    private <M extends Object & StateService> boolean serviceEnabled(M service) {
-        RunIfEnabled runIfEnabled = service.getClass().getAnnotation(RunIfEnabled.class);
-        if (runIfEnabled == null) {
-            return true;
-        }
-        for (String pluginIdentifier : runIfEnabled.value()) {
-            if (!PluginUtils.isEnabled(pluginIdentifier)) {
-                return false;
-            }
-        }
-
-        return true;
-    }
-
     private void copyMessages(Entity entity, Entity mainEntity) {
         if (mainEntity != null && mainEntity.equals(entity)) {
             return;
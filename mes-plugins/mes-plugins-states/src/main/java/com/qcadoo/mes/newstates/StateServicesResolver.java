@@ -0,0 +1,50 @@
+package com.qcadoo.mes.newstates;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+import org.springframework.core.annotation.AnnotationAwareOrderComparator;
+import org.springframework.stereotype.Service;
+
+import com.qcadoo.plugin.api.PluginUtils;
+import com.qcadoo.plugin.api.RunIfEnabled;
+
+@Service
+public class StateServicesResolver {
+
+    @Autowired
+    private ApplicationContext applicationContext;
+
+    public <M extends StateService> List<M> resolve(Class<M> serviceMarker) {
+        Map<String, M> stateServices = applicationContext.getBeansOfType(serviceMarker);
+
+        List<M> services = new ArrayList<>();
+
+        for (M service : stateServices.values()) {
+            if (serviceEnabled(service)) {
+                services.add(service);
+            }
+        }
+
+        AnnotationAwareOrderComparator.sort(services);
+
+        return services;
+    }
+
+    private <M extends Object & StateService> boolean serviceEnabled(M service) {
+        RunIfEnabled runIfEnabled = service.getClass().getAnnotation(RunIfEnabled.class);
+        if (runIfEnabled == null) {
+            return true;
+        }
+        for (String pluginIdentifier : runIfEnabled.value()) {
+            if (!PluginUtils.isEnabled(pluginIdentifier)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,108 @@
+<%--
+
+    ***************************************************************************
+    Copyright (c) 2010 Qcadoo Limited
+    Project: Qcadoo MES
+    Version: 1.4
+
+    This file is part of Qcadoo.
+
+    Qcadoo is free software; you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation; either version 3 of the License,
+    or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty
+    of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+    See the GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+    ***************************************************************************
+
+--%>
+<%@ page language="java" contentType="text/html; charset=UTF-8" pageEncoding="UTF-8"%>
+<%@ taglib prefix="c" uri="http://java.sun.com/jstl/core_rt" %>
+<!DOCTYPE html PUBLIC "-//W3C//DTD HTML 4.01 Transitional//EN" "http://www.w3.org/TR/html4/loose.dtd">
+
+<html>
+<head>
+	<title>${translationsMap['states.bulkChange.title']}</title>
+
+	<script type="text/javascript" src="${pageContext.request.contextPath}/qcadooView/public/js/core/lib/_jquery-1.4.2.min.js"></script>
+
+	<script type="text/javascript">
+
+		var progressUrl = "${pageContext.request.contextPath}/rest/states/bulkChange/<c:out value='${jobId}' />";
+
+		var translations = {
+			processed: "<c:out value="${translationsMap['states.bulkChange.processed']}" />",
+			finished: "<c:out value="${translationsMap['states.bulkChange.finished']}" />",
+			notFound: "<c:out value="${translationsMap['states.bulkChange.notFound']}" />",
+			successful: "<c:out value="${translationsMap['states.bulkChange.successful']}" />",
+			failed: "<c:out value="${translationsMap['states.bulkChange.failed']}" />"
+		};
+
+		function showProgress(progress) {
+			if (!progress.exists) {
+				$("#status").text(translations.notFound);
+				return;
+			}
+
+			$("#status").text(translations.processed.replace("{0}", progress.processed).replace("{1}", progress.total)
+				+ (progress.finished ? " " + translations.finished : ""));
+
+			var results = $("#results").empty();
+
+			$.each(progress.results, function (index, result) {
+				var row = $("<tr/>");
+
+				row.append($("<td/>").text(result.entityId));
+				row.append($("<td/>").text(result.successful ? translations.successful : translations.failed));
+				row.append($("<td/>").text(result.messages.join(" ")));
+
+				results.append(row);
+			});
+
+			if (!progress.finished) {
+				setTimeout(pollProgress, 2000);
+			}
+		}
+
+		function pollProgress() {
+			$.ajax({
+				url: progressUrl,
+				dataType: "json",
+				cache: false,
+				success: showProgress,
+				error: function () {
+					setTimeout(pollProgress, 5000);
+				}
+			});
+		}
+
+		jQuery(document).ready(pollProgress);
+
+	</script>
+</head>
+<body>
+
+	<h2>${translationsMap['states.bulkChange.title']}</h2>
+
+	<p id="status"></p>
+
+	<table>
+		<thead>
+			<tr>
+				<th>${translationsMap['states.bulkChange.entityId']}</th>
+				<th>${translationsMap['states.bulkChange.result']}</th>
+				<th>${translationsMap['states.bulkChange.messages']}</th>
+			</tr>
+		</thead>
+		<tbody id="results"></tbody>
+	</table>
+
+</body>
+</html>
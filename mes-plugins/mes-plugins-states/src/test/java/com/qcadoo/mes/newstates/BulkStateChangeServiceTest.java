@@ -0,0 +1,263 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.newstates;
+
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.basic.ShiftsService;
+import com.qcadoo.mes.states.StateChangeEntityDescriber;
+import com.qcadoo.mes.states.TestState;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.model.api.search.SearchCriterion;
+import com.qcadoo.model.api.search.SearchResult;
+
+public class BulkStateChangeServiceTest {
+
+    private static final String WORKER = "worker";
+
+    private BulkStateChangeService bulkStateChangeService;
+
+    @Mock
+    private StateServicesResolver stateServicesResolver;
+
+    @Mock
+    private BulkStateChangeChunkProcessor chunkProcessor;
+
+    @Mock
+    private ShiftsService shiftsService;
+
+    @Mock
+    private StateService stateService;
+
+    @Mock
+    private StateChangeEntityDescriber describer;
+
+    @Mock
+    private DataDefinition ownerDD, stateChangeDD;
+
+    @Mock
+    private SearchCriteriaBuilder ownerCriteria, stateChangeCriteria;
+
+    @Mock
+    private Entity draftOwner, declinedOwner, reloadedOwner, stateChangeEntity;
+
+    @Before
+    public final void init() {
+        MockitoAnnotations.initMocks(this);
+
+        bulkStateChangeService = new BulkStateChangeService();
+
+        ReflectionTestUtils.setField(bulkStateChangeService, "stateServicesResolver", stateServicesResolver);
+        ReflectionTestUtils.setField(bulkStateChangeService, "chunkProcessor", chunkProcessor);
+        ReflectionTestUtils.setField(bulkStateChangeService, "shiftsService", shiftsService);
+
+        given(stateServicesResolver.resolve(StateService.class)).willReturn(Lists.newArrayList(stateService));
+        given(stateService.getChangeEntityDescriber()).willReturn(describer);
+        given(stateService.onValidate(any(Entity.class), anyString(), anyString(), any(Entity.class),
+                any(StateChangeEntityDescriber.class))).willAnswer(invocation -> invocation.getArguments()[0]);
+
+        given(describer.getOwnerStateFieldName()).willReturn("state");
+        given(describer.getOwnerFieldName()).willReturn("owner");
+        given(describer.getStatusFieldName()).willReturn("status");
+        given(describer.getOwnerDataDefinition()).willReturn(ownerDD);
+        given(describer.getDataDefinition()).willReturn(stateChangeDD);
+        given(describer.parseStateEnum(anyString())).willAnswer(
+                invocation -> TestState.parseString((String) invocation.getArguments()[0]));
+
+        given(ownerDD.find()).willReturn(ownerCriteria);
+        given(ownerCriteria.add(any(SearchCriterion.class))).willReturn(ownerCriteria);
+        stubSearchResult(ownerCriteria, Lists.newArrayList(draftOwner, declinedOwner));
+
+        given(stateChangeDD.find()).willReturn(stateChangeCriteria);
+        given(stateChangeDD.create()).willReturn(stateChangeEntity);
+        given(stateChangeCriteria.createAlias(anyString(), anyString())).willReturn(stateChangeCriteria);
+        given(stateChangeCriteria.add(any(SearchCriterion.class))).willReturn(stateChangeCriteria);
+        stubSearchResult(stateChangeCriteria, Collections.emptyList());
+
+        stubOwner(draftOwner, 1L, TestState.DRAFT);
+        stubOwner(declinedOwner, 2L, TestState.DECLINED);
+        stubOwner(reloadedOwner, 1L, TestState.DRAFT);
+
+        given(chunkProcessor.applyChunk(anyListOf(StateService.class), any(StateChangeEntityDescriber.class),
+                anyListOf(Entity.class), anyString(), any(Entity.class), anyString())).willAnswer(
+                invocation -> invocation.getArguments()[2]);
+    }
+
+    @After
+    public final void clearSecurityContext() {
+        SecurityContextHolder.clearContext();
+    }
+
+    private void stubSearchResult(final SearchCriteriaBuilder criteria, final List<Entity> entities) {
+        SearchResult searchResult = mock(SearchResult.class);
+        given(searchResult.getEntities()).willReturn(entities);
+        given(criteria.list()).willReturn(searchResult);
+    }
+
+    private void stubOwner(final Entity owner, final Long id, final TestState state) {
+        given(owner.getId()).willReturn(id);
+        given(owner.getStringField("state")).willReturn(state.getStringValue());
+        given(owner.isValid()).willReturn(true);
+    }
+
+    @Test
+    public final void shouldValidateAllEntitiesBeforeApplyingTransition() {
+        // given
+        List<Long> entityIds = Lists.newArrayList(1L, 2L);
+        BulkStateChangeJob job = bulkStateChangeService.createJob(entityIds);
+
+        // when
+        bulkStateChangeService.execute(job, StateService.class, entityIds, TestState.ACCEPTED.getStringValue(), WORKER);
+
+        // then
+        verify(chunkProcessor).saveFailures(eq(describer), eq(Lists.newArrayList(declinedOwner)),
+                eq(TestState.ACCEPTED.getStringValue()), any(Entity.class), eq(WORKER));
+        verify(chunkProcessor).applyChunk(eq(Lists.newArrayList(stateService)), eq(describer),
+                eq(Lists.newArrayList(draftOwner)), eq(TestState.ACCEPTED.getStringValue()), any(Entity.class), eq(WORKER));
+
+        Assert.assertTrue(job.isFinished());
+        Assert.assertEquals(2, job.getProcessed());
+
+        BulkStateChangeJob.Result failure = job.getResults().get(0);
+        Assert.assertEquals(Long.valueOf(2L), failure.getEntityId());
+        Assert.assertFalse(failure.isSuccessful());
+        Assert.assertEquals("states.messages.change.failure.transitionNotAllowed", failure.getMessages().get(0).getMessage());
+
+        BulkStateChangeJob.Result success = job.getResults().get(1);
+        Assert.assertEquals(Long.valueOf(1L), success.getEntityId());
+        Assert.assertTrue(success.isSuccessful());
+    }
+
+    @Test
+    public final void shouldChangeStateAsWorker() {
+        // given
+        List<Long> entityIds = Lists.newArrayList(1L);
+        BulkStateChangeJob job = bulkStateChangeService.createJob(entityIds);
+        List<String> currentUserNames = Lists.newArrayList();
+
+        given(stateService.onValidate(any(Entity.class), anyString(), anyString(), any(Entity.class),
+                any(StateChangeEntityDescriber.class))).willAnswer(invocation -> {
+            currentUserNames.add(SecurityContextHolder.getContext().getAuthentication().getName());
+
+            return invocation.getArguments()[0];
+        });
+
+        // when
+        bulkStateChangeService.execute(job, StateService.class, entityIds, TestState.ACCEPTED.getStringValue(), WORKER);
+
+        // then
+        Assert.assertEquals(Lists.newArrayList(WORKER), currentUserNames);
+        Assert.assertNull(SecurityContextHolder.getContext().getAuthentication());
+    }
+
+    @Test
+    public final void shouldRetryEntitiesSeparatelyWhenChunkFails() {
+        // given
+        List<Long> entityIds = Lists.newArrayList(1L);
+        BulkStateChangeJob job = bulkStateChangeService.createJob(entityIds);
+        stubSearchResult(ownerCriteria, Lists.newArrayList(draftOwner));
+        given(chunkProcessor.applyChunk(anyListOf(StateService.class), any(StateChangeEntityDescriber.class),
+                anyListOf(Entity.class), anyString(), any(Entity.class), anyString())).willThrow(new IllegalStateException())
+                .willAnswer(invocation -> invocation.getArguments()[2]);
+
+        given(ownerDD.get(1L)).willReturn(reloadedOwner);
+
+        // when
+        bulkStateChangeService.execute(job, StateService.class, entityIds, TestState.ACCEPTED.getStringValue(), WORKER);
+
+        // then
+        verify(chunkProcessor).applyChunk(eq(Lists.newArrayList(stateService)), eq(describer),
+                eq(Collections.singletonList(reloadedOwner)), eq(TestState.ACCEPTED.getStringValue()), any(Entity.class),
+                eq(WORKER));
+        verify(stateService).onValidate(eq(reloadedOwner), eq(TestState.DRAFT.getStringValue()),
+                eq(TestState.ACCEPTED.getStringValue()), any(Entity.class), eq(describer));
+        verify(draftOwner, never()).setField(anyString(), any());
+        Assert.assertEquals(1, job.getResults().size());
+        Assert.assertTrue(job.getResults().get(0).isSuccessful());
+    }
+
+    @Test
+    public final void shouldNotRetryEntityChangedMeanwhileToStateWithoutTransition() {
+        // given
+        List<Long> entityIds = Lists.newArrayList(1L);
+        BulkStateChangeJob job = bulkStateChangeService.createJob(entityIds);
+        stubSearchResult(ownerCriteria, Lists.newArrayList(draftOwner));
+        given(chunkProcessor.applyChunk(anyListOf(StateService.class), any(StateChangeEntityDescriber.class),
+                anyListOf(Entity.class), anyString(), any(Entity.class), anyString())).willThrow(new IllegalStateException());
+        given(ownerDD.get(1L)).willReturn(reloadedOwner);
+        given(reloadedOwner.getStringField("state")).willReturn(TestState.DECLINED.getStringValue());
+
+        // when
+        bulkStateChangeService.execute(job, StateService.class, entityIds, TestState.ACCEPTED.getStringValue(), WORKER);
+
+        // then
+        verify(chunkProcessor, never()).applyChunk(anyListOf(StateService.class), any(StateChangeEntityDescriber.class),
+                eq(Collections.singletonList(reloadedOwner)), anyString(), any(Entity.class), anyString());
+        Assert.assertEquals(1, job.getResults().size());
+        Assert.assertFalse(job.getResults().get(0).isSuccessful());
+        Assert.assertEquals("states.messages.change.failure.transitionNotAllowed", job.getResults().get(0).getMessages().get(0)
+                .getMessage());
+    }
+
+    @Test
+    public final void shouldFailEntityDeletedBeforeRetry() {
+        // given
+        List<Long> entityIds = Lists.newArrayList(1L);
+        BulkStateChangeJob job = bulkStateChangeService.createJob(entityIds);
+        stubSearchResult(ownerCriteria, Lists.newArrayList(draftOwner));
+        given(chunkProcessor.applyChunk(anyListOf(StateService.class), any(StateChangeEntityDescriber.class),
+                anyListOf(Entity.class), anyString(), any(Entity.class), anyString())).willThrow(new IllegalStateException());
+        given(ownerDD.get(1L)).willReturn(null);
+
+        // when
+        bulkStateChangeService.execute(job, StateService.class, entityIds, TestState.ACCEPTED.getStringValue(), WORKER);
+
+        // then
+        Assert.assertTrue(job.isFinished());
+        Assert.assertEquals(1, job.getResults().size());
+        Assert.assertFalse(job.getResults().get(0).isSuccessful());
+    }
+}
@@ -140,6 +140,15 @@ public interface ProductQuantitiesService {
     OperationProductComponentWithQuantityContainer getProductComponentWithQuantities(final List<Entity> orders,
             final Map<Long, BigDecimal> operationRuns, final Set<OperationProductComponentHolder> nonComponents);
 
+    /**
+     * Explodes technologies of given orders. Each distinct technology (also referenced one) is read only once and orders are
+     * scaled by their planned quantities in parallel.
+     *
+     * @param orders orders
+     * @return product quantities, operation runs and non components of each order, in the same order as given orders
+     */
+    List<ProductQuantitiesHolder> getProductQuantitiesForOrders(final List<Entity> orders);
+
     /**
      * @param productComponentQuantity Product Component Quantity
      * @param productQuantities        Product Quantities
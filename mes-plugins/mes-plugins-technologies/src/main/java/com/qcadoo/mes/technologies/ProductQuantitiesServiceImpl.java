@@ -31,17 +31,24 @@ import com.qcadoo.mes.technologies.constants.*;
 import com.qcadoo.mes.technologies.dto.OperationProductComponentHolder;
 import com.qcadoo.mes.technologies.dto.OperationProductComponentWithQuantityContainer;
 import com.qcadoo.mes.technologies.dto.ProductQuantitiesHolder;
+import com.qcadoo.mes.technologies.graph.TechnologyGraph;
+import com.qcadoo.mes.technologies.graph.TechnologyGraphNode;
+import com.qcadoo.mes.technologies.graph.TechnologyGraphProductComponent;
+import com.qcadoo.mes.technologies.graph.TechnologyGraphService;
 import com.qcadoo.model.api.*;
 import com.qcadoo.model.api.search.SearchRestrictions;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
+import java.math.MathContext;
 import java.math.RoundingMode;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 @Service
 public class ProductQuantitiesServiceImpl implements ProductQuantitiesService {
@@ -54,9 +61,14 @@ public class ProductQuantitiesServiceImpl implements ProductQuantitiesService {
 
     private static final String L_QUANTITY = "quantity";
 
+    private static final int L_PARALLEL_EXPLOSION_THRESHOLD = 8;
+
     @Autowired
     private NumberService numberService;
 
+    @Autowired
+    private TechnologyGraphService technologyGraphService;
+
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
@@ -195,23 +207,13 @@ public class ProductQuantitiesServiceImpl implements ProductQuantitiesService {
     public OperationProductComponentWithQuantityContainer getProductComponentWithQuantitiesForTechnology(final Entity technology,
             final BigDecimal givenQuantity, final Map<Long, BigDecimal> operationRuns,
             final Set<OperationProductComponentHolder> nonComponents) {
-        OperationProductComponentWithQuantityContainer operationProductComponentWithQuantityContainer = new OperationProductComponentWithQuantityContainer();
+        ProductQuantitiesHolder productQuantities = getProductQuantitiesForTechnologyGraph(
+                technologyGraphService.getTechnologyGraph(technology), givenQuantity, numberService.getMathContext());
 
-        EntityTree operationComponents = getOperationComponentsFromTechnology(technology);
-        Entity root = operationComponents.getRoot();
+        operationRuns.putAll(productQuantities.getOperationRuns());
+        nonComponents.addAll(productQuantities.getNonComponents());
 
-        if (root != null) {
-            preloadProductQuantitiesAndOperationRuns(operationComponents, operationProductComponentWithQuantityContainer,
-                    operationRuns);
-            traverseProductQuantitiesAndOperationRuns(technology, givenQuantity, root, null,
-                    operationProductComponentWithQuantityContainer, nonComponents, operationRuns);
-        }
-
-        return operationProductComponentWithQuantityContainer;
-    }
-
-    private EntityTree getOperationComponentsFromTechnology(final Entity technology) {
-        return technology.getTreeField(TechnologyFields.OPERATION_COMPONENTS);
+        return new OperationProductComponentWithQuantityContainer(productQuantities.getProductQuantities());
     }
 
     private OperationProductComponentWithQuantityContainer getProductComponentWithQuantitiesForOrders(final List<Entity> orders,
@@ -219,20 +221,187 @@ public class ProductQuantitiesServiceImpl implements ProductQuantitiesService {
             final boolean onTheFly) {
         Map<Long, OperationProductComponentWithQuantityContainer> productComponentWithQuantitiesForOrders = Maps.newHashMap();
 
-        for (Entity order : orders) {
-            BigDecimal plannedQuantity = order.getDecimalField(L_PLANNED_QUANTITY);
+        List<ProductQuantitiesHolder> productQuantitiesForOrders = getProductQuantitiesForOrders(orders);
+
+        for (int i = 0; i < orders.size(); i++) {
+            ProductQuantitiesHolder productQuantities = productQuantitiesForOrders.get(i);
 
+            productComponentWithQuantitiesForOrders.put(orders.get(i).getId(), new OperationProductComponentWithQuantityContainer(
+                    productQuantities.getProductQuantities()));
+
+            operationRuns.putAll(productQuantities.getOperationRuns());
+            nonComponents.addAll(productQuantities.getNonComponents());
+        }
+
+        return groupOperationProductComponentWithQuantities(productComponentWithQuantitiesForOrders);
+    }
+
+    @Override
+    public List<ProductQuantitiesHolder> getProductQuantitiesForOrders(final List<Entity> orders) {
+        Map<Long, TechnologyGraph> loadedGraphs = Maps.newHashMap();
+
+        List<TechnologyGraph> technologyGraphs = Lists.newArrayList();
+        List<BigDecimal> plannedQuantities = Lists.newArrayList();
+
+        for (Entity order : orders) {
             Entity technology = order.getBelongsToField(L_TECHNOLOGY);
 
             if (technology == null) {
                 throw new IllegalStateException("Order doesn't contain technology.");
             }
 
-            productComponentWithQuantitiesForOrders.put(order.getId(),
-                    getProductComponentWithQuantitiesForTechnology(technology, plannedQuantity, operationRuns, nonComponents));
+            technologyGraphs.add(technologyGraphService.getTechnologyGraph(technology, loadedGraphs));
+            plannedQuantities.add(order.getDecimalField(L_PLANNED_QUANTITY));
         }
 
-        return groupOperationProductComponentWithQuantities(productComponentWithQuantitiesForOrders);
+        // graphs are read-only and scaling doesn't touch database, so orders can be scaled in parallel
+        MathContext mathContext = numberService.getMathContext();
+
+        IntStream indexes = IntStream.range(0, orders.size());
+
+        if (orders.size() >= L_PARALLEL_EXPLOSION_THRESHOLD) {
+            indexes = indexes.parallel();
+        }
+
+        return indexes.mapToObj(i -> getProductQuantitiesForTechnologyGraph(technologyGraphs.get(i), plannedQuantities.get(i),
+                mathContext)).collect(Collectors.toList());
+    }
+
+    private ProductQuantitiesHolder getProductQuantitiesForTechnologyGraph(final TechnologyGraph technologyGraph,
+            final BigDecimal givenQuantity, final MathContext mathContext) {
+        OperationProductComponentWithQuantityContainer operationProductComponentWithQuantityContainer = new OperationProductComponentWithQuantityContainer();
+        Map<Long, BigDecimal> operationRuns = Maps.newHashMap();
+        Set<OperationProductComponentHolder> nonComponents = Sets.newHashSet();
+
+        if (technologyGraph.getRoot() != null) {
+            preloadProductQuantitiesAndOperationRuns(technologyGraph, operationProductComponentWithQuantityContainer,
+                    operationRuns);
+            traverseProductQuantitiesAndOperationRuns(technologyGraph, givenQuantity, technologyGraph.getRoot(), null,
+                    operationProductComponentWithQuantityContainer, nonComponents, operationRuns, mathContext);
+        }
+
+        return new ProductQuantitiesHolder(operationProductComponentWithQuantityContainer, operationRuns, nonComponents);
+    }
+
+    private void preloadProductQuantitiesAndOperationRuns(final TechnologyGraph technologyGraph,
+            final OperationProductComponentWithQuantityContainer operationProductComponentWithQuantityContainer,
+            final Map<Long, BigDecimal> operationRuns) {
+        for (TechnologyGraphNode node : technologyGraph.getNodes()) {
+            if (node.isReferenceTechnology()) {
+                preloadProductQuantitiesAndOperationRuns(node.getReferenceTechnology(),
+                        operationProductComponentWithQuantityContainer, operationRuns);
+
+                continue;
+            }
+
+            for (TechnologyGraphProductComponent productComponent : node.getOperationProductInComponents()) {
+                operationProductComponentWithQuantityContainer.put(productComponent.getHolder(), productComponent.getQuantity());
+            }
+            for (TechnologyGraphProductComponent productComponent : node.getOperationProductOutComponents()) {
+                operationProductComponentWithQuantityContainer.put(productComponent.getHolder(), productComponent.getQuantity());
+            }
+
+            operationRuns.put(node.getId(), BigDecimal.ONE);
+        }
+    }
+
+    private void traverseProductQuantitiesAndOperationRuns(final TechnologyGraph technologyGraph,
+            final BigDecimal givenQuantity, final TechnologyGraphNode node, final TechnologyGraphNode previousNode,
+            final OperationProductComponentWithQuantityContainer operationProductComponentWithQuantityContainer,
+            final Set<OperationProductComponentHolder> nonComponents, final Map<Long, BigDecimal> operationRuns,
+            final MathContext mathContext) {
+        if (node.isReferenceTechnology()) {
+            TechnologyGraph referenceTechnology = node.getReferenceTechnology();
+
+            if (referenceTechnology.getRoot() != null) {
+                traverseProductQuantitiesAndOperationRuns(referenceTechnology, givenQuantity, referenceTechnology.getRoot(),
+                        previousNode, operationProductComponentWithQuantityContainer, nonComponents, operationRuns,
+                        mathContext);
+            }
+
+            return;
+        }
+
+        if (previousNode == null) {
+            for (TechnologyGraphProductComponent operationProductOutComponent : node.getOperationProductOutComponents()) {
+                if (operationProductOutComponent.getProductId().equals(technologyGraph.getProductId())) {
+                    BigDecimal outQuantity = operationProductComponentWithQuantityContainer.get(operationProductOutComponent
+                            .getHolder());
+
+                    multiplyProductQuantitiesAndAddOperationRuns(node, givenQuantity, outQuantity,
+                            operationProductComponentWithQuantityContainer, operationRuns, mathContext);
+
+                    break;
+                }
+            }
+        } else {
+            for (TechnologyGraphProductComponent operationProductInComponent : previousNode.getOperationProductInComponents()) {
+                boolean isntComponent = false;
+
+                for (TechnologyGraphProductComponent operationProductOutComponent : node.getOperationProductOutComponents()) {
+                    if (operationProductOutComponent.getProductId().equals(operationProductInComponent.getProductId())) {
+                        isntComponent = true;
+
+                        BigDecimal outQuantity = operationProductComponentWithQuantityContainer.get(operationProductOutComponent
+                                .getHolder());
+                        BigDecimal inQuantity = operationProductComponentWithQuantityContainer.get(operationProductInComponent
+                                .getHolder());
+
+                        multiplyProductQuantitiesAndAddOperationRuns(node, inQuantity, outQuantity,
+                                operationProductComponentWithQuantityContainer, operationRuns, mathContext);
+
+                        break;
+                    }
+                }
+
+                if (isntComponent) {
+                    nonComponents.add(operationProductInComponent.getHolder());
+                }
+            }
+        }
+
+        for (TechnologyGraphNode child : node.getChildren()) {
+            traverseProductQuantitiesAndOperationRuns(technologyGraph, givenQuantity, child, node,
+                    operationProductComponentWithQuantityContainer, nonComponents, operationRuns, mathContext);
+        }
+    }
+
+    private void multiplyProductQuantitiesAndAddOperationRuns(final TechnologyGraphNode node, final BigDecimal needed,
+            final BigDecimal actual,
+            final OperationProductComponentWithQuantityContainer operationProductComponentWithQuantityContainer,
+            final Map<Long, BigDecimal> operationRuns, final MathContext mathContext) {
+        BigDecimal multiplier = needed.divide(actual, mathContext);
+
+        if (!node.areProductQuantitiesDivisible()) {
+            // It's intentional to round up the operation runs
+            multiplier = multiplier.setScale(0, RoundingMode.CEILING);
+        }
+
+        BigDecimal runs = multiplier;
+
+        if (!node.isTjDivisible()) {
+            runs = multiplier.setScale(0, RoundingMode.CEILING);
+        }
+
+        operationRuns.put(node.getId(), runs);
+
+        multiplyOperationProductComponentQuantities(node.getOperationProductInComponents(), multiplier,
+                operationProductComponentWithQuantityContainer, mathContext);
+        multiplyOperationProductComponentQuantities(node.getOperationProductOutComponents(), multiplier,
+                operationProductComponentWithQuantityContainer, mathContext);
+    }
+
+    private void multiplyOperationProductComponentQuantities(final List<TechnologyGraphProductComponent> productComponents,
+            final BigDecimal multiplier,
+            final OperationProductComponentWithQuantityContainer operationProductComponentWithQuantityContainer,
+            final MathContext mathContext) {
+        for (TechnologyGraphProductComponent productComponent : productComponents) {
+            BigDecimal addedQuantity = operationProductComponentWithQuantityContainer.get(productComponent.getHolder());
+            BigDecimal quantity = addedQuantity.multiply(multiplier, mathContext);
+
+            operationProductComponentWithQuantityContainer.put(productComponent.getHolder(),
+                    quantity.setScale(5, RoundingMode.CEILING));
+        }
     }
 
     @Override
@@ -42,6 +42,11 @@ public class OperationProductComponentWithQuantityContainer {
         this.operationProductComponentWithQuantities = Maps.newHashMap();
     }
 
+    public OperationProductComponentWithQuantityContainer(
+            final Map<OperationProductComponentHolder, BigDecimal> operationProductComponentWithQuantities) {
+        this.operationProductComponentWithQuantities = Maps.newHashMap(operationProductComponentWithQuantities);
+    }
+
     public void put(final OperationProductComponentHolder operationProductComponentHolder, BigDecimal quantity) {
         operationProductComponentWithQuantities.put(operationProductComponentHolder, quantity);
     }
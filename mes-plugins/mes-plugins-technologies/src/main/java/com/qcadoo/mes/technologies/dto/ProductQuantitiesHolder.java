@@ -69,6 +69,10 @@ public class ProductQuantitiesHolder {
         return productQuantities;
     }
 
+    public Set<OperationProductComponentHolder> getNonComponents() {
+        return nonComponents;
+    }
+
     @Override
     public int hashCode() {
         return new HashCodeBuilder().append(operationRuns).append(nonComponents).append(productQuantities).toHashCode();
@@ -0,0 +1,100 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.technologies.graph;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Read-only copy of technology operation components tree, safe to be shared between threads.
+ */
+public final class TechnologyGraph {
+
+    private final Long technologyId;
+
+    private final String state;
+
+    private final Long productId;
+
+    private final TechnologyGraphNode root;
+
+    private final List<TechnologyGraphNode> nodes;
+
+    private final Set<Long> referencedTechnologyIds;
+
+    private final boolean cacheable;
+
+    TechnologyGraph(final Long technologyId, final String state, final Long productId, final TechnologyGraphNode root,
+            final List<TechnologyGraphNode> nodes, final Set<Long> referencedTechnologyIds, final boolean cacheable) {
+        this.technologyId = technologyId;
+        this.state = state;
+        this.productId = productId;
+        this.root = root;
+        this.nodes = Collections.unmodifiableList(nodes);
+        this.referencedTechnologyIds = Collections.unmodifiableSet(referencedTechnologyIds);
+        this.cacheable = cacheable;
+    }
+
+    public Long getTechnologyId() {
+        return technologyId;
+    }
+
+    /**
+     * @return state of technology when graph was read, used as version of cached graph
+     */
+    public String getState() {
+        return state;
+    }
+
+    public Long getProductId() {
+        return productId;
+    }
+
+    public TechnologyGraphNode getRoot() {
+        return root;
+    }
+
+    /**
+     * @return all nodes of this technology tree, without nodes of referenced technologies
+     */
+    public List<TechnologyGraphNode> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * @return ids of technologies referenced directly or indirectly by this technology
+     */
+    public Set<Long> getReferencedTechnologyIds() {
+        return referencedTechnologyIds;
+    }
+
+    /**
+     * @return true if technology and all referenced technologies are in states that don't allow changing their trees
+     */
+    public boolean isCacheable() {
+        return cacheable;
+    }
+
+}
@@ -0,0 +1,89 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.technologies.graph;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.stereotype.Service;
+
+/**
+ * Process-wide cache of technology graphs, keyed by technology id and state. Only graphs of technologies which trees can't be
+ * changed anymore are kept (see {@link TechnologyGraph#isCacheable()}). Least recently used graphs are evicted when cache is full.
+ * Graphs are invalidated by technology state change listener.
+ */
+@Service
+public class TechnologyGraphCache {
+
+    private static final int L_MAX_SIZE = 500;
+
+    private final Map<Long, TechnologyGraph> graphs = new LinkedHashMap<Long, TechnologyGraph>(16, 0.75f, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Long, TechnologyGraph> eldest) {
+            return size() > L_MAX_SIZE;
+        }
+
+    };
+
+    public synchronized TechnologyGraph get(final Long technologyId, final String state) {
+        TechnologyGraph technologyGraph = graphs.get(technologyId);
+
+        if ((technologyGraph == null) || !technologyGraph.getState().equals(state)) {
+            return null;
+        }
+
+        return technologyGraph;
+    }
+
+    public synchronized void put(final TechnologyGraph technologyGraph) {
+        if (technologyGraph.isCacheable()) {
+            graphs.put(technologyGraph.getTechnologyId(), technologyGraph);
+        }
+    }
+
+    /**
+     * Removes graph of technology and graphs of all technologies referencing it.
+     *
+     * @param technologyId
+     *            technology id
+     */
+    public synchronized void invalidate(final Long technologyId) {
+        graphs.remove(technologyId);
+
+        for (Iterator<TechnologyGraph> iterator = graphs.values().iterator(); iterator.hasNext();) {
+            if (iterator.next().getReferencedTechnologyIds().contains(technologyId)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        graphs.clear();
+    }
+
+}
@@ -0,0 +1,140 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.technologies.graph;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read-only copy of technology operation component. Node of reference technology type has no product components, but points to
+ * graph of referenced technology instead.
+ *
+ * Besides product components node keeps plain values (numbers, booleans and strings) of all operation component fields, so time
+ * and cost norms added by other plugins can be read without loading entity.
+ */
+public final class TechnologyGraphNode {
+
+    private final Long id;
+
+    private final Long operationId;
+
+    private final Map<String, Object> fields;
+
+    private final boolean areProductQuantitiesDivisible;
+
+    private final boolean tjDivisible;
+
+    private final List<TechnologyGraphProductComponent> operationProductInComponents;
+
+    private final List<TechnologyGraphProductComponent> operationProductOutComponents;
+
+    private final List<TechnologyGraphNode> children;
+
+    private final TechnologyGraph referenceTechnology;
+
+    TechnologyGraphNode(final Long id, final Long operationId, final Map<String, Object> fields,
+            final boolean areProductQuantitiesDivisible, final boolean tjDivisible,
+            final List<TechnologyGraphProductComponent> operationProductInComponents,
+            final List<TechnologyGraphProductComponent> operationProductOutComponents, final List<TechnologyGraphNode> children,
+            final TechnologyGraph referenceTechnology) {
+        this.id = id;
+        this.operationId = operationId;
+        this.fields = Collections.unmodifiableMap(fields);
+        this.areProductQuantitiesDivisible = areProductQuantitiesDivisible;
+        this.tjDivisible = tjDivisible;
+        this.operationProductInComponents = Collections.unmodifiableList(operationProductInComponents);
+        this.operationProductOutComponents = Collections.unmodifiableList(operationProductOutComponents);
+        this.children = Collections.unmodifiableList(children);
+        this.referenceTechnology = referenceTechnology;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Long getOperationId() {
+        return operationId;
+    }
+
+    public Object getField(final String fieldName) {
+        return fields.get(fieldName);
+    }
+
+    public BigDecimal getDecimalField(final String fieldName) {
+        Object value = fields.get(fieldName);
+
+        if (value == null) {
+            return null;
+        }
+
+        return (value instanceof BigDecimal) ? (BigDecimal) value : new BigDecimal(value.toString());
+    }
+
+    public Integer getIntegerField(final String fieldName) {
+        Object value = fields.get(fieldName);
+
+        return (value == null) ? null : ((Number) value).intValue();
+    }
+
+    public boolean getBooleanField(final String fieldName) {
+        return Boolean.TRUE.equals(fields.get(fieldName));
+    }
+
+    public String getStringField(final String fieldName) {
+        Object value = fields.get(fieldName);
+
+        return (value == null) ? null : value.toString();
+    }
+
+    public boolean areProductQuantitiesDivisible() {
+        return areProductQuantitiesDivisible;
+    }
+
+    public boolean isTjDivisible() {
+        return tjDivisible;
+    }
+
+    public List<TechnologyGraphProductComponent> getOperationProductInComponents() {
+        return operationProductInComponents;
+    }
+
+    public List<TechnologyGraphProductComponent> getOperationProductOutComponents() {
+        return operationProductOutComponents;
+    }
+
+    public List<TechnologyGraphNode> getChildren() {
+        return children;
+    }
+
+    public boolean isReferenceTechnology() {
+        return referenceTechnology != null;
+    }
+
+    public TechnologyGraph getReferenceTechnology() {
+        return referenceTechnology;
+    }
+
+}
@@ -0,0 +1,194 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.technologies.graph;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.qcadoo.mes.technologies.constants.TechnologyFields;
+import com.qcadoo.mes.technologies.constants.TechnologyOperationComponentEntityType;
+import com.qcadoo.mes.technologies.constants.TechnologyOperationComponentFields;
+import com.qcadoo.mes.technologies.dto.OperationProductComponentHolder;
+import com.qcadoo.mes.technologies.states.constants.TechnologyStateStringValues;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.EntityTree;
+
+@Service
+public class TechnologyGraphService {
+
+    private static final String L_PRODUCT = "product";
+
+    private static final String L_QUANTITY = "quantity";
+
+    private static final String L_OPERATION = "operation";
+
+    private static final Set<String> L_CACHEABLE_STATES = Sets.newHashSet(TechnologyStateStringValues.ACCEPTED,
+            TechnologyStateStringValues.OUTDATED, TechnologyStateStringValues.DECLINED);
+
+    @Autowired
+    private TechnologyGraphCache technologyGraphCache;
+
+    public TechnologyGraph getTechnologyGraph(final Entity technology) {
+        return getTechnologyGraph(technology, Maps.<Long, TechnologyGraph> newHashMap());
+    }
+
+    /**
+     * Gets graph of technology, reusing graphs of technologies (also referenced ones) that were already read with the same
+     * loadedGraphs map or are kept in {@link TechnologyGraphCache}. Technologies that aren't saved yet are read every time.
+     *
+     * @param technology
+     *            technology
+     * @param loadedGraphs
+     *            graphs already read, by technology id
+     * @return graph of technology
+     */
+    public TechnologyGraph getTechnologyGraph(final Entity technology, final Map<Long, TechnologyGraph> loadedGraphs) {
+        Long technologyId = technology.getId();
+
+        if (technologyId == null) {
+            return buildTechnologyGraph(technology, loadedGraphs);
+        }
+
+        TechnologyGraph technologyGraph = loadedGraphs.get(technologyId);
+
+        if (technologyGraph == null) {
+            technologyGraph = technologyGraphCache.get(technologyId, technology.getStringField(TechnologyFields.STATE));
+        }
+
+        if (technologyGraph == null) {
+            technologyGraph = buildTechnologyGraph(technology, loadedGraphs);
+
+            technologyGraphCache.put(technologyGraph);
+        }
+
+        loadedGraphs.put(technologyId, technologyGraph);
+
+        return technologyGraph;
+    }
+
+    private TechnologyGraph buildTechnologyGraph(final Entity technology, final Map<Long, TechnologyGraph> loadedGraphs) {
+        Entity product = technology.getBelongsToField(TechnologyFields.PRODUCT);
+        EntityTree operationComponents = technology.getTreeField(TechnologyFields.OPERATION_COMPONENTS);
+        Entity root = operationComponents.getRoot();
+
+        String state = technology.getStringField(TechnologyFields.STATE);
+
+        List<TechnologyGraphNode> nodes = Lists.newArrayList();
+        List<TechnologyGraph> referencedGraphs = Lists.newArrayList();
+        TechnologyGraphNode rootNode = null;
+
+        if (root != null) {
+            rootNode = buildTechnologyGraphNode(root, nodes, referencedGraphs, loadedGraphs);
+        }
+
+        Set<Long> referencedTechnologyIds = Sets.newHashSet();
+        boolean cacheable = (technology.getId() != null) && L_CACHEABLE_STATES.contains(state);
+
+        for (TechnologyGraph referencedGraph : referencedGraphs) {
+            if (referencedGraph.getTechnologyId() != null) {
+                referencedTechnologyIds.add(referencedGraph.getTechnologyId());
+            }
+
+            referencedTechnologyIds.addAll(referencedGraph.getReferencedTechnologyIds());
+            cacheable = cacheable && referencedGraph.isCacheable();
+        }
+
+        return new TechnologyGraph(technology.getId(), state, (product == null) ? null : product.getId(), rootNode, nodes,
+                referencedTechnologyIds, cacheable);
+    }
+
+    private TechnologyGraphNode buildTechnologyGraphNode(final Entity operationComponent, final List<TechnologyGraphNode> nodes,
+            final List<TechnologyGraph> referencedGraphs, final Map<Long, TechnologyGraph> loadedGraphs) {
+        List<TechnologyGraphProductComponent> operationProductInComponents = Lists.newArrayList();
+        List<TechnologyGraphProductComponent> operationProductOutComponents = Lists.newArrayList();
+        TechnologyGraph referenceTechnology = null;
+
+        if (TechnologyOperationComponentEntityType.REFERENCE_TECHNOLOGY.getStringValue().equals(
+                operationComponent.getStringField(TechnologyOperationComponentFields.ENTITY_TYPE))) {
+            referenceTechnology = getTechnologyGraph(
+                    operationComponent.getBelongsToField(TechnologyOperationComponentFields.REFERENCE_TECHNOLOGY), loadedGraphs);
+
+            referencedGraphs.add(referenceTechnology);
+        } else {
+            addProductComponents(
+                    operationComponent.getHasManyField(TechnologyOperationComponentFields.OPERATION_PRODUCT_IN_COMPONENTS),
+                    operationProductInComponents);
+            addProductComponents(
+                    operationComponent.getHasManyField(TechnologyOperationComponentFields.OPERATION_PRODUCT_OUT_COMPONENTS),
+                    operationProductOutComponents);
+        }
+
+        List<TechnologyGraphNode> children = Lists.newArrayList();
+
+        int index = nodes.size();
+
+        for (Entity child : operationComponent.getHasManyField(TechnologyOperationComponentFields.CHILDREN)) {
+            children.add(buildTechnologyGraphNode(child, nodes, referencedGraphs, loadedGraphs));
+        }
+
+        Entity operation = operationComponent.getBelongsToField(L_OPERATION);
+
+        TechnologyGraphNode node = new TechnologyGraphNode(operationComponent.getId(),
+                (operation == null) ? null : operation.getId(), getPlainFields(operationComponent),
+                operationComponent.getBooleanField(TechnologyOperationComponentFields.ARE_PRODUCT_QUANTITIES_DIVISIBLE),
+                operationComponent.getBooleanField(TechnologyOperationComponentFields.IS_TJ_DIVISIBLE),
+                operationProductInComponents, operationProductOutComponents, children, referenceTechnology);
+
+        nodes.add(index, node);
+
+        return node;
+    }
+
+    private Map<String, Object> getPlainFields(final Entity entity) {
+        Map<String, Object> fields = Maps.newHashMap();
+
+        for (Entry<String, Object> field : entity.getFields().entrySet()) {
+            Object value = field.getValue();
+
+            if ((value instanceof Number) || (value instanceof Boolean) || (value instanceof String)) {
+                fields.put(field.getKey(), value);
+            }
+        }
+
+        return fields;
+    }
+
+    private void addProductComponents(final List<Entity> operationProductComponents,
+            final List<TechnologyGraphProductComponent> productComponents) {
+        for (Entity operationProductComponent : operationProductComponents) {
+            productComponents.add(new TechnologyGraphProductComponent(new OperationProductComponentHolder(
+                    operationProductComponent), operationProductComponent.getBelongsToField(L_PRODUCT).getId(),
+                    operationProductComponent.getDecimalField(L_QUANTITY)));
+        }
+    }
+
+}
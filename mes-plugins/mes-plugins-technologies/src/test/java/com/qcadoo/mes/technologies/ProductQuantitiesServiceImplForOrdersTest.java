@@ -0,0 +1,312 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.technologies;
+
+import static com.qcadoo.testing.model.EntityTestUtils.mockEntity;
+import static com.qcadoo.testing.model.EntityTestUtils.stubBelongsToField;
+import static com.qcadoo.testing.model.EntityTestUtils.stubBooleanField;
+import static com.qcadoo.testing.model.EntityTestUtils.stubDecimalField;
+import static com.qcadoo.testing.model.EntityTestUtils.stubHasManyField;
+import static com.qcadoo.testing.model.EntityTestUtils.stubStringField;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.qcadoo.mes.technologies.constants.TechnologyFields;
+import com.qcadoo.mes.technologies.constants.TechnologyOperationComponentEntityType;
+import com.qcadoo.mes.technologies.constants.TechnologyOperationComponentFields;
+import com.qcadoo.mes.technologies.dto.OperationProductComponentHolder;
+import com.qcadoo.mes.technologies.dto.OperationProductComponentWithQuantityContainer;
+import com.qcadoo.mes.technologies.dto.ProductQuantitiesHolder;
+import com.qcadoo.mes.technologies.graph.TechnologyGraphCache;
+import com.qcadoo.mes.technologies.graph.TechnologyGraphService;
+import com.qcadoo.mes.technologies.states.constants.TechnologyStateStringValues;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.EntityTree;
+import com.qcadoo.model.api.NumberService;
+
+public class ProductQuantitiesServiceImplForOrdersTest {
+
+    private static final String L_TECHNOLOGY = "technology";
+
+    private static final String L_PLANNED_QUANTITY = "plannedQuantity";
+
+    private static final String L_PRODUCT = "product";
+
+    private static final String L_OPERATION_COMPONENT = "operationComponent";
+
+    private static final String L_QUANTITY = "quantity";
+
+    private ProductQuantitiesServiceImpl productQuantitiesService;
+
+    @Mock
+    private NumberService numberService;
+
+    @Mock
+    private DataDefinition productDD, operationComponentDD, operationProductInComponentDD, operationProductOutComponentDD;
+
+    private Entity technology, referencingTechnology;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        productQuantitiesService = new ProductQuantitiesServiceImpl();
+
+        TechnologyGraphService technologyGraphService = new TechnologyGraphService();
+
+        ReflectionTestUtils.setField(technologyGraphService, "technologyGraphCache", new TechnologyGraphCache());
+        ReflectionTestUtils.setField(productQuantitiesService, "numberService", numberService);
+        ReflectionTestUtils.setField(productQuantitiesService, "technologyGraphService", technologyGraphService);
+
+        given(numberService.getMathContext()).willReturn(MathContext.DECIMAL64);
+        given(operationProductInComponentDD.getName()).willReturn("operationProductInComponent");
+        given(operationProductOutComponentDD.getName()).willReturn("operationProductOutComponent");
+
+        Entity product1 = mockProduct(1L);
+        Entity product2 = mockProduct(2L);
+        Entity product3 = mockProduct(3L);
+        Entity product4 = mockProduct(4L);
+        Entity product5 = mockProduct(5L);
+        Entity product6 = mockProduct(6L);
+
+        // technology of product 4: operation 2 (2 x P2 + 1 x P3 -> 1 x P4) <- operation 1 (5 x P1 -> 1 x P2)
+        Entity operationComponent1 = mockOperationComponent(11L, false, false);
+        Entity operationComponent2 = mockOperationComponent(12L, false, false);
+
+        stubProductComponents(operationComponent1, Lists.newArrayList(mockInComponent(operationComponent1, product1, "5")),
+                Lists.newArrayList(mockOutComponent(operationComponent1, product2, "1")));
+        stubProductComponents(operationComponent2, Lists.newArrayList(mockInComponent(operationComponent2, product2, "2"),
+                mockInComponent(operationComponent2, product3, "1")),
+                Lists.newArrayList(mockOutComponent(operationComponent2, product4, "1")));
+
+        stubHasManyField(operationComponent1, TechnologyOperationComponentFields.CHILDREN, Collections.<Entity> emptyList());
+        stubHasManyField(operationComponent2, TechnologyOperationComponentFields.CHILDREN,
+                Lists.newArrayList(operationComponent1));
+
+        technology = mockTechnology(1L, product4, operationComponent2, Lists.newArrayList(operationComponent2,
+                operationComponent1));
+
+        // technology of product 6: operation 3 (3 x P4 + 1 x P5 -> 2 x P6) <- technology of product 4
+        Entity operationComponent3 = mockOperationComponent(13L, true, false);
+        Entity referenceOperationComponent = mockEntity(14L);
+
+        given(referenceOperationComponent.getDataDefinition()).willReturn(operationComponentDD);
+        stubStringField(referenceOperationComponent, TechnologyOperationComponentFields.ENTITY_TYPE,
+                TechnologyOperationComponentEntityType.REFERENCE_TECHNOLOGY.getStringValue());
+        stubBelongsToField(referenceOperationComponent, TechnologyOperationComponentFields.REFERENCE_TECHNOLOGY, technology);
+        stubHasManyField(referenceOperationComponent, TechnologyOperationComponentFields.CHILDREN,
+                Collections.<Entity> emptyList());
+
+        stubProductComponents(operationComponent3, Lists.newArrayList(mockInComponent(operationComponent3, product4, "3"),
+                mockInComponent(operationComponent3, product5, "1")),
+                Lists.newArrayList(mockOutComponent(operationComponent3, product6, "2")));
+        stubHasManyField(operationComponent3, TechnologyOperationComponentFields.CHILDREN,
+                Lists.newArrayList(referenceOperationComponent));
+
+        referencingTechnology = mockTechnology(2L, product6, operationComponent3, Lists.newArrayList(operationComponent3,
+                referenceOperationComponent));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public final void shouldThrowExceptionIfOrderDoesNotContainTechnology() {
+        // given
+        Entity order = mockEntity(1L);
+
+        stubDecimalField(order, L_PLANNED_QUANTITY, BigDecimal.TEN);
+
+        // when
+        productQuantitiesService.getProductQuantitiesForOrders(Lists.newArrayList(order));
+    }
+
+    @Test
+    public final void shouldReturnSameQuantitiesAsEntityTraversalForEachOrder() {
+        for (int numberOfOrders : new int[] { 3, 10 }) {
+            // given
+            List<Entity> orders = mockOrders(numberOfOrders);
+
+            // when
+            List<ProductQuantitiesHolder> productQuantitiesForOrders = productQuantitiesService
+                    .getProductQuantitiesForOrders(orders);
+
+            // then
+            assertEquals(numberOfOrders, productQuantitiesForOrders.size());
+
+            for (int i = 0; i < numberOfOrders; i++) {
+                assertEquals("order " + i + " of " + numberOfOrders, getProductQuantitiesByEntityTraversal(orders.get(i)),
+                        productQuantitiesForOrders.get(i));
+            }
+        }
+    }
+
+    @Test
+    public final void shouldScaleReferencedTechnologyByQuantityNeededByReferencingOperation() {
+        // given
+        List<Entity> orders = Lists.newArrayList(mockOrder(1L, referencingTechnology, "5"));
+
+        // when
+        ProductQuantitiesHolder productQuantities = productQuantitiesService.getProductQuantitiesForOrders(orders).get(0);
+
+        // then
+        Map<Long, BigDecimal> operationRuns = productQuantities.getOperationRuns();
+
+        // 5 x P6 needs 2.5 runs of operation 3 (rounded up to 3, as tj isn't divisible), which uses 7.5 x P4, so operations 2
+        // and 1 of referenced technology are run 8 and 16 times
+        assertEquals(0, new BigDecimal("3").compareTo(operationRuns.get(13L)));
+        assertEquals(0, new BigDecimal("8").compareTo(operationRuns.get(12L)));
+        assertEquals(0, new BigDecimal("16").compareTo(operationRuns.get(11L)));
+        assertEquals(2, productQuantities.getNonComponents().size());
+    }
+
+    @Test
+    public final void shouldReadEachTechnologyTreeOnceForAllOrders() {
+        // given
+        List<Entity> orders = mockOrders(10);
+
+        // when
+        productQuantitiesService.getProductQuantitiesForOrders(orders);
+
+        // then
+        verify(technology, times(1)).getTreeField(TechnologyFields.OPERATION_COMPONENTS);
+        verify(referencingTechnology, times(1)).getTreeField(TechnologyFields.OPERATION_COMPONENTS);
+    }
+
+    private ProductQuantitiesHolder getProductQuantitiesByEntityTraversal(final Entity order) {
+        Entity orderTechnology = order.getBelongsToField(L_TECHNOLOGY);
+        EntityTree operationComponents = orderTechnology.getTreeField(TechnologyFields.OPERATION_COMPONENTS);
+
+        OperationProductComponentWithQuantityContainer productQuantities = new OperationProductComponentWithQuantityContainer();
+        Map<Long, BigDecimal> operationRuns = Maps.newHashMap();
+        Set<OperationProductComponentHolder> nonComponents = Sets.newHashSet();
+
+        productQuantitiesService.preloadProductQuantitiesAndOperationRuns(operationComponents, productQuantities, operationRuns);
+        productQuantitiesService.traverseProductQuantitiesAndOperationRuns(orderTechnology,
+                order.getDecimalField(L_PLANNED_QUANTITY), operationComponents.getRoot(), null, productQuantities,
+                nonComponents, operationRuns);
+
+        return new ProductQuantitiesHolder(productQuantities, operationRuns, nonComponents);
+    }
+
+    private List<Entity> mockOrders(final int numberOfOrders) {
+        String[] plannedQuantities = { "4.5", "7", "1", "13.3", "0.25", "100", "2", "9.99999", "3", "12" };
+        List<Entity> orders = Lists.newArrayList();
+
+        for (int i = 0; i < numberOfOrders; i++) {
+            orders.add(mockOrder((long) i, ((i % 3) == 0) ? technology : referencingTechnology, plannedQuantities[i
+                    % plannedQuantities.length]));
+        }
+
+        return orders;
+    }
+
+    private Entity mockOrder(final Long id, final Entity orderTechnology, final String plannedQuantity) {
+        Entity order = mockEntity(id);
+
+        stubBelongsToField(order, L_TECHNOLOGY, orderTechnology);
+        stubDecimalField(order, L_PLANNED_QUANTITY, new BigDecimal(plannedQuantity));
+
+        return order;
+    }
+
+    private Entity mockProduct(final Long id) {
+        Entity product = mockEntity(id);
+
+        given(product.getDataDefinition()).willReturn(productDD);
+
+        return product;
+    }
+
+    private Entity mockTechnology(final Long id, final Entity product, final Entity root, final List<Entity> operationComponents) {
+        Entity technology = mockEntity(id);
+        EntityTree tree = mock(EntityTree.class);
+
+        given(tree.getRoot()).willReturn(root);
+        given(tree.iterator()).willAnswer(invocation -> operationComponents.iterator());
+
+        stubBelongsToField(technology, TechnologyFields.PRODUCT, product);
+        stubStringField(technology, TechnologyFields.STATE, TechnologyStateStringValues.DRAFT);
+        given(technology.getTreeField(TechnologyFields.OPERATION_COMPONENTS)).willReturn(tree);
+
+        return technology;
+    }
+
+    private Entity mockOperationComponent(final Long id, final boolean areProductQuantitiesDivisible,
+            final boolean isTjDivisible) {
+        Entity operationComponent = mockEntity(id);
+
+        given(operationComponent.getDataDefinition()).willReturn(operationComponentDD);
+        stubStringField(operationComponent, TechnologyOperationComponentFields.ENTITY_TYPE,
+                TechnologyOperationComponentEntityType.OPERATION.getStringValue());
+        stubBooleanField(operationComponent, TechnologyOperationComponentFields.ARE_PRODUCT_QUANTITIES_DIVISIBLE,
+                areProductQuantitiesDivisible);
+        stubBooleanField(operationComponent, TechnologyOperationComponentFields.IS_TJ_DIVISIBLE, isTjDivisible);
+
+        return operationComponent;
+    }
+
+    private void stubProductComponents(final Entity operationComponent, final List<Entity> inComponents,
+            final List<Entity> outComponents) {
+        stubHasManyField(operationComponent, TechnologyOperationComponentFields.OPERATION_PRODUCT_IN_COMPONENTS, inComponents);
+        stubHasManyField(operationComponent, TechnologyOperationComponentFields.OPERATION_PRODUCT_OUT_COMPONENTS, outComponents);
+    }
+
+    private Entity mockInComponent(final Entity operationComponent, final Entity product, final String quantity) {
+        return mockProductComponent(operationProductInComponentDD, operationComponent, product, quantity);
+    }
+
+    private Entity mockOutComponent(final Entity operationComponent, final Entity product, final String quantity) {
+        return mockProductComponent(operationProductOutComponentDD, operationComponent, product, quantity);
+    }
+
+    private Entity mockProductComponent(final DataDefinition dataDefinition, final Entity operationComponent,
+            final Entity product, final String quantity) {
+        Entity productComponent = mockEntity(dataDefinition);
+
+        stubBelongsToField(productComponent, L_PRODUCT, product);
+        stubBelongsToField(productComponent, L_OPERATION_COMPONENT, operationComponent);
+        stubDecimalField(productComponent, L_QUANTITY, new BigDecimal(quantity));
+
+        return productComponent;
+    }
+
+}
@@ -0,0 +1,124 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.technologies.graph;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Collections;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.qcadoo.mes.technologies.states.constants.TechnologyStateStringValues;
+
+public class TechnologyGraphCacheTest {
+
+    private TechnologyGraphCache technologyGraphCache;
+
+    @Before
+    public void init() {
+        technologyGraphCache = new TechnologyGraphCache();
+    }
+
+    @Test
+    public final void shouldReturnCachedGraphForSameTechnologyState() {
+        // given
+        TechnologyGraph technologyGraph = buildTechnologyGraph(1L, TechnologyStateStringValues.ACCEPTED,
+                Collections.<Long> emptySet(), true);
+
+        // when
+        technologyGraphCache.put(technologyGraph);
+
+        // then
+        assertSame(technologyGraph, technologyGraphCache.get(1L, TechnologyStateStringValues.ACCEPTED));
+        assertNull(technologyGraphCache.get(1L, TechnologyStateStringValues.OUTDATED));
+        assertNull(technologyGraphCache.get(2L, TechnologyStateStringValues.ACCEPTED));
+    }
+
+    @Test
+    public final void shouldNotCacheGraphWhichIsNotCacheable() {
+        // given
+        TechnologyGraph technologyGraph = buildTechnologyGraph(1L, TechnologyStateStringValues.DRAFT,
+                Collections.<Long> emptySet(), false);
+
+        // when
+        technologyGraphCache.put(technologyGraph);
+
+        // then
+        assertNull(technologyGraphCache.get(1L, TechnologyStateStringValues.DRAFT));
+    }
+
+    @Test
+    public final void shouldInvalidateGraphAndGraphsReferencingIt() {
+        // given
+        TechnologyGraph referencedGraph = buildTechnologyGraph(1L, TechnologyStateStringValues.ACCEPTED,
+                Collections.<Long> emptySet(), true);
+        TechnologyGraph referencingGraph = buildTechnologyGraph(2L, TechnologyStateStringValues.ACCEPTED, Sets.newHashSet(1L),
+                true);
+        TechnologyGraph otherGraph = buildTechnologyGraph(3L, TechnologyStateStringValues.ACCEPTED,
+                Collections.<Long> emptySet(), true);
+
+        technologyGraphCache.put(referencedGraph);
+        technologyGraphCache.put(referencingGraph);
+        technologyGraphCache.put(otherGraph);
+
+        // when
+        technologyGraphCache.invalidate(1L);
+
+        // then
+        assertNull(technologyGraphCache.get(1L, TechnologyStateStringValues.ACCEPTED));
+        assertNull(technologyGraphCache.get(2L, TechnologyStateStringValues.ACCEPTED));
+        assertSame(otherGraph, technologyGraphCache.get(3L, TechnologyStateStringValues.ACCEPTED));
+    }
+
+    @Test
+    public final void shouldEvictLeastRecentlyUsedGraphWhenFull() {
+        // given
+        for (long technologyId = 1; technologyId <= 500; technologyId++) {
+            technologyGraphCache.put(buildTechnologyGraph(technologyId, TechnologyStateStringValues.ACCEPTED,
+                    Collections.<Long> emptySet(), true));
+        }
+
+        TechnologyGraph recentlyUsedGraph = technologyGraphCache.get(1L, TechnologyStateStringValues.ACCEPTED);
+
+        // when
+        technologyGraphCache.put(buildTechnologyGraph(501L, TechnologyStateStringValues.ACCEPTED,
+                Collections.<Long> emptySet(), true));
+
+        // then
+        assertSame(recentlyUsedGraph, technologyGraphCache.get(1L, TechnologyStateStringValues.ACCEPTED));
+        assertNull(technologyGraphCache.get(2L, TechnologyStateStringValues.ACCEPTED));
+    }
+
+    private TechnologyGraph buildTechnologyGraph(final Long technologyId, final String state,
+            final Set<Long> referencedTechnologyIds, final boolean cacheable) {
+        return new TechnologyGraph(technologyId, state, null, null, Lists.<TechnologyGraphNode> newArrayList(),
+                referencedTechnologyIds, cacheable);
+    }
+
+}
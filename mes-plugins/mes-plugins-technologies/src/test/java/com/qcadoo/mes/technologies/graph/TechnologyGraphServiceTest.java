@@ -0,0 +1,330 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.technologies.graph;
+
+import static com.qcadoo.testing.model.EntityTestUtils.mockEntity;
+import static com.qcadoo.testing.model.EntityTestUtils.stubBelongsToField;
+import static com.qcadoo.testing.model.EntityTestUtils.stubBooleanField;
+import static com.qcadoo.testing.model.EntityTestUtils.stubDecimalField;
+import static com.qcadoo.testing.model.EntityTestUtils.stubHasManyField;
+import static com.qcadoo.testing.model.EntityTestUtils.stubStringField;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.qcadoo.mes.states.StateChangeContext;
+import com.qcadoo.mes.technologies.constants.TechnologyFields;
+import com.qcadoo.mes.technologies.constants.TechnologyOperationComponentEntityType;
+import com.qcadoo.mes.technologies.constants.TechnologyOperationComponentFields;
+import com.qcadoo.mes.technologies.states.aop.listener.TechnologyGraphCacheInvalidationAspect;
+import com.qcadoo.mes.technologies.states.constants.TechnologyStateChangePhase;
+import com.qcadoo.mes.technologies.states.constants.TechnologyStateStringValues;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.EntityTree;
+
+public class TechnologyGraphServiceTest {
+
+    private static final String L_PRODUCT = "product";
+
+    private static final String L_OPERATION_COMPONENT = "operationComponent";
+
+    private static final String L_QUANTITY = "quantity";
+
+    private TechnologyGraphService technologyGraphService;
+
+    private TechnologyGraphCache technologyGraphCache;
+
+    @Mock
+    private DataDefinition operationProductInComponentDD, operationProductOutComponentDD;
+
+    private Entity product1, product2, product3;
+
+    private Entity operationComponent1, operationComponent2, operationComponent3;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        technologyGraphService = new TechnologyGraphService();
+        technologyGraphCache = new TechnologyGraphCache();
+
+        ReflectionTestUtils.setField(technologyGraphService, "technologyGraphCache", technologyGraphCache);
+
+        given(operationProductInComponentDD.getName()).willReturn("operationProductInComponent");
+        given(operationProductOutComponentDD.getName()).willReturn("operationProductOutComponent");
+
+        product1 = mockEntity(1L);
+        product2 = mockEntity(2L);
+        product3 = mockEntity(3L);
+
+        // operation 2 (P1 -> P2) <- operation 1 (P3 -> P1), operation 3 (P3 -> P1)
+        operationComponent1 = mockOperationComponent(11L, product3, product1);
+        operationComponent2 = mockOperationComponent(12L, product1, product2);
+        operationComponent3 = mockOperationComponent(13L, product3, product1);
+
+        stubHasManyField(operationComponent2, TechnologyOperationComponentFields.CHILDREN, Lists.newArrayList(
+                operationComponent1, operationComponent3));
+    }
+
+    @Test
+    public final void shouldCopyOperationComponentsTreeInPreOrder() {
+        // given
+        Entity technology = mockTechnology(1L, TechnologyStateStringValues.DRAFT, product2, operationComponent2);
+
+        given(operationComponent2.getFields()).willReturn(ImmutableMap.<String, Object> of("tj", 60, "comment", "x",
+                "operation", mockEntity(7L)));
+        stubBooleanField(operationComponent2, TechnologyOperationComponentFields.ARE_PRODUCT_QUANTITIES_DIVISIBLE, true);
+
+        // when
+        TechnologyGraph technologyGraph = technologyGraphService.getTechnologyGraph(technology);
+
+        // then
+        assertEquals(Long.valueOf(1L), technologyGraph.getTechnologyId());
+        assertEquals(Long.valueOf(2L), technologyGraph.getProductId());
+        assertEquals(TechnologyStateStringValues.DRAFT, technologyGraph.getState());
+
+        TechnologyGraphNode root = technologyGraph.getRoot();
+
+        assertEquals(Long.valueOf(12L), root.getId());
+        assertEquals(Lists.newArrayList(12L, 11L, 13L), getIds(technologyGraph.getNodes()));
+        assertEquals(Lists.newArrayList(11L, 13L), getIds(root.getChildren()));
+        assertTrue(root.areProductQuantitiesDivisible());
+        assertFalse(root.isTjDivisible());
+        assertFalse(root.isReferenceTechnology());
+
+        assertEquals(Integer.valueOf(60), root.getIntegerField("tj"));
+        assertEquals("x", root.getStringField("comment"));
+        assertNull(root.getField("operation"));
+
+        TechnologyGraphProductComponent inComponent = root.getOperationProductInComponents().get(0);
+
+        assertEquals(Long.valueOf(1L), inComponent.getProductId());
+        assertEquals(new BigDecimal("1"), inComponent.getQuantity());
+        assertEquals(Long.valueOf(12L), inComponent.getHolder().getTechnologyOperationComponentId());
+        assertEquals(Long.valueOf(2L), root.getOperationProductOutComponents().get(0).getProductId());
+    }
+
+    @Test
+    public final void shouldLinkGraphOfReferencedTechnology() {
+        // given
+        Entity referencedTechnology = mockTechnology(1L, TechnologyStateStringValues.ACCEPTED, product1, operationComponent1);
+        Entity referenceOperationComponent = mockReferenceOperationComponent(14L, referencedTechnology);
+
+        stubHasManyField(operationComponent2, TechnologyOperationComponentFields.CHILDREN,
+                Lists.newArrayList(referenceOperationComponent));
+
+        Entity technology = mockTechnology(2L, TechnologyStateStringValues.ACCEPTED, product2, operationComponent2);
+
+        // when
+        TechnologyGraph technologyGraph = technologyGraphService.getTechnologyGraph(technology);
+
+        // then
+        TechnologyGraphNode referenceNode = technologyGraph.getRoot().getChildren().get(0);
+
+        assertTrue(referenceNode.isReferenceTechnology());
+        assertTrue(referenceNode.getOperationProductInComponents().isEmpty());
+        assertEquals(Long.valueOf(1L), referenceNode.getReferenceTechnology().getTechnologyId());
+        assertEquals(Long.valueOf(11L), referenceNode.getReferenceTechnology().getRoot().getId());
+        assertEquals(Lists.newArrayList(12L, 14L), getIds(technologyGraph.getNodes()));
+        assertEquals(Sets.newHashSet(1L), technologyGraph.getReferencedTechnologyIds());
+        assertTrue(technologyGraph.isCacheable());
+    }
+
+    @Test
+    public final void shouldReadTechnologyReferencedManyTimesOnce() {
+        // given
+        Entity referencedTechnology = mockTechnology(1L, TechnologyStateStringValues.DRAFT, product1, operationComponent1);
+        Entity referenceOperationComponent1 = mockReferenceOperationComponent(14L, referencedTechnology);
+        Entity referenceOperationComponent2 = mockReferenceOperationComponent(15L, referencedTechnology);
+
+        stubHasManyField(operationComponent2, TechnologyOperationComponentFields.CHILDREN, Lists.newArrayList(
+                referenceOperationComponent1, referenceOperationComponent2));
+
+        Entity technology = mockTechnology(2L, TechnologyStateStringValues.DRAFT, product2, operationComponent2);
+
+        Map<Long, TechnologyGraph> loadedGraphs = Maps.newHashMap();
+
+        // when
+        TechnologyGraph technologyGraph = technologyGraphService.getTechnologyGraph(technology, loadedGraphs);
+        TechnologyGraph referencedTechnologyGraph = technologyGraphService.getTechnologyGraph(referencedTechnology,
+                loadedGraphs);
+
+        // then
+        List<TechnologyGraphNode> children = technologyGraph.getRoot().getChildren();
+
+        assertSame(referencedTechnologyGraph, children.get(0).getReferenceTechnology());
+        assertSame(referencedTechnologyGraph, children.get(1).getReferenceTechnology());
+        assertSame(technologyGraph, loadedGraphs.get(2L));
+
+        verify(referencedTechnology, times(1)).getTreeField(TechnologyFields.OPERATION_COMPONENTS);
+    }
+
+    @Test
+    public final void shouldNotBeCacheableIfTreeOfTechnologyOrReferencedTechnologyCanChange() {
+        // given
+        Entity draftReferencedTechnology = mockTechnology(1L, TechnologyStateStringValues.DRAFT, product1, operationComponent1);
+        Entity referenceOperationComponent = mockReferenceOperationComponent(14L, draftReferencedTechnology);
+
+        stubHasManyField(operationComponent2, TechnologyOperationComponentFields.CHILDREN,
+                Lists.newArrayList(referenceOperationComponent));
+
+        Entity acceptedTechnology = mockTechnology(2L, TechnologyStateStringValues.ACCEPTED, product2, operationComponent2);
+        Entity unsavedTechnology = mockTechnology(null, TechnologyStateStringValues.ACCEPTED, product1, operationComponent3);
+
+        // when
+        TechnologyGraph acceptedTechnologyGraph = technologyGraphService.getTechnologyGraph(acceptedTechnology);
+        TechnologyGraph unsavedTechnologyGraph = technologyGraphService.getTechnologyGraph(unsavedTechnology);
+
+        // then
+        assertFalse(acceptedTechnologyGraph.isCacheable());
+        assertFalse(unsavedTechnologyGraph.isCacheable());
+    }
+
+    @Test
+    public final void shouldReuseCachedGraphUntilTechnologyStateChanges() {
+        // given
+        Entity technology = mockTechnology(1L, TechnologyStateStringValues.ACCEPTED, product2, operationComponent2);
+
+        TechnologyGraphCacheInvalidationAspect invalidationAspect = new TechnologyGraphCacheInvalidationAspect();
+        StateChangeContext stateChangeContext = mock(StateChangeContext.class);
+
+        ReflectionTestUtils.setField(invalidationAspect, "technologyGraphCache", technologyGraphCache);
+        given(stateChangeContext.getOwner()).willReturn(technology);
+
+        // when
+        TechnologyGraph technologyGraph = technologyGraphService.getTechnologyGraph(technology);
+        TechnologyGraph cachedTechnologyGraph = technologyGraphService.getTechnologyGraph(technology);
+
+        invalidationAspect.invalidateTechnologyGraph(stateChangeContext, TechnologyStateChangePhase.LAST);
+
+        TechnologyGraph technologyGraphAfterStateChange = technologyGraphService.getTechnologyGraph(technology);
+
+        // then
+        assertSame(technologyGraph, cachedTechnologyGraph);
+        assertNotSame(technologyGraph, technologyGraphAfterStateChange);
+
+        verify(technology, times(2)).getTreeField(TechnologyFields.OPERATION_COMPONENTS);
+    }
+
+    @Test
+    public final void shouldNotUseCachedGraphOfTechnologyInOtherState() {
+        // given
+        Entity technology = mockTechnology(1L, TechnologyStateStringValues.ACCEPTED, product2, operationComponent2);
+
+        TechnologyGraph technologyGraph = technologyGraphService.getTechnologyGraph(technology);
+
+        stubStringField(technology, TechnologyFields.STATE, TechnologyStateStringValues.OUTDATED);
+
+        // when
+        TechnologyGraph outdatedTechnologyGraph = technologyGraphService.getTechnologyGraph(technology);
+
+        // then
+        assertNotSame(technologyGraph, outdatedTechnologyGraph);
+        assertEquals(TechnologyStateStringValues.OUTDATED, outdatedTechnologyGraph.getState());
+        assertSame(outdatedTechnologyGraph, technologyGraphCache.get(1L, TechnologyStateStringValues.OUTDATED));
+    }
+
+    private List<Long> getIds(final List<TechnologyGraphNode> nodes) {
+        List<Long> ids = Lists.newArrayList();
+
+        for (TechnologyGraphNode node : nodes) {
+            ids.add(node.getId());
+        }
+
+        return ids;
+    }
+
+    private Entity mockTechnology(final Long id, final String state, final Entity product, final Entity root) {
+        Entity technology = mockEntity(id);
+        EntityTree tree = mock(EntityTree.class);
+
+        given(tree.getRoot()).willReturn(root);
+
+        stubBelongsToField(technology, TechnologyFields.PRODUCT, product);
+        stubStringField(technology, TechnologyFields.STATE, state);
+        given(technology.getTreeField(TechnologyFields.OPERATION_COMPONENTS)).willReturn(tree);
+
+        return technology;
+    }
+
+    private Entity mockOperationComponent(final Long id, final Entity inProduct, final Entity outProduct) {
+        Entity operationComponent = mockEntity(id);
+
+        stubStringField(operationComponent, TechnologyOperationComponentFields.ENTITY_TYPE,
+                TechnologyOperationComponentEntityType.OPERATION.getStringValue());
+        stubHasManyField(operationComponent, TechnologyOperationComponentFields.OPERATION_PRODUCT_IN_COMPONENTS,
+                Lists.newArrayList(mockProductComponent(operationProductInComponentDD, operationComponent, inProduct)));
+        stubHasManyField(operationComponent, TechnologyOperationComponentFields.OPERATION_PRODUCT_OUT_COMPONENTS,
+                Lists.newArrayList(mockProductComponent(operationProductOutComponentDD, operationComponent, outProduct)));
+        stubHasManyField(operationComponent, TechnologyOperationComponentFields.CHILDREN, Collections.<Entity> emptyList());
+
+        return operationComponent;
+    }
+
+    private Entity mockReferenceOperationComponent(final Long id, final Entity referenceTechnology) {
+        Entity operationComponent = mockEntity(id);
+
+        stubStringField(operationComponent, TechnologyOperationComponentFields.ENTITY_TYPE,
+                TechnologyOperationComponentEntityType.REFERENCE_TECHNOLOGY.getStringValue());
+        stubBelongsToField(operationComponent, TechnologyOperationComponentFields.REFERENCE_TECHNOLOGY, referenceTechnology);
+        stubHasManyField(operationComponent, TechnologyOperationComponentFields.CHILDREN, Collections.<Entity> emptyList());
+
+        return operationComponent;
+    }
+
+    private Entity mockProductComponent(final DataDefinition dataDefinition, final Entity operationComponent,
+            final Entity product) {
+        Entity productComponent = mockEntity(dataDefinition);
+
+        stubBelongsToField(productComponent, L_PRODUCT, product);
+        stubBelongsToField(productComponent, L_OPERATION_COMPONENT, operationComponent);
+        stubDecimalField(productComponent, L_QUANTITY, BigDecimal.ONE);
+
+        return productComponent;
+    }
+
+}
@@ -0,0 +1,106 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.technologies.states.aop.listener;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.lang.reflect.Method;
+
+import org.aspectj.lang.annotation.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.qcadoo.mes.states.StateChangeContext;
+import com.qcadoo.mes.states.annotation.RunInPhase;
+import com.qcadoo.mes.technologies.graph.TechnologyGraphCache;
+import com.qcadoo.mes.technologies.states.constants.TechnologyStateChangePhase;
+import com.qcadoo.model.api.Entity;
+
+public class TechnologyGraphCacheInvalidationAspectTest {
+
+    private TechnologyGraphCacheInvalidationAspect technologyGraphCacheInvalidationAspect;
+
+    @Mock
+    private TechnologyGraphCache technologyGraphCache;
+
+    @Mock
+    private StateChangeContext stateChangeContext;
+
+    @Mock
+    private Entity technology;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        technologyGraphCacheInvalidationAspect = new TechnologyGraphCacheInvalidationAspect();
+
+        ReflectionTestUtils.setField(technologyGraphCacheInvalidationAspect, "technologyGraphCache", technologyGraphCache);
+
+        given(stateChangeContext.getOwner()).willReturn(technology);
+    }
+
+    @Test
+    public final void shouldInvalidateGraphOfTechnologyWhichStateChanged() {
+        // given
+        given(technology.getId()).willReturn(1L);
+
+        // when
+        technologyGraphCacheInvalidationAspect.invalidateTechnologyGraph(stateChangeContext, TechnologyStateChangePhase.LAST);
+
+        // then
+        verify(technologyGraphCache).invalidate(1L);
+    }
+
+    @Test
+    public final void shouldNotInvalidateAnythingForUnsavedTechnology() {
+        // given
+        given(technology.getId()).willReturn(null);
+
+        // when
+        technologyGraphCacheInvalidationAspect.invalidateTechnologyGraph(stateChangeContext, TechnologyStateChangePhase.LAST);
+
+        // then
+        verify(technologyGraphCache, never()).invalidate(anyLong());
+    }
+
+    @Test
+    public final void shouldRunAfterLastPhaseOfStateChange() throws NoSuchMethodException {
+        // when
+        Method method = TechnologyGraphCacheInvalidationAspect.class.getMethod("invalidateTechnologyGraph",
+                StateChangeContext.class, int.class);
+
+        // then
+        assertEquals(TechnologyStateChangePhase.LAST, method.getAnnotation(RunInPhase.class).value()[0]);
+        assertEquals("phaseExecution(stateChangeContext, phase)", method.getAnnotation(After.class).value());
+    }
+
+}
@@ -24,11 +24,14 @@
 package com.qcadoo.mes.warehouseMinimalState;
 
 import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.google.common.collect.Maps;
 import com.qcadoo.mes.basic.constants.BasicConstants;
 import com.qcadoo.mes.basic.constants.ProductFamilyElementType;
 import com.qcadoo.mes.basic.constants.ProductFields;
@@ -59,6 +62,27 @@ public class WarehouseMinimalStateHelper {
                 .setMaxResults(1).uniqueResult().getDecimalField("orderedQuantity");
     }
 
+    public Map<Long, BigDecimal> getOrderedQuantitiesForProductsAndLocation(final Long warehouse, final Collection<Long> products) {
+        Map<Long, BigDecimal> orderedQuantities = Maps.newHashMap();
+
+        if (products.isEmpty()) {
+            return orderedQuantities;
+        }
+
+        String query = "select op.product.id as product, COALESCE(sum(op.orderedQuantity),0) as orderedQuantity from #deliveries_orderedProduct op, "
+                + "#deliveries_delivery del where op.delivery.id=del.id and op.product.id in (:products) and del.location.id = :warehouseId "
+                + "and del.state in ('01draft', '02prepared', '03duringCorrection', '05approved') and del.active=true group by op.product.id";
+        List<Entity> productsAndQuantities = getWarehouseStockDD().find(query).setParameter("warehouseId", warehouse)
+                .setParameterList("products", products).list().getEntities();
+
+        for (Entity productAndQuantity : productsAndQuantities) {
+            orderedQuantities.put((Long) productAndQuantity.getField("product"),
+                    productAndQuantity.getDecimalField("orderedQuantity"));
+        }
+
+        return orderedQuantities;
+    }
+
     // WARNING unused argument is used in aspect in plugin integration
     public List<Entity> getWarehouseStockWithTooSmallMinState(final Entity warehouse, final List<Entity> product) {
 
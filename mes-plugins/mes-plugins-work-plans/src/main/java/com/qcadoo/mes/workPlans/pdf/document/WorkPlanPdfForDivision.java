@@ -25,6 +25,7 @@ package com.qcadoo.mes.workPlans.pdf.document;
 
 import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.lowagie.text.*;
 import com.lowagie.text.pdf.*;
 import com.qcadoo.localization.api.TranslationService;
@@ -40,6 +41,7 @@ import com.qcadoo.mes.workPlans.pdf.document.operation.grouping.container.Groupi
 import com.qcadoo.mes.workPlans.pdf.document.operation.grouping.holder.OrderOperationComponent;
 import com.qcadoo.mes.workPlans.pdf.document.operation.product.ProductDirection;
 import com.qcadoo.mes.workPlans.pdf.document.operation.product.column.OperationProductColumn;
+import com.qcadoo.mes.workPlans.pdf.document.parallel.ParallelSectionRenderer;
 import com.qcadoo.model.api.*;
 import com.qcadoo.model.api.search.SearchRestrictions;
 import com.qcadoo.report.api.FontUtils;
@@ -80,23 +82,44 @@ public class WorkPlanPdfForDivision {
     @Autowired
     private TechnologyService technologyService;
 
+    @Autowired
+    private ParallelSectionRenderer parallelSectionRenderer;
+
     public void print(PdfWriter pdfWriter, GroupingContainer groupingContainer, Entity workPlan, Document document, Locale locale)
             throws DocumentException {
 
         ListMultimap<String, OrderOperationComponent> titleToOperationComponent = groupingContainer
                 .getTitleToOperationComponent();
 
+        Map<String, List<OrderOperationComponent>> titleToSortedComponents = Maps.newHashMap();
+        Map<String, List<Image>> titleToBarcodeImages = Maps.newHashMap();
+
+        // barcodes are created with the writer, so they are prepared in the printing order before sections are rendered
         for (String title : titleToOperationComponent.keySet()) {
-            addWorkPlanTitle(document, workPlan, title, locale);
-            List<OrderOperationComponent> components = titleToOperationComponent.get(title);
-            List<OrderOperationComponent> sorted = sortOrderOperationComponents(components);
-            addMainOrders(document, sorted, locale);
+            List<OrderOperationComponent> sorted = sortOrderOperationComponents(titleToOperationComponent.get(title));
+            List<Image> barcodeImages = Lists.newArrayList();
             for (OrderOperationComponent orderOperationComponent : sorted) {
-                addOperationTable(pdfWriter, groupingContainer, document, orderOperationComponent, locale);
-
+                barcodeImages.add(createBarcode(pdfWriter, orderOperationComponent.getOrder(),
+                        orderOperationComponent.getOperationComponent()));
             }
-            document.newPage();
+            titleToSortedComponents.put(title, sorted);
+            titleToBarcodeImages.put(title, barcodeImages);
+        }
+
+        parallelSectionRenderer.render(Lists.newArrayList(titleToOperationComponent.keySet()), (title, sectionDocument) -> print(
+                groupingContainer, workPlan, title, titleToSortedComponents.get(title), titleToBarcodeImages.get(title),
+                sectionDocument, locale), document);
+    }
+
+    private void print(GroupingContainer groupingContainer, Entity workPlan, String title,
+            List<OrderOperationComponent> sorted, List<Image> barcodeImages, Document document, Locale locale)
+            throws DocumentException {
+        addWorkPlanTitle(document, workPlan, title, locale);
+        addMainOrders(document, sorted, locale);
+        for (int i = 0; i < sorted.size(); i++) {
+            addOperationTable(barcodeImages.get(i), groupingContainer, document, sorted.get(i), locale);
         }
+        document.newPage();
     }
 
     private void addWorkPlanTitle(Document document, Entity workPlan, String title, Locale locale) throws DocumentException {
@@ -136,7 +159,7 @@ public class WorkPlanPdfForDivision {
         }
     }
 
-    private void addOperationTable(PdfWriter pdfWriter, GroupingContainer groupingContainer, Document document,
+    private void addOperationTable(Image barcodeImage, GroupingContainer groupingContainer, Document document,
             OrderOperationComponent orderOperationComponent, Locale locale) throws DocumentException {
 
         Map<Long, Map<OperationProductColumn, ColumnAlignment>> outputProductsMap = groupingContainer
@@ -177,7 +200,7 @@ public class WorkPlanPdfForDivision {
         addOperationProductsTable(outputCell, operationProductOutComponents(operationComponent), outputProductColumnAlignmentMap,
                 ProductDirection.OUT, locale);
 
-        codeCell.addElement(createBarcode(pdfWriter, order, operationComponent));
+        codeCell.addElement(barcodeImage);
 
         float[] tableColumnWidths = new float[] { 70f, 70f, 10f };
         table.setWidths(tableColumnWidths);
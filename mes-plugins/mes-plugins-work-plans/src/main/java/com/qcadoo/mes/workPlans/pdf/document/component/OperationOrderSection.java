@@ -25,7 +25,7 @@ package com.qcadoo.mes.workPlans.pdf.document.component;
 
 import com.lowagie.text.Document;
 import com.lowagie.text.DocumentException;
-import com.lowagie.text.pdf.PdfWriter;
+import com.lowagie.text.Image;
 import com.qcadoo.mes.basic.ParameterService;
 import com.qcadoo.mes.workPlans.constants.ParameterFieldsWP;
 import com.qcadoo.mes.workPlans.pdf.document.operation.component.*;
@@ -74,7 +74,7 @@ public class OperationOrderSection {
         this.operationAdditionalFields = operationAdditionalFields;
     }
 
-    public void print(PdfWriter pdfWriter, GroupingContainer groupingContainer, Entity order, Entity operationComponent,
+    public void print(Image barcodeImage, GroupingContainer groupingContainer, Entity order, Entity operationComponent,
             Document document, Locale locale) throws DocumentException {
         operationOrderHeader.print(order, groupingContainer, operationComponent, document, locale);
 
@@ -83,7 +83,7 @@ public class OperationOrderSection {
         }
 
         if (isBarcodeEnabled()) {
-            operationBarcode.print(pdfWriter, order, operationComponent, document);
+            operationBarcode.print(barcodeImage, document);
         }
 
         if (isOutputProductTableEnabled()) {
@@ -108,7 +108,7 @@ public class OperationOrderSection {
         return !parameterService.getParameter().getBooleanField(ParameterFieldsWP.DONT_PRINT_INPUT_PRODUCTS_IN_WORK_PLANS);
     }
 
-    private boolean isBarcodeEnabled() {
+    boolean isBarcodeEnabled() {
         return !parameterService.getParameter().getBooleanField(ParameterFieldsWP.HIDE_BARCODE_OPERATION_COMPONENT_IN_WORK_PLAN);
     }
 
@@ -23,20 +23,27 @@
  */
 package com.qcadoo.mes.workPlans.pdf.document.component;
 
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.lowagie.text.Chunk;
 import com.lowagie.text.Document;
 import com.lowagie.text.DocumentException;
+import com.lowagie.text.Image;
 import com.lowagie.text.pdf.PdfWriter;
 import com.qcadoo.mes.basic.ParameterService;
 import com.qcadoo.mes.workPlans.constants.ParameterFieldsWP;
+import com.qcadoo.mes.workPlans.pdf.document.operation.component.OperationBarcode;
 import com.qcadoo.mes.workPlans.pdf.document.operation.grouping.container.GroupingContainer;
 import com.qcadoo.mes.workPlans.pdf.document.operation.grouping.holder.OrderOperationComponent;
+import com.qcadoo.mes.workPlans.pdf.document.parallel.ParallelSectionRenderer;
 
 @Component
 public class OperationSection {
@@ -47,36 +54,77 @@ public class OperationSection {
 
     private OperationOrderSection operationOrderSection;
 
+    private OperationBarcode operationBarcode;
+
+    private ParallelSectionRenderer parallelSectionRenderer;
+
     @Autowired
     public OperationSection(ParameterService parameterService, OperationSectionHeader operationSectionHeader,
-            OperationOrderSection operationOrderSection) {
+            OperationOrderSection operationOrderSection, OperationBarcode operationBarcode,
+            ParallelSectionRenderer parallelSectionRenderer) {
         this.operationSectionHeader = operationSectionHeader;
         this.operationOrderSection = operationOrderSection;
         this.parameterService = parameterService;
+        this.operationBarcode = operationBarcode;
+        this.parallelSectionRenderer = parallelSectionRenderer;
     }
 
     public void print(PdfWriter pdfWriter, GroupingContainer groupingContainer, Document document, Locale locale)
             throws DocumentException {
-        if (notPrintOperationAtFirstPage()) {
+        boolean notPrintOperationAtFirstPage = notPrintOperationAtFirstPage();
+
+        if (notPrintOperationAtFirstPage) {
             document.newPage();
         }
 
         ListMultimap<String, OrderOperationComponent> titleToOperationComponent = groupingContainer
                 .getTitleToOperationComponent();
+        Map<String, List<Image>> titleToBarcodeImages = createBarcodeImages(pdfWriter, titleToOperationComponent);
+
+        parallelSectionRenderer.render(Lists.newArrayList(titleToOperationComponent.keySet()), (title, sectionDocument) -> print(
+                groupingContainer, title, titleToOperationComponent.get(title), titleToBarcodeImages.get(title),
+                notPrintOperationAtFirstPage, sectionDocument, locale), document);
+    }
+
+    private void print(GroupingContainer groupingContainer, String title, List<OrderOperationComponent> orderOperationComponents,
+            List<Image> barcodeImages, boolean notPrintOperationAtFirstPage, Document document, Locale locale)
+            throws DocumentException {
+        operationSectionHeader.print(document, title);
+        int count = 0;
+        for (OrderOperationComponent orderOperationComponent : orderOperationComponents) {
+            operationOrderSection.print(barcodeImages.get(count), groupingContainer, orderOperationComponent.getOrder(),
+                    orderOperationComponent.getOperationComponent(), document, locale);
+            count++;
+            if (count != orderOperationComponents.size()) {
+                if (notPrintOperationAtFirstPage) {
+                    document.add(Chunk.NEXTPAGE);
+                }
+            }
+        }
+    }
+
+    // barcodes are created with the writer, so they are prepared in the printing order before sections are rendered
+    private Map<String, List<Image>> createBarcodeImages(PdfWriter pdfWriter,
+            ListMultimap<String, OrderOperationComponent> titleToOperationComponent) {
+        boolean barcodeEnabled = operationOrderSection.isBarcodeEnabled();
+        Map<String, List<Image>> titleToBarcodeImages = Maps.newHashMap();
+
         for (String title : titleToOperationComponent.keySet()) {
-            operationSectionHeader.print(document, title);
-            int count = 0;
-            for (OrderOperationComponent orderOperationComponent : groupingContainer.getTitleToOperationComponent().get(title)) {
-                count++;
-                operationOrderSection.print(pdfWriter, groupingContainer, orderOperationComponent.getOrder(),
-                        orderOperationComponent.getOperationComponent(), document, locale);
-                if (count != titleToOperationComponent.get(title).size()) {
-                    if (notPrintOperationAtFirstPage()) {
-                        document.add(Chunk.NEXTPAGE);
-                    }
+            List<Image> barcodeImages = Lists.newArrayList();
+
+            for (OrderOperationComponent orderOperationComponent : titleToOperationComponent.get(title)) {
+                if (barcodeEnabled) {
+                    barcodeImages.add(operationBarcode.createImage(pdfWriter, orderOperationComponent.getOrder(),
+                            orderOperationComponent.getOperationComponent()));
+                } else {
+                    barcodeImages.add(null);
                 }
             }
+
+            titleToBarcodeImages.put(title, barcodeImages);
         }
+
+        return titleToBarcodeImages;
     }
 
     private boolean notPrintOperationAtFirstPage() {
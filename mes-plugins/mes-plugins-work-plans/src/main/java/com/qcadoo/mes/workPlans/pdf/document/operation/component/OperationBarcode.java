@@ -48,19 +48,22 @@ public class OperationBarcode {
         this.barcodeOperationComponentService = barcodeOperationComponentService;
     }
 
-    public void print(PdfWriter pdfWriter, Entity order, Entity operationComponent, Document document) throws DocumentException {
-        PdfContentByte cb = pdfWriter.getDirectContent();
-        Barcode128 code128 = new Barcode128();
-        code128.setCode(barcodeOperationComponentService.getCodeFromBarcode(order, operationComponent));
+    public void print(Image barcodeImage, Document document) throws DocumentException {
         PdfPTable barcodeTable = new PdfPTable(1);
         barcodeTable.getDefaultCell().setHorizontalAlignment(Element.ALIGN_CENTER);
         barcodeTable.getDefaultCell().setVerticalAlignment(Element.ALIGN_TOP);
         barcodeTable.getDefaultCell().setBorder(0);
         barcodeTable.setWidthPercentage(10f);
         barcodeTable.getDefaultCell().setBorder(Rectangle.NO_BORDER);
-        Image barcodeImage = code128.createImageWithBarcode(cb, null, null);
         barcodeTable.addCell(barcodeImage);
         document.add(barcodeTable);
     }
 
+    public Image createImage(PdfWriter pdfWriter, Entity order, Entity operationComponent) {
+        PdfContentByte cb = pdfWriter.getDirectContent();
+        Barcode128 code128 = new Barcode128();
+        code128.setCode(barcodeOperationComponentService.getCodeFromBarcode(order, operationComponent));
+        return code128.createImageWithBarcode(cb, null, null);
+    }
+
 }
@@ -23,6 +23,7 @@
  */
 package com.qcadoo.mes.workPlans.pdf.document.order;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -112,29 +113,31 @@ public class WorkPlanColumnServiceImpl implements WorkPlanColumnService {
         Map<String, OperationProductColumn> identifierOperationProductColumn = applicationContext
                 .getBeansOfType(OperationProductColumn.class);
 
-        List<Entity> orders = getWorkPlanOrders(workPlan);
+        List<Entity> columns = getOperationProductColumns(productDirection);
 
-        for (Entity order : orders) {
-            Entity technology = getOrderTechnology(order);
+        Map<OperationProductColumn, ColumnAlignment> operationProductColumnWithAlignment = Maps.newLinkedHashMap();
 
-            List<Entity> operationComponents = getSortedTechnologyOperationComponents(technology);
+        for (Entity column : columns) {
+            String identifier = getIdentifier(column);
+            ColumnAlignment alignment = getColumnAlignment(column);
 
-            for (Entity operationComponent : operationComponents) {
-                List<Entity> columns = getOperationProductColumns(productDirection);
+            OperationProductColumn key = identifierOperationProductColumn.get(identifier);
 
-                Map<OperationProductColumn, ColumnAlignment> operationProductColumnWithAlignment = Maps.newLinkedHashMap();
+            if (key != null) {
+                operationProductColumnWithAlignment.put(key, alignment);
+            }
+        }
 
-                for (Entity column : columns) {
-                    String identifier = getIdentifier(column);
-                    ColumnAlignment alignment = getColumnAlignment(column);
+        operationProductColumnWithAlignment = Collections.unmodifiableMap(operationProductColumnWithAlignment);
 
-                    OperationProductColumn key = identifierOperationProductColumn.get(identifier);
+        List<Entity> orders = getWorkPlanOrders(workPlan);
 
-                    if (key != null) {
-                        operationProductColumnWithAlignment.put(key, alignment);
-                    }
-                }
+        for (Entity order : orders) {
+            Entity technology = getOrderTechnology(order);
 
+            List<Entity> operationComponents = getSortedTechnologyOperationComponents(technology);
+
+            for (Entity operationComponent : operationComponents) {
                 operationComponentIdWithOperationProductColumnAndAlignment.put(operationComponent.getId(),
                         operationProductColumnWithAlignment);
             }
@@ -0,0 +1,128 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.workPlans.pdf.document.parallel;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.i18n.LocaleContext;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.stereotype.Component;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.lowagie.text.Document;
+import com.lowagie.text.DocumentException;
+
+/**
+ * Builds sections of a pdf report on a shared, bounded pool of threads. Every section is recorded into its own
+ * {@link RecordingDocument} and replayed into the real document on the calling thread in the order of given sections, so the
+ * layout and the content of the report don't depend on the number of threads.
+ * 
+ * Printers must not use the {@link com.lowagie.text.pdf.PdfWriter} - everything what allocates pdf objects (e.g. barcode
+ * templates) has to be prepared before rendering.
+ * 
+ * Size of the pool is set with workPlanPdfThreads property, it is shared by all reports generated at the same time. Sections are
+ * printed directly into the document when it is lower than 2.
+ */
+@Component
+public class ParallelSectionRenderer {
+
+    @Value("${workPlanPdfThreads}")
+    private int threads;
+
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        if (threads > 1) {
+            executor = Executors.newFixedThreadPool(threads,
+                    new ThreadFactoryBuilder().setNameFormat("workPlanPdf-%d").setDaemon(true).build());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    public <T> void render(final List<T> sections, final SectionPrinter<T> sectionPrinter, final Document document)
+            throws DocumentException {
+        if ((executor == null) || (sections.size() < 2)) {
+            for (T section : sections) {
+                sectionPrinter.print(section, document);
+            }
+
+            return;
+        }
+
+        LocaleContext localeContext = LocaleContextHolder.getLocaleContext();
+        List<Future<RecordingDocument>> futures = Lists.newArrayListWithCapacity(sections.size());
+
+        try {
+            for (T section : sections) {
+                RecordingDocument recordingDocument = new RecordingDocument(document);
+
+                futures.add(executor.submit(() -> {
+                    LocaleContextHolder.setLocaleContext(localeContext);
+
+                    try {
+                        sectionPrinter.print(section, recordingDocument);
+                    } finally {
+                        LocaleContextHolder.resetLocaleContext();
+                    }
+
+                    return recordingDocument;
+                }));
+            }
+
+            for (Future<RecordingDocument> future : futures) {
+                future.get().replayInto(document);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            Throwables.propagateIfInstanceOf(e.getCause(), DocumentException.class);
+
+            throw Throwables.propagate(e.getCause());
+        } finally {
+            for (Future<RecordingDocument> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+}
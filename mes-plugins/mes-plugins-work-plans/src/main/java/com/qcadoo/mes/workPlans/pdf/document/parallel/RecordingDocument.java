@@ -0,0 +1,72 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.workPlans.pdf.document.parallel;
+
+import java.util.List;
+
+import com.google.common.collect.Lists;
+import com.lowagie.text.Document;
+import com.lowagie.text.DocumentException;
+import com.lowagie.text.Element;
+
+/**
+ * Document which only records added elements and page breaks, so that a section can be built outside of the thread writing the
+ * pdf and replayed into the real document afterwards. Page size and margins are copied from the target document, because some
+ * components scale images to them.
+ */
+class RecordingDocument extends Document {
+
+    private interface Action {
+
+        void replay(Document document) throws DocumentException;
+
+    }
+
+    private final List<Action> actions = Lists.newArrayList();
+
+    RecordingDocument(final Document target) {
+        super(target.getPageSize(), target.leftMargin(), target.rightMargin(), target.topMargin(), target.bottomMargin());
+    }
+
+    @Override
+    public boolean add(final Element element) {
+        actions.add(document -> document.add(element));
+
+        return true;
+    }
+
+    @Override
+    public boolean newPage() {
+        actions.add(Document::newPage);
+
+        return true;
+    }
+
+    void replayInto(final Document document) throws DocumentException {
+        for (Action action : actions) {
+            action.replay(document);
+        }
+    }
+
+}
@@ -0,0 +1,163 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.workPlans.pdf.document.order;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.context.ApplicationContext;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.basic.ParameterService;
+import com.qcadoo.mes.columnExtension.constants.ColumnAlignment;
+import com.qcadoo.mes.orders.constants.OrderFields;
+import com.qcadoo.mes.technologies.constants.TechnologyFields;
+import com.qcadoo.mes.workPlans.constants.ParameterFieldsWP;
+import com.qcadoo.mes.workPlans.constants.ParameterInputColumnFields;
+import com.qcadoo.mes.workPlans.constants.WorkPlanFields;
+import com.qcadoo.mes.workPlans.pdf.document.operation.product.column.OperationProductColumn;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.EntityList;
+import com.qcadoo.model.api.EntityTree;
+import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.model.api.search.SearchOrder;
+import com.qcadoo.model.api.search.SearchResult;
+import com.qcadoo.model.api.utils.EntityTreeUtilsService;
+
+public class WorkPlanColumnServiceImplTest {
+
+    private static final int L_ORDERS_COUNT = 500;
+
+    private static final int L_OPERATION_COMPONENTS_COUNT = 2;
+
+    private static final String L_PRODUCT_NAME_IDENTIFIER = "productName";
+
+    private WorkPlanColumnService workPlanColumnService;
+
+    @Mock
+    private ApplicationContext applicationContext;
+
+    @Mock
+    private EntityTreeUtilsService entityTreeUtilsService;
+
+    @Mock
+    private ParameterService parameterService;
+
+    @Mock
+    private Entity workPlan, parameter, parameterInputColumn, columnForInputProducts;
+
+    @Mock
+    private EntityList parameterInputColumns;
+
+    @Mock
+    private SearchCriteriaBuilder searchCriteriaBuilder;
+
+    @Mock
+    private SearchResult searchResult;
+
+    @Mock
+    private OperationProductColumn productNameColumn;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        workPlanColumnService = new WorkPlanColumnServiceImpl(applicationContext, entityTreeUtilsService, parameterService);
+
+        given(applicationContext.getBeansOfType(OperationProductColumn.class)).willReturn(
+                Collections.singletonMap(L_PRODUCT_NAME_IDENTIFIER, productNameColumn));
+
+        given(parameterService.getParameter()).willReturn(parameter);
+        given(parameter.getHasManyField(ParameterFieldsWP.PARAMETER_INPUT_COLUMNS)).willReturn(parameterInputColumns);
+        given(parameterInputColumns.find()).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.addOrder(any(SearchOrder.class))).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.list()).willReturn(searchResult);
+        given(searchResult.getEntities()).willReturn(Lists.newArrayList(parameterInputColumn));
+
+        given(parameterInputColumn.getBelongsToField(ParameterInputColumnFields.COLUMN_FOR_INPUT_PRODUCTS)).willReturn(
+                columnForInputProducts);
+        given(columnForInputProducts.getStringField(WorkPlanColumnServiceImpl.L_IDENTIFIER)).willReturn(
+                L_PRODUCT_NAME_IDENTIFIER);
+        given(columnForInputProducts.getStringField(WorkPlanColumnServiceImpl.L_ALIGNMENT)).willReturn(
+                ColumnAlignment.RIGHT.getStringValue());
+    }
+
+    @Test
+    public void shouldReadOperationProductColumnsOnceRegardlessOfOrdersCount() {
+        // given
+        List<Entity> orders = Lists.newArrayList();
+
+        long operationComponentId = 0L;
+
+        for (int index = 0; index < L_ORDERS_COUNT; index++) {
+            Entity order = mock(Entity.class);
+            Entity technology = mock(Entity.class);
+            EntityTree operationComponentsTree = mock(EntityTree.class);
+            List<Entity> operationComponents = Lists.newArrayList();
+
+            for (int componentIndex = 0; componentIndex < L_OPERATION_COMPONENTS_COUNT; componentIndex++) {
+                Entity operationComponent = mock(Entity.class);
+
+                given(operationComponent.getId()).willReturn(++operationComponentId);
+
+                operationComponents.add(operationComponent);
+            }
+
+            given(order.getBelongsToField(OrderFields.TECHNOLOGY)).willReturn(technology);
+            given(technology.getTreeField(TechnologyFields.OPERATION_COMPONENTS)).willReturn(operationComponentsTree);
+            given(entityTreeUtilsService.getSortedEntities(operationComponentsTree)).willReturn(operationComponents);
+
+            orders.add(order);
+        }
+
+        given(workPlan.getManyToManyField(WorkPlanFields.ORDERS)).willReturn(orders);
+
+        // when
+        Map<Long, Map<OperationProductColumn, ColumnAlignment>> operationProductInputColumns = workPlanColumnService
+                .getOperationProductInputColumns(workPlan);
+
+        // then
+        verify(parameterService, times(1)).getParameter();
+        verify(searchCriteriaBuilder, times(1)).list();
+
+        assertEquals(L_ORDERS_COUNT * L_OPERATION_COMPONENTS_COUNT, operationProductInputColumns.size());
+
+        for (Map<OperationProductColumn, ColumnAlignment> columns : operationProductInputColumns.values()) {
+            assertEquals(Collections.singletonMap(productNameColumn, ColumnAlignment.RIGHT), columns);
+        }
+    }
+
+}
@@ -0,0 +1,140 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.workPlans.pdf.document.parallel;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.lowagie.text.Document;
+import com.lowagie.text.DocumentException;
+import com.lowagie.text.Element;
+import com.lowagie.text.Paragraph;
+
+public class ParallelSectionRendererTest {
+
+    private ParallelSectionRenderer parallelSectionRenderer;
+
+    private List<String> printed;
+
+    private Document document;
+
+    @Before
+    public void init() {
+        parallelSectionRenderer = new ParallelSectionRenderer();
+        ReflectionTestUtils.setField(parallelSectionRenderer, "threads", 4);
+        parallelSectionRenderer.init();
+
+        printed = Lists.newArrayList();
+        document = new Document() {
+
+            @Override
+            public boolean add(final Element element) {
+                printed.add(((Paragraph) element).getContent());
+
+                return true;
+            }
+
+            @Override
+            public boolean newPage() {
+                printed.add("newPage");
+
+                return true;
+            }
+        };
+    }
+
+    @After
+    public void shutdown() {
+        parallelSectionRenderer.shutdown();
+    }
+
+    @Test
+    public final void shouldReplaySectionsInGivenOrder() throws DocumentException {
+        // given
+        List<Integer> sections = Lists.newArrayList();
+        List<String> expected = Lists.newArrayList();
+
+        for (int i = 0; i < 50; i++) {
+            sections.add(i);
+            expected.add("header " + i);
+            expected.add("content " + i);
+            expected.add("newPage");
+        }
+
+        // when
+        parallelSectionRenderer.render(sections, (section, sectionDocument) -> {
+            sectionDocument.add(new Paragraph("header " + section));
+            sleepRandomly();
+            sectionDocument.add(new Paragraph("content " + section));
+            sectionDocument.newPage();
+        }, document);
+
+        // then
+        assertEquals(expected, printed);
+    }
+
+    @Test(expected = DocumentException.class)
+    public final void shouldRethrowDocumentExceptionOfSection() throws DocumentException {
+        // when
+        parallelSectionRenderer.render(Lists.newArrayList(1, 2, 3), (section, sectionDocument) -> {
+            if (section == 2) {
+                throw new DocumentException("section " + section);
+            }
+        }, document);
+    }
+
+    @Test
+    public final void shouldPrintDirectlyWhenPoolIsDisabled() throws DocumentException {
+        // given
+        ParallelSectionRenderer sequentialRenderer = new ParallelSectionRenderer();
+        ReflectionTestUtils.setField(sequentialRenderer, "threads", 1);
+        sequentialRenderer.init();
+
+        List<Document> usedDocuments = Lists.newArrayList();
+
+        // when
+        sequentialRenderer.render(Lists.newArrayList(1, 2), (section, sectionDocument) -> usedDocuments.add(sectionDocument),
+                document);
+
+        // then
+        assertEquals(Lists.newArrayList(document, document), usedDocuments);
+    }
+
+    private void sleepRandomly() {
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextInt(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}